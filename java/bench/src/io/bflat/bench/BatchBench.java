@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Scaling of {@link BFlatBatch#parallelForEach} and
+ * {@link BFlatBatchEncoder} with the number of threads, over 100,000
+ * order messages. Scores are per batch.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBench
+{
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  // A decoded order, encoded again by the batch encoder.
+  static final class Order
+  {
+    long   id;
+    String symbol;
+    double price;
+    int    qty;
+  }
+
+  @Setup
+  public void setup() throws IOException
+  {
+    _pool = new ForkJoinPool(threads);
+    Random random = new Random(11);
+    for(int id = 0; id < Messages; ++id)
+    {
+      Order order = new Order();
+      order.id = id;
+      order.symbol = CorpusGenerator.Symbols[
+        random.nextInt(CorpusGenerator.Symbols.length)];
+      order.price = random.nextInt(50000) / 100.0;
+      order.qty = 100 * (1 + random.nextInt(50));
+      _orders.add(order);
+    }
+    _frames = _encoder.encode(_orders, _pool);
+    _batch = new BFlatBatch(_frames, 0, _frames.length);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    _pool.shutdown();
+  }
+
+  @Benchmark
+  public byte[] encode()
+  {
+    return _encoder.encode(_orders, _pool);
+  }
+
+  @Benchmark
+  public void parse()
+  {
+    _batch.parallelForEach(_pool, new Supplier<BFlatHandler>()
+    {
+      public BFlatHandler get()
+      {
+        return new Summer();
+      }
+    });
+  }
+
+  // Decodes every value of each message.
+  static final class Summer implements BFlatHandler
+  {
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      for(BFlatValue value : _parser.parse(data, offset, length))
+      {
+        value.reuse();
+        if(value.getType() == BFlatEncoding.Double)
+        {
+          _sum += value.getDouble();
+        }
+      }
+    }
+
+    final BFlatParser _parser = new BFlatParser();
+    double            _sum;
+  }
+
+  static final int Messages = 100000;
+
+  final List<Order> _orders = new ArrayList<Order>();
+  final BFlatBatchEncoder<Order> _encoder = new BFlatBatchEncoder<Order>(
+    new BFlatRecordEncoder<Order>()
+    {
+      public void encode(Order order, BFlatBuilder builder)
+      {
+        builder.encode("id", order.id).encode("symbol", order.symbol)
+               .encode("price", order.price).encode("qty", order.qty);
+      }
+    }, true);
+  ForkJoinPool _pool;
+  byte[]       _frames;
+  BFlatBatch   _batch;
+}
@@ -0,0 +1,110 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encoding of order-like scalar messages, numeric arrays, and string-heavy
+ * documents with {@link BFlatBuilder}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuilderBench
+{
+  @Setup
+  public void setup()
+  {
+    for(int level = 0; level < _bids.length; ++level)
+    {
+      _bids[level] = 100 - level * 0.01;
+      _sizes[level] = 100 * (level + 1);
+    }
+    StringBuilder body = new StringBuilder();
+    while(body.length() < 2048)
+    {
+      body.append("The quick brown fox jumps over the lazy dog. ");
+    }
+    _body = body.toString();
+  }
+
+  @Benchmark
+  public int encodeScalars()
+  {
+    _builder.rewind();
+    _builder.encode("id", 123456789L)
+            .encode("symbol", "MSFT")
+            .encode("side", "Buy")
+            .encode("price", 57.25)
+            .encode("qty", 500)
+            .encode("account", "ACC12345")
+            .encode("type", (byte)2);
+    _builder.encodeTag(BFlatEncoding.Datetime, "ts");
+    _builder.encode(1475280000123L);
+    return _builder.position;
+  }
+
+  @Benchmark
+  public int encodeArrays()
+  {
+    _builder.rewind();
+    _builder.encode("symbol", "MSFT");
+    _builder.encodeTagArray(BFlatEncoding.Double, "bids", _bids.length);
+    for(double bid : _bids)
+    {
+      _builder.encode(bid);
+    }
+    _builder.encodeTagArray(BFlatEncoding.Int32, "bidSizes", _sizes.length);
+    for(int size : _sizes)
+    {
+      _builder.encode(size);
+    }
+    return _builder.position;
+  }
+
+  @Benchmark
+  public int encodeStrings()
+  {
+    _builder.rewind();
+    _builder.encode("id", 42L)
+            .encode("title", "Notes on message encoding")
+            .encode("author", "A. Writer")
+            .encode("language", "en")
+            .encode("body", _body);
+    _builder.encodeTagArray(BFlatEncoding.String, "keywords", 3);
+    _builder.encode("market").encode("latency").encode("buffer");
+    return _builder.position;
+  }
+
+  final BFlatBuilder _builder = new BFlatBuilder(new byte[65536], 0);
+  final double[]     _bids    = new double[10];
+  final int[]        _sizes   = new int[10];
+  String             _body;
+}
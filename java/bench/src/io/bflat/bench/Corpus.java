@@ -0,0 +1,58 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A message corpus from <tt>bench/corpus</tt>: a file of length-prefixed
+ * frames written by {@link CorpusGenerator}, and its frame index.
+ */
+final class Corpus
+{
+  /**
+   * Load a corpus by name: <tt>orders</tt>, <tt>ticks</tt> or
+   * <tt>documents</tt>. The directory is taken from the
+   * <tt>bflat.corpus</tt> system property, or <tt>corpus</tt> relative to
+   * the working directory.
+   */
+  static Corpus load(String name) throws IOException
+  {
+    File file = new File(System.getProperty("bflat.corpus", "corpus"),
+                         name + ".bflat");
+    return new Corpus(Files.readAllBytes(file.toPath()));
+  }
+
+  private Corpus(byte[] data)
+  {
+    this.data = data;
+    this.batch = new BFlatBatch(data, 0, data.length);
+  }
+
+  final byte[]     data;
+  final BFlatBatch batch;
+}
@@ -0,0 +1,196 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Writes the benchmark corpora. The output is deterministic, so the
+ * checked-in files only change when this generator does.
+ * <ul>
+ * <li><tt>orders</tt>: order entry messages, mostly scalars and short
+ *     strings.</li>
+ * <li><tt>ticks</tt>: market data snapshots, mostly numeric arrays.</li>
+ * <li><tt>documents</tt>: text documents with kilobyte-sized bodies, some
+ *     of them non-ASCII.</li>
+ * </ul>
+ * Usage: <tt>java io.bflat.bench.CorpusGenerator &lt;directory&gt;</tt>
+ */
+public class CorpusGenerator
+{
+  public static void main(String[] args) throws IOException
+  {
+    File directory = new File(args.length > 0 ? args[0] : "corpus");
+    directory.mkdirs();
+    Random random = new Random(20161);
+    try(OutputStream out =
+          new FileOutputStream(new File(directory, "orders.bflat")))
+    {
+      BFlatStreamBuilder builder = new BFlatStreamBuilder(out, 65536);
+      for(int id = 0; id < Orders; ++id)
+      {
+        builder.beginFrame();
+        order(builder, id, random);
+        builder.endFrame();
+      }
+      builder.flush();
+    }
+    try(OutputStream out =
+          new FileOutputStream(new File(directory, "ticks.bflat")))
+    {
+      BFlatStreamBuilder builder = new BFlatStreamBuilder(out, 65536);
+      for(int id = 0; id < Ticks; ++id)
+      {
+        builder.beginFrame();
+        tick(builder, id, random);
+        builder.endFrame();
+      }
+      builder.flush();
+    }
+    try(OutputStream out =
+          new FileOutputStream(new File(directory, "documents.bflat")))
+    {
+      BFlatStreamBuilder builder = new BFlatStreamBuilder(out, 65536);
+      for(int id = 0; id < Documents; ++id)
+      {
+        builder.beginFrame();
+        document(builder, id, random);
+        builder.endFrame();
+      }
+      builder.flush();
+    }
+  }
+
+  static void order(BFlatBuilder builder, int id, Random random)
+  {
+    builder.encode("id", (long)id)
+           .encode("symbol", Symbols[random.nextInt(Symbols.length)])
+           .encode("side", random.nextBoolean() ? "Buy" : "Sell")
+           .encode("price", Math.round(random.nextDouble() * 50000) / 100.0)
+           .encode("qty", 100 * (1 + random.nextInt(50)))
+           .encode("account", "ACC" + (10000 + random.nextInt(90000)))
+           .encode("type", (byte)random.nextInt(4));
+    builder.encodeTag(BFlatEncoding.Datetime, "ts");
+    builder.encode(StartTime + id * 1000L + random.nextInt(1000));
+    if(random.nextInt(4) == 0)
+    {
+      builder.encode("clientOrderId", "C-" + Long.toHexString(
+        random.nextLong()));
+    }
+  }
+
+  static void tick(BFlatBuilder builder, int id, Random random)
+  {
+    double mid = 10 + random.nextInt(500);
+    builder.encode("symbol", Symbols[id % Symbols.length]);
+    builder.encodeTag(BFlatEncoding.Datetime, "ts");
+    builder.encode(StartTime + id * 250L);
+    builder.encodeTagArray(BFlatEncoding.Double, "bids", Depth);
+    for(int level = 0; level < Depth; ++level)
+    {
+      builder.encode(mid - (level + 1) * 0.01);
+    }
+    builder.encodeTagArray(BFlatEncoding.Double, "asks", Depth);
+    for(int level = 0; level < Depth; ++level)
+    {
+      builder.encode(mid + (level + 1) * 0.01);
+    }
+    builder.encodeTagArray(BFlatEncoding.Int32, "bidSizes", Depth);
+    for(int level = 0; level < Depth; ++level)
+    {
+      builder.encode(100 * (1 + random.nextInt(100)));
+    }
+    builder.encodeTagArray(BFlatEncoding.Int32, "askSizes", Depth);
+    for(int level = 0; level < Depth; ++level)
+    {
+      builder.encode(100 * (1 + random.nextInt(100)));
+    }
+  }
+
+  static void document(BFlatBuilder builder, int id, Random random)
+  {
+    builder.encode("id", (long)id)
+           .encode("title", sentence(random, 4 + random.nextInt(8)))
+           .encode("author", Words[random.nextInt(Words.length)] + " " +
+                             Words[random.nextInt(Words.length)])
+           .encode("language", id % 5 == 0 ? "ja" : "en")
+           .encode("body", paragraph(random, 1024 + random.nextInt(3072)));
+    builder.encodeTagArray(BFlatEncoding.String, "keywords", 5);
+    for(int keyword = 0; keyword < 5; ++keyword)
+    {
+      builder.encode(Words[random.nextInt(Words.length)]);
+    }
+  }
+
+  static String sentence(Random random, int words)
+  {
+    StringBuilder sentence = new StringBuilder();
+    for(int word = 0; word < words; ++word)
+    {
+      if(word > 0)
+      {
+        sentence.append(' ');
+      }
+      sentence.append(Words[random.nextInt(Words.length)]);
+    }
+    return sentence.toString();
+  }
+
+  static String paragraph(Random random, int length)
+  {
+    StringBuilder paragraph = new StringBuilder(length + 32);
+    while(paragraph.length() < length)
+    {
+      paragraph.append(sentence(random, 5 + random.nextInt(15)))
+               .append(". ");
+    }
+    return paragraph.toString();
+  }
+
+  static final int  Orders    = 2000;
+  static final int  Ticks     = 500;
+  static final int  Documents = 100;
+  static final int  Depth     = 10;
+  static final long StartTime = 1475280000000L;
+
+  static final String[] Symbols =
+  {
+    "AAPL", "MSFT", "GOOG", "AMZN", "IBM", "ORCL", "INTC", "CSCO", "JPM",
+    "BAC", "WFC", "C", "GS", "MS", "XOM", "CVX", "PFE", "MRK", "JNJ", "KO",
+    "PEP", "WMT", "TGT", "HD", "LOW", "DIS", "NFLX", "T", "VZ", "GE"
+  };
+
+  static final String[] Words =
+  {
+    "market", "order", "price", "latency", "message", "buffer", "stream",
+    "client", "server", "throughput", "café", "naïve", "Zürich", "résumé",
+    "東京", "市場", "データ", "nested", "value", "encoding", "parser",
+    "quote", "trade", "venue", "settlement", "report", "risk", "ledger"
+  };
+}
@@ -0,0 +1,96 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link Fixed} little-endian encoding and decoding of each width.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FixedBench
+{
+  @Benchmark
+  public int encodeInt16()
+  {
+    return Fixed.encodeInt16(_short, _data, _position);
+  }
+
+  @Benchmark
+  public int encodeInt32()
+  {
+    return Fixed.encodeInt32(_int, _data, _position);
+  }
+
+  @Benchmark
+  public int encodeInt64()
+  {
+    return Fixed.encodeInt64(_long, _data, _position);
+  }
+
+  @Benchmark
+  public int encodeDouble()
+  {
+    return Fixed.encodeDouble(_double, _data, _position);
+  }
+
+  @Benchmark
+  public short decodeInt16()
+  {
+    return Fixed.decodeInt16(_data, _position);
+  }
+
+  @Benchmark
+  public int decodeInt32()
+  {
+    return Fixed.decodeInt32(_data, _position);
+  }
+
+  @Benchmark
+  public long decodeInt64()
+  {
+    return Fixed.decodeInt64(_data, _position);
+  }
+
+  @Benchmark
+  public double decodeDouble()
+  {
+    return Fixed.decodeDouble(_data, _position);
+  }
+
+  // fields rather than constants, so the JIT cannot fold the results
+  final byte[] _data     = new byte[16];
+  int          _position = 3;
+  short        _short    = -12345;
+  int          _int      = 0x12345678;
+  long         _long     = 0x123456789abcdefL;
+  double       _double   = 57.25;
+}
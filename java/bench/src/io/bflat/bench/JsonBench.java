@@ -0,0 +1,147 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Transcoding every message of a corpus to JSON with
+ * {@link BFlatJsonWriter}, against building the same text from
+ * {@link BFlatValue#toString}, and reading that JSON back with
+ * {@link BFlatJsonReader}. Scores are per corpus pass; the
+ * <tt>inputBytes</tt> counter is the rate of BFlat or JSON bytes
+ * transcoded.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBench
+{
+  @Param({"orders", "ticks", "documents"})
+  public String corpus;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters
+  {
+    public long inputBytes;
+  }
+
+  @Setup
+  public void setup() throws IOException
+  {
+    Corpus loaded = Corpus.load(corpus);
+    _data = loaded.data;
+    _batch = loaded.batch;
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    BFlatJsonWriter writer = new BFlatJsonWriter(json, 65536);
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      writer.onMessage(_data, _batch.getOffset(index),
+                       _batch.getLength(index));
+    }
+    writer.flush();
+    _json = json.toByteArray();
+  }
+
+  @Benchmark
+  public long writer(Counters counters)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _writer.onMessage(_data, _batch.getOffset(index),
+                        _batch.getLength(index));
+    }
+    counters.inputBytes += _data.length;
+    return _writer.getBytesWritten();
+  }
+
+  @Benchmark
+  public int valueToString(Counters counters)
+  {
+    int length = 0;
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      StringBuilder json = new StringBuilder("{");
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        if(json.length() > 1)
+        {
+          json.append(',');
+        }
+        json.append(value.toString());
+      }
+      json.append("}\n");
+      length += json.toString().getBytes().length;
+    }
+    counters.inputBytes += _data.length;
+    return length;
+  }
+
+  @Benchmark
+  public int reader(Counters counters)
+  {
+    int length = 0;
+    int position = 0;
+    while(position < _json.length)
+    {
+      _builder.rewind();
+      position = _reader.read(_json, position, _json.length - position,
+                              _builder);
+      length += _builder.position;
+    }
+    counters.inputBytes += _json.length;
+    return length;
+  }
+
+  static final OutputStream Discard = new OutputStream()
+  {
+    @Override
+    public void write(int b)
+    {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+    }
+  };
+
+  final BFlatJsonWriter _writer = new BFlatJsonWriter(Discard, 65536);
+  final BFlatParser     _parser = new BFlatParser();
+  final BFlatJsonReader _reader = new BFlatJsonReader();
+  final BFlatBuilder    _builder = new BFlatBuilder(new byte[1 << 20], 0);
+  BFlatBatch            _batch;
+  byte[]                _data;
+  byte[]                _json;
+}
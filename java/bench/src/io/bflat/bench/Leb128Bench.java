@@ -0,0 +1,93 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link Leb128} encoding and decoding of values that take each possible
+ * number of bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Leb128Bench
+{
+  @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10"})
+  public int bytes;
+
+  @Setup
+  public void setup()
+  {
+    // the smallest value of each signedness that needs 'bytes' bytes
+    _unsigned = bytes == 1 ? 1 : 1L << (7 * (bytes - 1));
+    _signed = bytes == 1 ? 1 : 1L << (7 * bytes - 8);
+    if(Leb128.unsignedLength(_unsigned) != bytes ||
+       Leb128.signedLength(_signed) != bytes)
+    {
+      throw new IllegalStateException("wrong test value for " + bytes);
+    }
+    Leb128.encodeUnsigned(_encodedUnsigned, _unsigned);
+    Leb128.encodeSigned(_encodedSigned, _signed);
+  }
+
+  @Benchmark
+  public int encodeUnsigned()
+  {
+    _buffer.position = 0;
+    return Leb128.encodeUnsigned(_buffer, _unsigned);
+  }
+
+  @Benchmark
+  public int encodeSigned()
+  {
+    _buffer.position = 0;
+    return Leb128.encodeSigned(_buffer, _signed);
+  }
+
+  @Benchmark
+  public long decodeUnsigned()
+  {
+    _encodedUnsigned.position = 0;
+    return Leb128.decodeUnsigned(_encodedUnsigned);
+  }
+
+  @Benchmark
+  public long decodeSigned()
+  {
+    _encodedSigned.position = 0;
+    return Leb128.decodeSigned(_encodedSigned);
+  }
+
+  final Buffer _buffer          = new Buffer(new byte[16], 0);
+  final Buffer _encodedUnsigned = new Buffer(new byte[16], 0);
+  final Buffer _encodedSigned   = new Buffer(new byte[16], 0);
+  long         _unsigned;
+  long         _signed;
+}
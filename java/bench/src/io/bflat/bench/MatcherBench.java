@@ -0,0 +1,83 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Matching the orders corpus against growing numbers of
+ * {@link BFlatMatcher} subscriptions on symbol, side and price range.
+ * Scores are per corpus pass.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatcherBench
+{
+  @Param({"1000", "10000", "100000"})
+  public int subscriptions;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    _corpus = Corpus.load("orders");
+    Random random = new Random(7);
+    for(int id = 0; id < subscriptions; ++id)
+    {
+      double low = random.nextInt(50000) / 100.0;
+      BFlatSubscription subscription = new BFlatSubscription()
+        .equal("symbol", CorpusGenerator.Symbols[
+                 random.nextInt(CorpusGenerator.Symbols.length)])
+        .between("price", low, low + random.nextInt(1000) / 100.0);
+      if(random.nextBoolean())
+      {
+        subscription.equal("side", random.nextBoolean() ? "Buy" : "Sell");
+      }
+      _matcher.subscribe(subscription);
+    }
+  }
+
+  @Benchmark
+  public int match()
+  {
+    BFlatBatch batch = _corpus.batch;
+    int matches = 0;
+    for(int index = 0; index < batch.size(); ++index)
+    {
+      matches += _matcher.match(_corpus.data, batch.getOffset(index),
+                                batch.getLength(index));
+    }
+    return matches;
+  }
+
+  final BFlatMatcher _matcher = new BFlatMatcher();
+  Corpus             _corpus;
+}
@@ -0,0 +1,98 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The cost of {@link BFlatMetrics} on parsing a corpus and on encoding
+ * framed messages. Each value of <tt>metrics</tt> runs in its own fork, and
+ * the property is set before the library first reads it, so the disabled
+ * scores should match {@link ParserBench} and {@link BuilderBench}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricsBench
+{
+  @Param({"false", "true"})
+  public String metrics;
+
+  @Param({"orders", "documents"})
+  public String corpus;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    System.setProperty("io.bflat.metrics", metrics);
+    if(BFlatMetrics.Enabled != Boolean.parseBoolean(metrics))
+    {
+      throw new IllegalStateException("BFlatMetrics was loaded too early");
+    }
+    Corpus loaded = Corpus.load(corpus);
+    _data = loaded.data;
+    _batch = loaded.batch;
+  }
+
+  @Benchmark
+  public void parse(Blackhole blackhole)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        value.reuse();
+        blackhole.consume(value.getType());
+      }
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int encodeFrame()
+  {
+    _builder.rewind();
+    _builder.beginFrame();
+    _builder.encode("id", 123456789L)
+            .encode("symbol", "MSFT")
+            .encode("side", "Buy")
+            .encode("price", 57.25)
+            .encode("qty", 500);
+    _builder.endFrame();
+    return _builder.position;
+  }
+
+  final BFlatParser  _parser = new BFlatParser();
+  final BFlatBuilder _builder = new BFlatBuilder(new byte[256], 0);
+  BFlatBatch         _batch;
+  byte[]             _data;
+}
@@ -0,0 +1,128 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Iteration over every message of a corpus with {@link BFlatParser}, with
+ * and without {@link BFlatValue#reuse}, and the cost of materializing tags
+ * and strings. Scores are per corpus pass.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBench
+{
+  @Param({"orders", "ticks", "documents"})
+  public String corpus;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    Corpus loaded = Corpus.load(corpus);
+    _data = loaded.data;
+    _batch = loaded.batch;
+  }
+
+  @Benchmark
+  public void iterate(Blackhole blackhole)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        blackhole.consume(value.getType());
+      }
+    }
+  }
+
+  @Benchmark
+  public void iterateReuse(Blackhole blackhole)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        value.reuse();
+        blackhole.consume(value.getType());
+      }
+    }
+  }
+
+  @Benchmark
+  public void getTag(Blackhole blackhole)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        value.reuse();
+        blackhole.consume(value.getTag());
+      }
+    }
+  }
+
+  @Benchmark
+  public void getString(Blackhole blackhole)
+  {
+    for(int index = 0; index < _batch.size(); ++index)
+    {
+      _parser.parse(_data, _batch.getOffset(index), _batch.getLength(index));
+      for(BFlatValue value : _parser)
+      {
+        value.reuse();
+        if(value.getType() != BFlatEncoding.String)
+        {
+          continue;
+        }
+        if(value.isArray())
+        {
+          for(int element = 0; element < value.getArrayLength(); ++element)
+          {
+            blackhole.consume(value.getString(element));
+          }
+        }
+        else
+        {
+          blackhole.consume(value.getString());
+        }
+      }
+    }
+  }
+
+  final BFlatParser _parser = new BFlatParser();
+  BFlatBatch        _batch;
+  byte[]            _data;
+}
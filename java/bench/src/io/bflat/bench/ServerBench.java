@@ -0,0 +1,147 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@link BFlatServer} over loopback with many open connections: the
+ * latency from writing a frame on one connection to its handler having
+ * run, and the throughput of a burst of one frame on every connection.
+ * Running with 10,000 connections needs a raised open file limit, e.g.
+ * <tt>ulimit -n 32768</tt>, and <tt>-p connections=10000</tt>.
+ */
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerBench
+{
+  @Param({"1", "100", "1000"})
+  public int connections;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    _server = new BFlatServer(
+      new ServerSocket(0, connections, InetAddress.getLoopbackAddress()),
+      new Supplier<BFlatHandler>()
+      {
+        public BFlatHandler get()
+        {
+          return new Counter();
+        }
+      }).start();
+    _sockets = new Socket[connections];
+    _outputs = new OutputStream[connections];
+    for(int index = 0; index < connections; ++index)
+    {
+      _sockets[index] = new Socket(InetAddress.getLoopbackAddress(),
+                                   _server.getPort());
+      _sockets[index].setTcpNoDelay(true);
+      _outputs[index] = _sockets[index].getOutputStream();
+    }
+    BFlatBuilder builder = new BFlatBuilder(new byte[256], 0);
+    builder.beginFrame();
+    CorpusGenerator.order(builder, 1, new Random(1));
+    builder.endFrame();
+    _frame = Arrays.copyOf(builder.data, builder.position);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    for(Socket socket : _sockets)
+    {
+      socket.close();
+    }
+    _server.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long latency() throws IOException
+  {
+    long target = Received.get() + 1;
+    _outputs[_next].write(_frame);
+    _next = _next + 1 == connections ? 0 : _next + 1;
+    while(Received.get() < target)
+    {
+      Thread.onSpinWait();
+    }
+    return target;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public long burst() throws IOException
+  {
+    long target = Received.get() + connections;
+    for(OutputStream output : _outputs)
+    {
+      output.write(_frame);
+    }
+    while(Received.get() < target)
+    {
+      Thread.onSpinWait();
+    }
+    return target;
+  }
+
+  // Parses each message and counts it.
+  static final class Counter implements BFlatHandler
+  {
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      for(BFlatValue value : _parser.parse(data, offset, length))
+      {
+        value.reuse();
+      }
+      Received.incrementAndGet();
+    }
+
+    final BFlatParser _parser = new BFlatParser();
+  }
+
+  static final AtomicLong Received = new AtomicLong();
+
+  BFlatServer    _server;
+  Socket[]       _sockets;
+  OutputStream[] _outputs;
+  byte[]         _frame;
+  int            _next;
+}
@@ -0,0 +1,81 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.bench;
+import io.bflat.*;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * String encoding with short tags, for ASCII and non-ASCII values from a
+ * few characters up to several kilobytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StringBench
+{
+  @Param({"8", "64", "4096"})
+  public int length;
+
+  @Param({"ascii", "latin", "cjk"})
+  public String text;
+
+  @Setup
+  public void setup()
+  {
+    char[] chars = new char[length];
+    Arrays.fill(chars, 'a');
+    if(!text.equals("ascii"))
+    {
+      char other = text.equals("latin") ? 'é' : '東';
+      for(int i = 0; i < length; i += 4)
+      {
+        chars[i] = other;
+      }
+    }
+    _value = new String(chars);
+  }
+
+  @Benchmark
+  public int encode()
+  {
+    _builder.rewind();
+    _builder.encode("s", _value);
+    return _builder.position;
+  }
+
+  @Benchmark
+  public int size()
+  {
+    return BFlatSizer.sizeOfString(_value);
+  }
+
+  final BFlatBuilder _builder = new BFlatBuilder(new byte[65536], 0);
+  String             _value;
+}
@@ -0,0 +1 @@
+memberSearchIndex = [{"p":"io.bflat","c":"BFlatDelta","l":"apply(byte[], int, int, byte[], int, int, BFlatBuilder)","u":"apply(byte[],int,int,byte[],int,int,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatSubscription","l":"atLeast(String, double)","u":"atLeast(java.lang.String,double)"},{"p":"io.bflat","c":"BFlatSubscription","l":"atMost(String, double)","u":"atMost(java.lang.String,double)"},{"p":"io.bflat","c":"BFlatProcessor","l":"BatchSize"},{"p":"io.bflat","c":"BFlatBuilder","l":"beginFrame()"},{"p":"io.bflat","c":"BFlatSizer","l":"beginFrame()"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"beginFrame()"},{"p":"io.bflat","c":"BFlatBuilder","l":"beginNested(String)","u":"beginNested(java.lang.String)"},{"p":"io.bflat","c":"BFlatSizer","l":"beginNested(String)","u":"beginNested(java.lang.String)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"beginNested(String)","u":"beginNested(java.lang.String)"},{"p":"io.bflat","c":"BFlatSubscription","l":"between(String, double, double)","u":"between(java.lang.String,double,double)"},{"p":"io.bflat","c":"BFlatBatch","l":"BFlatBatch(byte[], int, int)","u":"%3Cinit%3E(byte[],int,int)"},{"p":"io.bflat","c":"BFlatBatchEncoder","l":"BFlatBatchEncoder(BFlatRecordEncoder<? super T>, boolean)","u":"%3Cinit%3E(io.bflat.BFlatRecordEncoder,boolean)"},{"p":"io.bflat","c":"BFlatBuilder","l":"BFlatBuilder(byte[], int)","u":"%3Cinit%3E(byte[],int)"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"BFlatChannelCodec(C, int)","u":"%3Cinit%3E(C,int)"},{"p":"io.bflat","c":"BFlatConflatingQueue","l":"BFlatConflatingQueue(String, int)","u":"%3Cinit%3E(java.lang.String,int)"},{"p":"io.bflat","c":"BFlatDelta","l":"BFlatDelta()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatException","l":"BFlatException(String)","u":"%3Cinit%3E(java.lang.String)"},{"p":"io.bflat","c":"BFlatException","l":"BFlatException(String, int)","u":"%3Cinit%3E(java.lang.String,int)"},{"p":"io.bflat","c":"BFlatHistogram","l":"BFlatHistogram(long, int)","u":"%3Cinit%3E(long,int)"},{"p":"io.bflat","c":"BFlatJsonReader","l":"BFlatJsonReader()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatJsonReader","l":"BFlatJsonReader(boolean)","u":"%3Cinit%3E(boolean)"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"BFlatJsonWriter(OutputStream, int)","u":"%3Cinit%3E(java.io.OutputStream,int)"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"BFlatJsonWriter(WritableByteChannel, int)","u":"%3Cinit%3E(java.nio.channels.WritableByteChannel,int)"},{"p":"io.bflat","c":"BFlatMatcher","l":"BFlatMatcher()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatMutator","l":"BFlatMutator()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatParser","l":"BFlatParser()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatProjector","l":"BFlatProjector()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatPublisher","l":"BFlatPublisher(BFlatBatch, Executor)","u":"%3Cinit%3E(io.bflat.BFlatBatch,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatPublisher","l":"BFlatPublisher(InputStream, Executor)","u":"%3Cinit%3E(java.io.InputStream,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatPublisher","l":"BFlatPublisher(ReadableByteChannel, Executor)","u":"%3Cinit%3E(java.nio.channels.ReadableByteChannel,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"BFlatRingBuffer(int, int, boolean, BFlatRingBuffer.WaitStrategy)","u":"%3Cinit%3E(int,int,boolean,io.bflat.BFlatRingBuffer.WaitStrategy)"},{"p":"io.bflat","c":"BFlatServer","l":"BFlatServer(ServerSocket, Supplier<? extends BFlatHandler>)","u":"%3Cinit%3E(java.net.ServerSocket,java.util.function.Supplier)"},{"p":"io.bflat","c":"BFlatServer","l":"BFlatServer(ServerSocket, Supplier<? extends BFlatHandler>, ThreadFactory, int)","u":"%3Cinit%3E(java.net.ServerSocket,java.util.function.Supplier,java.util.concurrent.ThreadFactory,int)"},{"p":"io.bflat","c":"BFlatSizer","l":"BFlatSizer()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatStore","l":"BFlatStore(String)","u":"%3Cinit%3E(java.lang.String)"},{"p":"io.bflat","c":"BFlatStore","l":"BFlatStore(String, int)","u":"%3Cinit%3E(java.lang.String,int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"BFlatStreamBuilder(OutputStream, int)","u":"%3Cinit%3E(java.io.OutputStream,int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"BFlatStreamBuilder(WritableByteChannel, int)","u":"%3Cinit%3E(java.nio.channels.WritableByteChannel,int)"},{"p":"io.bflat","c":"BFlatSubscription","l":"BFlatSubscription()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatTemplate","l":"BFlatTemplate()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"BFlatEncoding","l":"Binary"},{"p":"io.bflat","c":"Buffer","l":"Buffer()","u":"%3Cinit%3E()"},{"p":"io.bflat","c":"Buffer","l":"Buffer(byte[], int)","u":"%3Cinit%3E(byte[],int)"},{"p":"io.bflat","c":"BufferTooSmallException","l":"BufferTooSmallException(String)","u":"%3Cinit%3E(java.lang.String)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"BusySpin"},{"p":"io.bflat","c":"BFlatProcessor","l":"cancel()"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"capacity()"},{"p":"io.bflat","c":"BFlatStore","l":"clear()"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"close()"},{"p":"io.bflat","c":"BFlatServer","l":"close()"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"close()"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"commit(long, BFlatBuilder)","u":"commit(long,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatStore","l":"compact()"},{"p":"io.bflat","c":"BFlatBuilder","l":"copyField(BFlatValue)","u":"copyField(io.bflat.BFlatValue)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"data"},{"p":"io.bflat","c":"Buffer","l":"data"},{"p":"io.bflat","c":"BFlatEncoding","l":"Datetime"},{"p":"io.bflat","c":"BFlatHistogram","l":"decode(byte[], int, int)","u":"decode(byte[],int,int)"},{"p":"io.bflat","c":"Fixed","l":"decodeDouble(byte[], int)","u":"decodeDouble(byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"decodeInt16(byte[], int)","u":"decodeInt16(byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"decodeInt32(byte[], int)","u":"decodeInt32(byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"decodeInt64(byte[], int)","u":"decodeInt64(byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"decodeInt8(byte[], int)","u":"decodeInt8(byte[],int)"},{"p":"io.bflat","c":"Leb128","l":"decodeSigned(Buffer)","u":"decodeSigned(io.bflat.Buffer)"},{"p":"io.bflat","c":"Leb128","l":"decodeUnsigned(Buffer)","u":"decodeUnsigned(io.bflat.Buffer)"},{"p":"io.bflat","c":"BFlatServer","l":"defaultThreadFactory()"},{"p":"io.bflat","c":"BFlatDelta","l":"diff(byte[], int, int, byte[], int, int, BFlatBuilder)","u":"diff(byte[],int,int,byte[],int,int,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatEncoding","l":"Double"},{"p":"io.bflat","c":"BFlatConflatingQueue","l":"drain(BFlatHandler, int)","u":"drain(io.bflat.BFlatHandler,int)"},{"p":"io.bflat","c":"Utils","l":"dump(byte[], int, int)","u":"dump(byte[],int,int)"},{"p":"io.bflat","c":"BFlatMetrics","l":"Enabled"},{"p":"io.bflat","c":"BFlatHistogram","l":"encode(BFlatBuilder)","u":"encode(io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(byte)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(byte)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(byte)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(byte[], int, int)","u":"encode(byte[],int,int)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(byte[], int, int)","u":"encode(byte[],int,int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(byte[], int, int)","u":"encode(byte[],int,int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(char[], int, int)","u":"encode(char[],int,int)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(char[], int, int)","u":"encode(char[],int,int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(char[], int, int)","u":"encode(char[],int,int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(CharSequence)","u":"encode(java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(CharSequence)","u":"encode(java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(CharSequence)","u":"encode(java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(double)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(double)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(double)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(int)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(int)"},{"p":"io.bflat","c":"BFlatBatchEncoder","l":"encode(List<? extends T>, ForkJoinPool)","u":"encode(java.util.List,java.util.concurrent.ForkJoinPool)"},{"p":"io.bflat","c":"BFlatBatchEncoder","l":"encode(List<? extends T>, ForkJoinPool, byte[], int)","u":"encode(java.util.List,java.util.concurrent.ForkJoinPool,byte[],int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(long)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(long)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(short)"},{"p":"io.bflat","c":"BFlatSizer","l":"encode(short)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encode(short)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String)","u":"encode(java.lang.String)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, byte)","u":"encode(java.lang.String,byte)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, CharSequence)","u":"encode(java.lang.String,java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, double)","u":"encode(java.lang.String,double)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, int)","u":"encode(java.lang.String,int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, long)","u":"encode(java.lang.String,long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, short)","u":"encode(java.lang.String,short)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encode(String, String)","u":"encode(java.lang.String,java.lang.String)"},{"p":"io.bflat","c":"BFlatRecordEncoder","l":"encode(T, BFlatBuilder)","u":"encode(T,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeBinary(String, InputStream, long)","u":"encodeBinary(java.lang.String,java.io.InputStream,long)"},{"p":"io.bflat","c":"BFlatSizer","l":"encodeBinary(String, InputStream, long)","u":"encodeBinary(java.lang.String,java.io.InputStream,long)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encodeBinary(String, InputStream, long)","u":"encodeBinary(java.lang.String,java.io.InputStream,long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeCompact(String, long)","u":"encodeCompact(java.lang.String,long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeCompact(String, long[])","u":"encodeCompact(java.lang.String,long[])"},{"p":"io.bflat","c":"Fixed","l":"encodeDouble(double, byte[], int)","u":"encodeDouble(double,byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"encodeInt16(short, byte[], int)","u":"encodeInt16(short,byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"encodeInt32(int, byte[], int)","u":"encodeInt32(int,byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"encodeInt64(long, byte[], int)","u":"encodeInt64(long,byte[],int)"},{"p":"io.bflat","c":"Fixed","l":"encodeInt8(byte, byte[], int)","u":"encodeInt8(byte,byte[],int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeLeb128(long)"},{"p":"io.bflat","c":"BFlatSizer","l":"encodeLeb128(long)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encodeLeb128(long)"},{"p":"io.bflat","c":"Leb128","l":"encodeSigned(Buffer, long)","u":"encodeSigned(io.bflat.Buffer,long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeTag(byte, byte[])","u":"encodeTag(byte,byte[])"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeTag(byte, String)","u":"encodeTag(byte,java.lang.String)"},{"p":"io.bflat","c":"BFlatSizer","l":"encodeTag(byte, String)","u":"encodeTag(byte,java.lang.String)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encodeTag(byte, String)","u":"encodeTag(byte,java.lang.String)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeTagArray(byte, byte[], int)","u":"encodeTagArray(byte,byte[],int)"},{"p":"io.bflat","c":"BFlatBuilder","l":"encodeTagArray(byte, String, int)","u":"encodeTagArray(byte,java.lang.String,int)"},{"p":"io.bflat","c":"BFlatSizer","l":"encodeTagArray(byte, String, int)","u":"encodeTagArray(byte,java.lang.String,int)"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"encodeTagArray(byte, String, int)","u":"encodeTagArray(byte,java.lang.String,int)"},{"p":"io.bflat","c":"Leb128","l":"encodeUnsigned(Buffer, long)","u":"encodeUnsigned(io.bflat.Buffer,long)"},{"p":"io.bflat","c":"BFlatBuilder","l":"endFrame()"},{"p":"io.bflat","c":"BFlatSizer","l":"endFrame()"},{"p":"io.bflat","c":"BFlatBuilder","l":"endNested()"},{"p":"io.bflat","c":"BFlatSizer","l":"endNested()"},{"p":"io.bflat","c":"BFlatSubscription","l":"equal(String, byte[])","u":"equal(java.lang.String,byte[])"},{"p":"io.bflat","c":"BFlatSubscription","l":"equal(String, double)","u":"equal(java.lang.String,double)"},{"p":"io.bflat","c":"BFlatSubscription","l":"equal(String, long)","u":"equal(java.lang.String,long)"},{"p":"io.bflat","c":"BFlatSubscription","l":"equal(String, String)","u":"equal(java.lang.String,java.lang.String)"},{"p":"io.bflat","c":"BFlatTemplate","l":"field(byte, String)","u":"field(byte,java.lang.String)"},{"p":"io.bflat","c":"BFlatProcessor","l":"filter(Predicate<? super BFlatParser>, Executor)","u":"filter(java.util.function.Predicate,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"flush()"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"flush()"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"flush()"},{"p":"io.bflat","c":"BFlatBatch","l":"forEach(BFlatHandler)","u":"forEach(io.bflat.BFlatHandler)"},{"p":"io.bflat","c":"BFlatStore","l":"get(byte[], int, int, BFlatParser)","u":"get(byte[],int,int,io.bflat.BFlatParser)"},{"p":"io.bflat","c":"BFlatStore","l":"get(long, BFlatParser)","u":"get(long,io.bflat.BFlatParser)"},{"p":"io.bflat","c":"BFlatStore","l":"get(String, BFlatParser)","u":"get(java.lang.String,io.bflat.BFlatParser)"},{"p":"io.bflat","c":"BFlatServer","l":"getAcceptedCount()"},{"p":"io.bflat","c":"BFlatValue","l":"getArrayLength()"},{"p":"io.bflat","c":"BFlatValue","l":"getBuffer()"},{"p":"io.bflat","c":"BFlatMetrics","l":"getBufferTooSmall()"},{"p":"io.bflat","c":"BFlatMetrics","l":"getBytesEncoded()"},{"p":"io.bflat","c":"BFlatMetrics","l":"getBytesParsed()"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"getBytesWritten()"},{"p":"io.bflat","c":"BFlatStreamBuilder","l":"getBytesWritten()"},{"p":"io.bflat","c":"BFlatServer","l":"getConnectionCount()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getCount()"},{"p":"io.bflat","c":"BFlatValue","l":"getDatetime()"},{"p":"io.bflat","c":"BFlatValue","l":"getDatetime(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getDouble()"},{"p":"io.bflat","c":"BFlatValue","l":"getDouble(int)"},{"p":"io.bflat","c":"BFlatMetrics","l":"getFieldsEncoded(byte)"},{"p":"io.bflat","c":"BFlatMetrics","l":"getFieldsParsed(byte)"},{"p":"io.bflat","c":"BFlatValue","l":"getInt16()"},{"p":"io.bflat","c":"BFlatValue","l":"getInt16(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getInt32()"},{"p":"io.bflat","c":"BFlatValue","l":"getInt32(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getInt64()"},{"p":"io.bflat","c":"BFlatValue","l":"getInt64(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getInt8()"},{"p":"io.bflat","c":"BFlatValue","l":"getInt8(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getLeb128()"},{"p":"io.bflat","c":"BFlatValue","l":"getLeb128(int)"},{"p":"io.bflat","c":"BFlatMutator","l":"getLength()"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"getLength()"},{"p":"io.bflat","c":"BFlatBatch","l":"getLength(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getLong()"},{"p":"io.bflat","c":"BFlatValue","l":"getLong(int)"},{"p":"io.bflat","c":"BFlatMatcher","l":"getMatches()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getMax()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getMaxValue()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getMean()"},{"p":"io.bflat","c":"BFlatMetrics","l":"getMessagesEncoded()"},{"p":"io.bflat","c":"BFlatMetrics","l":"getMessagesParsed()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getMin()"},{"p":"io.bflat","c":"BFlatHistogram.Latency","l":"getMissing()"},{"p":"io.bflat","c":"BFlatBuilder","l":"getNestedDepth()"},{"p":"io.bflat","c":"BFlatBatch","l":"getOffset(int)"},{"p":"io.bflat","c":"BFlatMetrics","l":"getParseErrors()"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"getPendingBytes()"},{"p":"io.bflat","c":"BFlatServer","l":"getPort()"},{"p":"io.bflat","c":"BFlatHistogram","l":"getPrecisionBits()"},{"p":"io.bflat","c":"BFlatTemplate","l":"getPrototypeLength()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawFieldLength()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawFieldOffset()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawTagLength()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawTagOffset()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawValueLength()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawValueLength(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getRawValueOffset()"},{"p":"io.bflat","c":"BFlatValue","l":"getRawValueOffset(int)"},{"p":"io.bflat","c":"BFlatSizer","l":"getSize()"},{"p":"io.bflat","c":"BFlatValue","l":"getString()"},{"p":"io.bflat","c":"BFlatValue","l":"getString(int)"},{"p":"io.bflat","c":"BFlatValue","l":"getTag()"},{"p":"io.bflat","c":"BFlatValue","l":"getType()"},{"p":"io.bflat","c":"BFlatMutator","l":"getType(int)"},{"p":"io.bflat","c":"BFlatHistogram","l":"getValueAtPercentile(double)"},{"p":"io.bflat","c":"BFlatParser","l":"hasNext()"},{"p":"io.bflat","c":"BFlatRingBuffer.WaitStrategy","l":"idle(int)"},{"p":"io.bflat","c":"BFlatProjector","l":"include(String)","u":"include(java.lang.String)"},{"p":"io.bflat","c":"BFlatProjector","l":"include(String, String)","u":"include(java.lang.String,java.lang.String)"},{"p":"io.bflat","c":"BFlatMutator","l":"indexOf(String)","u":"indexOf(java.lang.String)"},{"p":"io.bflat","c":"BFlatEncoding","l":"Int16"},{"p":"io.bflat","c":"BFlatEncoding","l":"Int32"},{"p":"io.bflat","c":"BFlatEncoding","l":"Int64"},{"p":"io.bflat","c":"BFlatEncoding","l":"Int8"},{"p":"io.bflat","c":"BFlatValue","l":"isArray()"},{"p":"io.bflat","c":"BFlatValue","l":"isNull()"},{"p":"io.bflat","c":"BFlatParser","l":"iterator()"},{"p":"io.bflat","c":"BFlatStore","l":"iterator()"},{"p":"io.bflat","c":"BFlatConflatingQueue","l":"keyCount()"},{"p":"io.bflat","c":"BFlatMetrics","l":"LargeBytes"},{"p":"io.bflat","c":"BFlatHistogram.Latency","l":"Latency(BFlatHistogram, String)","u":"%3Cinit%3E(io.bflat.BFlatHistogram,java.lang.String)"},{"p":"io.bflat","c":"BFlatHistogram.Latency","l":"Latency(BFlatHistogram, String, LongSupplier)","u":"%3Cinit%3E(io.bflat.BFlatHistogram,java.lang.String,java.util.function.LongSupplier)"},{"p":"io.bflat","c":"BFlatEncoding","l":"Leb128"},{"p":"io.bflat","c":"BFlatMatcher","l":"match(byte[], int, int)","u":"match(byte[],int,int)"},{"p":"io.bflat","c":"BFlatHistogram","l":"merge(BFlatHistogram)","u":"merge(io.bflat.BFlatHistogram)"},{"p":"io.bflat","c":"BFlatTemplate","l":"newInstance(byte[], int)","u":"newInstance(byte[],int)"},{"p":"io.bflat","c":"BFlatParser","l":"next()"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"next()"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"next(int)"},{"p":"io.bflat","c":"BFlatEncoding","l":"Null"},{"p":"io.bflat","c":"BFlatConflatingQueue","l":"offer(byte[], int, int)","u":"offer(byte[],int,int)"},{"p":"io.bflat","c":"BFlatProcessor","l":"onComplete()"},{"p":"io.bflat","c":"BFlatProcessor","l":"onError(Throwable)","u":"onError(java.lang.Throwable)"},{"p":"io.bflat","c":"BFlatHandler","l":"onMessage(byte[], int, int)","u":"onMessage(byte[],int,int)"},{"p":"io.bflat","c":"BFlatHistogram.Latency","l":"onMessage(byte[], int, int)","u":"onMessage(byte[],int,int)"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"onMessage(byte[], int, int)","u":"onMessage(byte[],int,int)"},{"p":"io.bflat","c":"BFlatProcessor","l":"onNext(BFlatParser)","u":"onNext(io.bflat.BFlatParser)"},{"p":"io.bflat","c":"BFlatProcessor","l":"onSubscribe(Flow.Subscription)","u":"onSubscribe(java.util.concurrent.Flow.Subscription)"},{"p":"io.bflat","c":"BFlatValue","l":"openStream()"},{"p":"io.bflat","c":"BFlatBatch","l":"parallelForEach(ForkJoinPool, Supplier<? extends BFlatHandler>)","u":"parallelForEach(java.util.concurrent.ForkJoinPool,java.util.function.Supplier)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"Park"},{"p":"io.bflat","c":"BFlatParser","l":"parse(BFlatValue)","u":"parse(io.bflat.BFlatValue)"},{"p":"io.bflat","c":"BFlatParser","l":"parse(byte[])"},{"p":"io.bflat","c":"BFlatParser","l":"parse(byte[], int, int)","u":"parse(byte[],int,int)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"poll(BFlatHandler, int)","u":"poll(io.bflat.BFlatHandler,int)"},{"p":"io.bflat","c":"Buffer","l":"position"},{"p":"io.bflat","c":"BFlatProcessor","l":"project(BFlatProjector, Executor)","u":"project(io.bflat.BFlatProjector,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatProjector","l":"project(byte[], int, int, BFlatBuilder)","u":"project(byte[],int,int,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"publish(long, BFlatBuilder)","u":"publish(long,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"publish(long, long)","u":"publish(long,long)"},{"p":"io.bflat","c":"BFlatStore","l":"put(byte[], int, int)","u":"put(byte[],int,int)"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"read(BFlatHandler)","u":"read(io.bflat.BFlatHandler)"},{"p":"io.bflat","c":"BFlatJsonReader","l":"read(byte[], int, int, BFlatBuilder)","u":"read(byte[],int,int,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatHistogram","l":"record(long)"},{"p":"io.bflat","c":"BFlatHistogram","l":"record(long, long)","u":"record(long,long)"},{"p":"io.bflat","c":"BFlatHistogram","l":"recordSince(long)"},{"p":"io.bflat","c":"Buffer","l":"remaining()"},{"p":"io.bflat","c":"BFlatParser","l":"remove()"},{"p":"io.bflat","c":"BFlatStore","l":"remove(byte[], int, int)","u":"remove(byte[],int,int)"},{"p":"io.bflat","c":"BFlatStore","l":"remove(long)"},{"p":"io.bflat","c":"BFlatStore","l":"remove(String)","u":"remove(java.lang.String)"},{"p":"io.bflat","c":"BFlatProcessor","l":"request(long)"},{"p":"io.bflat","c":"BFlatHistogram","l":"reset()"},{"p":"io.bflat","c":"BFlatMetrics","l":"reset()"},{"p":"io.bflat","c":"BFlatValue","l":"reuse()"},{"p":"io.bflat","c":"BFlatBuilder","l":"rewind()"},{"p":"io.bflat","c":"Buffer","l":"rewind()"},{"p":"io.bflat","c":"BFlatProcessor","l":"run()"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"send(BFlatRecordEncoder<? super T>, T)","u":"send(io.bflat.BFlatRecordEncoder,T)"},{"p":"io.bflat","c":"BFlatChannelCodec","l":"send(byte[], int, int)","u":"send(byte[],int,int)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setByte(int, byte)","u":"setByte(int,byte)"},{"p":"io.bflat","c":"BFlatMutator","l":"setBytes(int, byte[], int, int)","u":"setBytes(int,byte[],int,int)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setBytes(int, byte[], int, int)","u":"setBytes(int,byte[],int,int)"},{"p":"io.bflat","c":"BFlatMutator","l":"setDouble(int, double)","u":"setDouble(int,double)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setDouble(int, double)","u":"setDouble(int,double)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setInt(int, int)","u":"setInt(int,int)"},{"p":"io.bflat","c":"BFlatMutator","l":"setLong(int, long)","u":"setLong(int,long)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setLong(int, long)","u":"setLong(int,long)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setShort(int, short)","u":"setShort(int,short)"},{"p":"io.bflat","c":"BFlatMutator","l":"setString(int, String)","u":"setString(int,java.lang.String)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"setString(int, String)","u":"setString(int,java.lang.String)"},{"p":"io.bflat","c":"Leb128","l":"signedLength(long)"},{"p":"io.bflat","c":"BFlatBatch","l":"size()"},{"p":"io.bflat","c":"BFlatConflatingQueue","l":"size()"},{"p":"io.bflat","c":"BFlatMatcher","l":"size()"},{"p":"io.bflat","c":"BFlatMutator","l":"size()"},{"p":"io.bflat","c":"BFlatProjector","l":"size()"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"size()"},{"p":"io.bflat","c":"BFlatStore","l":"size()"},{"p":"io.bflat","c":"BFlatSubscription","l":"size()"},{"p":"io.bflat","c":"BFlatTemplate","l":"size()"},{"p":"io.bflat","c":"BFlatBatchEncoder","l":"size(List<? extends T>, ForkJoinPool)","u":"size(java.util.List,java.util.concurrent.ForkJoinPool)"},{"p":"io.bflat","c":"BFlatSizer","l":"sizeOfString(CharSequence)","u":"sizeOfString(java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatSizer","l":"sizeOfTag(CharSequence)","u":"sizeOfTag(java.lang.CharSequence)"},{"p":"io.bflat","c":"BFlatTemplate","l":"slot(String)","u":"slot(java.lang.String)"},{"p":"io.bflat","c":"BFlatMetrics","l":"SlowNanos"},{"p":"io.bflat","c":"BFlatBatch","l":"spliterator()"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"start"},{"p":"io.bflat","c":"Buffer","l":"start"},{"p":"io.bflat","c":"BFlatServer","l":"start()"},{"p":"io.bflat","c":"BFlatBatch","l":"stream(boolean)"},{"p":"io.bflat","c":"BFlatEncoding","l":"String"},{"p":"io.bflat","c":"BFlatMatcher","l":"subscribe(BFlatSubscription)","u":"subscribe(io.bflat.BFlatSubscription)"},{"p":"io.bflat","c":"BFlatProcessor","l":"subscribe(Flow.Subscriber<? super BFlatParser>)","u":"subscribe(java.util.concurrent.Flow.Subscriber)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"take(BFlatHandler, int)","u":"take(io.bflat.BFlatHandler,int)"},{"p":"io.bflat","c":"BFlatValue","l":"toString()"},{"p":"io.bflat","c":"BFlatProcessor","l":"transcode(BFlatRecordEncoder<? super BFlatParser>, Executor)","u":"transcode(io.bflat.BFlatRecordEncoder,java.util.concurrent.Executor)"},{"p":"io.bflat","c":"BFlatValue","l":"transferTo(FileChannel, long, WritableByteChannel)","u":"transferTo(java.nio.channels.FileChannel,long,java.nio.channels.WritableByteChannel)"},{"p":"io.bflat","c":"BFlatValue","l":"transferTo(WritableByteChannel)","u":"transferTo(java.nio.channels.WritableByteChannel)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"tryNext(int)"},{"p":"io.bflat","c":"Leb128","l":"unsignedLength(long)"},{"p":"io.bflat","c":"BFlatMatcher","l":"unsubscribe(int)"},{"p":"io.bflat","c":"BFlatTemplate.Instance","l":"wrap(byte[], int)","u":"wrap(byte[],int)"},{"p":"io.bflat","c":"BFlatMutator","l":"wrap(byte[], int, int)","u":"wrap(byte[],int,int)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"wrap(long, BFlatBuilder)","u":"wrap(long,io.bflat.BFlatBuilder)"},{"p":"io.bflat","c":"BFlatJsonWriter","l":"write(byte[], int, int)","u":"write(byte[],int,int)"},{"p":"io.bflat","c":"BFlatRingBuffer","l":"Yield"}];updateSearchResults();
\ No newline at end of file
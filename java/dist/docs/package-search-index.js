@@ -0,0 +1 @@
+packageSearchIndex = [{"l":"All Packages","u":"allpackages-index.html"},{"l":"io.bflat"}];updateSearchResults();
\ No newline at end of file
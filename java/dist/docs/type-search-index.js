@@ -0,0 +1 @@
+typeSearchIndex = [{"l":"All Classes and Interfaces","u":"allclasses-index.html"},{"p":"io.bflat","l":"BFlatBatch"},{"p":"io.bflat","l":"BFlatBatchEncoder"},{"p":"io.bflat","l":"BFlatBuilder"},{"p":"io.bflat","l":"BFlatChannelCodec"},{"p":"io.bflat","l":"BFlatConflatingQueue"},{"p":"io.bflat","l":"BFlatDelta"},{"p":"io.bflat","l":"BFlatEncoding"},{"p":"io.bflat","l":"BFlatException"},{"p":"io.bflat","l":"BFlatHandler"},{"p":"io.bflat","l":"BFlatHistogram"},{"p":"io.bflat","l":"BFlatJsonReader"},{"p":"io.bflat","l":"BFlatJsonWriter"},{"p":"io.bflat","l":"BFlatMatcher"},{"p":"io.bflat","l":"BFlatMetrics"},{"p":"io.bflat","l":"BFlatMutator"},{"p":"io.bflat","l":"BFlatParser"},{"p":"io.bflat","l":"BFlatProcessor"},{"p":"io.bflat","l":"BFlatProjector"},{"p":"io.bflat","l":"BFlatPublisher"},{"p":"io.bflat","l":"BFlatRecordEncoder"},{"p":"io.bflat","l":"BFlatRingBuffer"},{"p":"io.bflat","l":"BFlatServer"},{"p":"io.bflat","l":"BFlatSizer"},{"p":"io.bflat","l":"BFlatStore"},{"p":"io.bflat","l":"BFlatStreamBuilder"},{"p":"io.bflat","l":"BFlatSubscription"},{"p":"io.bflat","l":"BFlatTemplate"},{"p":"io.bflat","l":"BFlatValue"},{"p":"io.bflat","l":"Buffer"},{"p":"io.bflat","l":"BufferTooSmallException"},{"p":"io.bflat","l":"Fixed"},{"p":"io.bflat","l":"BFlatTemplate.Instance"},{"p":"io.bflat","l":"BFlatHistogram.Latency"},{"p":"io.bflat","l":"Leb128"},{"p":"io.bflat","l":"Utils"},{"p":"io.bflat","l":"BFlatRingBuffer.WaitStrategy"}];updateSearchResults();
\ No newline at end of file
@@ -0,0 +1,291 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * BFlatBatch processes a buffer of concatenated, length-prefixed BFlat
+ * messages, such as one written with {@link BFlatBuilder#beginFrame} and
+ * {@link BFlatBuilder#endFrame}. Each frame is a 4-byte little-endian
+ * length followed by that many bytes of message.
+ * <p>
+ * Construction makes one cheap pass that reads only the length prefixes
+ * and records where each message begins. The messages can then be visited
+ * in parallel: {@link #parallelForEach} splits the index into chunks run
+ * on a {@link ForkJoinPool}, and {@link #spliterator} lets parallel
+ * streams do the same.
+ * <p>
+ * Example of parsing a replay file on all cores:
+ * <pre>
+ * BFlatBatch batch = new BFlatBatch(data, 0, length);
+ * batch.parallelForEach(ForkJoinPool.commonPool(), () -&gt; new BFlatHandler()
+ * {
+ *   BFlatParser parser = new BFlatParser();  // one per chunk
+ *   public void onMessage(byte[] data, int offset, int length)
+ *   {
+ *     for(BFlatValue value : parser.parse(data, offset, length)) ...
+ *   }
+ * });
+ * </pre>
+ * A BFlatBatch does not copy the buffer, which must not change while the
+ * batch is in use. It may be used from any number of threads.
+ */
+public class BFlatBatch
+{
+  /**
+   * Index the frames in a buffer.
+   *
+   * @param data   The array containing the frames.
+   * @param offset The position in <tt>data</tt> where the first frame
+   *               begins.
+   * @param length The length of all the frames in bytes.
+   * @throws BFlatException A frame length is negative or runs past the end
+   *                        of the buffer.
+   */
+  public BFlatBatch(byte[] data, int offset, int length)
+  {
+    _data = data;
+    int[] offsets = new int[64];
+    int count = 0;
+    int end = offset + length;
+    int position = offset;
+    while(position < end)
+    {
+      if(end - position < BFlatBuilder.FrameHeaderLength)
+      {
+        throw new BFlatException("truncated frame length", position);
+      }
+      int frame = Fixed.decodeInt32(data, position);
+      if(frame < 0 ||
+         frame > end - position - BFlatBuilder.FrameHeaderLength)
+      {
+        throw new BFlatException("invalid frame length", position);
+      }
+      if(count == offsets.length)
+      {
+        offsets = Arrays.copyOf(offsets, count * 2);
+      }
+      offsets[count++] = position;
+      position += BFlatBuilder.FrameHeaderLength + frame;
+    }
+    _frames = offsets;
+    _count = count;
+  }
+
+  /**
+   * Returns the number of messages in this batch.
+   * @return the number of frames.
+   */
+  public int size()
+  {
+    return _count;
+  }
+
+  /**
+   * Returns the position in the buffer where a message begins, after its
+   * length prefix.
+   * @param index The 0-based index of the message.
+   * @return the offset of the message.
+   */
+  public int getOffset(int index)
+  {
+    return _frames[index] + BFlatBuilder.FrameHeaderLength;
+  }
+
+  /**
+   * Returns the length of a message, not including its length prefix.
+   * @param index The 0-based index of the message.
+   * @return the length of the message in bytes.
+   */
+  public int getLength(int index)
+  {
+    return Fixed.decodeInt32(_data, _frames[index]);
+  }
+
+  /**
+   * Deliver every message to a handler, in order, on the calling thread.
+   * @param handler The handler to receive each message.
+   */
+  public void forEach(BFlatHandler handler)
+  {
+    deliver(handler, 0, _count);
+  }
+
+  /**
+   * Deliver every message to handlers running on a fork/join pool. The
+   * messages are split into chunks, a few per worker thread so that the
+   * work stays balanced; each chunk gets its own handler from
+   * <tt>handlers</tt> and delivers its messages to it in order. Returns
+   * when every message has been delivered.
+   *
+   * @param pool     The pool to run the chunks on.
+   * @param handlers Supplies a handler for each chunk. Handlers are not
+   *                 shared between threads, so each may keep its own
+   *                 parser and other state.
+   */
+  public void parallelForEach(ForkJoinPool pool,
+                              Supplier<? extends BFlatHandler> handlers)
+  {
+    int chunk = Math.max(MinChunk,
+                         _count / (pool.getParallelism() * ChunksPerThread));
+    pool.invoke(new Chunk(handlers, 0, _count, chunk));
+  }
+
+  /**
+   * Returns a spliterator over the messages in this batch. Each element is
+   * a {@link BFlatParser} over one message; a spliterator and every split
+   * from it reuse one parser each, so an element is only valid until the
+   * next one is delivered and must not be kept.
+   *
+   * @return a sized, ordered spliterator that splits evenly.
+   */
+  public Spliterator<BFlatParser> spliterator()
+  {
+    return new Frames(0, _count);
+  }
+
+  /**
+   * Returns a stream over the messages in this batch, as with
+   * {@link #spliterator}. Use operations that consume each parser as it is
+   * delivered, such as <tt>map</tt> or <tt>forEach</tt>; collecting the
+   * parsers themselves is not meaningful.
+   *
+   * @param parallel Whether the stream is parallel.
+   * @return a stream of parsers, one per message.
+   */
+  public Stream<BFlatParser> stream(boolean parallel)
+  {
+    return StreamSupport.stream(spliterator(), parallel);
+  }
+
+  void deliver(BFlatHandler handler, int from, int to)
+  {
+    for(int index = from; index < to; ++index)
+    {
+      handler.onMessage(_data, getOffset(index), getLength(index));
+    }
+  }
+
+  @SuppressWarnings("serial")
+  final class Chunk extends RecursiveAction
+  {
+    Chunk(Supplier<? extends BFlatHandler> handlers, int from, int to,
+          int chunk)
+    {
+      _handlers = handlers;
+      _from = from;
+      _to = to;
+      _chunk = chunk;
+    }
+
+    protected void compute()
+    {
+      if(_to - _from <= _chunk)
+      {
+        deliver(_handlers.get(), _from, _to);
+        return;
+      }
+      int middle = (_from + _to) >>> 1;
+      invokeAll(new Chunk(_handlers, _from, middle, _chunk),
+                new Chunk(_handlers, middle, _to, _chunk));
+    }
+
+    final Supplier<? extends BFlatHandler> _handlers;
+    final int _from;
+    final int _to;
+    final int _chunk;
+  }
+
+  final class Frames implements Spliterator<BFlatParser>
+  {
+    Frames(int from, int to)
+    {
+      _next = from;
+      _to = to;
+    }
+
+    public boolean tryAdvance(Consumer<? super BFlatParser> action)
+    {
+      if(_next >= _to)
+      {
+        return false;
+      }
+      action.accept(_parser.parse(_data, getOffset(_next),
+                                  getLength(_next)));
+      ++_next;
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super BFlatParser> action)
+    {
+      for(; _next < _to; ++_next)
+      {
+        action.accept(_parser.parse(_data, getOffset(_next),
+                                    getLength(_next)));
+      }
+    }
+
+    public Spliterator<BFlatParser> trySplit()
+    {
+      int middle = (_next + _to) >>> 1;
+      if(middle - _next < MinChunk)
+      {
+        return null;
+      }
+      Frames prefix = new Frames(_next, middle);
+      _next = middle;
+      return prefix;
+    }
+
+    public long estimateSize()
+    {
+      return _to - _next;
+    }
+
+    public int characteristics()
+    {
+      return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    final BFlatParser _parser = new BFlatParser();
+    int               _next;
+    final int         _to;
+  }
+
+  // splitting finer than this costs more than it balances
+  static final int MinChunk        = 16;
+  static final int ChunksPerThread = 8;
+
+  final byte[] _data;
+  final int[]  _frames;
+  final int    _count;
+}
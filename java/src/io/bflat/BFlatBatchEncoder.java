@@ -0,0 +1,265 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * BFlatBatchEncoder encodes a list of records into one contiguous buffer
+ * using several threads. The first pass measures every record in parallel
+ * with a {@link BFlatSizer}; a prefix sum of the sizes then gives each
+ * record its exact offset, and the second pass encodes the records in
+ * parallel into disjoint ranges of the same array. Each record is encoded
+ * into a scratch array and copied into place only once its size has been
+ * checked, so a record that encodes larger than it measured cannot
+ * overwrite another record or the bytes around the batch.
+ * The output is
+ * byte-for-byte what encoding the records one after another into a single
+ * {@link BFlatBuilder} would produce.
+ * <p>
+ * When constructed with <tt>framed</tt> set, each record is written as a
+ * length-prefixed frame (see {@link BFlatBuilder#beginFrame}) so that the
+ * result can be split again with {@link BFlatBatch}.
+ * <p>
+ * Example:
+ * <pre>
+ * BFlatBatchEncoder&lt;Trade&gt; encoder = new BFlatBatchEncoder&lt;Trade&gt;(
+ *   (trade, builder) -&gt; builder.encode("id", trade.id)
+ *                               .encode("price", trade.price),
+ *   true);
+ * byte[] batch = encoder.encode(trades, ForkJoinPool.commonPool());
+ * </pre>
+ *
+ * @param <T> The record type.
+ */
+public class BFlatBatchEncoder<T>
+{
+  /**
+   * Construct a BFlatBatchEncoder.
+   *
+   * @param encoder Encodes each record; see {@link BFlatRecordEncoder} for
+   *                its requirements.
+   * @param framed  Whether to write each record as a length-prefixed frame.
+   */
+  public BFlatBatchEncoder(BFlatRecordEncoder<? super T> encoder,
+                           boolean framed)
+  {
+    _encoder = encoder;
+    _framed = framed;
+  }
+
+  /**
+   * Encode records into a new array of exactly the encoded size.
+   *
+   * @param records The records to encode.
+   * @param pool    The pool to run both passes on.
+   * @return the encoded records.
+   * @throws BFlatException The encoded records would exceed the largest
+   *                        possible array, or a record encoded to a
+   *                        different size than it measured.
+   */
+  public byte[] encode(List<? extends T> records, ForkJoinPool pool)
+  {
+    long[] offsets = measure(records, pool);
+    long total = offsets[records.size()];
+    if(total > Integer.MAX_VALUE - 8)
+    {
+      throw new BFlatException("batch is too large for one array");
+    }
+    byte[] data = new byte[(int)total];
+    write(records, pool, data, 0, offsets);
+    return data;
+  }
+
+  /**
+   * Encode records into an existing array.
+   *
+   * @param records  The records to encode.
+   * @param pool     The pool to run both passes on.
+   * @param data     The array to encode into.
+   * @param position The position in <tt>data</tt> to begin writing at.
+   * @return the position in <tt>data</tt> after the last record.
+   * @throws BufferTooSmallException The records do not fit in <tt>data</tt>;
+   *                                 nothing has been written.
+   * @throws BFlatException          A record encoded to a different size
+   *                                 than it measured. Other records may
+   *                                 already have been written into their
+   *                                 ranges of <tt>data</tt>, but nothing is
+   *                                 written outside the batch's range.
+   */
+  public int encode(List<? extends T> records, ForkJoinPool pool,
+                    byte[] data, int position)
+  {
+    long[] offsets = measure(records, pool);
+    long total = offsets[records.size()];
+    if(total > data.length - position)
+    {
+      throw new BufferTooSmallException("while encoding a batch");
+    }
+    write(records, pool, data, position, offsets);
+    return position + (int)total;
+  }
+
+  /**
+   * Returns the number of bytes {@link #encode} would write for records,
+   * measuring them in parallel.
+   *
+   * @param records The records to measure.
+   * @param pool    The pool to run on.
+   * @return the encoded size in bytes.
+   */
+  public long size(List<? extends T> records, ForkJoinPool pool)
+  {
+    return measure(records, pool)[records.size()];
+  }
+
+  // Returns the offset of each record relative to the start of the batch,
+  // followed by the total size.
+  private long[] measure(List<? extends T> records, ForkJoinPool pool)
+  {
+    int count = records.size();
+    long[] offsets = new long[count + 1];
+    pool.invoke(new Pass(records, null, offsets, 0, count,
+                         chunk(count, pool)));
+    long total = 0;
+    for(int index = 0; index <= count; ++index)
+    {
+      long size = offsets[index];
+      offsets[index] = total;
+      total += size;
+    }
+    return offsets;
+  }
+
+  private void write(List<? extends T> records, ForkJoinPool pool,
+                     byte[] data, int position, long[] offsets)
+  {
+    for(int index = 0; index < offsets.length; ++index)
+    {
+      offsets[index] += position;
+    }
+    int count = records.size();
+    pool.invoke(new Pass(records, data, offsets, 0, count,
+                         chunk(count, pool)));
+  }
+
+  private static int chunk(int count, ForkJoinPool pool)
+  {
+    return Math.max(BFlatBatch.MinChunk,
+      count / (pool.getParallelism() * BFlatBatch.ChunksPerThread));
+  }
+
+  private void encodeRecord(T record, BFlatBuilder builder)
+  {
+    if(_framed)
+    {
+      builder.beginFrame();
+      _encoder.encode(record, builder);
+      builder.endFrame();
+    }
+    else
+    {
+      _encoder.encode(record, builder);
+    }
+  }
+
+  // One range of records: measured into 'offsets' when 'data' is null,
+  // otherwise encoded at the offsets already computed.
+  @SuppressWarnings("serial")
+  final class Pass extends RecursiveAction
+  {
+    Pass(List<? extends T> records, byte[] data, long[] offsets, int from,
+         int to, int chunk)
+    {
+      _records = records;
+      _data = data;
+      _offsets = offsets;
+      _from = from;
+      _to = to;
+      _chunk = chunk;
+    }
+
+    protected void compute()
+    {
+      if(_to - _from > _chunk)
+      {
+        int middle = (_from + _to) >>> 1;
+        invokeAll(new Pass(_records, _data, _offsets, _from, middle, _chunk),
+                  new Pass(_records, _data, _offsets, middle, _to, _chunk));
+        return;
+      }
+      if(_data == null)
+      {
+        BFlatSizer sizer = new BFlatSizer();
+        for(int index = _from; index < _to; ++index)
+        {
+          sizer.rewind();
+          encodeRecord(_records.get(index), sizer);
+          _offsets[index] = sizer.getSize();
+        }
+        return;
+      }
+      // the scratch array bounds each record to the largest measured size
+      // in this range
+      long largest = 0;
+      for(int index = _from; index < _to; ++index)
+      {
+        largest = Math.max(largest, _offsets[index + 1] - _offsets[index]);
+      }
+      BFlatBuilder builder = new BFlatBuilder(new byte[(int)largest], 0);
+      for(int index = _from; index < _to; ++index)
+      {
+        builder.rewind();
+        try
+        {
+          encodeRecord(_records.get(index), builder);
+        }
+        catch(BufferTooSmallException e)
+        {
+          throw new BFlatException(
+            "record encoded to a larger size than measured");
+        }
+        int offset = (int)_offsets[index];
+        if(builder.position != _offsets[index + 1] - offset)
+        {
+          throw new BFlatException(
+            "record encoded to a different size than measured");
+        }
+        System.arraycopy(builder.data, 0, _data, offset, builder.position);
+      }
+    }
+
+    final List<? extends T> _records;
+    final byte[]            _data;
+    final long[]            _offsets;
+    final int               _from;
+    final int               _to;
+    final int               _chunk;
+  }
+
+  final BFlatRecordEncoder<? super T> _encoder;
+  final boolean                       _framed;
+}
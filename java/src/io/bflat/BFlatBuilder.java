@@ -23,7 +23,10 @@
 //
 ////////////////////////////////////////////////////////////////////////////
 package io.bflat;
-import java.nio.charset.Charset;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * BFlatBuilder is a class used to encode values into a byte array of
@@ -91,24 +94,36 @@ public class BFlatBuilder extends Buffer
    */
   public BFlatBuilder encodeTag(byte type, byte[] tagName)
   {
-    if(tagName.length == 0)
+    return encodeTag(type, tagName, 0, tagName.length);
+  }
+
+  BFlatBuilder encodeTag(byte type, byte[] tagName, int offset, int tagLen)
+  {
+    if(tagLen == 0)
     {
       throw new BFlatException("Zero length tags are not allowed.");
     }
-    int tagLen = tagName.length;
-    if(tagLen < 8)
+    if(BFlatMetrics.Enabled) BFlatMetrics.encoded(this,type);
+    try
     {
-      // fit the tag len into the byte0
-      data[position++] = (byte)(type | tagLen);
-      System.arraycopy(tagName,0,data,position,tagLen);
-      position += tagLen;
+      if(tagLen < 8)
+      {
+        // fit the tag len into the byte0
+        data[position++] = (byte)(type | tagLen);
+        System.arraycopy(tagName,offset,data,position,tagLen);
+        position += tagLen;
+      }
+      else
+      {
+        data[position++] = type;
+        Leb128.encodeUnsigned(this, tagLen);
+        System.arraycopy(tagName,offset,data,position,tagLen);
+        position += tagLen;
+      }
     }
-    else
+    catch(IndexOutOfBoundsException aex)
     {
-      data[position++] = type;
-      Leb128.encodeUnsigned(this, tagLen);
-      System.arraycopy(tagName,0,data,position,tagLen);
-      position += tagLen;
+      throw new BufferTooSmallException("while encoding tag");
     }
     return this;
   }
@@ -134,47 +149,55 @@ public class BFlatBuilder extends Buffer
     {
       throw new BFlatException("Zero length tags are not allowed.");
     }
-    int tagLen = tagName.length();
-    if(tagLen < 8)
+    if(BFlatMetrics.Enabled) BFlatMetrics.encoded(this,type);
+    try
     {
-      // see if fit the tag len into the byte0
-      int byte0 = position++;
-      int actual = encodeString(tagName);
-      if(actual<8)
+      int tagLen = tagName.length();
+      if(tagLen < 8)
       {
-        data[byte0] = (byte)(type | actual);
-      }
-      else
-      {
-        // since the tag <8 characters we know that the # of bytes
-        // it will fit in is representable with a one byte leb128
-        data[byte0] = (byte)type;
-        System.arraycopy(data,byte0+1,data,byte0+2,actual);
-        data[byte0+1] = (byte)actual;
-        ++position;
-      }
-    }
-    else
-    {
-      data[position++] = (byte)type;
-      int start = position;
-      int leblength = Leb128.encodeUnsigned(this, tagLen);
-      int actual = encodeString(tagName);
-      if(actual != tagLen)
-      {
-        int end = position;
-        position = start;
-        int actual_leblength = Leb128.encodeUnsigned(this,actual);
-        // do we need to reserialize the data?
-        if(actual_leblength != leblength)
+        // see if fit the tag len into the byte0
+        int byte0 = position++;
+        int actual = encodeString(tagName,0,tagName.length());
+        if(actual<8)
         {
-          encodeString(tagName);
+          data[byte0] = (byte)(type | actual);
         }
         else
         {
-          position = end;
+          // since the tag <8 characters we know that the # of bytes
+          // it will fit in is representable with a one byte leb128
+          data[byte0] = (byte)type;
+          System.arraycopy(data,byte0+1,data,byte0+2,actual);
+          data[byte0+1] = (byte)actual;
+          ++position;
         }
       }
+      else
+      {
+        data[position++] = (byte)type;
+        int start = position;
+        int leblength = Leb128.encodeUnsigned(this, tagLen);
+        int actual = encodeString(tagName,0,tagName.length());
+        if(actual != tagLen)
+        {
+          int end = position;
+          position = start;
+          int actual_leblength = Leb128.encodeUnsigned(this,actual);
+          // do we need to reserialize the data?
+          if(actual_leblength != leblength)
+          {
+            encodeString(tagName,0,tagName.length());
+          }
+          else
+          {
+            position = end;
+          }
+        }
+      }
+    }
+    catch(IndexOutOfBoundsException aex)
+    {
+      throw new BufferTooSmallException("while encoding tag");
     }
     return this;
   }
@@ -199,7 +222,13 @@ public class BFlatBuilder extends Buffer
   public BFlatBuilder
   encodeTagArray(byte type, byte[] tagName, int count)
   {
-    encodeTag((byte)(type|BFlatEncoding.ArrayMask),tagName);
+    return encodeTagArray(type, tagName, 0, tagName.length, count);
+  }
+
+  BFlatBuilder
+  encodeTagArray(byte type, byte[] tagName, int offset, int tagLen, int count)
+  {
+    encodeTag((byte)(type|BFlatEncoding.ArrayMask),tagName,offset,tagLen);
     Leb128.encodeUnsigned(this,count);
     return this;
   }
@@ -250,6 +279,10 @@ public class BFlatBuilder extends Buffer
   public BFlatBuilder
   encode(byte[] value, int offset, int length)
   {
+    if(length > data.length - position)
+    {
+      throw new BufferTooSmallException("while encoding string");
+    }
     Leb128.encodeUnsigned(this,length);
     System.arraycopy(value,offset,data,position,length);
     position += length;
@@ -269,25 +302,66 @@ public class BFlatBuilder extends Buffer
    */
   public BFlatBuilder
   encode(String value)
+  {
+    return encode((CharSequence)value);
+  }
+  /**
+   * Encode a string value into this byte array from any character sequence,
+   * such as a {@link StringBuilder}, without converting it to a
+   * {@link String}. A call to this method must be preceded by a call to
+   * <tt>encodeTag</tt> or <tt>encodeTagArray</tt>.
+   *
+   * @param value The characters to encode into this array.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder
+  encode(CharSequence value)
   {
     int charcount = value.length();
     int start = position;
-    int leblength = Leb128.encodeUnsigned(this,charcount);
-    int bytecount = encodeString(value);
-    int end = position;
-    if(bytecount != charcount) // non ascii
-    {
-      position = start;
-      int actual_leblength = Leb128.encodeUnsigned(this,bytecount);
-      if(actual_leblength != leblength)
-      {
-        //reserialize the string
-        encodeString(value);
-      }
-      else
-      {
-        position = end;
-      }
+    try
+    {
+      int leblength = Leb128.encodeUnsigned(this,charcount);
+      int bytecount = encodeString(value,0,charcount);
+      patchLength(start,leblength,charcount,bytecount);
+    }
+    catch(IndexOutOfBoundsException aex)
+    {
+      throw new BufferTooSmallException("while encoding string");
+    }
+    return this;
+  }
+  /**
+   * Encode a string value into this byte array from a range of a character
+   * array. A call to this method must be preceded by a call to
+   * <tt>encodeTag</tt> or <tt>encodeTagArray</tt>.
+   *
+   * @param value  The array containing the characters to encode.
+   * @param offset The position in <tt>value</tt> of the first character.
+   * @param length The number of characters to encode.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder
+  encode(char[] value, int offset, int length)
+  {
+    int start = position;
+    try
+    {
+      int leblength = Leb128.encodeUnsigned(this,length);
+      int bytecount = encodeString(value,offset,length);
+      patchLength(start,leblength,length,bytecount);
+    }
+    catch(IndexOutOfBoundsException aex)
+    {
+      throw new BufferTooSmallException("while encoding string");
     }
     return this;
   }
@@ -381,6 +455,24 @@ public class BFlatBuilder extends Buffer
     position += Fixed.encodeDouble(value,data,position);
     return this;
   }
+  /**
+   * Encode a signed LEB128 integer value into this byte array. A call to
+   * this method must be preceded by a call to <tt>encodeTag</tt> or
+   * <tt>encodeTagArray</tt> with the type {@link BFlatEncoding#Leb128}.
+   *
+   * @param value The <tt>long</tt> value to encode into this array.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder
+  encodeLeb128(long value)
+  {
+    Leb128.encodeSigned(this,value);
+    return this;
+  }
 
   /**
    * Encode a tag and string value into this byte array.
@@ -400,6 +492,25 @@ public class BFlatBuilder extends Buffer
     return this;
   }
 
+  /**
+   * Encode a tag and string value into this byte array from any character
+   * sequence, without converting it to a {@link String}.
+   *
+   * @param tagName The tag name.
+   * @param value The characters to encode into this array.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder encode(String tagName, CharSequence value)
+  {
+    encodeTag(BFlatEncoding.String, tagName);
+    encode(value);
+    return this;
+  }
+
   /**
    * Encode a tag and byte value into this byte array.
    * @param tagName The tag name.
@@ -468,6 +579,85 @@ public class BFlatBuilder extends Buffer
     return this;
   }
 
+  /**
+   * Encode a tag and integer value into this byte array using the smallest
+   * encoding that holds the value: {@link BFlatEncoding#Int8},
+   * {@link BFlatEncoding#Int16}, {@link BFlatEncoding#Int32},
+   * {@link BFlatEncoding#Leb128} or {@link BFlatEncoding#Int64}. When a
+   * fixed-width type and Leb128 take the same space, the fixed-width type
+   * is used. Readers using {@link BFlatValue#getLong} see the same value
+   * whichever type is chosen.
+   * @param tagName The tag name.
+   * @param value The long value to encode into this array.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder encodeCompact(String tagName, long value)
+  {
+    byte type = CompactType[significantBits(value)];
+    encodeTag(type, tagName);
+    switch(type)
+    {
+      case BFlatEncoding.Int8:   return encode((byte)value);
+      case BFlatEncoding.Int16:  return encode((short)value);
+      case BFlatEncoding.Int32:  return encode((int)value);
+      case BFlatEncoding.Leb128: return encodeLeb128(value);
+      default:                   return encode(value);
+    }
+  }
+
+  /**
+   * Encode a tag and array of integers into this byte array, using the
+   * smallest encoding that holds every element. The array is scanned once
+   * to choose among {@link BFlatEncoding#Int8}, {@link BFlatEncoding#Int16},
+   * {@link BFlatEncoding#Int32}, {@link BFlatEncoding#Int64} and
+   * {@link BFlatEncoding#Leb128}; a fixed-width type is used when Leb128
+   * would not be smaller in total.
+   * @param tagName The tag name.
+   * @param values  The values to encode into this array.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder encodeCompact(String tagName, long[] values)
+  {
+    int maxBits = 1;
+    long lebBytes = 0;
+    for(long value : values)
+    {
+      int bits = significantBits(value);
+      maxBits = Math.max(maxBits, bits);
+      lebBytes += (bits + 6) / 7;
+    }
+    byte type = CompactType[maxBits];
+    if(type == BFlatEncoding.Leb128)
+    {
+      type = BFlatEncoding.Int64;
+    }
+    if(lebBytes < (long)values.length * CompactWidth[maxBits])
+    {
+      type = BFlatEncoding.Leb128;
+    }
+    encodeTagArray(type, tagName, values.length);
+    for(long value : values)
+    {
+      switch(type)
+      {
+        case BFlatEncoding.Int8:   encode((byte)value);  break;
+        case BFlatEncoding.Int16:  encode((short)value); break;
+        case BFlatEncoding.Int32:  encode((int)value);   break;
+        case BFlatEncoding.Leb128: encodeLeb128(value);  break;
+        default:                   encode(value);        break;
+      }
+    }
+    return this;
+  }
+
   /**
    * Encode a tag and double value into this byte array.
    * @param tagName The tag name.
@@ -485,51 +675,439 @@ public class BFlatBuilder extends Buffer
     return this;
   }
 
+  /**
+   * Encode a <tt>Binary</tt> value read from a stream. Exactly
+   * <tt>length</tt> bytes are read, directly into this builder's array.
+   *
+   * @param tagName The tag name.
+   * @param in      The stream to read the value from.
+   * @param length  The number of bytes to read from <tt>in</tt>.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this value. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @throws EOFException            <tt>in</tt> ended before <tt>length</tt>
+   *                                 bytes were read.
+   * @throws IOException             <tt>in</tt> could not be read.
+   * @return This encoder.
+   */
+  public BFlatBuilder encodeBinary(String tagName, InputStream in,
+                                   long length)
+    throws IOException
+  {
+    encodeTag(BFlatEncoding.Binary, tagName);
+    Leb128.encodeUnsigned(this, length);
+    if(length > data.length - position)
+    {
+      throw new BufferTooSmallException("while encoding binary");
+    }
+    readFully(in, (int)length);
+    return this;
+  }
+
   //
-  // This utility method performs a fast UTF-16 to UTF-8 conversion manually
-  // but falls back to java when we have surrogate pairs to deal with.
+  // Read exactly 'length' bytes from a stream at the current position.
+  //
+  void readFully(InputStream in, int length) throws IOException
+  {
+    while(length > 0)
+    {
+      int read = in.read(data, position, length);
+      if(read < 0)
+      {
+        throw new EOFException("stream ended before the binary value");
+      }
+      position += read;
+      length -= read;
+    }
+  }
+
+  /**
+   * Begin a nested message, encoded as a <tt>Binary</tt> value with the given
+   * tag. Fields encoded after this call, up to the matching call to
+   * {@link #endNested}, form the nested message; they are written directly
+   * into this builder's array, after a reserved length that is filled in
+   * when the nested message ends. Nested messages may themselves contain
+   * nested messages.
+   *
+   * @param tagName The tag name.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this tag. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @throws BFlatException          A usage error occurred; typically because
+   *                                 the <tt>tagName</tt> was empty.
+   * @return This encoder.
+   */
+  public BFlatBuilder beginNested(String tagName)
+  {
+    encodeTag(BFlatEncoding.Binary, tagName);
+    return reserveNested();
+  }
+
+  BFlatBuilder beginNested(byte[] tagName, int offset, int tagLen)
+  {
+    encodeTag(BFlatEncoding.Binary, tagName, offset, tagLen);
+    return reserveNested();
+  }
+
+  private BFlatBuilder reserveNested()
+  {
+    if(NestedLengthReserve > data.length - position)
+    {
+      throw new BufferTooSmallException("while reserving a nested length");
+    }
+    if(_nestedDepth == _nested.length)
+    {
+      _nested = Arrays.copyOf(_nested, _nestedDepth * 2);
+    }
+    _nested[_nestedDepth++] = position;
+    position += NestedLengthReserve;
+    return this;
+  }
+
+  /**
+   * End the nested message begun by the most recent unmatched call to
+   * {@link #beginNested}, filling in its length. The nested message is moved
+   * back over any part of the reserved length it does not need.
+   *
+   * @throws BFlatException There is no nested message to end.
+   * @return This encoder.
+   */
+  public BFlatBuilder endNested()
+  {
+    if(_nestedDepth == 0)
+    {
+      throw new BFlatException("endNested without beginNested");
+    }
+    int reserved = _nested[--_nestedDepth];
+    int body = reserved + NestedLengthReserve;
+    int length = position - body;
+    int lengthBytes = Leb128.unsignedLength(length);
+    if(lengthBytes < NestedLengthReserve)
+    {
+      System.arraycopy(data,body,data,reserved + lengthBytes,length);
+    }
+    position = reserved;
+    Leb128.encodeUnsigned(this,length);
+    position += length;
+    return this;
+  }
+
+  /**
+   * Returns the number of nested messages begun with {@link #beginNested}
+   * that have not yet been ended.
+   * @return the current nesting depth.
+   */
+  public int getNestedDepth()
+  {
+    return _nestedDepth;
+  }
+
+  /**
+   * Begin a length-prefixed frame, the unit {@link BFlatBatch} splits
+   * concatenated messages into. The message encoded after this call, up to
+   * the call to {@link #endFrame}, is preceded by its length as a 4-byte
+   * little-endian integer.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode the length. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @throws BFlatException          A frame has already been begun.
+   * @return This encoder.
+   */
+  public BFlatBuilder beginFrame()
+  {
+    if(_frameStart >= 0)
+    {
+      throw new BFlatException("beginFrame inside a frame");
+    }
+    if(FrameHeaderLength > data.length - position)
+    {
+      throw new BufferTooSmallException("while reserving a frame length");
+    }
+    _frameStart = position;
+    position += FrameHeaderLength;
+    if(BFlatMetrics.Enabled) BFlatMetrics.encoding(this);
+    return this;
+  }
+
+  /**
+   * End the frame begun by {@link #beginFrame}, filling in its length.
+   *
+   * @throws BFlatException There is no frame to end, or a nested message
+   *                        inside it was not ended.
+   * @return This encoder.
+   */
+  public BFlatBuilder endFrame()
+  {
+    if(_frameStart < 0 || _nestedDepth != 0)
+    {
+      throw new BFlatException(_frameStart < 0
+        ? "endFrame without beginFrame" : "endFrame inside a nested message");
+    }
+    int length = position - _frameStart - FrameHeaderLength;
+    Fixed.encodeInt32(length, data, _frameStart);
+    _frameStart = -1;
+    if(BFlatMetrics.Enabled) BFlatMetrics.encoded(this,length);
+    return this;
+  }
+
+  /**
+   * Rewind this builder to its original start, abandoning any nested
+   * messages or frame that were not ended.
+   * @return This builder.
+   */
+  @Override
+  public Buffer rewind()
+  {
+    _nestedDepth = 0;
+    _frameStart = -1;
+    return super.rewind();
+  }
+
+  /**
+   * Copy a whole field, tag and value, from a parsed message into this byte
+   * array. The field's encoded bytes are copied as they are, so no decoding,
+   * transcoding or re-encoding takes place.
+   *
+   * @param value A value returned by {@link BFlatParser}; its underlying
+   *              buffer must still hold the parsed message.
+   *
+   * @throws BufferTooSmallException The provided buffer is not large enough
+   *                                 to encode this field. Create a new
+   *                                 BFlatBuilder with a larger output buffer.
+   * @return This encoder.
+   */
+  public BFlatBuilder copyField(BFlatValue value)
+  {
+    return copy(value.getBuffer(), value.getRawFieldOffset(),
+                value.getRawFieldLength());
+  }
+
+  //
+  // Copy already-encoded bytes, such as whole fields from another message.
+  //
+  BFlatBuilder copy(byte[] source, int offset, int length)
+  {
+    if(length > data.length - position)
+    {
+      throw new BufferTooSmallException("while copying encoded data");
+    }
+    System.arraycopy(source,offset,data,position,length);
+    position += length;
+    return this;
+  }
+
+  //
+  // A string was written after a LEB128 length that assumed one byte per
+  // char. Rewrite the length with the actual byte count, moving the string
+  // if the length now takes more bytes.
+  //
+  private void patchLength(int start, int leblength, int charcount,
+                           int bytecount)
+  {
+    if(bytecount == charcount)
+    {
+      return;
+    }
+    int actual = Leb128.unsignedLength(bytecount);
+    if(actual != leblength)
+    {
+      if(start + actual + bytecount > data.length)
+      {
+        throw new BufferTooSmallException("while encoding string");
+      }
+      System.arraycopy(data,start+leblength,data,start+actual,bytecount);
+    }
+    position = start;
+    Leb128.encodeUnsigned(this,bytecount);
+    position += bytecount;
+  }
+
+  //
+  // UTF-16 to UTF-8 conversion with no garbage. The leading ASCII part of
+  // a string is checked and copied a block of chars at a time, in loops
+  // that hotspot unrolls and vectorizes; the rest is converted a char at a
+  // time. Surrogate pairs become four bytes, and unpaired surrogates are
+  // written as '?' just as String.getBytes does.
   //
   private int
-  encodeString(String string)
+  encodeString(CharSequence string, int offset, int length)
   {
-    // at least a couple of approaches we could take, but with
-    // hotspot this ends up being the fastest over time with 0 garbage
-    int length = string.length();
-    int i = 0;
     int start = position;
-    for(;i < length; ++i)
+    int end = offset + length;
+    int i = offset;
+    if(string instanceof String)
+    {
+      if(_chars == null)
+      {
+        _chars = new char[CharBlock];
+      }
+      while(i < end)
+      {
+        int count = Math.min(CharBlock, end - i);
+        ((String)string).getChars(i, i + count, _chars, 0);
+        int ascii = copyAscii(_chars, 0, count);
+        i += ascii;
+        if(ascii < count)
+        {
+          break;
+        }
+      }
+    }
+    for(; i < end; ++i)
     {
       char c = string.charAt(i);
-      if(c<128) data[position++] = (byte)c;
-      else break;
+      if(c < 0x80)
+      {
+        data[position++] = (byte)c;
+      }
+      else if(Character.isHighSurrogate(c) && i + 1 < end &&
+              Character.isLowSurrogate(string.charAt(i + 1)))
+      {
+        encodeCodePoint(Character.toCodePoint(c, string.charAt(++i)));
+      }
+      else
+      {
+        encodeChar(c);
+      }
     }
-    while(i<length)
+    return position - start;
+  }
+
+  private int
+  encodeString(char[] chars, int offset, int length)
+  {
+    int start = position;
+    int end = offset + length;
+    int i = offset + copyAscii(chars, offset, length);
+    for(; i < end; ++i)
     {
-      char c = string.charAt(i++);
-      if(c<=127) data[position++] = (byte)c;
-      else if(c <= 0x7ff)
+      char c = chars[i];
+      if(c < 0x80)
       {
-        data[position++] = (byte)(0xc0 | (c>>6));
-        data[position++] = (byte)(0x80 | (c&0x3f));
+        data[position++] = (byte)c;
       }
-      else if (Character.isSurrogate(c))
+      else if(Character.isHighSurrogate(c) && i + 1 < end &&
+              Character.isLowSurrogate(chars[i + 1]))
       {
-        // fall back to java version of this
-        position = start;
-        byte[] bytes = string.getBytes(UTF_8);
-        System.arraycopy(bytes,0,data,position,bytes.length);
-        position += length;
-        return length;
+        encodeCodePoint(Character.toCodePoint(c, chars[++i]));
       }
       else
       {
-        data[position++] = (byte)(0xe0 | (c>>12));
-        data[position++] = (byte)(0x80 | ((c>>6)&0x3f));
-        data[position++] = (byte)(0x80 | (c&0x3f));
+        encodeChar(c);
       }
     }
     return position - start;
   }
 
-  private static Charset UTF_8 = Charset.forName("UTF-8");
+  //
+  // Copy chars while they are ASCII and return how many were copied. Each
+  // block is tested with a branch-free OR of its chars before being copied.
+  //
+  private int copyAscii(char[] chars, int offset, int length)
+  {
+    int i = 0;
+    for(; i + AsciiBlock <= length; i += AsciiBlock)
+    {
+      int bits = 0;
+      for(int j = offset + i; j < offset + i + AsciiBlock; ++j)
+      {
+        bits |= chars[j];
+      }
+      if(bits >= 0x80)
+      {
+        break;
+      }
+      for(int j = 0; j < AsciiBlock; ++j)
+      {
+        data[position + j] = (byte)chars[offset + i + j];
+      }
+      position += AsciiBlock;
+    }
+    for(; i < length; ++i)
+    {
+      char c = chars[offset + i];
+      if(c >= 0x80)
+      {
+        break;
+      }
+      data[position++] = (byte)c;
+    }
+    return i;
+  }
+
+  // a char outside the ASCII range that is not part of a surrogate pair
+  private void encodeChar(char c)
+  {
+    if(c <= 0x7ff)
+    {
+      data[position++] = (byte)(0xc0 | (c>>6));
+      data[position++] = (byte)(0x80 | (c&0x3f));
+    }
+    else if(Character.isSurrogate(c))
+    {
+      data[position++] = (byte)'?';
+    }
+    else
+    {
+      data[position++] = (byte)(0xe0 | (c>>12));
+      data[position++] = (byte)(0x80 | ((c>>6)&0x3f));
+      data[position++] = (byte)(0x80 | (c&0x3f));
+    }
+  }
+
+  private void encodeCodePoint(int codePoint)
+  {
+    data[position++] = (byte)(0xf0 | (codePoint>>18));
+    data[position++] = (byte)(0x80 | ((codePoint>>12)&0x3f));
+    data[position++] = (byte)(0x80 | ((codePoint>>6)&0x3f));
+    data[position++] = (byte)(0x80 | (codePoint&0x3f));
+  }
+
+  //
+  // The number of bits needed to hold a value in two's complement,
+  // including its sign bit: 1 to 64.
+  //
+  static int significantBits(long value)
+  {
+    return 65 - Long.numberOfLeadingZeros(value ^ (value >> 63));
+  }
+
+  // The smallest type for a value with a given number of significant bits,
+  // and the width of the fixed-width type that holds it.
+  static final byte[] CompactType  = new byte[65];
+  static final int[]  CompactWidth = new int[65];
+  static
+  {
+    for(int bits = 0; bits <= 64; ++bits)
+    {
+      int width = bits <= 8 ? 1 : bits <= 16 ? 2 : bits <= 32 ? 4 : 8;
+      int leb = Math.max(1, (bits + 6) / 7);
+      CompactWidth[bits] = width;
+      CompactType[bits] = leb < width ? BFlatEncoding.Leb128
+        : width == 1 ? BFlatEncoding.Int8
+        : width == 2 ? BFlatEncoding.Int16
+        : width == 4 ? BFlatEncoding.Int32
+        : BFlatEncoding.Int64;
+    }
+  }
+
+  // the most bytes an unsigned LEB128 length below 2^35 can take
+  static final int NestedLengthReserve = 5;
+
+  // chars per String.getChars call, and per ASCII check
+  static final int CharBlock  = 256;
+  static final int AsciiBlock = 16;
+
+  // the length that precedes each message in a frame
+  static final int FrameHeaderLength = 4;
+
+  int[]  _nested = new int[4];
+  int    _nestedDepth;
+  int    _frameStart = -1;
+  long   _began;
+  int    _fields;
+  char[] _chars;
 }
@@ -0,0 +1,293 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * BFlatChannelCodec reads and writes length-prefixed BFlat frames on a
+ * non-blocking channel, such as a <tt>SocketChannel</tt> served by a
+ * single-threaded selector loop. One codec is created per connection.
+ * <p>
+ * {@link #read} performs one read from the channel and delivers every
+ * complete frame received to a {@link BFlatHandler} in place, keeping a
+ * partial frame until the rest arrives. The read buffer grows to the
+ * largest frame seen and is reused.
+ * <p>
+ * {@link #send} frames outbound messages into a queue of reused chunks,
+ * packing consecutive small messages together. {@link #flush} then writes
+ * everything queued with one gathering write, so a burst of messages
+ * costs one system call rather than one each. When the socket cannot take
+ * everything, flush returns false and the caller should wait for
+ * <tt>OP_WRITE</tt> before flushing again.
+ * <p>
+ * Buffers are heap arrays, because messages are parsed and encoded in
+ * place in <tt>byte[]</tt>s.
+ * <p>
+ * A codec is not thread-safe. Example of a selector loop step:
+ * <pre>
+ * BFlatChannelCodec codec = (BFlatChannelCodec)key.attachment();
+ * if(key.isReadable() &amp;&amp; codec.read(handler) &lt; 0)
+ * {
+ *   key.channel().close();
+ *   return;
+ * }
+ * key.interestOps(codec.flush() ? SelectionKey.OP_READ
+ *                 : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+ * </pre>
+ */
+public class BFlatChannelCodec
+{
+  /**
+   * Construct a BFlatChannelCodec.
+   *
+   * @param channel    The channel to read from and write to.
+   * @param bufferSize The initial read buffer size, and the size of each
+   *                   outbound chunk.
+   * @param <C>        A channel supporting reads and gathering writes.
+   */
+  public <C extends ReadableByteChannel & GatheringByteChannel>
+    BFlatChannelCodec(C channel, int bufferSize)
+  {
+    _reader = channel;
+    _writer = channel;
+    _chunkSize = Math.max(bufferSize, FrameReader.MinBuffer);
+    _in = new byte[_chunkSize];
+    _inBuffer = ByteBuffer.wrap(_in);
+  }
+
+  /**
+   * Read once from the channel and deliver every complete frame received.
+   *
+   * @param handler The handler to receive each message. The message bytes
+   *                are only valid during the call.
+   * @return The number of bytes read, possibly zero, or -1 if the channel
+   *         has reached the end of its input.
+   * @throws IOException    The read failed.
+   * @throws BFlatException A frame length is invalid, or the input ended
+   *                        in the middle of a frame.
+   */
+  public int read(BFlatHandler handler) throws IOException
+  {
+    int needed = FrameReader.needed(_in, _start, _end);
+    if(needed > _in.length - _start)
+    {
+      byte[] in = needed > _in.length
+        ? new byte[Math.max(needed, _in.length * 2)] : _in;
+      System.arraycopy(_in, _start, in, 0, _end - _start);
+      _end -= _start;
+      _start = 0;
+      if(in != _in)
+      {
+        _in = in;
+        _inBuffer = ByteBuffer.wrap(in);
+      }
+    }
+    _inBuffer.limit(_in.length).position(_end);
+    int count = _reader.read(_inBuffer);
+    if(count < 0)
+    {
+      if(_end > _start)
+      {
+        throw new BFlatException("truncated frame");
+      }
+      return -1;
+    }
+    _end += count;
+    _start = FrameReader.deliver(_in, _start, _end, handler);
+    if(_start == _end)
+    {
+      _start = _end = 0;
+    }
+    return count;
+  }
+
+  /**
+   * Queue a message for sending, encoding it directly into the outbound
+   * buffer.
+   *
+   * @param encoder Encodes the message. It may be called again with the
+   *                same record if the message does not fit in the space
+   *                remaining.
+   * @param record  The record to encode.
+   * @param <T>     The record type.
+   */
+  public <T> void send(BFlatRecordEncoder<? super T> encoder, T record)
+  {
+    Chunk chunk = space(BFlatBuilder.FrameHeaderLength);
+    while(true)
+    {
+      _builder.data = chunk.data;
+      _builder.start = chunk.buffer.limit();
+      _builder.rewind();
+      try
+      {
+        _builder.beginFrame();
+        encoder.encode(record, _builder);
+        _builder.endFrame();
+        break;
+      }
+      catch(BufferTooSmallException e)
+      {
+        if(_builder.start == 0)
+        {
+          _pending.removeLast();
+          if(chunk.data.length == _chunkSize)
+          {
+            _free.addLast(chunk);
+          }
+          chunk = append(chunk.data.length * 2);
+        }
+        else
+        {
+          chunk = append(_chunkSize);
+        }
+      }
+    }
+    chunk.buffer.limit(_builder.position);
+  }
+
+  /**
+   * Queue an encoded message for sending. The message is copied, so the
+   * caller may reuse <tt>message</tt> once this method returns.
+   *
+   * @param message The array containing the encoded message.
+   * @param offset  The position in <tt>message</tt> where it begins.
+   * @param length  The length of the message in bytes.
+   */
+  public void send(byte[] message, int offset, int length)
+  {
+    Chunk chunk = space(BFlatBuilder.FrameHeaderLength + length);
+    int position = chunk.buffer.limit();
+    Fixed.encodeInt32(length, chunk.data, position);
+    System.arraycopy(message, offset, chunk.data,
+                     position + BFlatBuilder.FrameHeaderLength, length);
+    chunk.buffer.limit(position + BFlatBuilder.FrameHeaderLength + length);
+  }
+
+  /**
+   * Write as much of the queued output as the channel accepts, using one
+   * gathering write.
+   *
+   * @return true if all queued output has been written.
+   * @throws IOException The write failed.
+   */
+  public boolean flush() throws IOException
+  {
+    int count = _pending.size();
+    if(count == 0)
+    {
+      return true;
+    }
+    if(_gather.length < count)
+    {
+      _gather = Arrays.copyOf(_gather, Math.max(count, _gather.length * 2));
+    }
+    int index = 0;
+    for(Chunk chunk : _pending)
+    {
+      _gather[index++] = chunk.buffer;
+    }
+    _writer.write(_gather, 0, count);
+    while(!_pending.isEmpty() && !_pending.peekFirst().buffer.hasRemaining())
+    {
+      Chunk chunk = _pending.pollFirst();
+      chunk.buffer.limit(0);
+      if(chunk.data.length == _chunkSize)
+      {
+        _free.addLast(chunk);
+      }
+    }
+    return _pending.isEmpty();
+  }
+
+  /**
+   * Returns the number of queued bytes not yet written to the channel.
+   * @return the pending byte count.
+   */
+  public long getPendingBytes()
+  {
+    long pending = 0;
+    for(Chunk chunk : _pending)
+    {
+      pending += chunk.buffer.remaining();
+    }
+    return pending;
+  }
+
+  // Returns the chunk to append at least 'length' bytes to.
+  private Chunk space(int length)
+  {
+    Chunk tail = _pending.peekLast();
+    if(tail != null && tail.data.length - tail.buffer.limit() >= length)
+    {
+      return tail;
+    }
+    return append(length);
+  }
+
+  private Chunk append(int length)
+  {
+    Chunk chunk = length <= _chunkSize ? _free.pollFirst() : null;
+    if(chunk == null)
+    {
+      chunk = new Chunk(Math.max(length, _chunkSize));
+    }
+    _pending.addLast(chunk);
+    return chunk;
+  }
+
+  // An outbound array; the buffer's limit is the end of the data queued in
+  // it and its position the end of the data already written.
+  static final class Chunk
+  {
+    Chunk(int size)
+    {
+      data = new byte[size];
+      buffer = ByteBuffer.wrap(data);
+      buffer.limit(0);
+    }
+
+    final byte[]     data;
+    final ByteBuffer buffer;
+  }
+
+  final ReadableByteChannel  _reader;
+  final GatheringByteChannel _writer;
+  final int                  _chunkSize;
+  final ArrayDeque<Chunk>    _pending = new ArrayDeque<Chunk>();
+  final ArrayDeque<Chunk>    _free    = new ArrayDeque<Chunk>();
+  final BFlatBuilder         _builder =
+    new BFlatBuilder(FlowStage.Empty, 0);
+  ByteBuffer[]               _gather  = new ByteBuffer[16];
+  byte[]                     _in;
+  ByteBuffer                 _inBuffer;
+  int                        _start;
+  int                        _end;
+}
@@ -0,0 +1,315 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.*;
+
+/**
+ * BFlatConflatingQueue delivers only the newest pending message for each
+ * value of a key field. It is intended for slow consumers of data such as
+ * market prices, where an update that has been superseded before it was
+ * delivered is of no interest.
+ * <p>
+ * When a message is offered for a key that already has a message pending,
+ * the pending message is overwritten in place and keeps its position in
+ * the queue; otherwise the key is appended to the end of the queue. Keys
+ * are therefore delivered in the order they first became pending, and the
+ * memory used by the queue is bounded by the number of distinct keys
+ * rather than by how far the consumer falls behind.
+ * <p>
+ * Any number of threads may call {@link #offer} concurrently. Producers
+ * take no locks and never wait for the consumer, which retries its copy of
+ * a message if a producer overwrote it meanwhile. Two producers writing the
+ * same key at the same moment do wait for each other: the later one spins
+ * until the earlier one has finished copying its message. A single
+ * consumer thread calls {@link #drain} to receive pending messages in
+ * batches.
+ * <p>
+ * The key is read from the raw bytes of the configured tag: String and
+ * Binary keys are compared by their bytes, and integer keys by their value
+ * regardless of the width they were encoded with.
+ * <p>
+ * Example of conflating quotes by symbol:
+ * <pre>
+ * BFlatConflatingQueue queue = new BFlatConflatingQueue("symbol", 10000);
+ * // producer threads
+ * queue.offer(data, 0, length);
+ * // consumer thread
+ * queue.drain(handler, 256);
+ * </pre>
+ */
+public class BFlatConflatingQueue
+{
+  /**
+   * Construct a BFlatConflatingQueue.
+   *
+   * @param keyTag  The tag name of the key field of each message.
+   * @param maxKeys The maximum number of distinct keys the queue will see.
+   */
+  public BFlatConflatingQueue(String keyTag, int maxKeys)
+  {
+    if(maxKeys <= 0)
+    {
+      throw new BFlatException("maxKeys must be positive.");
+    }
+    if(keyTag.length() == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    _keyTag = keyTag;
+    _maxKeys = maxKeys;
+    int tableSize = Integer.highestOneBit(Math.max(maxKeys * 2 - 1, 1)) << 1;
+    _table = new AtomicReferenceArray<Slot>(tableSize);
+    int ringSize = Integer.highestOneBit(Math.max(maxKeys - 1, 1)) << 1;
+    _ring = new AtomicReferenceArray<Slot>(ringSize);
+  }
+
+  /**
+   * Offer a message to this queue. If a message with the same key is still
+   * pending it is replaced by this one. The message is copied, so the
+   * caller may reuse <tt>data</tt> once this method returns.
+   *
+   * @param data     The array containing the encoded message.
+   * @param position The position in <tt>data</tt> where the message begins.
+   * @param length   The length of the message in bytes.
+   * @throws BFlatException The message has no key field, could not be
+   *                        parsed, or its key would exceed the
+   *                        <tt>maxKeys</tt> given at construction.
+   */
+  public void offer(byte[] data, int position, int length)
+  {
+    MessageKey key = _keys.get();
+    if(!key.extract(data, position, length))
+    {
+      throw new BFlatException("message does not contain the key field");
+    }
+    Slot slot = findOrAdd(key);
+    // an odd version marks a write in progress; only one producer of a key
+    // can move it from even to odd
+    long version = slot._version.get();
+    while((version & 1) != 0 || !slot._version.compareAndSet(version,
+                                                             version + 1))
+    {
+      Thread.yield();
+      version = slot._version.get();
+    }
+    if(slot._buffer.length < length)
+    {
+      slot._buffer = new byte[Math.max(length, slot._buffer.length * 2)];
+    }
+    System.arraycopy(data, position, slot._buffer, 0, length);
+    slot._length = length;
+    slot._version.set(version + 2);
+    if(!slot._queued.get() && slot._queued.compareAndSet(false, true))
+    {
+      // a key is in the ring at most once, so the ring cannot overflow;
+      // the consumer may still be clearing the previous occupant though.
+      int index = (int)_tail.getAndIncrement() & (_ring.length() - 1);
+      while(_ring.get(index) != null)
+      {
+        Thread.yield();
+      }
+      _ring.lazySet(index, slot);
+    }
+  }
+
+  /**
+   * Deliver up to <tt>limit</tt> pending messages to <tt>handler</tt>, in
+   * the order their keys became pending. Must only be called from a single
+   * consumer thread.
+   *
+   * @param handler The handler to receive each message. The message bytes
+   *                are only valid during the call.
+   * @param limit   The maximum number of messages to deliver.
+   * @return The number of messages delivered.
+   */
+  public int drain(BFlatHandler handler, int limit)
+  {
+    int mask = _ring.length() - 1;
+    int delivered = 0;
+    while(delivered < limit)
+    {
+      int index = (int)_head & mask;
+      Slot slot = _ring.get(index);
+      if(slot == null)
+      {
+        break; // empty, or a producer has not finished publishing yet
+      }
+      _ring.lazySet(index, null);
+      ++_head;
+      // clear the flag before reading so that any later update re-queues
+      slot._queued.set(false);
+      int length = read(slot);
+      if(_readVersion == slot._delivered)
+      {
+        continue; // already delivered when this key was last drained
+      }
+      slot._delivered = _readVersion;
+      handler.onMessage(_scratch, 0, length);
+      ++delivered;
+    }
+    return delivered;
+  }
+
+  /**
+   * Returns the number of keys that currently have a message pending. The
+   * value is approximate while producers are active.
+   *
+   * @return the number of pending keys.
+   */
+  public int size()
+  {
+    return (int)Math.max(0, _tail.get() - _head);
+  }
+
+  /**
+   * Returns the number of distinct keys seen by this queue.
+   * @return the number of keys.
+   */
+  public int keyCount()
+  {
+    return _keyCount.get();
+  }
+
+  // Copy the slot's message into the consumer's scratch buffer, retrying
+  // if a producer was writing it before or during the copy. The version
+  // read before a complete copy identifies the message copied.
+  private int read(Slot slot)
+  {
+    while(true)
+    {
+      long version = slot._version.get();
+      if((version & 1) == 0)
+      {
+        byte[] buffer = slot._buffer;
+        int length = slot._length;
+        if(length <= buffer.length)
+        {
+          copy(buffer, length);
+          // the copy must complete before the version is read again
+          VarHandle.acquireFence();
+          if(slot._version.get() == version)
+          {
+            _readVersion = version;
+            return length;
+          }
+        }
+      }
+      Thread.yield();
+    }
+  }
+
+  private void copy(byte[] buffer, int length)
+  {
+    if(_scratch.length < length)
+    {
+      _scratch = new byte[Math.max(length, _scratch.length * 2)];
+    }
+    System.arraycopy(buffer, 0, _scratch, 0, length);
+  }
+
+  private Slot findOrAdd(MessageKey key)
+  {
+    int mask = _table.length() - 1;
+    Slot created = null;
+    for(int index = key._hash & mask; ; index = (index + 1) & mask)
+    {
+      Slot slot = _table.get(index);
+      while(slot == null)
+      {
+        if(created == null)
+        {
+          if(_keyCount.incrementAndGet() > _maxKeys)
+          {
+            _keyCount.decrementAndGet();
+            throw new BFlatException("too many distinct keys");
+          }
+          created = new Slot(key);
+        }
+        if(_table.compareAndSet(index, null, created))
+        {
+          return created;
+        }
+        slot = _table.get(index);
+      }
+      if(slot.matches(key))
+      {
+        if(created != null)
+        {
+          _keyCount.decrementAndGet();
+        }
+        return slot;
+      }
+    }
+  }
+
+  static final class Slot
+  {
+    Slot(MessageKey key)
+    {
+      _kind = key._kind;
+      _bits = key._bits;
+      _hash = key._hash;
+      _key = new byte[key._length];
+      System.arraycopy(key._data == null ? _key : key._data, key._offset,
+                       _key, 0, key._length);
+    }
+
+    boolean matches(MessageKey key)
+    {
+      return _hash == key._hash &&
+        key.equals(_kind, _bits, _key, 0, _key.length);
+    }
+
+    final byte          _kind;
+    final long          _bits;
+    final int           _hash;
+    final byte[]        _key;
+    final AtomicLong    _version = new AtomicLong();
+    final AtomicBoolean _queued  = new AtomicBoolean();
+    byte[]              _buffer  = new byte[64];
+    int                 _length;
+    long                _delivered; // consumer thread only
+  }
+
+  final String                     _keyTag;
+  final int                        _maxKeys;
+  final AtomicReferenceArray<Slot> _table;
+  final AtomicReferenceArray<Slot> _ring;
+  final AtomicInteger              _keyCount = new AtomicInteger();
+  final AtomicLong                 _tail     = new AtomicLong();
+  final ThreadLocal<MessageKey>    _keys     = new ThreadLocal<MessageKey>()
+  {
+    protected MessageKey initialValue()
+    {
+      return new MessageKey(_keyTag);
+    }
+  };
+
+  // consumer thread only
+  long   _head;
+  long   _readVersion;
+  byte[] _scratch = new byte[256];
+}
@@ -0,0 +1,337 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+
+/**
+ * BFlatDelta computes and applies field-level differences between BFlat
+ * messages. A delta is itself a BFlat message holding only the fields that
+ * were changed or added, plus a {@link BFlatEncoding#Null} field for each
+ * field that was removed. Fields are compared and copied as raw encoded
+ * bytes, so no values are decoded or re-encoded.
+ * <p>
+ * Example of publishing a delta and rebuilding the full message:
+ * <pre>
+ * BFlatDelta delta = new BFlatDelta();
+ * // publisher
+ * BFlatBuilder out = new BFlatBuilder(new byte[2048], 0);
+ * delta.diff(prev, 0, prevLength, next, 0, nextLength, out);
+ * // subscriber
+ * BFlatBuilder full = new BFlatBuilder(new byte[2048], 0);
+ * delta.apply(base, 0, baseLength, out.data, 0, out.position, full);
+ * </pre>
+ * <p>
+ * Because a Null field in a delta means "removed", a field whose value is
+ * Null in the newer message does not survive a round trip; it is absent
+ * from the rebuilt message. Fields are matched by tag. When a tag appears
+ * more than once in either message its occurrences are treated as one
+ * group: if any of them changed, or their number did, the delta holds every
+ * occurrence from the newer message, and these replace the whole group in
+ * the base message. The rebuilt message keeps the field order of the base
+ * message, with a replaced group at the position of its first occurrence
+ * and added fields at the end.
+ * <p>
+ * BFlatDelta reuses its internal state between calls and is not
+ * thread-safe.
+ */
+public class BFlatDelta
+{
+  /**
+   * Construct a BFlatDelta.
+   */
+  public BFlatDelta()
+  {
+  }
+
+  /**
+   * Encode the difference between two messages.
+   *
+   * @param prev       The array containing the previous message.
+   * @param prevOffset The position in <tt>prev</tt> where it begins.
+   * @param prevLength The length of the previous message in bytes.
+   * @param next       The array containing the newer message.
+   * @param nextOffset The position in <tt>next</tt> where it begins.
+   * @param nextLength The length of the newer message in bytes.
+   * @param out        The builder to write the delta into.
+   * @return The number of fields written to <tt>out</tt>; zero if the
+   *         messages contain the same fields.
+   * @throws BFlatException          A message could not be parsed.
+   * @throws BufferTooSmallException <tt>out</tt> is not large enough.
+   */
+  public int diff(byte[] prev, int prevOffset, int prevLength,
+                  byte[] next, int nextOffset, int nextLength,
+                  BFlatBuilder out)
+  {
+    FieldIndex before = _index.build(_parser, prev, prevOffset, prevLength);
+    FieldIndex after = _nextIndex.build(_parser, next, nextOffset,
+                                        nextLength);
+    int written = 0;
+    for(int field = 0; field < after._count; ++field)
+    {
+      if(after._previous[field] >= 0)
+      {
+        continue; // written with the first occurrence of its tag
+      }
+      int old = before.first(next, after._tagOffset[field],
+                             after._tagLength[field], field);
+      if(old >= 0)
+      {
+        before.use(old);
+        if(sameGroup(before, old, after, field))
+        {
+          continue;
+        }
+      }
+      for(int each = field; each >= 0; each = after._following[each])
+      {
+        out.copy(next, after._fieldOffset[each], after._fieldLength[each]);
+        ++written;
+      }
+    }
+    for(int field = 0; field < before._count; ++field)
+    {
+      if(!before._used[field] && before._previous[field] < 0)
+      {
+        out.encodeTag(BFlatEncoding.Null, prev, before._tagOffset[field],
+                      before._tagLength[field]);
+        ++written;
+      }
+    }
+    return written;
+  }
+
+  // Whether two groups of occurrences of one tag have the same fields in
+  // the same order.
+  private static boolean sameGroup(FieldIndex before, int old,
+                                   FieldIndex after, int field)
+  {
+    while(old >= 0 && field >= 0)
+    {
+      if(before._fieldLength[old] != after._fieldLength[field] ||
+         !Utils.regionEquals(before._data, before._fieldOffset[old],
+                             after._data, after._fieldOffset[field],
+                             after._fieldLength[field]))
+      {
+        return false;
+      }
+      old = before._following[old];
+      field = after._following[field];
+    }
+    return old < 0 && field < 0;
+  }
+
+  /**
+   * Rebuild a full message by applying a delta produced by {@link #diff}
+   * to the message it was computed against.
+   *
+   * @param base        The array containing the base message.
+   * @param baseOffset  The position in <tt>base</tt> where it begins.
+   * @param baseLength  The length of the base message in bytes.
+   * @param delta       The array containing the delta.
+   * @param deltaOffset The position in <tt>delta</tt> where it begins.
+   * @param deltaLength The length of the delta in bytes.
+   * @param out         The builder to write the rebuilt message into.
+   * @return The number of fields written to <tt>out</tt>.
+   * @throws BFlatException          A message could not be parsed.
+   * @throws BufferTooSmallException <tt>out</tt> is not large enough.
+   */
+  public int apply(byte[] base, int baseOffset, int baseLength,
+                   byte[] delta, int deltaOffset, int deltaLength,
+                   BFlatBuilder out)
+  {
+    FieldIndex index = _index.build(_parser, delta, deltaOffset, deltaLength);
+    int written = 0;
+    for(BFlatValue value : _parser.parse(base, baseOffset, baseLength))
+    {
+      value.reuse();
+      int field = index.first(base, value._tagOffset, value._tagLength, -1);
+      if(field < 0)
+      {
+        out.copy(base, value._fieldOffset, value._fieldLength);
+        ++written;
+      }
+      else if(!index._used[field])
+      {
+        // the delta's group replaces the base's at its first occurrence;
+        // later base occurrences of the tag are dropped
+        index.use(field);
+        written += copyGroup(index, field, out);
+      }
+    }
+    for(int field = 0; field < index._count; ++field)
+    {
+      if(!index._used[field] && index._previous[field] < 0)
+      {
+        index.use(field);
+        written += copyGroup(index, field, out);
+      }
+    }
+    return written;
+  }
+
+  // Copy the occurrences of a tag from a delta, skipping a Null marker.
+  private static int copyGroup(FieldIndex index, int field, BFlatBuilder out)
+  {
+    int written = 0;
+    for(; field >= 0; field = index._following[field])
+    {
+      if(!index._null[field])
+      {
+        out.copy(index._data, index._fieldOffset[field],
+                 index._fieldLength[field]);
+        ++written;
+      }
+    }
+    return written;
+  }
+
+  //
+  // The fields of one message, indexed by tag.
+  //
+  static final class FieldIndex
+  {
+    FieldIndex build(BFlatParser parser, byte[] data, int offset, int length)
+    {
+      _data = data;
+      _count = 0;
+      for(BFlatValue value : parser.parse(data, offset, length))
+      {
+        value.reuse();
+        if(_count == _fieldOffset.length)
+        {
+          int capacity = _count * 2;
+          _fieldOffset = Arrays.copyOf(_fieldOffset, capacity);
+          _fieldLength = Arrays.copyOf(_fieldLength, capacity);
+          _tagOffset   = Arrays.copyOf(_tagOffset, capacity);
+          _tagLength   = Arrays.copyOf(_tagLength, capacity);
+          _hash        = Arrays.copyOf(_hash, capacity);
+          _used        = Arrays.copyOf(_used, capacity);
+          _previous    = Arrays.copyOf(_previous, capacity);
+          _following   = Arrays.copyOf(_following, capacity);
+          _null        = Arrays.copyOf(_null, capacity);
+        }
+        _fieldOffset[_count] = value._fieldOffset;
+        _fieldLength[_count] = value._fieldLength;
+        _tagOffset[_count]   = value._tagOffset;
+        _tagLength[_count]   = value._tagLength;
+        _hash[_count]        = Utils.hash(0, data, value._tagOffset,
+                                          value._tagLength);
+        _used[_count]        = false;
+        _null[_count]        = value.isNull();
+        ++_count;
+      }
+      int size = Integer.highestOneBit(Math.max(_count * 2 - 1, 1)) << 1;
+      if(_slots.length < size)
+      {
+        _slots = new int[size];
+      }
+      else
+      {
+        Arrays.fill(_slots, 0);
+      }
+      int mask = _slots.length - 1;
+      for(int field = 0; field < _count; ++field)
+      {
+        _previous[field] = -1;
+        _following[field] = -1;
+        int slot = _hash[field] & mask;
+        while(_slots[slot] != 0)
+        {
+          int other = _slots[slot] - 1;
+          if(_hash[other] == _hash[field] &&
+             tagEquals(other, data, _tagOffset[field], _tagLength[field]))
+          {
+            _previous[field] = Math.max(_previous[field], other);
+          }
+          slot = (slot + 1) & mask;
+        }
+        _slots[slot] = field + 1;
+        if(_previous[field] >= 0)
+        {
+          _following[_previous[field]] = field;
+        }
+      }
+      return this;
+    }
+
+    // Returns the first occurrence of the given tag, or -1. 'hint' is the
+    // position it is likely to occupy when both messages list their fields
+    // in the same order.
+    int first(byte[] data, int tagOffset, int tagLength, int hint)
+    {
+      if(hint >= 0 && hint < _count && _previous[hint] < 0 &&
+         tagEquals(hint, data, tagOffset, tagLength))
+      {
+        return hint;
+      }
+      int hash = Utils.hash(0, data, tagOffset, tagLength);
+      int mask = _slots.length - 1;
+      for(int slot = hash & mask; _slots[slot] != 0; slot = (slot + 1) & mask)
+      {
+        int field = _slots[slot] - 1;
+        if(_previous[field] < 0 && _hash[field] == hash &&
+           tagEquals(field, data, tagOffset, tagLength))
+        {
+          return field;
+        }
+      }
+      return -1;
+    }
+
+    // Mark every occurrence of a tag used, from its first.
+    void use(int field)
+    {
+      for(; field >= 0; field = _following[field])
+      {
+        _used[field] = true;
+      }
+    }
+
+    private boolean tagEquals(int field, byte[] data, int tagOffset,
+                              int tagLength)
+    {
+      return _tagLength[field] == tagLength &&
+        Utils.regionEquals(_data, _tagOffset[field], data, tagOffset,
+                           tagLength);
+    }
+
+    byte[]    _data;
+    int       _count;
+    int[]     _fieldOffset = new int[16];
+    int[]     _fieldLength = new int[16];
+    int[]     _tagOffset   = new int[16];
+    int[]     _tagLength   = new int[16];
+    int[]     _hash        = new int[16];
+    boolean[] _used        = new boolean[16];
+    boolean[] _null        = new boolean[16];
+    int[]     _previous    = new int[16]; // earlier field with the same tag
+    int[]     _following   = new int[16]; // later field with the same tag
+    int[]     _slots       = new int[32];
+  }
+
+  final BFlatParser _parser    = new BFlatParser();
+  final FieldIndex  _index     = new FieldIndex();
+  final FieldIndex  _nextIndex = new FieldIndex();
+}
@@ -0,0 +1,503 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A fixed-size, lock-free histogram of non-negative <tt>long</tt> values,
+ * such as latencies in nanoseconds, in the style of HdrHistogram. Values
+ * below <tt>2^precisionBits</tt> are counted exactly; above that, each
+ * power of two is split into <tt>2^(precisionBits-1)</tt> buckets, so a
+ * recorded value is known to within a relative error of
+ * <tt>2^(1-precisionBits)</tt>. Seven bits, for example, gives better than
+ * 2% precision.
+ * <p>
+ * The memory used is fixed when the histogram is constructed and any
+ * number of threads may {@link #record} into it at once; each record is a
+ * single atomic add. Histograms with the same configuration may be
+ * {@link #merge}d, for instance one per thread into a total, and
+ * {@link #encode}d as fields of a BFlat message for shipping to a
+ * collector, which reads them back with {@link #decode}.
+ * <p>
+ * Example of timing a processing stage:
+ * <pre>
+ * BFlatHistogram stage = new BFlatHistogram(TimeUnit.SECONDS.toNanos(10), 7);
+ * ...
+ * long began = System.nanoTime();
+ * process(message);
+ * stage.recordSince(began);
+ * ...
+ * System.out.println(stage.getValueAtPercentile(99.9));
+ * </pre>
+ */
+public class BFlatHistogram
+{
+  /**
+   * Construct a BFlatHistogram.
+   *
+   * @param maxValue      The largest value to distinguish; larger values
+   *                      are recorded as <tt>maxValue</tt>.
+   * @param precisionBits The number of significant bits kept for each
+   *                      value, from 1 to 20.
+   * @throws BFlatException <tt>maxValue</tt> is not positive, or
+   *                        <tt>precisionBits</tt> is out of range.
+   */
+  public BFlatHistogram(long maxValue, int precisionBits)
+  {
+    if(maxValue <= 0)
+    {
+      throw new BFlatException("maxValue must be positive.");
+    }
+    if(precisionBits < 1 || precisionBits > MaxPrecisionBits)
+    {
+      throw new BFlatException("precisionBits must be from 1 to "
+                               + MaxPrecisionBits + ".");
+    }
+    _maxValue = maxValue;
+    _precisionBits = precisionBits;
+    _counts = new AtomicLongArray(index(maxValue) + 1);
+  }
+
+  /**
+   * Returns the largest value this histogram distinguishes.
+   * @return The <tt>maxValue</tt> given at construction.
+   */
+  public long getMaxValue()
+  {
+    return _maxValue;
+  }
+
+  /**
+   * Returns the number of significant bits kept for each value.
+   * @return The <tt>precisionBits</tt> given at construction.
+   */
+  public int getPrecisionBits()
+  {
+    return _precisionBits;
+  }
+
+  /**
+   * Record a value. Negative values are recorded as 0, and values above
+   * {@link #getMaxValue} as the maximum.
+   * @param value The value to record.
+   */
+  public void record(long value)
+  {
+    _counts.getAndIncrement(index(clamp(value)));
+  }
+
+  /**
+   * Record a value a number of times.
+   * @param value The value to record.
+   * @param count The number of times to record it.
+   */
+  public void record(long value, long count)
+  {
+    _counts.getAndAdd(index(clamp(value)), count);
+  }
+
+  /**
+   * Record the time elapsed since a reading of {@link System#nanoTime}.
+   * @param began The value of <tt>System.nanoTime()</tt> when the timed
+   *              work began.
+   */
+  public void recordSince(long began)
+  {
+    record(System.nanoTime() - began);
+  }
+
+  /**
+   * Returns the number of values recorded. Values recorded while this
+   * method runs may or may not be included.
+   * @return The number of values recorded.
+   */
+  public long getCount()
+  {
+    long count = 0;
+    for(int index = 0; index < _counts.length(); ++index)
+    {
+      count += _counts.get(index);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the value at or below which a percentage of the recorded values
+   * fall, rounded up to the largest value sharing its bucket.
+   * @param percentile The percentage, from 0 to 100.
+   * @return The value at <tt>percentile</tt>, or 0 if nothing was recorded.
+   */
+  public long getValueAtPercentile(double percentile)
+  {
+    long[] counts = snapshot();
+    long total = 0;
+    for(long count : counts)
+    {
+      total += count;
+    }
+    double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+    long rank = Math.max(1, (long)Math.ceil(fraction * total));
+    long seen = 0;
+    for(int index = 0; index < counts.length; ++index)
+    {
+      seen += counts[index];
+      if(seen >= rank)
+      {
+        return Math.min(highest(index), _maxValue);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the smallest value recorded, rounded down to the smallest value
+   * sharing its bucket.
+   * @return The minimum, or 0 if nothing was recorded.
+   */
+  public long getMin()
+  {
+    for(int index = 0; index < _counts.length(); ++index)
+    {
+      if(_counts.get(index) != 0)
+      {
+        return lowest(index);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the largest value recorded, rounded up to the largest value
+   * sharing its bucket.
+   * @return The maximum, or 0 if nothing was recorded.
+   */
+  public long getMax()
+  {
+    for(int index = _counts.length() - 1; index >= 0; --index)
+    {
+      if(_counts.get(index) != 0)
+      {
+        return Math.min(highest(index), _maxValue);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the mean of the recorded values, taking each value as the
+   * middle of its bucket.
+   * @return The mean, or 0 if nothing was recorded.
+   */
+  public double getMean()
+  {
+    long[] counts = snapshot();
+    double sum = 0;
+    long total = 0;
+    for(int index = 0; index < counts.length; ++index)
+    {
+      if(counts[index] != 0)
+      {
+        double middle = (lowest(index) + (double)highest(index)) / 2;
+        sum += middle * counts[index];
+        total += counts[index];
+      }
+    }
+    return total == 0 ? 0 : sum / total;
+  }
+
+  /**
+   * Add the counts of another histogram to this one. The other histogram
+   * may be recorded into while it is merged.
+   * @param other A histogram with the same <tt>maxValue</tt> and
+   *              <tt>precisionBits</tt> as this one.
+   * @throws BFlatException The histograms are configured differently.
+   */
+  public void merge(BFlatHistogram other)
+  {
+    checkCompatible(other._maxValue, other._precisionBits);
+    for(int index = 0; index < _counts.length(); ++index)
+    {
+      long count = other._counts.get(index);
+      if(count != 0)
+      {
+        _counts.getAndAdd(index, count);
+      }
+    }
+  }
+
+  /**
+   * Reset every count to zero. Values recorded concurrently with a reset
+   * may or may not be kept.
+   */
+  public void reset()
+  {
+    for(int index = 0; index < _counts.length(); ++index)
+    {
+      _counts.set(index, 0);
+    }
+  }
+
+  /**
+   * Encode this histogram as fields of a BFlat message: <tt>bits</tt>,
+   * <tt>max</tt>, and the arrays <tt>buckets</tt> and <tt>counts</tt>
+   * holding the non-empty buckets, each as the distance from the previous
+   * one, and their counts. Other fields, such as the name of the stage
+   * measured, may be encoded into the same message.
+   *
+   * @param builder The builder to encode into.
+   * @throws BufferTooSmallException The builder's buffer is too small.
+   * @return <tt>builder</tt>.
+   */
+  public BFlatBuilder encode(BFlatBuilder builder)
+  {
+    long[] counts = snapshot();
+    int used = 0;
+    for(long count : counts)
+    {
+      if(count != 0) ++used;
+    }
+    long[] buckets = new long[used];
+    long[] nonZero = new long[used];
+    int previous = 0;
+    for(int index = 0, next = 0; index < counts.length; ++index)
+    {
+      if(counts[index] != 0)
+      {
+        buckets[next] = index - previous;
+        nonZero[next++] = counts[index];
+        previous = index;
+      }
+    }
+    builder.encode(BitsTag, (byte)_precisionBits)
+           .encode(MaxTag, _maxValue);
+    if(used != 0)
+    {
+      builder.encodeCompact(BucketsTag, buckets)
+             .encodeCompact(CountsTag, nonZero);
+    }
+    return builder;
+  }
+
+  /**
+   * Decode a histogram written by {@link #encode}. Fields with other tags
+   * are skipped.
+   *
+   * @param data     The array containing the encoded message.
+   * @param position The position in <tt>data</tt> where the message begins.
+   * @param length   The length of the message in bytes.
+   * @return The decoded histogram.
+   * @throws BFlatException The message is not a valid histogram.
+   */
+  public static BFlatHistogram decode(byte[] data, int position, int length)
+  {
+    long maxValue = 0;
+    int precisionBits = 0;
+    BFlatValue buckets = null;
+    BFlatValue counts = null;
+    for(BFlatValue value : new BFlatParser().parse(data, position, length))
+    {
+      switch(value.getTag())
+      {
+        case BitsTag:    precisionBits = (int)value.getLong(); break;
+        case MaxTag:     maxValue = value.getLong();           break;
+        case BucketsTag: buckets = value;                      break;
+        case CountsTag:  counts = value;                       break;
+        default:                                               break;
+      }
+    }
+    BFlatHistogram histogram = new BFlatHistogram(maxValue, precisionBits);
+    if(buckets == null && counts == null)
+    {
+      return histogram;
+    }
+    if(buckets == null || counts == null || !buckets.isArray()
+       || !counts.isArray()
+       || buckets.getArrayLength() != counts.getArrayLength())
+    {
+      throw new BFlatException("histogram buckets and counts do not match");
+    }
+    long index = 0;
+    for(int element = 0; element < buckets.getArrayLength(); ++element)
+    {
+      index += buckets.getLong(element);
+      if(index < 0 || index >= histogram._counts.length())
+      {
+        throw new BFlatException("histogram bucket out of range");
+      }
+      histogram._counts.getAndAdd((int)index, counts.getLong(element));
+    }
+    return histogram;
+  }
+
+  /**
+   * Records the latency of each message it is handed: the time now less
+   * the value of a <tt>Datetime</tt> field stamped on the message when it
+   * was published. The clock must count in the same units and from the
+   * same epoch as the timestamps; the default is
+   * {@link System#currentTimeMillis}. A Latency keeps a parser, so give each
+   * consuming thread its own; they may all record into one histogram.
+   */
+  public static class Latency implements BFlatHandler
+  {
+    /**
+     * Construct a Latency reading millisecond timestamps.
+     *
+     * @param histogram The histogram to record into.
+     * @param tag       The tag of the timestamp field.
+     */
+    public Latency(BFlatHistogram histogram, String tag)
+    {
+      this(histogram, tag, System::currentTimeMillis);
+    }
+
+    /**
+     * Construct a Latency.
+     *
+     * @param histogram The histogram to record into.
+     * @param tag       The tag of the timestamp field.
+     * @param clock     The current time, in the units of the timestamps.
+     */
+    public Latency(BFlatHistogram histogram, String tag, LongSupplier clock)
+    {
+      if(tag.length() == 0)
+      {
+        throw new BFlatException("Zero length tags are not allowed.");
+      }
+      _histogram = histogram;
+      _tag = tag.getBytes(StandardCharsets.UTF_8);
+      _clock = clock;
+    }
+
+    /**
+     * Record the latency of a message. A message without a <tt>Datetime</tt>
+     * field of the configured tag is counted in {@link #getMissing}.
+     *
+     * @param data   The array containing the encoded message.
+     * @param offset The position in <tt>data</tt> where the message begins.
+     * @param length The length of the message in bytes.
+     * @throws BFlatException The message could not be parsed.
+     */
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      for(BFlatValue value : _parser.parse(data, offset, length))
+      {
+        value.reuse();
+        if(value.getType() == BFlatEncoding.Datetime && !value.isArray()
+           && value.getRawTagLength() == _tag.length
+           && Utils.regionEquals(data, value.getRawTagOffset(), _tag, 0,
+                                 _tag.length))
+        {
+          _histogram.record(_clock.getAsLong() - value.getDatetime());
+          return;
+        }
+      }
+      ++_missing;
+    }
+
+    /**
+     * Returns the number of messages that had no timestamp field.
+     * @return The number of messages not recorded.
+     */
+    public long getMissing()
+    {
+      return _missing;
+    }
+
+    final BFlatHistogram _histogram;
+    final byte[]         _tag;
+    final LongSupplier   _clock;
+    final BFlatParser    _parser = new BFlatParser();
+    long                 _missing;
+  }
+
+  void checkCompatible(long maxValue, int precisionBits)
+  {
+    if(maxValue != _maxValue || precisionBits != _precisionBits)
+    {
+      throw new BFlatException("histograms are configured differently");
+    }
+  }
+
+  long clamp(long value)
+  {
+    return value < 0 ? 0 : Math.min(value, _maxValue);
+  }
+
+  long[] snapshot()
+  {
+    long[] counts = new long[_counts.length()];
+    for(int index = 0; index < counts.length; ++index)
+    {
+      counts[index] = _counts.get(index);
+    }
+    return counts;
+  }
+
+  // Values below 2^bits have a bucket each. Above that, a value whose top
+  // bit is bit (bits - 1 + shift) keeps its top 'bits' bits, v >>> shift,
+  // which lies in [2^(bits-1), 2^bits); the buckets of each shift follow
+  // those of the one before.
+  int index(long value)
+  {
+    if(value < (1L << _precisionBits))
+    {
+      return (int)value;
+    }
+    int shift = 64 - Long.numberOfLeadingZeros(value) - _precisionBits;
+    return (shift << (_precisionBits - 1)) + (int)(value >>> shift);
+  }
+
+  long lowest(int index)
+  {
+    if(index < (1 << _precisionBits))
+    {
+      return index;
+    }
+    int shift = (index >> (_precisionBits - 1)) - 1;
+    return (long)(index - (shift << (_precisionBits - 1))) << shift;
+  }
+
+  long highest(int index)
+  {
+    if(index < (1 << _precisionBits))
+    {
+      return index;
+    }
+    int shift = (index >> (_precisionBits - 1)) - 1;
+    return lowest(index) + (1L << shift) - 1;
+  }
+
+  static final int    MaxPrecisionBits = 20;
+  static final String BitsTag    = "bits";
+  static final String MaxTag     = "max";
+  static final String BucketsTag = "buckets";
+  static final String CountsTag  = "counts";
+
+  final long            _maxValue;
+  final int             _precisionBits;
+  final AtomicLongArray _counts;
+}
@@ -0,0 +1,777 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BFlatJsonReader transcodes UTF-8 JSON objects into BFlat fields in a
+ * single pass over the JSON bytes, encoding each member straight into a
+ * {@link BFlatBuilder} without creating Strings or an intermediate tree.
+ * <p>
+ * Members are encoded as follows:
+ * <ul>
+ * <li>Strings as <tt>String</tt> values. A string with no escapes is
+ *     copied from the JSON bytes as it is; one with escapes is decoded,
+ *     unless the reader was constructed to keep escapes, in which case it
+ *     too is copied as it is.</li>
+ * <li>Integers as the smallest of <tt>Int8</tt>, <tt>Int16</tt>,
+ *     <tt>Int32</tt>, <tt>Int64</tt> and <tt>Leb128</tt> that holds them,
+ *     as {@link BFlatBuilder#encodeCompact(String,long)} chooses. Integers
+ *     outside the range of a <tt>long</tt> are encoded as doubles.</li>
+ * <li>Numbers with a fraction or exponent as <tt>Double</tt> values,
+ *     correctly rounded.</li>
+ * <li><tt>true</tt> and <tt>false</tt> as <tt>Int8</tt> 1 and 0, and
+ *     <tt>null</tt> as a <tt>Null</tt> value.</li>
+ * <li>Objects as nested messages, as {@link BFlatBuilder#beginNested}
+ *     writes them.</li>
+ * <li>Arrays whose elements are all strings, all numbers, all booleans or
+ *     all nulls as BFlat arrays; a number array is a <tt>Double</tt> array
+ *     if any element has a fraction or exponent, and an integer array of
+ *     the smallest type otherwise. An empty array is a <tt>Null</tt> array
+ *     of length 0. Any other array is encoded as a nested message whose
+ *     fields are tagged with the element indexes "0", "1", and so on.</li>
+ * </ul>
+ * <p>
+ * A BFlatJsonReader reuses internal buffers between calls, so it must not
+ * be shared between threads.
+ * <p>
+ * Example of converting JSON lines to framed BFlat messages:
+ * <pre>
+ * BFlatJsonReader reader = new BFlatJsonReader();
+ * int position = 0;
+ * while(position &lt; length)
+ * {
+ *   builder.beginFrame();
+ *   position = reader.read(json, position, length - position, builder);
+ *   builder.endFrame();
+ * }
+ * </pre>
+ */
+public class BFlatJsonReader
+{
+  /**
+   * Construct a BFlatJsonReader that decodes string escapes.
+   */
+  public BFlatJsonReader()
+  {
+    this(true);
+  }
+
+  /**
+   * Construct a BFlatJsonReader.
+   *
+   * @param decodeEscapes If false, strings and tags containing escapes are
+   *                      copied with their escapes as they are, so that
+   *                      every string is copied without decoding.
+   */
+  public BFlatJsonReader(boolean decodeEscapes)
+  {
+    _decodeEscapes = decodeEscapes;
+  }
+
+  /**
+   * Transcode one JSON object into fields of a BFlat message.
+   *
+   * @param json    The array containing UTF-8 JSON text.
+   * @param offset  The position in <tt>json</tt> where the object, or
+   *                whitespace before it, begins.
+   * @param length  The number of bytes of <tt>json</tt> that may be read.
+   * @param builder The builder to encode the object's members into.
+   * @return The position in <tt>json</tt> after the object and any
+   *         whitespace that follows it.
+   * @throws BFlatException The text is not a valid JSON object.
+   * @throws BufferTooSmallException The builder's buffer is too small.
+   */
+  public int read(byte[] json, int offset, int length, BFlatBuilder builder)
+  {
+    _json = json;
+    _at = offset;
+    _end = offset + length;
+    _builder = builder;
+    try
+    {
+      skipWhitespace();
+      expect('{');
+      readMembers();
+      skipWhitespace();
+      return _at;
+    }
+    finally
+    {
+      _json = null;
+      _builder = null;
+    }
+  }
+
+  // The members of an object, after its '{' up to and including its '}'.
+  private void readMembers()
+  {
+    skipWhitespace();
+    if(peek() == '}')
+    {
+      ++_at;
+      return;
+    }
+    while(true)
+    {
+      skipWhitespace();
+      expect('"');
+      byte[] tag = _json;
+      int tagOffset = _at;
+      int tagLength = skipString();
+      if(_escaped && _decodeEscapes)
+      {
+        tagLength = decode(tagOffset, tagLength, _tag);
+        tag = _tag = _decoded;
+        tagOffset = 0;
+      }
+      if(tagLength == 0)
+      {
+        throw error("empty member name");
+      }
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      readValue(tag, tagOffset, tagLength);
+      skipWhitespace();
+      byte next = next();
+      if(next == '}')
+      {
+        return;
+      }
+      if(next != ',')
+      {
+        --_at;
+        throw error("expected ',' or '}'");
+      }
+    }
+  }
+
+  private void readValue(byte[] tag, int tagOffset, int tagLength)
+  {
+    switch(peek())
+    {
+      case '"':
+        ++_at;
+        int start = _at;
+        int length = skipString();
+        _builder.encodeTag(BFlatEncoding.String, tag, tagOffset, tagLength);
+        encodeString(start, length);
+        break;
+      case '{':
+        ++_at;
+        _builder.beginNested(tag, tagOffset, tagLength);
+        readMembers();
+        _builder.endNested();
+        break;
+      case '[':
+        ++_at;
+        readArray(tag, tagOffset, tagLength);
+        break;
+      case 't':
+      case 'f':
+        _builder.encodeTag(BFlatEncoding.Int8, tag, tagOffset, tagLength);
+        _builder.encode(readBoolean() ? (byte)1 : (byte)0);
+        break;
+      case 'n':
+        expectLiteral(Null);
+        _builder.encodeTag(BFlatEncoding.Null, tag, tagOffset, tagLength);
+        break;
+      default:
+        if(readNumber())
+        {
+          _builder.encodeTag(BFlatEncoding.Double, tag, tagOffset,
+                             tagLength);
+          _builder.encode(_double);
+        }
+        else
+        {
+          byte type = BFlatBuilder.CompactType[
+            BFlatBuilder.significantBits(_long)];
+          _builder.encodeTag(type, tag, tagOffset, tagLength);
+          encodeInteger(type, _long);
+        }
+        break;
+    }
+  }
+
+  // An array, after its '['. The elements are scanned once to find their
+  // count and common kind, then read again to encode them.
+  private void readArray(byte[] tag, int tagOffset, int tagLength)
+  {
+    int first = _at;
+    int count = 0;
+    int kind = Empty;
+    int maxBits = 1;
+    long lebBytes = 0;
+    skipWhitespace();
+    if(peek() == ']')
+    {
+      ++_at;
+    }
+    else
+    {
+      while(true)
+      {
+        skipWhitespace();
+        int element;
+        switch(peek())
+        {
+          case '"':
+            ++_at;
+            skipString();
+            element = Strings;
+            break;
+          case 't':
+          case 'f':
+            readBoolean();
+            element = Booleans;
+            break;
+          case 'n':
+            expectLiteral(Null);
+            element = Nulls;
+            break;
+          case '{':
+          case '[':
+            skipCompound();
+            element = Mixed;
+            break;
+          default:
+            if(readNumber())
+            {
+              element = Doubles;
+            }
+            else
+            {
+              int bits = BFlatBuilder.significantBits(_long);
+              maxBits = Math.max(maxBits, bits);
+              lebBytes += (bits + 6) / 7;
+              element = Integers;
+            }
+            break;
+        }
+        ++count;
+        kind = kind == Empty || kind == element ? element
+          : (kind | element) == (Integers | Doubles) ? Doubles
+          : Mixed;
+        skipWhitespace();
+        byte next = next();
+        if(next == ']')
+        {
+          break;
+        }
+        if(next != ',')
+        {
+          --_at;
+          throw error("expected ',' or ']'");
+        }
+      }
+    }
+    int end = _at;
+    _at = first;
+    switch(kind)
+    {
+      case Empty:
+      case Nulls:
+        _builder.encodeTagArray(BFlatEncoding.Null, tag, tagOffset,
+                                tagLength, count);
+        break;
+      case Mixed:
+        readElements(tag, tagOffset, tagLength);
+        break;
+      case Integers:
+        // the same choice as BFlatBuilder.encodeCompact(String,long[])
+        byte type = BFlatBuilder.CompactType[maxBits];
+        if(type == BFlatEncoding.Leb128)
+        {
+          type = BFlatEncoding.Int64;
+        }
+        if(lebBytes < (long)count * BFlatBuilder.CompactWidth[maxBits])
+        {
+          type = BFlatEncoding.Leb128;
+        }
+        _builder.encodeTagArray(type, tag, tagOffset, tagLength, count);
+        for(int index = 0; index < count; ++index)
+        {
+          nextElement(index);
+          readNumber();
+          encodeInteger(type, _long);
+        }
+        break;
+      case Doubles:
+        _builder.encodeTagArray(BFlatEncoding.Double, tag, tagOffset,
+                                tagLength, count);
+        for(int index = 0; index < count; ++index)
+        {
+          nextElement(index);
+          _builder.encode(readNumber() ? _double : (double)_long);
+        }
+        break;
+      case Booleans:
+        _builder.encodeTagArray(BFlatEncoding.Int8, tag, tagOffset,
+                                tagLength, count);
+        for(int index = 0; index < count; ++index)
+        {
+          nextElement(index);
+          _builder.encode(readBoolean() ? (byte)1 : (byte)0);
+        }
+        break;
+      default:
+        _builder.encodeTagArray(BFlatEncoding.String, tag, tagOffset,
+                                tagLength, count);
+        for(int index = 0; index < count; ++index)
+        {
+          nextElement(index);
+          ++_at;
+          int start = _at;
+          encodeString(start, skipString());
+        }
+        break;
+    }
+    _at = end;
+  }
+
+  // The elements of a mixed array as a nested message tagged by index.
+  private void readElements(byte[] tag, int tagOffset, int tagLength)
+  {
+    _builder.beginNested(tag, tagOffset, tagLength);
+    for(int element = 0; ; ++element)
+    {
+      nextElement(element);
+      if(peek() == ']')
+      {
+        break;
+      }
+      readValue(_index, 0, Decimal.format(element, _index, 0));
+      skipWhitespace();
+      if(peek() == ']')
+      {
+        break;
+      }
+    }
+    _builder.endNested();
+  }
+
+  // Move to the start of an element of an array already validated.
+  private void nextElement(int index)
+  {
+    skipWhitespace();
+    if(index > 0 && peek() == ',')
+    {
+      ++_at;
+      skipWhitespace();
+    }
+  }
+
+  private void encodeString(int start, int length)
+  {
+    if(_escaped && _decodeEscapes)
+    {
+      length = decode(start, length, _text);
+      _text = _decoded;
+      _builder.encode(_text, 0, length);
+    }
+    else
+    {
+      _builder.encode(_json, start, length);
+    }
+  }
+
+  private void encodeInteger(byte type, long value)
+  {
+    switch(type)
+    {
+      case BFlatEncoding.Int8:   _builder.encode((byte)value);  break;
+      case BFlatEncoding.Int16:  _builder.encode((short)value); break;
+      case BFlatEncoding.Int32:  _builder.encode((int)value);   break;
+      case BFlatEncoding.Leb128: _builder.encodeLeb128(value);  break;
+      default:                   _builder.encode(value);        break;
+    }
+  }
+
+  // Reads a number, leaving it in _long and returning false if it is an
+  // integer that fits in a long, or in _double and returning true.
+  private boolean readNumber()
+  {
+    int start = _at;
+    boolean negative = peek() == '-';
+    if(negative)
+    {
+      ++_at;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean truncated = false;
+    int integerStart = _at;
+    while(_at < _end && isDigit(_json[_at]))
+    {
+      int digit = _json[_at++] - '0';
+      if(digits < MaxDigits)
+      {
+        mantissa = mantissa * 10 + digit;
+        digits += mantissa == 0 ? 0 : 1;
+      }
+      else
+      {
+        truncated |= digit != 0;
+        ++exponent;
+      }
+    }
+    if(_at == integerStart)
+    {
+      throw error("invalid number");
+    }
+    if(_json[integerStart] == '0' && _at - integerStart > 1)
+    {
+      throw error("leading zero in number");
+    }
+    boolean integer = true;
+    if(_at < _end && _json[_at] == '.')
+    {
+      integer = false;
+      int fractionStart = ++_at;
+      while(_at < _end && isDigit(_json[_at]))
+      {
+        int digit = _json[_at++] - '0';
+        if(digits < MaxDigits)
+        {
+          mantissa = mantissa * 10 + digit;
+          digits += mantissa == 0 ? 0 : 1;
+          --exponent;
+        }
+        else
+        {
+          truncated |= digit != 0;
+        }
+      }
+      if(_at == fractionStart)
+      {
+        throw error("invalid number");
+      }
+    }
+    if(_at < _end && (_json[_at] | 0x20) == 'e')
+    {
+      integer = false;
+      ++_at;
+      boolean negativeExponent = false;
+      if(_at < _end && (_json[_at] == '-' || _json[_at] == '+'))
+      {
+        negativeExponent = _json[_at++] == '-';
+      }
+      int exponentStart = _at;
+      int explicit = 0;
+      while(_at < _end && isDigit(_json[_at]))
+      {
+        explicit = Math.min(explicit * 10 + _json[_at++] - '0', 100000);
+      }
+      if(_at == exponentStart)
+      {
+        throw error("invalid number");
+      }
+      exponent += negativeExponent ? -explicit : explicit;
+    }
+    if(integer && !truncated && exponent == 0)
+    {
+      // up to 19 digits, which may pass 2^63 - 1 as an unsigned value
+      if(mantissa >= 0)
+      {
+        _long = negative ? -mantissa : mantissa;
+        return false;
+      }
+      if(negative && mantissa == Long.MIN_VALUE)
+      {
+        _long = Long.MIN_VALUE;
+        return false;
+      }
+    }
+    double value = truncated ? Double.NaN
+                             : Decimal.exactDouble(mantissa, exponent);
+    if(Double.isNaN(value))
+    {
+      // too many digits or too large an exponent for an exact fast path
+      value = Double.parseDouble(new String(_json, start, _at - start,
+                                            StandardCharsets.ISO_8859_1));
+    }
+    _double = negative ? -Math.abs(value) : value;
+    return true;
+  }
+
+  private boolean readBoolean()
+  {
+    if(peek() == 't')
+    {
+      expectLiteral(True);
+      return true;
+    }
+    expectLiteral(False);
+    return false;
+  }
+
+  // Skips a string after its opening quote, setting _escaped if it has
+  // escapes, and returns its length without the closing quote.
+  private int skipString()
+  {
+    int start = _at;
+    _escaped = false;
+    while(_at < _end)
+    {
+      byte b = _json[_at++];
+      if(b == '"')
+      {
+        return _at - start - 1;
+      }
+      if(b == '\\')
+      {
+        _escaped = true;
+        ++_at;
+      }
+      else if((b & 0xff) < 0x20)
+      {
+        --_at;
+        throw error("control character in string");
+      }
+    }
+    throw error("unterminated string");
+  }
+
+  // Skips an object or array, from its opening bracket.
+  private void skipCompound()
+  {
+    int depth = 0;
+    while(_at < _end)
+    {
+      byte b = _json[_at++];
+      if(b == '"')
+      {
+        skipString();
+      }
+      else if(b == '{' || b == '[')
+      {
+        ++depth;
+      }
+      else if(b == '}' || b == ']')
+      {
+        if(--depth == 0)
+        {
+          return;
+        }
+      }
+    }
+    throw error("unterminated object or array");
+  }
+
+  // Decodes the escapes of a string into 'into', or a larger array if it
+  // is too small, which is left in _decoded. Returns the decoded length.
+  private int decode(int start, int length, byte[] into)
+  {
+    if(into.length < length)
+    {
+      into = new byte[Math.max(length, into.length * 2)];
+    }
+    _decoded = into;
+    int out = 0;
+    int end = start + length;
+    for(int at = start; at < end; ++at)
+    {
+      byte b = _json[at];
+      if(b != '\\')
+      {
+        into[out++] = b;
+        continue;
+      }
+      byte escape = _json[++at];
+      switch(escape)
+      {
+        case '"': case '\\': case '/': into[out++] = escape; break;
+        case 'b': into[out++] = '\b'; break;
+        case 'f': into[out++] = '\f'; break;
+        case 'n': into[out++] = '\n'; break;
+        case 'r': into[out++] = '\r'; break;
+        case 't': into[out++] = '\t'; break;
+        case 'u':
+          int c = hex(at + 1, end);
+          at += 4;
+          if(Character.isHighSurrogate((char)c) && at + 6 < end
+             && _json[at + 1] == '\\' && _json[at + 2] == 'u')
+          {
+            int low = hex(at + 3, end);
+            if(Character.isLowSurrogate((char)low))
+            {
+              c = Character.toCodePoint((char)c, (char)low);
+              at += 6;
+            }
+          }
+          out = utf8(c, into, out);
+          break;
+        default:
+          _at = at;
+          throw error("invalid escape");
+      }
+    }
+    return out;
+  }
+
+  private int hex(int at, int end)
+  {
+    if(at + 4 > end)
+    {
+      _at = at;
+      throw error("invalid unicode escape");
+    }
+    int value = 0;
+    for(int i = at; i < at + 4; ++i)
+    {
+      int digit = Character.digit(_json[i], 16);
+      if(digit < 0)
+      {
+        _at = i;
+        throw error("invalid unicode escape");
+      }
+      value = value << 4 | digit;
+    }
+    return value;
+  }
+
+  // UTF-8 for a code point; an unpaired surrogate is written as '?', as
+  // BFlatBuilder writes one from a String.
+  private static int utf8(int c, byte[] into, int out)
+  {
+    if(c < 0x80)
+    {
+      into[out++] = (byte)c;
+    }
+    else if(c < 0x800)
+    {
+      into[out++] = (byte)(0xc0 | c >> 6);
+      into[out++] = (byte)(0x80 | c & 0x3f);
+    }
+    else if(Character.isSurrogate((char)c) && c < 0x10000)
+    {
+      into[out++] = '?';
+    }
+    else if(c < 0x10000)
+    {
+      into[out++] = (byte)(0xe0 | c >> 12);
+      into[out++] = (byte)(0x80 | c >> 6 & 0x3f);
+      into[out++] = (byte)(0x80 | c & 0x3f);
+    }
+    else
+    {
+      into[out++] = (byte)(0xf0 | c >> 18);
+      into[out++] = (byte)(0x80 | c >> 12 & 0x3f);
+      into[out++] = (byte)(0x80 | c >> 6 & 0x3f);
+      into[out++] = (byte)(0x80 | c & 0x3f);
+    }
+    return out;
+  }
+
+  private void expectLiteral(byte[] literal)
+  {
+    if(_end - _at < literal.length
+       || !Utils.regionEquals(_json, _at, literal, 0, literal.length))
+    {
+      throw error("invalid literal");
+    }
+    _at += literal.length;
+  }
+
+  private void expect(char c)
+  {
+    if(next() != c)
+    {
+      --_at;
+      throw error("expected '" + c + "'");
+    }
+  }
+
+  private byte peek()
+  {
+    if(_at >= _end)
+    {
+      throw error("unexpected end of JSON");
+    }
+    return _json[_at];
+  }
+
+  private byte next()
+  {
+    byte b = peek();
+    ++_at;
+    return b;
+  }
+
+  private void skipWhitespace()
+  {
+    while(_at < _end)
+    {
+      byte b = _json[_at];
+      if(b != ' ' && b != '\n' && b != '\r' && b != '\t')
+      {
+        return;
+      }
+      ++_at;
+    }
+  }
+
+  private static boolean isDigit(byte b)
+  {
+    return b >= '0' && b <= '9';
+  }
+
+  private BFlatException error(String reason)
+  {
+    return new BFlatException(reason, _at);
+  }
+
+  // Kinds of array element; a number array may mix the two number kinds.
+  static final int Empty    = 0;
+  static final int Strings  = 1;
+  static final int Integers = 2;
+  static final int Doubles  = 4;
+  static final int Booleans = 8;
+  static final int Nulls    = 16;
+  static final int Mixed    = 32;
+
+  // digits kept for a mantissa; 19 always fit in an unsigned long
+  static final int MaxDigits = 19;
+
+  static final byte[] True  = "true".getBytes();
+  static final byte[] False = "false".getBytes();
+  static final byte[] Null  = "null".getBytes();
+
+  final boolean _decodeEscapes;
+  byte[]        _tag = new byte[64];
+  byte[]        _text = new byte[256];
+  byte[]        _index = new byte[Decimal.MaxLongLength];
+  byte[]        _decoded;
+  byte[]        _json;
+  int           _at;
+  int           _end;
+  BFlatBuilder  _builder;
+  boolean       _escaped;
+  long          _long;
+  double        _double;
+}
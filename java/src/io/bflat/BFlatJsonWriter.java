@@ -0,0 +1,422 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * BFlatJsonWriter transcodes BFlat messages to UTF-8 JSON, writing to an
+ * {@link OutputStream} or a {@link WritableByteChannel} through a fixed-size
+ * staging buffer. Each message becomes one JSON object, with a member for
+ * each field in the order they were encoded. No <tt>String</tt> is created:
+ * tags and string values are copied from the message bytes, escaping only
+ * the characters JSON requires, and numbers are formatted directly into
+ * the staging buffer.
+ * <p>
+ * Values are written as follows:
+ * <ul>
+ * <li><tt>String</tt> values as JSON strings. Their bytes are copied as
+ *     they are, so they must be valid UTF-8.</li>
+ * <li><tt>Binary</tt> values as base64 strings.</li>
+ * <li>Integer, <tt>Leb128</tt> and <tt>Datetime</tt> values as integers.</li>
+ * <li><tt>Double</tt> values as the shortest decimal that reads back as the
+ *     same double, with a fraction or exponent so that it still reads as a
+ *     double. NaN and infinities, which JSON cannot represent, are written
+ *     as <tt>null</tt>.</li>
+ * <li><tt>Null</tt> values as <tt>null</tt>.</li>
+ * <li>Arrays of any of these as JSON arrays.</li>
+ * </ul>
+ * <p>
+ * Errors writing to the destination are thrown as
+ * {@link UncheckedIOException}. Call {@link #flush} or {@link #close} when
+ * finished to write out the staging buffer.
+ * <p>
+ * Example of exporting a file of framed messages as JSON lines:
+ * <pre>
+ * try(BFlatJsonWriter json =
+ *       new BFlatJsonWriter(new FileOutputStream(file), 65536))
+ * {
+ *   BFlatBatch batch = new BFlatBatch(data, 0, data.length);
+ *   for(int i = 0; i &lt; batch.size(); ++i)
+ *   {
+ *     json.onMessage(data, batch.getOffset(i), batch.getLength(i));
+ *   }
+ * }
+ * </pre>
+ */
+public class BFlatJsonWriter implements BFlatHandler, Closeable, Flushable
+{
+  /**
+   * Construct a BFlatJsonWriter that writes to an OutputStream.
+   *
+   * @param out        The destination for the JSON text.
+   * @param bufferSize The size of the staging buffer in bytes.
+   */
+  public BFlatJsonWriter(OutputStream out, int bufferSize)
+  {
+    _data = new byte[checkSize(bufferSize)];
+    _stream = out;
+    _channel = null;
+  }
+
+  /**
+   * Construct a BFlatJsonWriter that writes to a channel.
+   *
+   * @param out        The destination for the JSON text.
+   * @param bufferSize The size of the staging buffer in bytes.
+   */
+  public BFlatJsonWriter(WritableByteChannel out, int bufferSize)
+  {
+    _data = new byte[checkSize(bufferSize)];
+    _stream = null;
+    _channel = out;
+  }
+
+  /**
+   * Write a BFlat message as a JSON object.
+   *
+   * @param data     The array containing the encoded message.
+   * @param offset   The position in <tt>data</tt> where the message begins.
+   * @param length   The length of the message in bytes.
+   * @return This writer.
+   * @throws BFlatException The message could not be parsed.
+   */
+  public BFlatJsonWriter write(byte[] data, int offset, int length)
+  {
+    ensure(1);
+    _data[_position++] = '{';
+    boolean first = true;
+    for(BFlatValue value : _parser.parse(data, offset, length))
+    {
+      value.reuse();
+      if(!first)
+      {
+        ensure(1);
+        _data[_position++] = ',';
+      }
+      first = false;
+      writeString(data, value.getRawTagOffset(), value.getRawTagLength());
+      ensure(1);
+      _data[_position++] = ':';
+      if(value.isArray())
+      {
+        writeArray(value);
+      }
+      else
+      {
+        writeValue(value, 0);
+      }
+    }
+    ensure(1);
+    _data[_position++] = '}';
+    return this;
+  }
+
+  /**
+   * Write a BFlat message as a JSON object followed by a newline, so that
+   * successive messages form JSON lines.
+   *
+   * @param data   The array containing the encoded message.
+   * @param offset The position in <tt>data</tt> where the message begins.
+   * @param length The length of the message in bytes.
+   * @throws BFlatException The message could not be parsed.
+   */
+  public void onMessage(byte[] data, int offset, int length)
+  {
+    write(data, offset, length);
+    ensure(1);
+    _data[_position++] = '\n';
+  }
+
+  /**
+   * Returns the total number of bytes of JSON written so far, including
+   * those still in the staging buffer.
+   * @return the number of bytes written.
+   */
+  public long getBytesWritten()
+  {
+    return _flushed + _position;
+  }
+
+  /**
+   * Write the contents of the staging buffer to the destination and flush
+   * it.
+   *
+   * @throws IOException The destination could not be written.
+   */
+  public void flush() throws IOException
+  {
+    drain();
+    if(_stream != null)
+    {
+      _stream.flush();
+    }
+  }
+
+  /**
+   * Flush this writer and close the destination.
+   *
+   * @throws IOException The destination could not be written or closed.
+   */
+  public void close() throws IOException
+  {
+    flush();
+    if(_stream != null)
+    {
+      _stream.close();
+    }
+    else
+    {
+      _channel.close();
+    }
+  }
+
+  private void writeArray(BFlatValue value)
+  {
+    ensure(1);
+    _data[_position++] = '[';
+    for(int index = 0; index < value.getArrayLength(); ++index)
+    {
+      if(index > 0)
+      {
+        ensure(1);
+        _data[_position++] = ',';
+      }
+      writeValue(value, index);
+    }
+    ensure(1);
+    _data[_position++] = ']';
+  }
+
+  private void writeValue(BFlatValue value, int index)
+  {
+    switch(value.getType())
+    {
+      case BFlatEncoding.String:
+        writeString(value.getBuffer(), value.getRawValueOffset(index),
+                    value.getRawValueLength(index));
+        break;
+      case BFlatEncoding.Binary:
+        writeBase64(value.getBuffer(), value.getRawValueOffset(index),
+                    value.getRawValueLength(index));
+        break;
+      case BFlatEncoding.Double:
+        double number = value.getDouble(index);
+        ensure(Decimal.MaxDoubleLength);
+        if(Double.isNaN(number) || Double.isInfinite(number))
+        {
+          writeNull();
+        }
+        else
+        {
+          _position = Decimal.format(number, _data, _position);
+        }
+        break;
+      case BFlatEncoding.Null:
+        ensure(Null.length);
+        writeNull();
+        break;
+      default:
+        ensure(Decimal.MaxLongLength);
+        _position = Decimal.format(value.getLong(index), _data, _position);
+        break;
+    }
+  }
+
+  private void writeNull()
+  {
+    System.arraycopy(Null, 0, _data, _position, Null.length);
+    _position += Null.length;
+  }
+
+  // Copy runs of bytes that need no escape, escaping the rest.
+  private void writeString(byte[] source, int offset, int length)
+  {
+    ensure(1);
+    _data[_position++] = '"';
+    int end = offset + length;
+    int run = offset;
+    for(int at = offset; at < end; ++at)
+    {
+      byte escape = Escapes[source[at] & 0xff];
+      if(escape == 0)
+      {
+        continue;
+      }
+      copy(source, run, at - run);
+      run = at + 1;
+      ensure(6);
+      _data[_position++] = '\\';
+      if(escape != 'u')
+      {
+        _data[_position++] = escape;
+        continue;
+      }
+      _data[_position++] = 'u';
+      _data[_position++] = '0';
+      _data[_position++] = '0';
+      _data[_position++] = Hex[source[at] >> 4];
+      _data[_position++] = Hex[source[at] & 0xf];
+    }
+    copy(source, run, end - run);
+    ensure(1);
+    _data[_position++] = '"';
+  }
+
+  private void writeBase64(byte[] source, int offset, int length)
+  {
+    ensure(1);
+    _data[_position++] = '"';
+    int end = offset + length;
+    int at = offset;
+    for(; at + 3 <= end; at += 3)
+    {
+      ensure(4);
+      int bits = (source[at] & 0xff) << 16 | (source[at + 1] & 0xff) << 8
+                 | (source[at + 2] & 0xff);
+      _data[_position++] = Base64[bits >>> 18];
+      _data[_position++] = Base64[(bits >>> 12) & 0x3f];
+      _data[_position++] = Base64[(bits >>> 6) & 0x3f];
+      _data[_position++] = Base64[bits & 0x3f];
+    }
+    ensure(5);
+    if(at < end)
+    {
+      int bits = (source[at] & 0xff) << 16
+                 | (at + 1 < end ? (source[at + 1] & 0xff) << 8 : 0);
+      _data[_position++] = Base64[bits >>> 18];
+      _data[_position++] = Base64[(bits >>> 12) & 0x3f];
+      _data[_position++] = at + 1 < end ? Base64[(bits >>> 6) & 0x3f]
+                                        : (byte)'=';
+      _data[_position++] = '=';
+    }
+    _data[_position++] = '"';
+  }
+
+  // Copy bytes to the staging buffer, or straight to the destination if
+  // they are larger than it.
+  private void copy(byte[] source, int offset, int length)
+  {
+    if(length > _data.length - _position)
+    {
+      drain();
+      if(length > _data.length)
+      {
+        send(source, offset, length);
+        return;
+      }
+    }
+    System.arraycopy(source, offset, _data, _position, length);
+    _position += length;
+  }
+
+  // Make room for 'length' more bytes in the staging buffer.
+  private void ensure(int length)
+  {
+    if(length > _data.length - _position)
+    {
+      drain();
+    }
+  }
+
+  private void drain()
+  {
+    if(_position != 0)
+    {
+      send(_data, 0, _position);
+      _position = 0;
+    }
+  }
+
+  private void send(byte[] source, int offset, int length)
+  {
+    try
+    {
+      if(_stream != null)
+      {
+        _stream.write(source, offset, length);
+      }
+      else
+      {
+        ByteBuffer buffer = ByteBuffer.wrap(source, offset, length);
+        while(buffer.hasRemaining())
+        {
+          _channel.write(buffer);
+        }
+      }
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    _flushed += length;
+  }
+
+  private static int checkSize(int bufferSize)
+  {
+    if(bufferSize < MinBufferSize)
+    {
+      throw new BFlatException("bufferSize must be at least " +
+                               MinBufferSize);
+    }
+    return bufferSize;
+  }
+
+  // For each byte, 0 if it is copied as it is, the character that follows
+  // a backslash for it, or 'u' if it is written as a six-character unicode
+  // escape.
+  static byte[] escapes()
+  {
+    byte[] escapes = new byte[256];
+    for(int c = 0; c < 0x20; ++c)
+    {
+      escapes[c] = 'u';
+    }
+    escapes['"'] = '"';
+    escapes['\\'] = '\\';
+    escapes['\b'] = 'b';
+    escapes['\f'] = 'f';
+    escapes['\n'] = 'n';
+    escapes['\r'] = 'r';
+    escapes['\t'] = 't';
+    return escapes;
+  }
+
+  static final byte[] Escapes = escapes();
+  static final byte[] Hex     = "0123456789abcdef".getBytes();
+  static final byte[] Base64  =
+    "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+    .getBytes();
+  static final byte[] Null    = "null".getBytes();
+  static final int MinBufferSize = 64;
+
+  final byte[]              _data;
+  final OutputStream        _stream;
+  final WritableByteChannel _channel;
+  final BFlatParser         _parser = new BFlatParser();
+  int                       _position;
+  long                      _flushed;
+}
@@ -0,0 +1,806 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+
+/**
+ * BFlatMatcher evaluates a large set of {@link BFlatSubscription}s against
+ * BFlat messages in a single pass over each message's fields. Rather than
+ * testing every subscription in turn, the matcher indexes predicates:
+ * <ul>
+ * <li>Equality predicates are kept in a hash table keyed by tag, value type
+ *     and value, so each field of a message costs one lookup no matter how
+ *     many subscriptions mention it.
+ * <li>Range predicates are kept per tag in an interval tree, so each numeric
+ *     field costs <tt>O(log n + k)</tt> for <tt>k</tt> matching ranges.
+ * <li>Each satisfied predicate increments a counter for every subscription
+ *     that contains it; a subscription matches when its counter reaches the
+ *     number of predicates it contains.
+ * </ul>
+ * Identical predicates shared by many subscriptions are stored once.
+ * <p>
+ * Example of matching a message against registered subscriptions:
+ * <pre>
+ * BFlatMatcher matcher = new BFlatMatcher();
+ * int id = matcher.subscribe(new BFlatSubscription()
+ *                              .equal("symbol", "MSFT")
+ *                              .between("price", 10.0, 20.0));
+ * ...
+ * int count = matcher.match(data, 0, length);
+ * int[] ids = matcher.getMatches();
+ * for(int i = 0; i &lt; count; ++i)
+ * {
+ *   deliver(ids[i]);
+ * }
+ * </pre>
+ * <p>
+ * Matching does not allocate once the matcher's internal arrays have grown
+ * to fit the subscription set. BFlatMatcher is not thread-safe.
+ */
+public class BFlatMatcher
+{
+  /**
+   * Construct an empty BFlatMatcher.
+   */
+  public BFlatMatcher()
+  {
+  }
+
+  /**
+   * Register a subscription with this matcher. The subscription is copied,
+   * so later changes to <tt>subscription</tt> do not affect the matcher.
+   *
+   * @param subscription The subscription to register.
+   * @return The identifier of this subscription, which is reported by
+   *         {@link #getMatches} and accepted by {@link #unsubscribe}.
+   * @throws BFlatException <tt>subscription</tt> contains no predicates.
+   */
+  public int subscribe(BFlatSubscription subscription)
+  {
+    int count = subscription.size();
+    if(count == 0)
+    {
+      throw new BFlatException(
+          "Subscriptions must contain at least one predicate.");
+    }
+    int id = allocateSubscription();
+    int[] preds = new int[count];
+    int distinct = 0;
+    for(int i = 0; i < count; ++i)
+    {
+      byte[] tagName = subscription._tags[i];
+      int tag = findTag(tagName, 0, tagName.length);
+      if(tag < 0)
+      {
+        tag = addTag(tagName);
+      }
+      byte[] bytes = subscription._bytes[i];
+      int pred = findOrAddPredicate(tag, subscription._kinds[i],
+          subscription._bits[i], subscription._bits2[i], bytes);
+      boolean seen = false;
+      for(int j = 0; j < distinct; ++j)
+      {
+        if(preds[j] == pred)
+        {
+          seen = true;
+          break;
+        }
+      }
+      if(!seen)
+      {
+        preds[distinct++] = pred;
+        addSubscriber(pred, id);
+      }
+    }
+    _subPreds[id] = distinct == count ? preds : Arrays.copyOf(preds,distinct);
+    _subNeed[id] = distinct;
+    _subStamp[id] = 0;
+    ++_subscriptions;
+    return id;
+  }
+
+  /**
+   * Remove a subscription from this matcher. The identifier may be reused
+   * by a later call to {@link #subscribe}.
+   *
+   * @param id The identifier returned by {@link #subscribe}.
+   * @throws BFlatException <tt>id</tt> is not a registered subscription.
+   */
+  public void unsubscribe(int id)
+  {
+    if(id < 0 || id >= _subPreds.length || _subPreds[id] == null)
+    {
+      throw new BFlatException("Unknown subscription id " + id);
+    }
+    for(int pred : _subPreds[id])
+    {
+      removeSubscriber(pred, id);
+    }
+    _subPreds[id] = null;
+    if(_freeSubCount == _freeSubs.length)
+    {
+      _freeSubs = Arrays.copyOf(_freeSubs, _freeSubs.length * 2);
+    }
+    _freeSubs[_freeSubCount++] = id;
+    --_subscriptions;
+  }
+
+  /**
+   * Returns the number of subscriptions registered with this matcher.
+   * @return the number of registered subscriptions.
+   */
+  public int size()
+  {
+    return _subscriptions;
+  }
+
+  /**
+   * Match a BFlat message contained in a byte array against every registered
+   * subscription. Upon return, the identifiers of the matching subscriptions
+   * are available from {@link #getMatches}.
+   *
+   * @param data     The byte array containing a BFlat-encoded message.
+   * @param position The position in <tt>data</tt> where BFlat data begins.
+   * @param length   The length of BFlat data contained in <tt>data</tt>.
+   * @return The number of matching subscriptions.
+   * @throws BFlatException An error occurred parsing this message.
+   */
+  public int match(byte[] data, int position, int length)
+  {
+    if(++_epoch == 0)
+    {
+      Arrays.fill(_predStamp, 0);
+      Arrays.fill(_subStamp, 0);
+      _epoch = 1;
+    }
+    _matchCount = 0;
+    for(BFlatValue value : _parser.parse(data, position, length))
+    {
+      int tag = findTag(data, value._tagOffset, value._tagLength);
+      if(tag >= 0)
+      {
+        matchValue(tag, value);
+      }
+      value.reuse();
+    }
+    return _matchCount;
+  }
+
+  /**
+   * Returns the identifiers of the subscriptions matched by the most recent
+   * call to {@link #match}. Only the first <tt>n</tt> elements of the
+   * returned array are valid, where <tt>n</tt> is the value returned by
+   * {@link #match}. The array is owned by this matcher and is overwritten
+   * by the next call to {@link #match}.
+   *
+   * @return An array beginning with the matching subscription identifiers.
+   */
+  public int[] getMatches()
+  {
+    return _matches;
+  }
+
+  private void matchValue(int tag, BFlatValue value)
+  {
+    int kinds = _tagKinds[tag];
+    int count = value.getArrayLength();
+    switch(value.getType())
+    {
+      case BFlatEncoding.String:
+      case BFlatEncoding.Binary:
+        if((kinds & (1 << BFlatSubscription.EqualBytes)) == 0) return;
+        for(int i = 0; i < count; ++i)
+        {
+          int offset = value.getRawValueOffset(i);
+          int length = value.getRawValueLength(i);
+          int pred = findPredicate(tag, BFlatSubscription.EqualBytes, 0, 0,
+              value._data, offset, length,
+              Utils.hash(seed(tag, BFlatSubscription.EqualBytes),
+                         value._data, offset, length));
+          if(pred >= 0) hit(pred);
+        }
+        break;
+      case BFlatEncoding.Int8:
+      case BFlatEncoding.Int16:
+      case BFlatEncoding.Int32:
+      case BFlatEncoding.Int64:
+      case BFlatEncoding.Leb128:
+      case BFlatEncoding.Datetime:
+        for(int i = 0; i < count; ++i)
+        {
+          long v = value.getLong(i);
+          if((kinds & (1 << BFlatSubscription.EqualLong)) != 0)
+          {
+            int pred = findPredicate(tag, BFlatSubscription.EqualLong, v, 0,
+                null, 0, 0,
+                Utils.hash(seed(tag, BFlatSubscription.EqualLong), v, 0));
+            if(pred >= 0) hit(pred);
+          }
+          if((kinds & (1 << BFlatSubscription.Range)) != 0)
+          {
+            _ranges[tag].query(this, (double)v);
+          }
+        }
+        break;
+      case BFlatEncoding.Double:
+        for(int i = 0; i < count; ++i)
+        {
+          double d = value.getDouble(i);
+          if(d != d) continue;
+          if((kinds & (1 << BFlatSubscription.EqualDouble)) != 0)
+          {
+            long bits = BFlatSubscription.doubleKey(d);
+            int pred = findPredicate(tag, BFlatSubscription.EqualDouble,
+                bits, 0, null, 0, 0,
+                Utils.hash(seed(tag, BFlatSubscription.EqualDouble), bits, 0));
+            if(pred >= 0) hit(pred);
+          }
+          if((kinds & (1 << BFlatSubscription.Range)) != 0)
+          {
+            _ranges[tag].query(this, d);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  // Count a satisfied predicate toward each subscription that contains it.
+  // Stamps let us skip clearing counters between messages and ignore a
+  // predicate satisfied more than once by the same message.
+  void hit(int pred)
+  {
+    if(_predStamp[pred] == _epoch) return;
+    _predStamp[pred] = _epoch;
+    int[] subs = _predSubs[pred];
+    int n = _predSubCount[pred];
+    for(int i = 0; i < n; ++i)
+    {
+      int sub = subs[i];
+      if(_subStamp[sub] != _epoch)
+      {
+        _subStamp[sub] = _epoch;
+        _subCount[sub] = 0;
+      }
+      if(++_subCount[sub] == _subNeed[sub])
+      {
+        if(_matchCount == _matches.length)
+        {
+          _matches = Arrays.copyOf(_matches, _matchCount * 2);
+        }
+        _matches[_matchCount++] = sub;
+      }
+    }
+  }
+
+  //
+  // Subscriptions
+  //
+  private int allocateSubscription()
+  {
+    if(_freeSubCount > 0)
+    {
+      return _freeSubs[--_freeSubCount];
+    }
+    int id = _subLimit++;
+    if(id == _subPreds.length)
+    {
+      int capacity = id * 2;
+      _subPreds = Arrays.copyOf(_subPreds, capacity);
+      _subNeed  = Arrays.copyOf(_subNeed, capacity);
+      _subCount = Arrays.copyOf(_subCount, capacity);
+      _subStamp = Arrays.copyOf(_subStamp, capacity);
+    }
+    return id;
+  }
+
+  private void addSubscriber(int pred, int sub)
+  {
+    int n = _predSubCount[pred];
+    int[] subs = _predSubs[pred];
+    if(n == subs.length)
+    {
+      subs = _predSubs[pred] = Arrays.copyOf(subs, n * 2);
+    }
+    subs[n] = sub;
+    _predSubCount[pred] = n + 1;
+  }
+
+  private void removeSubscriber(int pred, int sub)
+  {
+    int n = _predSubCount[pred];
+    int[] subs = _predSubs[pred];
+    for(int i = 0; i < n; ++i)
+    {
+      if(subs[i] == sub)
+      {
+        subs[i] = subs[--n];
+        break;
+      }
+    }
+    _predSubCount[pred] = n;
+    if(n == 0)
+    {
+      removePredicate(pred);
+    }
+  }
+
+  //
+  // Tags
+  //
+  private int findTag(byte[] data, int offset, int length)
+  {
+    int hash = Utils.hash(0, data, offset, length);
+    int mask = _tagSlots.length - 1;
+    for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+    {
+      int tag = _tagSlots[slot] - 1;
+      if(tag < 0) return -1;
+      if(_tagHashes[tag] == hash &&
+         _tagNames[tag].length == length &&
+         Utils.regionEquals(_tagNames[tag], 0, data, offset, length))
+      {
+        return tag;
+      }
+    }
+  }
+
+  private int addTag(byte[] tagName)
+  {
+    int tag = _tagCount++;
+    if(tag == _tagNames.length)
+    {
+      int capacity = tag * 2;
+      _tagNames      = Arrays.copyOf(_tagNames, capacity);
+      _tagHashes     = Arrays.copyOf(_tagHashes, capacity);
+      _tagKinds      = Arrays.copyOf(_tagKinds, capacity);
+      _tagKindCounts = Arrays.copyOf(_tagKindCounts, capacity * 4);
+      _ranges        = Arrays.copyOf(_ranges, capacity);
+    }
+    _tagNames[tag] = tagName;
+    _tagHashes[tag] = Utils.hash(0, tagName, 0, tagName.length);
+    if(_tagCount * 2 > _tagSlots.length)
+    {
+      _tagSlots = new int[_tagSlots.length * 2];
+      for(int i = 0; i < _tagCount; ++i)
+      {
+        insertSlot(_tagSlots, _tagHashes[i], i);
+      }
+    }
+    else
+    {
+      insertSlot(_tagSlots, _tagHashes[tag], tag);
+    }
+    return tag;
+  }
+
+  //
+  // Predicates
+  //
+  private int findOrAddPredicate(int tag, byte kind, long bits, long bits2,
+                                 byte[] bytes)
+  {
+    int hash = kind == BFlatSubscription.EqualBytes
+      ? Utils.hash(seed(tag, kind), bytes, 0, bytes.length)
+      : Utils.hash(seed(tag, kind), bits, bits2);
+    int pred = findPredicate(tag, kind, bits, bits2, bytes, 0,
+        bytes == null ? 0 : bytes.length, hash);
+    if(pred >= 0)
+    {
+      return pred;
+    }
+    if(_freePredCount > 0)
+    {
+      pred = _freePreds[--_freePredCount];
+    }
+    else
+    {
+      pred = _predLimit++;
+      if(pred == _predTag.length)
+      {
+        int capacity = pred * 2;
+        _predTag      = Arrays.copyOf(_predTag, capacity);
+        _predKind     = Arrays.copyOf(_predKind, capacity);
+        _predBits     = Arrays.copyOf(_predBits, capacity);
+        _predBits2    = Arrays.copyOf(_predBits2, capacity);
+        _predBytes    = Arrays.copyOf(_predBytes, capacity);
+        _predHash     = Arrays.copyOf(_predHash, capacity);
+        _predSubs     = Arrays.copyOf(_predSubs, capacity);
+        _predSubCount = Arrays.copyOf(_predSubCount, capacity);
+        _predStamp    = Arrays.copyOf(_predStamp, capacity);
+        _predLive     = Arrays.copyOf(_predLive, capacity);
+      }
+    }
+    _predTag[pred]      = tag;
+    _predKind[pred]     = kind;
+    _predBits[pred]     = bits;
+    _predBits2[pred]    = bits2;
+    _predBytes[pred]    = bytes;
+    _predHash[pred]     = hash;
+    _predSubs[pred]     = new int[2];
+    _predSubCount[pred] = 0;
+    _predStamp[pred]    = 0;
+    _predLive[pred]     = true;
+    ++_predCount;
+
+    if(_predCount * 2 > _predSlots.length)
+    {
+      _predSlots = new int[_predSlots.length * 2];
+      for(int i = 0; i < _predLimit; ++i)
+      {
+        if(_predLive[i]) insertSlot(_predSlots, _predHash[i], i);
+      }
+    }
+    else
+    {
+      insertSlot(_predSlots, hash, pred);
+    }
+
+    if(++_tagKindCounts[tag * 4 + kind] == 1)
+    {
+      _tagKinds[tag] |= 1 << kind;
+    }
+    if(kind == BFlatSubscription.Range)
+    {
+      if(_ranges[tag] == null)
+      {
+        _ranges[tag] = new RangeIndex();
+      }
+      _ranges[tag].add(pred, Double.longBitsToDouble(bits),
+                       Double.longBitsToDouble(bits2));
+    }
+    return pred;
+  }
+
+  private int findPredicate(int tag, byte kind, long bits, long bits2,
+                            byte[] data, int offset, int length, int hash)
+  {
+    int mask = _predSlots.length - 1;
+    for(int slot = hash & mask; ; slot = (slot + 1) & mask)
+    {
+      int pred = _predSlots[slot] - 1;
+      if(pred < 0) return -1;
+      if(_predHash[pred] == hash && _predTag[pred] == tag &&
+         _predKind[pred] == kind)
+      {
+        if(kind == BFlatSubscription.EqualBytes)
+        {
+          byte[] bytes = _predBytes[pred];
+          if(bytes.length == length &&
+             Utils.regionEquals(bytes, 0, data, offset, length))
+          {
+            return pred;
+          }
+        }
+        else if(_predBits[pred] == bits && _predBits2[pred] == bits2)
+        {
+          return pred;
+        }
+      }
+    }
+  }
+
+  private void removePredicate(int pred)
+  {
+    // backward-shift deletion keeps probe sequences intact without
+    // leaving tombstones behind.
+    int mask = _predSlots.length - 1;
+    int slot = _predHash[pred] & mask;
+    while(_predSlots[slot] - 1 != pred)
+    {
+      slot = (slot + 1) & mask;
+    }
+    int next = slot;
+    while(true)
+    {
+      next = (next + 1) & mask;
+      int other = _predSlots[next] - 1;
+      if(other < 0) break;
+      int home = _predHash[other] & mask;
+      // move 'other' into the hole unless its home lies cyclically in
+      // (slot, next].
+      boolean inRange = slot <= next ? (slot < home && home <= next)
+                                     : (slot < home || home <= next);
+      if(!inRange)
+      {
+        _predSlots[slot] = _predSlots[next];
+        slot = next;
+      }
+    }
+    _predSlots[slot] = 0;
+
+    int tag = _predTag[pred];
+    byte kind = _predKind[pred];
+    if(--_tagKindCounts[tag * 4 + kind] == 0)
+    {
+      _tagKinds[tag] &= ~(1 << kind);
+    }
+    if(kind == BFlatSubscription.Range)
+    {
+      _ranges[tag].remove(pred);
+    }
+    _predBytes[pred] = null;
+    _predSubs[pred] = null;
+    _predLive[pred] = false;
+    --_predCount;
+    if(_freePredCount == _freePreds.length)
+    {
+      _freePreds = Arrays.copyOf(_freePreds, _freePreds.length * 2);
+    }
+    _freePreds[_freePredCount++] = pred;
+  }
+
+  //
+  // Hashing helpers
+  //
+  private static void insertSlot(int[] slots, int hash, int index)
+  {
+    int mask = slots.length - 1;
+    int slot = hash & mask;
+    while(slots[slot] != 0)
+    {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+  }
+
+  private static int seed(int tag, byte kind)
+  {
+    return (tag * 0x9E3779B9) ^ kind;
+  }
+
+  //
+  // A centered interval tree over the range predicates of one tag. The tree
+  // is rebuilt lazily on the first query after the set of ranges changes.
+  //
+  static final class RangeIndex
+  {
+    void add(int pred, double low, double high)
+    {
+      if(_count == _preds.length)
+      {
+        int capacity = _count * 2;
+        _preds = Arrays.copyOf(_preds, capacity);
+        _low   = Arrays.copyOf(_low, capacity);
+        _high  = Arrays.copyOf(_high, capacity);
+      }
+      _preds[_count] = pred;
+      _low[_count]   = low;
+      _high[_count]  = high;
+      ++_count;
+      _dirty = true;
+    }
+
+    void remove(int pred)
+    {
+      for(int i = 0; i < _count; ++i)
+      {
+        if(_preds[i] == pred)
+        {
+          --_count;
+          _preds[i] = _preds[_count];
+          _low[i]   = _low[_count];
+          _high[i]  = _high[_count];
+          _dirty = true;
+          return;
+        }
+      }
+    }
+
+    void query(BFlatMatcher matcher, double x)
+    {
+      if(_dirty) build();
+      int node = _root;
+      while(node >= 0)
+      {
+        double center = _center[node];
+        int start = _start[node];
+        int end = start + _length[node];
+        if(x < center)
+        {
+          for(int i = start; i < end && _low[_byLow[i]] <= x; ++i)
+          {
+            matcher.hit(_preds[_byLow[i]]);
+          }
+          node = _left[node];
+        }
+        else if(x > center)
+        {
+          for(int i = start; i < end && _high[_byHigh[i]] >= x; ++i)
+          {
+            matcher.hit(_preds[_byHigh[i]]);
+          }
+          node = _right[node];
+        }
+        else
+        {
+          for(int i = start; i < end; ++i)
+          {
+            matcher.hit(_preds[_byLow[i]]);
+          }
+          break;
+        }
+      }
+    }
+
+    private void build()
+    {
+      int[] byLow = new int[_count];
+      int[] byHigh = new int[_count];
+      for(int i = 0; i < _count; ++i)
+      {
+        byLow[i] = byHigh[i] = i;
+      }
+      sort(byLow, _low, false);
+      sort(byHigh, _high, true);
+      _byLow = new int[_count];
+      _byHigh = new int[_count];
+      _nodes = 0;
+      _used = 0;
+      _root = build(byLow, byHigh, _count);
+      _dirty = false;
+    }
+
+    // byLow is sorted by ascending low bound and byHigh by descending high
+    // bound; both hold the same n intervals.
+    private int build(int[] byLow, int[] byHigh, int n)
+    {
+      if(n == 0) return -1;
+      // the median low bound guarantees at most n/2 intervals on each side
+      double center = _low[byLow[n / 2]];
+      int leftCount = 0, rightCount = 0;
+      for(int i = 0; i < n; ++i)
+      {
+        int interval = byLow[i];
+        if(_high[interval] < center) ++leftCount;
+        else if(_low[interval] > center) ++rightCount;
+      }
+      int[] leftLow = new int[leftCount], leftHigh = new int[leftCount];
+      int[] rightLow = new int[rightCount], rightHigh = new int[rightCount];
+      int node = newNode(center, n - leftCount - rightCount);
+      int start = _start[node];
+      int l = 0, r = 0, m = start;
+      for(int i = 0; i < n; ++i)
+      {
+        int interval = byLow[i];
+        if(_high[interval] < center) leftLow[l++] = interval;
+        else if(_low[interval] > center) rightLow[r++] = interval;
+        else _byLow[m++] = interval;
+      }
+      l = 0; r = 0; m = start;
+      for(int i = 0; i < n; ++i)
+      {
+        int interval = byHigh[i];
+        if(_high[interval] < center) leftHigh[l++] = interval;
+        else if(_low[interval] > center) rightHigh[r++] = interval;
+        else _byHigh[m++] = interval;
+      }
+      int left = build(leftLow, leftHigh, leftCount);
+      int right = build(rightLow, rightHigh, rightCount);
+      _left[node] = left;
+      _right[node] = right;
+      return node;
+    }
+
+    private int newNode(double center, int length)
+    {
+      int node = _nodes++;
+      if(node == _center.length)
+      {
+        int capacity = node * 2;
+        _center = Arrays.copyOf(_center, capacity);
+        _start  = Arrays.copyOf(_start, capacity);
+        _length = Arrays.copyOf(_length, capacity);
+        _left   = Arrays.copyOf(_left, capacity);
+        _right  = Arrays.copyOf(_right, capacity);
+      }
+      _center[node] = center;
+      _start[node] = _used;
+      _length[node] = length;
+      _used += length;
+      return node;
+    }
+
+    // merge sort of interval indices by key, avoiding boxing
+    private static void sort(int[] indices, double[] keys, boolean descending)
+    {
+      int[] scratch = new int[indices.length];
+      for(int width = 1; width < indices.length; width *= 2)
+      {
+        for(int lo = 0; lo < indices.length; lo += 2 * width)
+        {
+          int mid = Math.min(lo + width, indices.length);
+          int hi = Math.min(lo + 2 * width, indices.length);
+          int i = lo, j = mid, k = lo;
+          while(i < mid && j < hi)
+          {
+            double a = keys[indices[i]], b = keys[indices[j]];
+            boolean takeLeft = descending ? a >= b : a <= b;
+            scratch[k++] = takeLeft ? indices[i++] : indices[j++];
+          }
+          while(i < mid) scratch[k++] = indices[i++];
+          while(j < hi) scratch[k++] = indices[j++];
+        }
+        System.arraycopy(scratch, 0, indices, 0, indices.length);
+      }
+    }
+
+    int[]    _preds  = new int[4];
+    double[] _low    = new double[4];
+    double[] _high   = new double[4];
+    int      _count;
+    boolean  _dirty;
+
+    int[]    _byLow  = new int[0];
+    int[]    _byHigh = new int[0];
+    double[] _center = new double[4];
+    int[]    _start  = new int[4];
+    int[]    _length = new int[4];
+    int[]    _left   = new int[4];
+    int[]    _right  = new int[4];
+    int      _nodes;
+    int      _used;
+    int      _root   = -1;
+  }
+
+  BFlatParser  _parser        = new BFlatParser();
+  int          _epoch;
+  int[]        _matches       = new int[16];
+  int          _matchCount;
+
+  byte[][]     _tagNames      = new byte[8][];
+  int[]        _tagHashes     = new int[8];
+  int[]        _tagKinds      = new int[8];
+  int[]        _tagKindCounts = new int[32];
+  RangeIndex[] _ranges        = new RangeIndex[8];
+  int[]        _tagSlots      = new int[16];
+  int          _tagCount;
+
+  int[]        _predTag       = new int[16];
+  byte[]       _predKind      = new byte[16];
+  long[]       _predBits      = new long[16];
+  long[]       _predBits2     = new long[16];
+  byte[][]     _predBytes     = new byte[16][];
+  int[]        _predHash      = new int[16];
+  int[][]      _predSubs      = new int[16][];
+  int[]        _predSubCount  = new int[16];
+  int[]        _predStamp     = new int[16];
+  boolean[]    _predLive      = new boolean[16];
+  int[]        _predSlots     = new int[32];
+  int[]        _freePreds     = new int[16];
+  int          _freePredCount;
+  int          _predLimit;
+  int          _predCount;
+
+  int[][]      _subPreds      = new int[16][];
+  int[]        _subNeed       = new int[16];
+  int[]        _subCount      = new int[16];
+  int[]        _subStamp      = new int[16];
+  int[]        _freeSubs      = new int[16];
+  int          _freeSubCount;
+  int          _subLimit;
+  int          _subscriptions;
+}
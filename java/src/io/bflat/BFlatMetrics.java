@@ -0,0 +1,304 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters of the messages, fields and bytes parsed by
+ * {@link BFlatParser} and encoded by {@link BFlatBuilder}, and of the
+ * errors raised while doing so. Metrics are enabled by starting the JVM
+ * with <tt>-Dio.bflat.metrics=true</tt>; otherwise every hook is a test of
+ * the constant {@link #Enabled}, which the JIT compiler removes, and the
+ * counters stay at zero.
+ * <p>
+ * Counters are striped {@link LongAdder}s shared by all threads, so
+ * counting from many threads at once does not contend on one cache line.
+ * A message counts as parsed when {@link BFlatParser#parse(byte[],int,int)}
+ * begins on it, and as encoded when {@link BFlatBuilder#endFrame} completes
+ * its frame.
+ * <p>
+ * A message that is slow, taking at least
+ * <tt>io.bflat.metrics.slowNanos</tt> nanoseconds (default 1ms), or large,
+ * at least <tt>io.bflat.metrics.largeBytes</tt> bytes (default 1MB), is also
+ * reported as an <tt>io.bflat.Message</tt> JDK Flight Recorder event with
+ * its size and field count. Parse time runs from <tt>parse</tt> to the
+ * message's last field, so it includes the caller's processing between
+ * fields; encode time runs from {@link BFlatBuilder#beginFrame} to
+ * <tt>endFrame</tt>.
+ */
+public final class BFlatMetrics
+{
+  /**
+   * True if metrics were enabled with the <tt>io.bflat.metrics</tt>
+   * system property when this class was loaded.
+   */
+  public static final boolean Enabled = Boolean.getBoolean("io.bflat.metrics");
+
+  /**
+   * The time in nanoseconds at or above which a message is reported as a
+   * Flight Recorder event.
+   */
+  public static final long SlowNanos =
+    Long.getLong("io.bflat.metrics.slowNanos",1000000L);
+
+  /**
+   * The size in bytes at or above which a message is reported as a Flight
+   * Recorder event.
+   */
+  public static final int LargeBytes =
+    Integer.getInteger("io.bflat.metrics.largeBytes",1 << 20);
+
+  /**
+   * Returns the number of messages parsed.
+   * @return The number of messages parsed.
+   */
+  public static long getMessagesParsed()
+  {
+    return _messagesParsed.sum();
+  }
+
+  /**
+   * Returns the number of bytes in the messages parsed.
+   * @return The number of bytes parsed.
+   */
+  public static long getBytesParsed()
+  {
+    return _bytesParsed.sum();
+  }
+
+  /**
+   * Returns the number of fields of a type parsed, counting an array as
+   * one field. A message's fields are counted when the parser reaches its
+   * end or begins another message.
+   * @param type One of the type codes from {@link BFlatEncoding}.
+   * @return The number of fields of <tt>type</tt> parsed.
+   */
+  public static long getFieldsParsed(byte type)
+  {
+    return _fieldsParsed[index(type)].sum();
+  }
+
+  /**
+   * Returns the number of framed messages encoded.
+   * @return The number of messages encoded.
+   */
+  public static long getMessagesEncoded()
+  {
+    return _messagesEncoded.sum();
+  }
+
+  /**
+   * Returns the number of bytes in the framed messages encoded, not
+   * counting frame lengths.
+   * @return The number of bytes encoded.
+   */
+  public static long getBytesEncoded()
+  {
+    return _bytesEncoded.sum();
+  }
+
+  /**
+   * Returns the number of fields of a type encoded, counting an array as
+   * one field.
+   * @param type One of the type codes from {@link BFlatEncoding}.
+   * @return The number of fields of <tt>type</tt> encoded.
+   */
+  public static long getFieldsEncoded(byte type)
+  {
+    return _fieldsEncoded[index(type)].sum();
+  }
+
+  /**
+   * Returns the number of {@link BFlatException}s raised by
+   * {@link BFlatParser} for malformed data, such as a truncated value or
+   * an unknown type. Errors from reading JSON or splitting frames are not
+   * counted.
+   * @return The number of parse errors.
+   */
+  public static long getParseErrors()
+  {
+    return _parseErrors.sum();
+  }
+
+  /**
+   * Returns the number of {@link BufferTooSmallException}s raised.
+   * @return The number of times an output buffer was too small.
+   */
+  public static long getBufferTooSmall()
+  {
+    return _bufferTooSmall.sum();
+  }
+
+  /**
+   * Reset every counter to zero. Counts made concurrently with a reset
+   * may or may not be kept.
+   */
+  public static void reset()
+  {
+    _messagesParsed.reset();
+    _bytesParsed.reset();
+    _messagesEncoded.reset();
+    _bytesEncoded.reset();
+    _parseErrors.reset();
+    _bufferTooSmall.reset();
+    for(int type = 0; type < TypeCount; ++type)
+    {
+      _fieldsParsed[type].reset();
+      _fieldsEncoded[type].reset();
+    }
+  }
+
+  static void parsing(BFlatParser parser, int length)
+  {
+    _messagesParsed.increment();
+    _bytesParsed.add(length);
+    if(parser._fields != 0)
+    {
+      flush(parser);
+    }
+    if(parser._typeFields == null)
+    {
+      parser._typeFields = new int[TypeCount];
+    }
+    parser._began = began();
+  }
+
+  static void parsed(BFlatParser parser, BFlatValue value)
+  {
+    if(value == null)
+    {
+      return;
+    }
+    ++parser._typeFields[index(value.getType())];
+    ++parser._fields;
+    if(!parser.hasNext())
+    {
+      message("parse",parser._end - parser.start,parser._fields,
+              parser._began);
+      flush(parser);
+    }
+  }
+
+  // Field counts are kept in the parser until its message ends, or the
+  // next begins, so that a field costs an array increment rather than an
+  // update of a shared counter.
+  static void flush(BFlatParser parser)
+  {
+    int[] typeFields = parser._typeFields;
+    for(int type = 0; type < TypeCount; ++type)
+    {
+      if(typeFields[type] != 0)
+      {
+        _fieldsParsed[type].add(typeFields[type]);
+        typeFields[type] = 0;
+      }
+    }
+    parser._fields = 0;
+  }
+
+  static void encoding(BFlatBuilder builder)
+  {
+    builder._began = began();
+    builder._fields = 0;
+  }
+
+  static void encoded(BFlatBuilder builder, byte type)
+  {
+    _fieldsEncoded[index(type)].increment();
+    ++builder._fields;
+  }
+
+  static void encoded(BFlatBuilder builder, int length)
+  {
+    _messagesEncoded.increment();
+    _bytesEncoded.add(length);
+    message("encode",length,builder._fields,builder._began);
+  }
+
+  static void parseError()
+  {
+    _parseErrors.increment();
+  }
+
+  static void bufferTooSmall()
+  {
+    _bufferTooSmall.increment();
+  }
+
+  // Messages are only timed while a recording has the event enabled.
+  static long began()
+  {
+    return MessageEvent.Type.isEnabled() ? System.nanoTime() : 0;
+  }
+
+  static void message(String operation, int size, int fields, long began)
+  {
+    if(!MessageEvent.Type.isEnabled())
+    {
+      return;
+    }
+    long nanos = began == 0 ? 0 : System.nanoTime() - began;
+    if(nanos < SlowNanos && size < LargeBytes)
+    {
+      return;
+    }
+    MessageEvent event = new MessageEvent();
+    event.operation = operation;
+    event.size = size;
+    event.fields = fields;
+    event.time = nanos;
+    event.commit();
+  }
+
+  static int index(byte type)
+  {
+    return (type & BFlatEncoding.TypeMask) >> 3;
+  }
+
+  static LongAdder[] adders()
+  {
+    LongAdder[] adders = new LongAdder[TypeCount];
+    for(int type = 0; type < TypeCount; ++type)
+    {
+      adders[type] = new LongAdder();
+    }
+    return adders;
+  }
+
+  static final int TypeCount = (BFlatEncoding.TypeMask >> 3) + 1;
+
+  static final LongAdder   _messagesParsed  = new LongAdder();
+  static final LongAdder   _bytesParsed     = new LongAdder();
+  static final LongAdder[] _fieldsParsed    = adders();
+  static final LongAdder   _messagesEncoded = new LongAdder();
+  static final LongAdder   _bytesEncoded    = new LongAdder();
+  static final LongAdder[] _fieldsEncoded   = adders();
+  static final LongAdder   _parseErrors     = new LongAdder();
+  static final LongAdder   _bufferTooSmall  = new LongAdder();
+
+  private BFlatMetrics()
+  {
+  }
+}
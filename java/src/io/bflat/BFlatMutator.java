@@ -0,0 +1,331 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+
+/**
+ * BFlatMutator changes the values of an encoded message in place. The
+ * message is indexed once by {@link #wrap}; after that, each fixed-width
+ * value (<tt>Int8</tt> through <tt>Int64</tt>, <tt>Double</tt> and
+ * <tt>Datetime</tt>) is overwritten directly with {@link Fixed}, without
+ * touching the rest of the message. Variable-length values (<tt>String</tt>,
+ * <tt>Binary</tt> and <tt>Leb128</tt>) may also be replaced; when the
+ * encoded length changes, the bytes after the field are moved with a single
+ * copy.
+ * <p>
+ * Example of stamping a sequence number and time on a republished message:
+ * <pre>
+ * BFlatMutator mutator = new BFlatMutator();
+ * mutator.wrap(data, 0, length);
+ * int seq = mutator.indexOf("seq");
+ * int time = mutator.indexOf("time");
+ * mutator.setLong(seq, nextSequence);
+ * mutator.setLong(time, System.currentTimeMillis());
+ * </pre>
+ * Field numbers are positions in the message, so they remain valid for
+ * other messages with the same layout once those are wrapped.
+ * <p>
+ * Only scalar fields can be changed; array fields are indexed but not
+ * mutable. A BFlatMutator is not thread-safe.
+ */
+public class BFlatMutator
+{
+  /**
+   * Construct a BFlatMutator.
+   */
+  public BFlatMutator()
+  {
+  }
+
+  /**
+   * Index a message for mutation. The message may grow into the remainder
+   * of <tt>data</tt> when a variable-length value is lengthened.
+   *
+   * @param data   The array containing the encoded message.
+   * @param offset The position in <tt>data</tt> where the message begins.
+   * @param length The length of the message in bytes.
+   * @return This mutator.
+   * @throws BFlatException The message could not be parsed.
+   */
+  public BFlatMutator wrap(byte[] data, int offset, int length)
+  {
+    _data = data;
+    _offset = offset;
+    _length = length;
+    _count = 0;
+    for(BFlatValue value : _parser.parse(data, offset, length))
+    {
+      value.reuse();
+      if(_count == _type.length)
+      {
+        int capacity = _count * 2;
+        _type       = Arrays.copyOf(_type, capacity);
+        _tagOffset  = Arrays.copyOf(_tagOffset, capacity);
+        _tagLength  = Arrays.copyOf(_tagLength, capacity);
+        _dataOffset = Arrays.copyOf(_dataOffset, capacity);
+        _fieldEnd   = Arrays.copyOf(_fieldEnd, capacity);
+      }
+      int fieldOffset = value.getRawFieldOffset();
+      _type[_count]       = (byte)(data[fieldOffset] &
+                                   ~BFlatEncoding.LengthMask);
+      _tagOffset[_count]  = value.getRawTagOffset();
+      _tagLength[_count]  = value.getRawTagLength();
+      _dataOffset[_count] = value._dataOffset;
+      _fieldEnd[_count]   = fieldOffset + value.getRawFieldLength();
+      ++_count;
+    }
+    return this;
+  }
+
+  /**
+   * Returns the number of fields in the wrapped message.
+   * @return the number of fields.
+   */
+  public int size()
+  {
+    return _count;
+  }
+
+  /**
+   * Returns the current length of the wrapped message, which changes when
+   * a variable-length value is replaced with one of a different size.
+   * @return the length of the message in bytes.
+   */
+  public int getLength()
+  {
+    return _length;
+  }
+
+  /**
+   * Returns the number of the first field with the given tag.
+   *
+   * @param tag The tag name to look for.
+   * @return The field number, or -1 if the message has no such field.
+   */
+  public int indexOf(String tag)
+  {
+    byte[] name = tag.getBytes(BFlatValue.UTF_8);
+    for(int field = 0; field < _count; ++field)
+    {
+      if(_tagLength[field] == name.length &&
+         Utils.regionEquals(_data, _tagOffset[field], name, 0, name.length))
+      {
+        return field;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the type of a field.
+   *
+   * @param field The field number.
+   * @return One of the constants defined in {@link BFlatEncoding}.
+   */
+  public byte getType(int field)
+  {
+    return (byte)(_type[field] & BFlatEncoding.TypeMask);
+  }
+
+  /**
+   * Set the value of an integer or <tt>Datetime</tt> field. Fixed-width
+   * fields are overwritten in place and keep their width; a <tt>Leb128</tt>
+   * field is resized if necessary.
+   *
+   * @param field The field number.
+   * @param value The new value.
+   * @return This mutator.
+   * @throws BFlatException          The field is not an integer or Datetime
+   *                                 scalar, or <tt>value</tt> does not fit
+   *                                 its width.
+   * @throws BufferTooSmallException A resized message does not fit in its
+   *                                 array.
+   */
+  public BFlatMutator setLong(int field, long value)
+  {
+    int position = scalar(field);
+    switch(_type[field])
+    {
+      case BFlatEncoding.Int8:
+        checkRange(value, Byte.MIN_VALUE, Byte.MAX_VALUE);
+        Fixed.encodeInt8((byte)value, _data, position);
+        break;
+      case BFlatEncoding.Int16:
+        checkRange(value, Short.MIN_VALUE, Short.MAX_VALUE);
+        Fixed.encodeInt16((short)value, _data, position);
+        break;
+      case BFlatEncoding.Int32:
+        checkRange(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        Fixed.encodeInt32((int)value, _data, position);
+        break;
+      case BFlatEncoding.Int64:
+      case BFlatEncoding.Datetime:
+        Fixed.encodeInt64(value, _data, position);
+        break;
+      case BFlatEncoding.Leb128:
+        resize(field, Leb128.signedLength(value));
+        _writer.data = _data;
+        _writer.position = position;
+        Leb128.encodeSigned(_writer, value);
+        break;
+      default:
+        throw new BFlatException("field is not an integer");
+    }
+    return this;
+  }
+
+  /**
+   * Set the value of a <tt>Double</tt> field in place.
+   *
+   * @param field The field number.
+   * @param value The new value.
+   * @return This mutator.
+   * @throws BFlatException The field is not a Double scalar.
+   */
+  public BFlatMutator setDouble(int field, double value)
+  {
+    int position = scalar(field);
+    if(_type[field] != BFlatEncoding.Double)
+    {
+      throw new BFlatException("field is not a double");
+    }
+    Fixed.encodeDouble(value, _data, position);
+    return this;
+  }
+
+  /**
+   * Set the value of a <tt>String</tt> field, resizing it if necessary.
+   *
+   * @param field The field number.
+   * @param value The new value.
+   * @return This mutator.
+   * @throws BFlatException          The field is not a String scalar.
+   * @throws BufferTooSmallException The resized message does not fit in its
+   *                                 array.
+   */
+  public BFlatMutator setString(int field, String value)
+  {
+    int position = scalar(field);
+    if(_type[field] != BFlatEncoding.String)
+    {
+      throw new BFlatException("field is not a string");
+    }
+    int length = Utils.utf8Length(value);
+    resize(field, Leb128.unsignedLength(length) + length);
+    _writer.data = _data;
+    _writer.position = position;
+    _writer.encode(value);
+    return this;
+  }
+
+  /**
+   * Set the value of a <tt>Binary</tt> or <tt>String</tt> field to a copy of
+   * the given bytes, resizing it if necessary. For a String field the bytes
+   * must be valid UTF-8; no checking is performed.
+   *
+   * @param field  The field number.
+   * @param value  The array containing the new value.
+   * @param offset The position in <tt>value</tt> where it begins.
+   * @param length The length of the new value in bytes.
+   * @return This mutator.
+   * @throws BFlatException          The field is not a Binary or String
+   *                                 scalar.
+   * @throws BufferTooSmallException The resized message does not fit in its
+   *                                 array.
+   */
+  public BFlatMutator setBytes(int field, byte[] value, int offset,
+                               int length)
+  {
+    int position = scalar(field);
+    if(_type[field] != BFlatEncoding.Binary &&
+       _type[field] != BFlatEncoding.String)
+    {
+      throw new BFlatException("field is not binary or string");
+    }
+    resize(field, Leb128.unsignedLength(length) + length);
+    _writer.data = _data;
+    _writer.position = position;
+    _writer.encode(value, offset, length);
+    return this;
+  }
+
+  private int scalar(int field)
+  {
+    if(field < 0 || field >= _count)
+    {
+      throw new BFlatException("no such field: " + field);
+    }
+    if((_type[field] & BFlatEncoding.ArrayMask) != 0)
+    {
+      throw new BFlatException("array fields cannot be mutated");
+    }
+    return _dataOffset[field];
+  }
+
+  private static void checkRange(long value, long min, long max)
+  {
+    if(value < min || value > max)
+    {
+      throw new BFlatException("value does not fit the width of the field");
+    }
+  }
+
+  // Change the encoded data length of a field, moving everything after it.
+  private void resize(int field, int dataLength)
+  {
+    int end = _fieldEnd[field];
+    int shift = _dataOffset[field] + dataLength - end;
+    if(shift == 0)
+    {
+      return;
+    }
+    int messageEnd = _offset + _length;
+    if(messageEnd + shift > _data.length)
+    {
+      throw new BufferTooSmallException("while resizing a field");
+    }
+    System.arraycopy(_data, end, _data, end + shift, messageEnd - end);
+    _length += shift;
+    _fieldEnd[field] += shift;
+    for(int later = field + 1; later < _count; ++later)
+    {
+      _tagOffset[later]  += shift;
+      _dataOffset[later] += shift;
+      _fieldEnd[later]   += shift;
+    }
+  }
+
+  final BFlatParser  _parser = new BFlatParser();
+  final BFlatBuilder _writer = new BFlatBuilder(null, 0);
+  byte[] _data;
+  int    _offset;
+  int    _length;
+  int    _count;
+  byte[] _type       = new byte[16];
+  int[]  _tagOffset  = new int[16];
+  int[]  _tagLength  = new int[16];
+  int[]  _dataOffset = new int[16];
+  int[]  _fieldEnd   = new int[16];
+}
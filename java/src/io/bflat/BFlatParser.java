@@ -123,9 +123,29 @@ public class BFlatParser extends Buffer implements Iterable<BFlatValue>,
     this.start = this.position;
 
     _end = position + length;
+    if(BFlatMetrics.Enabled) BFlatMetrics.parsing(this,length);
     return this;
   }
 
+  /**
+   * Begin parsing a BFlat message nested inside a <tt>Binary</tt> value of
+   * another message, such as one written with
+   * {@link BFlatBuilder#beginNested}. The nested message is parsed in place
+   * in the outer message's buffer; nothing is copied. Use a different
+   * parser object from the one iterating over the outer message.
+   *
+   * @param value A <tt>Binary</tt> value containing a BFlat message.
+   *
+   * @return This parser object, which may be used as an iterator over the
+   *         values in the nested message.
+   * @throws BFlatException An error occurred parsing this message.
+   */
+  public BFlatParser parse(BFlatValue value)
+  {
+    return parse(value.getBuffer(),value.getRawValueOffset(),
+                 value.getRawValueLength());
+  }
+
   /**
    * Returns an iterator over the parsed values in this message.
    */
@@ -158,7 +178,16 @@ public class BFlatParser extends Buffer implements Iterable<BFlatValue>,
    */
   public BFlatValue next()
   {
-    _prev = parseNext();
+    try
+    {
+      _prev = parseNext();
+    }
+    catch(BFlatException e)
+    {
+      if(BFlatMetrics.Enabled) BFlatMetrics.parseError();
+      throw e;
+    }
+    if(BFlatMetrics.Enabled) BFlatMetrics.parsed(this,_prev);
     return _prev;
   }
 
@@ -172,6 +201,7 @@ public class BFlatParser extends Buffer implements Iterable<BFlatValue>,
     BFlatValue value = (_prev!=null && _prev.isReuse()) 
       ? _prev.reset(data) : new BFlatValue(data);
 
+    int fieldStart = position;
     byte byte0 = data[position++];
     byte type = (byte)(byte0 & BFlatEncoding.TypeMask);
     boolean isArray = (byte0 & BFlatEncoding.ArrayMask) != 0;
@@ -236,9 +266,13 @@ public class BFlatParser extends Buffer implements Iterable<BFlatValue>,
       default:
         throw new BFlatException("unknown value type", position);
     }
+    value.setField(fieldStart, position - fieldStart);
     return value;
   }
 
   BFlatValue _prev;
   int        _end;
+  long       _began;
+  int        _fields;
+  int[]      _typeFields;
 }
@@ -0,0 +1,278 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
+
+/**
+ * BFlatProcessor is a {@link java.util.concurrent.Flow.Processor} stage
+ * that filters, projects or transcodes a stream of BFlat messages, such as
+ * one from a {@link BFlatPublisher}, on an executor of its choosing.
+ * <p>
+ * Demand flows upstream in batches of at most {@link #BatchSize} messages;
+ * the next batch is only requested once the previous one has been
+ * processed, so the views received from upstream remain valid while they
+ * wait to be processed. Output messages are written to a buffer owned by
+ * the processor and delivered as {@link BFlatParser} views with the same
+ * lifetime as those of {@link BFlatPublisher}: until the subscriber next
+ * calls <tt>request</tt>, or until <tt>onNext</tt> returns if it requested
+ * <tt>Long.MAX_VALUE</tt>.
+ * <p>
+ * Example of a pipeline that keeps large orders and strips them down:
+ * <pre>
+ * publisher.subscribe(filter);
+ * filter.subscribe(BFlatProcessor.project(projector, executor));
+ * </pre>
+ */
+public class BFlatProcessor extends FlowStage
+  implements Flow.Processor<BFlatParser, BFlatParser>
+{
+  /**
+   * Create a stage that passes on only the messages accepted by a
+   * predicate. Accepted messages are copied without re-encoding.
+   *
+   * @param predicate Decides whether to pass on a message; it may iterate
+   *                  the message's values.
+   * @param executor  The executor to run the stage on.
+   * @return the new stage.
+   */
+  public static BFlatProcessor filter(
+    final Predicate<? super BFlatParser> predicate, Executor executor)
+  {
+    return new BFlatProcessor(new Stage()
+    {
+      public boolean apply(BFlatParser in, BFlatBuilder out)
+      {
+        if(!predicate.test(in))
+        {
+          return false;
+        }
+        out.copy(in.data, in.start, in._end - in.start);
+        return true;
+      }
+    }, executor);
+  }
+
+  /**
+   * Create a stage that projects each message with a
+   * {@link BFlatProjector}.
+   *
+   * @param projector The projection to apply; it must not be used by any
+   *                  other thread while the stage is running.
+   * @param executor  The executor to run the stage on.
+   * @return the new stage.
+   */
+  public static BFlatProcessor project(final BFlatProjector projector,
+                                       Executor executor)
+  {
+    return new BFlatProcessor(new Stage()
+    {
+      public boolean apply(BFlatParser in, BFlatBuilder out)
+      {
+        projector.project(in.data, in.start, in._end - in.start, out);
+        return true;
+      }
+    }, executor);
+  }
+
+  /**
+   * Create a stage that transcodes each message into a new one.
+   *
+   * @param encoder  Encodes the output message from the values of the
+   *                 input message. It may be called again with the same
+   *                 input if the output buffer has to grow.
+   * @param executor The executor to run the stage on.
+   * @return the new stage.
+   */
+  public static BFlatProcessor transcode(
+    final BFlatRecordEncoder<? super BFlatParser> encoder,
+    Executor executor)
+  {
+    return new BFlatProcessor(new Stage()
+    {
+      public boolean apply(BFlatParser in, BFlatBuilder out)
+      {
+        encoder.encode(in, out);
+        return true;
+      }
+    }, executor);
+  }
+
+  public void onSubscribe(Flow.Subscription subscription)
+  {
+    if(_upstream != null || _cancelled)
+    {
+      subscription.cancel();
+      return;
+    }
+    _upstream = subscription;
+    schedule();
+  }
+
+  public void onNext(BFlatParser item)
+  {
+    synchronized(_queue)
+    {
+      _queue.add(item);
+    }
+    schedule();
+  }
+
+  public void onError(Throwable throwable)
+  {
+    _upstreamError = throwable;
+    _upstreamDone = true;
+    schedule();
+  }
+
+  public void onComplete()
+  {
+    _upstreamDone = true;
+    schedule();
+  }
+
+  // The transformation applied by a stage; returns false to drop a message.
+  interface Stage
+  {
+    boolean apply(BFlatParser in, BFlatBuilder out);
+  }
+
+  BFlatProcessor(Stage stage, Executor executor)
+  {
+    super(executor);
+    _stage = stage;
+  }
+
+  void drain()
+  {
+    if(!begin() || _upstream == null)
+    {
+      return;
+    }
+    BFlatParser in;
+    while(_demand > 0 && !_cancelled && (in = poll()) != null)
+    {
+      --_outstanding;
+      BFlatParser out = apply(in);
+      if(out != null)
+      {
+        emit(out);
+      }
+    }
+    if(_cancelled || !isEmpty())
+    {
+      return;
+    }
+    if(_upstreamDone)
+    {
+      if(_upstreamError != null)
+      {
+        fail(_upstreamError);
+      }
+      else
+      {
+        complete();
+      }
+    }
+    else if(_outstanding == 0 && _demand > 0)
+    {
+      _outstanding = (int)Math.min(_demand, BatchSize);
+      _upstream.request(_outstanding);
+    }
+  }
+
+  void release()
+  {
+    if(_upstream != null)
+    {
+      _upstream.cancel();
+    }
+    synchronized(_queue)
+    {
+      _queue.clear();
+    }
+  }
+
+  // Run the stage on one message, growing the output buffer until the
+  // result fits. Returns a view of the result, or null if it was dropped.
+  private BFlatParser apply(BFlatParser in)
+  {
+    int length = in._end - in.start;
+    while(true)
+    {
+      in.parse(in.data, in.start, length);
+      _builder.data = _buffer;
+      _builder.start = _used;
+      _builder.rewind();
+      try
+      {
+        if(!_stage.apply(in, _builder))
+        {
+          return null;
+        }
+        break;
+      }
+      catch(BufferTooSmallException e)
+      {
+        grow();
+      }
+    }
+    int position = reserve(_builder.position - _builder.start);
+    return view(_buffer, position, _builder.position - position);
+  }
+
+  private BFlatParser poll()
+  {
+    synchronized(_queue)
+    {
+      return _queue.poll();
+    }
+  }
+
+  private boolean isEmpty()
+  {
+    synchronized(_queue)
+    {
+      return _queue.isEmpty();
+    }
+  }
+
+  /**
+   * The most messages requested from upstream at once.
+   */
+  public static final int BatchSize = 256;
+
+  final Stage                   _stage;
+  final ArrayDeque<BFlatParser> _queue   = new ArrayDeque<BFlatParser>();
+  final BFlatBuilder            _builder = new BFlatBuilder(Empty, 0);
+  volatile Flow.Subscription    _upstream;
+  volatile Throwable            _upstreamError;
+  volatile boolean              _upstreamDone;
+
+  // drain only
+  int _outstanding;
+}
@@ -0,0 +1,252 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+
+/**
+ * BFlatProjector writes a chosen subset of a message's fields into a new
+ * message, optionally renaming them. Each selected field is copied as a
+ * whole encoded span with <tt>System.arraycopy</tt>, so projecting a
+ * message costs little more than the bytes moved: values are never decoded,
+ * strings are never transcoded, and nothing is allocated per message.
+ * <p>
+ * Fields are written in the order they were passed to {@link #include};
+ * a tag that appears more than once in the source message is written once
+ * for each occurrence, in source order. Tags that are not present in the
+ * source message are skipped.
+ * <p>
+ * Example of forwarding two renamed fields of a larger message:
+ * <pre>
+ * BFlatProjector projector = new BFlatProjector()
+ *   .include("symbol", "sym")
+ *   .include("lastPrice", "px");
+ * BFlatBuilder out = new BFlatBuilder(new byte[256], 0);
+ * projector.project(data, 0, length, out);
+ * </pre>
+ * <p>
+ * A BFlatProjector reuses internal state between calls and is not
+ * thread-safe.
+ */
+public class BFlatProjector
+{
+  /**
+   * Construct a BFlatProjector that selects no fields.
+   */
+  public BFlatProjector()
+  {
+  }
+
+  /**
+   * Select a field to be written under its existing tag.
+   *
+   * @param tag The tag name of the field.
+   * @return This projector.
+   * @throws BFlatException The tag is empty or was already included.
+   */
+  public BFlatProjector include(String tag)
+  {
+    return include(tag, tag);
+  }
+
+  /**
+   * Select a field to be written under a new tag name.
+   *
+   * @param tag The tag name of the field in the source message.
+   * @param as  The tag name to write the field under.
+   * @return This projector.
+   * @throws BFlatException Either tag is empty, or <tt>tag</tt> was already
+   *                        included.
+   */
+  public BFlatProjector include(String tag, String as)
+  {
+    if(tag.length() == 0 || as.length() == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    byte[] name = tag.getBytes(BFlatValue.UTF_8);
+    if(find(name, 0, name.length) >= 0)
+    {
+      throw new BFlatException("tag is already included: " + tag);
+    }
+    if(_count == _names.length)
+    {
+      _names  = Arrays.copyOf(_names, _count * 2);
+      _as     = Arrays.copyOf(_as, _count * 2);
+      _hashes = Arrays.copyOf(_hashes, _count * 2);
+      _starts = new int[_count * 2 + 1];
+    }
+    _names[_count]  = name;
+    _as[_count]     = tag.equals(as) ? null : as.getBytes(BFlatValue.UTF_8);
+    _hashes[_count] = Utils.hash(0, name, 0, name.length);
+    ++_count;
+    rehash();
+    return this;
+  }
+
+  /**
+   * Returns the number of fields selected by this projector.
+   * @return the number of included tags.
+   */
+  public int size()
+  {
+    return _count;
+  }
+
+  /**
+   * Write the selected fields of a message into <tt>out</tt>.
+   *
+   * @param data   The array containing the source message.
+   * @param offset The position in <tt>data</tt> where the message begins.
+   * @param length The length of the message in bytes.
+   * @param out    The builder to write the selected fields into.
+   * @return The number of fields written.
+   * @throws BFlatException          The message could not be parsed.
+   * @throws BufferTooSmallException <tt>out</tt> is not large enough.
+   */
+  public int project(byte[] data, int offset, int length, BFlatBuilder out)
+  {
+    int found = 0;
+    for(BFlatValue value : _parser.parse(data, offset, length))
+    {
+      value.reuse();
+      int target = find(data, value.getRawTagOffset(), value.getRawTagLength());
+      if(target < 0)
+      {
+        continue;
+      }
+      if(found == _fieldOffset.length)
+      {
+        _fieldOffset = Arrays.copyOf(_fieldOffset, found * 2);
+        _fieldEnd    = Arrays.copyOf(_fieldEnd, found * 2);
+        _dataOffset  = Arrays.copyOf(_dataOffset, found * 2);
+        _target      = Arrays.copyOf(_target, found * 2);
+        _order       = new int[found * 2];
+      }
+      _fieldOffset[found] = value.getRawFieldOffset();
+      _fieldEnd[found]    = value.getRawFieldOffset() +
+                            value.getRawFieldLength();
+      _dataOffset[found]  = value.getRawTagOffset() + value.getRawTagLength();
+      _target[found]      = target;
+      ++found;
+    }
+
+    // counting sort of the found fields into projection order; stable, so
+    // repeated tags keep their source order.
+    Arrays.fill(_starts, 0, _count + 1, 0);
+    for(int i = 0; i < found; ++i)
+    {
+      ++_starts[_target[i] + 1];
+    }
+    for(int i = 0; i < _count; ++i)
+    {
+      _starts[i + 1] += _starts[i];
+    }
+    for(int i = 0; i < found; ++i)
+    {
+      _order[_starts[_target[i]]++] = i;
+    }
+
+    for(int i = 0; i < found; ++i)
+    {
+      int field = _order[i];
+      byte[] as = _as[_target[field]];
+      if(as == null)
+      {
+        out.copy(data, _fieldOffset[field],
+                 _fieldEnd[field] - _fieldOffset[field]);
+      }
+      else
+      {
+        // a new header with the original type and array bits, then the
+        // original array count and data.
+        byte type = (byte)(data[_fieldOffset[field]] &
+                           ~BFlatEncoding.LengthMask);
+        out.encodeTag(type, as, 0, as.length);
+        out.copy(data, _dataOffset[field],
+                 _fieldEnd[field] - _dataOffset[field]);
+      }
+    }
+    return found;
+  }
+
+  private int find(byte[] data, int offset, int length)
+  {
+    if(_count == 0)
+    {
+      return -1;
+    }
+    int hash = Utils.hash(0, data, offset, length);
+    int mask = _slots.length - 1;
+    for(int slot = hash & mask; _slots[slot] != 0; slot = (slot + 1) & mask)
+    {
+      int index = _slots[slot] - 1;
+      byte[] name = _names[index];
+      if(_hashes[index] == hash && name.length == length &&
+         Utils.regionEquals(name, 0, data, offset, length))
+      {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private void rehash()
+  {
+    int size = Integer.highestOneBit(Math.max(_count * 2 - 1, 1)) << 1;
+    if(_slots.length < size)
+    {
+      _slots = new int[size];
+    }
+    else
+    {
+      Arrays.fill(_slots, 0);
+    }
+    int mask = _slots.length - 1;
+    for(int index = 0; index < _count; ++index)
+    {
+      int slot = _hashes[index] & mask;
+      while(_slots[slot] != 0)
+      {
+        slot = (slot + 1) & mask;
+      }
+      _slots[slot] = index + 1;
+    }
+  }
+
+  final BFlatParser _parser = new BFlatParser();
+  byte[][] _names  = new byte[8][];
+  byte[][] _as     = new byte[8][];
+  int[]    _hashes = new int[8];
+  int[]    _starts = new int[9];
+  int[]    _slots  = new int[16];
+  int      _count;
+
+  // per-message scratch
+  int[]    _fieldOffset = new int[16];
+  int[]    _fieldEnd    = new int[16];
+  int[]    _dataOffset  = new int[16];
+  int[]    _target      = new int[16];
+  int[]    _order       = new int[16];
+}
@@ -0,0 +1,211 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Executor;
+
+/**
+ * BFlatPublisher is a {@link java.util.concurrent.Flow.Publisher} of the
+ * messages in a sequence of length-prefixed frames, such as those written
+ * with {@link BFlatBuilder#beginFrame}. The frames may come from a
+ * {@link BFlatBatch} in memory, an <tt>InputStream</tt>, or a blocking
+ * <tt>ReadableByteChannel</tt> such as a <tt>FileChannel</tt>.
+ * <p>
+ * Reads are driven by demand: a frame is only read once the subscriber has
+ * requested it, so a slow subscriber holds back the source rather than
+ * letting messages queue up in memory. Each message is delivered as a
+ * {@link BFlatParser} view over a buffer owned by the publisher. Views
+ * remain valid until the subscriber next calls <tt>request</tt>, which
+ * signals that it has finished with them; the buffer and views are then
+ * reused, so a steady stream does not allocate. A subscriber that
+ * requests <tt>Long.MAX_VALUE</tt> never signals, so its views are only
+ * valid until <tt>onNext</tt> returns. Messages from a BFlatBatch are not
+ * copied; views point into the batch's array.
+ * <p>
+ * The publisher accepts a single subscriber, and runs the subscriber's
+ * callbacks on <tt>executor</tt>, one at a time. The stream or channel is
+ * closed when the publisher completes, fails or is cancelled.
+ * <p>
+ * Example:
+ * <pre>
+ * BFlatPublisher publisher = new BFlatPublisher(
+ *   FileChannel.open(path), ForkJoinPool.commonPool());
+ * publisher.subscribe(subscriber);
+ * </pre>
+ */
+public class BFlatPublisher extends FlowStage
+{
+  /**
+   * Construct a BFlatPublisher of the messages in a batch.
+   *
+   * @param batch    The batch to publish.
+   * @param executor The executor to deliver messages on.
+   */
+  public BFlatPublisher(BFlatBatch batch, Executor executor)
+  {
+    super(executor);
+    _batch = batch;
+    _in = null;
+    _channel = null;
+  }
+
+  /**
+   * Construct a BFlatPublisher of the frames read from a stream.
+   *
+   * @param in       The stream to read frames from.
+   * @param executor The executor to read and deliver messages on.
+   */
+  public BFlatPublisher(InputStream in, Executor executor)
+  {
+    super(executor);
+    _batch = null;
+    _in = in;
+    _channel = null;
+  }
+
+  /**
+   * Construct a BFlatPublisher of the frames read from a blocking channel.
+   *
+   * @param channel  The channel to read frames from.
+   * @param executor The executor to read and deliver messages on.
+   */
+  public BFlatPublisher(ReadableByteChannel channel, Executor executor)
+  {
+    super(executor);
+    _batch = null;
+    _in = null;
+    _channel = channel;
+  }
+
+  void drain() throws IOException
+  {
+    if(!begin())
+    {
+      return;
+    }
+    while(_demand > 0 && !_cancelled)
+    {
+      BFlatParser view = next();
+      if(view == null)
+      {
+        complete();
+        return;
+      }
+      emit(view);
+    }
+  }
+
+  void release()
+  {
+    try
+    {
+      if(_in != null)
+      {
+        _in.close();
+      }
+      else if(_channel != null)
+      {
+        _channel.close();
+      }
+    }
+    catch(IOException e)
+    {
+      // nothing more can be delivered to the subscriber
+    }
+  }
+
+  // Returns a view of the next message, or null at the end of the input.
+  private BFlatParser next() throws IOException
+  {
+    if(_batch != null)
+    {
+      if(_index == _batch.size())
+      {
+        return null;
+      }
+      int index = _index++;
+      return view(_batch._data, _batch.getOffset(index),
+                  _batch.getLength(index));
+    }
+    int header = read(_header, 0, BFlatBuilder.FrameHeaderLength);
+    if(header == 0)
+    {
+      return null;
+    }
+    if(header < BFlatBuilder.FrameHeaderLength)
+    {
+      throw new BFlatException("truncated frame length");
+    }
+    int length = Fixed.decodeInt32(_header, 0);
+    if(length < 0)
+    {
+      throw new BFlatException("invalid frame length");
+    }
+    int position = reserve(length);
+    if(read(_buffer, position, length) < length)
+    {
+      throw new BFlatException("truncated frame");
+    }
+    return view(_buffer, position, length);
+  }
+
+  // Read up to 'length' bytes, stopping early only at the end of input.
+  private int read(byte[] data, int offset, int length) throws IOException
+  {
+    int total = 0;
+    if(_in != null)
+    {
+      while(total < length)
+      {
+        int count = _in.read(data, offset + total, length - total);
+        if(count < 0)
+        {
+          break;
+        }
+        total += count;
+      }
+      return total;
+    }
+    if(_wrapped == null || _wrapped.array() != data)
+    {
+      _wrapped = ByteBuffer.wrap(data);
+    }
+    _wrapped.limit(offset + length).position(offset);
+    while(_wrapped.hasRemaining() && _channel.read(_wrapped) >= 0)
+    {
+    }
+    return _wrapped.position() - offset;
+  }
+
+  final BFlatBatch          _batch;
+  final InputStream         _in;
+  final ReadableByteChannel _channel;
+  final byte[]              _header = new byte[BFlatBuilder.FrameHeaderLength];
+  int                       _index;
+  ByteBuffer                _wrapped;
+}
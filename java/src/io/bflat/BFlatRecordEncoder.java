@@ -0,0 +1,46 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+
+/**
+ * Encodes one record of an application type into a BFlat message. Used by
+ * {@link BFlatBatchEncoder}, which calls it once with a {@link BFlatSizer}
+ * to measure each record and again with a {@link BFlatBuilder} to write
+ * it, from several threads at once. An implementation must therefore
+ * encode the same fields every time it is given the same record, and must
+ * be safe to call concurrently.
+ *
+ * @param <T> The record type.
+ */
+public interface BFlatRecordEncoder<T>
+{
+  /**
+   * Encode a record.
+   *
+   * @param record  The record to encode.
+   * @param builder The builder to encode its fields with.
+   */
+  void encode(T record, BFlatBuilder builder);
+}
@@ -0,0 +1,414 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BFlatRingBuffer hands encoded BFlat messages from producer threads to a
+ * consumer thread through a fixed ring of preallocated slots, without
+ * allocating or copying anything per message and without locks.
+ * <p>
+ * A producer claims a sequence number with {@link #next}, points a
+ * {@link BFlatBuilder} at the claimed slot with {@link #wrap}, encodes its
+ * message, and makes it visible with {@link #publish}. Several messages
+ * may be claimed at once and published together, so that the sequence is
+ * only written once per batch. A builder writing past the end of a slot
+ * throws {@link BufferTooSmallException} rather than corrupting the next
+ * slot. Either a single producer thread, or any number of producer threads
+ * when the ring is constructed as multi-producer, may claim slots.
+ * <p>
+ * A single consumer thread receives published messages in sequence order
+ * with {@link #poll} or {@link #take}, which hand each message to a
+ * {@link BFlatHandler} in place. The slot is released back to the
+ * producers once the batch being delivered has been handled.
+ * <p>
+ * Threads waiting for space or for messages call a {@link WaitStrategy};
+ * {@link #BusySpin} has the lowest latency but occupies a core,
+ * {@link #Yield} lets other threads run, and {@link #Park} also gives up
+ * the core at the cost of wake-up latency.
+ * <p>
+ * Example:
+ * <pre>
+ * BFlatRingBuffer ring = new BFlatRingBuffer(1024, 512, false,
+ *                                            BFlatRingBuffer.Yield);
+ * // producer thread
+ * BFlatBuilder builder = new BFlatBuilder(null, 0);
+ * long sequence = ring.next();
+ * ring.wrap(sequence, builder).encode("price", 50.11);
+ * ring.publish(sequence, builder);
+ * // consumer thread
+ * ring.take(handler, 64);
+ * </pre>
+ */
+public class BFlatRingBuffer
+{
+  /**
+   * How a thread waits for a slot to become free or a message to be
+   * published.
+   */
+  public interface WaitStrategy
+  {
+    /**
+     * Wait briefly before the caller checks the ring again.
+     *
+     * @param attempt The number of times the caller has already waited for
+     *                the same condition, starting at 0.
+     */
+    void idle(int attempt);
+  }
+
+  /**
+   * Re-checks the ring immediately.
+   */
+  public static final WaitStrategy BusySpin = new WaitStrategy()
+  {
+    public void idle(int attempt)
+    {
+    }
+  };
+
+  /**
+   * Spins for a short while, then yields the processor between checks.
+   */
+  public static final WaitStrategy Yield = new WaitStrategy()
+  {
+    public void idle(int attempt)
+    {
+      if(attempt >= SpinAttempts)
+      {
+        Thread.yield();
+      }
+    }
+  };
+
+  /**
+   * Spins, then yields, then parks the thread for the shortest time the
+   * operating system allows between checks.
+   */
+  public static final WaitStrategy Park = new WaitStrategy()
+  {
+    public void idle(int attempt)
+    {
+      if(attempt >= SpinAttempts + YieldAttempts)
+      {
+        LockSupport.parkNanos(1);
+      }
+      else if(attempt >= SpinAttempts)
+      {
+        Thread.yield();
+      }
+    }
+  };
+
+  /**
+   * Construct a BFlatRingBuffer.
+   *
+   * @param slots         The number of slots, rounded up to a power of two.
+   * @param slotSize      The largest encoded message a slot can hold.
+   * @param multiProducer Whether more than one thread may claim slots.
+   * @param wait          How producers and the consumer wait.
+   */
+  public BFlatRingBuffer(int slots, int slotSize, boolean multiProducer,
+                         WaitStrategy wait)
+  {
+    if(slots <= 0 || slots > 1 << 30)
+    {
+      throw new BFlatException("slots must be between 1 and 2^30.");
+    }
+    if(slotSize <= 0)
+    {
+      throw new BFlatException("slotSize must be positive.");
+    }
+    int capacity = Integer.highestOneBit(Math.max(slots - 1, 1)) << 1;
+    _slots = new byte[capacity][slotSize];
+    _lengths = new int[capacity];
+    _mask = capacity - 1;
+    _multiProducer = multiProducer;
+    _wait = wait;
+    _published = multiProducer ? new AtomicLongArray(capacity) : null;
+    for(int index = 0; multiProducer && index < capacity; ++index)
+    {
+      _published.set(index, -1);
+    }
+  }
+
+  /**
+   * Claim the next slot, waiting for the consumer to free one if the ring
+   * is full.
+   *
+   * @return the sequence number of the claimed slot.
+   */
+  public long next()
+  {
+    return claim(1, true);
+  }
+
+  /**
+   * Claim the next <tt>count</tt> slots, waiting for the consumer to free
+   * them if the ring is full.
+   *
+   * @param count The number of slots to claim, at most {@link #capacity}.
+   * @return the sequence number of the last claimed slot; the first is
+   *         <tt>count - 1</tt> less.
+   */
+  public long next(int count)
+  {
+    return claim(count, true);
+  }
+
+  /**
+   * Claim the next <tt>count</tt> slots if they are free.
+   *
+   * @param count The number of slots to claim, at most {@link #capacity}.
+   * @return the sequence number of the last claimed slot, or -1 if the
+   *         ring does not have <tt>count</tt> free slots.
+   */
+  public long tryNext(int count)
+  {
+    return claim(count, false);
+  }
+
+  /**
+   * Point a builder at a claimed slot, ready to encode a message into it.
+   * The builder's previous array and position are discarded.
+   *
+   * @param sequence A sequence number claimed by this thread.
+   * @param builder  The builder to reuse.
+   * @return <tt>builder</tt>.
+   */
+  public BFlatBuilder wrap(long sequence, BFlatBuilder builder)
+  {
+    builder.data = _slots[(int)sequence & _mask];
+    builder.start = 0;
+    builder.rewind();
+    return builder;
+  }
+
+  /**
+   * Record the length of the message encoded into a claimed slot, without
+   * publishing it. Use with {@link #publish(long,long)} to publish several
+   * messages at once.
+   *
+   * @param sequence A sequence number claimed by this thread.
+   * @param builder  The builder the message was encoded with.
+   */
+  public void commit(long sequence, BFlatBuilder builder)
+  {
+    int index = (int)sequence & _mask;
+    assert builder.data == _slots[index];
+    _lengths[index] = builder.position;
+  }
+
+  /**
+   * Record the length of the message encoded into a claimed slot and make
+   * it visible to the consumer.
+   *
+   * @param sequence A sequence number claimed by this thread.
+   * @param builder  The builder the message was encoded with.
+   */
+  public void publish(long sequence, BFlatBuilder builder)
+  {
+    commit(sequence, builder);
+    publish(sequence, sequence);
+  }
+
+  /**
+   * Make a range of committed messages visible to the consumer.
+   *
+   * @param first The first sequence number to publish.
+   * @param last  The last sequence number to publish.
+   */
+  public void publish(long first, long last)
+  {
+    if(!_multiProducer)
+    {
+      _cursor.lazySet(last);
+      return;
+    }
+    for(long sequence = first; sequence <= last; ++sequence)
+    {
+      _published.lazySet((int)sequence & _mask, sequence);
+    }
+  }
+
+  /**
+   * Deliver up to <tt>limit</tt> published messages to <tt>handler</tt>
+   * without waiting. Must only be called from the consumer thread.
+   *
+   * @param handler The handler to receive each message. The message bytes
+   *                are only valid during the call.
+   * @param limit   The maximum number of messages to deliver.
+   * @return The number of messages delivered.
+   */
+  public int poll(BFlatHandler handler, int limit)
+  {
+    long first = _consumerNext;
+    long last = available(first, first + limit - 1);
+    long sequence = first;
+    try
+    {
+      for(; sequence <= last; ++sequence)
+      {
+        int index = (int)sequence & _mask;
+        handler.onMessage(_slots[index], 0, _lengths[index]);
+      }
+    }
+    finally
+    {
+      if(sequence > first)
+      {
+        _consumerNext = sequence;
+        _consumed.lazySet(sequence - 1);
+      }
+    }
+    return (int)(sequence - first);
+  }
+
+  /**
+   * Deliver up to <tt>limit</tt> published messages to <tt>handler</tt>,
+   * waiting until at least one is available. Must only be called from the
+   * consumer thread.
+   *
+   * @param handler The handler to receive each message. The message bytes
+   *                are only valid during the call.
+   * @param limit   The maximum number of messages to deliver.
+   * @return The number of messages delivered.
+   * @throws InterruptedException The thread was interrupted while waiting.
+   */
+  public int take(BFlatHandler handler, int limit) throws InterruptedException
+  {
+    for(int attempt = 0; ; ++attempt)
+    {
+      int delivered = poll(handler, limit);
+      if(delivered > 0)
+      {
+        return delivered;
+      }
+      if(Thread.interrupted())
+      {
+        throw new InterruptedException();
+      }
+      _wait.idle(attempt);
+    }
+  }
+
+  /**
+   * Returns the number of slots in this ring.
+   * @return the capacity.
+   */
+  public int capacity()
+  {
+    return _mask + 1;
+  }
+
+  /**
+   * Returns the number of slots claimed and not yet released by the
+   * consumer. The value is approximate while other threads are active.
+   *
+   * @return the number of slots in use.
+   */
+  public int size()
+  {
+    return (int)(_claimed.get() - _consumed.get());
+  }
+
+  private long claim(int count, boolean wait)
+  {
+    if(count <= 0 || count > capacity())
+    {
+      throw new BFlatException("count must be between 1 and the capacity.");
+    }
+    for(int attempt = 0; ; )
+    {
+      long current = _claimed.get();
+      long next = current + count;
+      long gating = _multiProducer ? _consumed.get() : _gatingCache;
+      if(next - capacity() > gating)
+      {
+        gating = _consumed.get();
+        if(!_multiProducer)
+        {
+          _gatingCache = gating;
+        }
+        if(next - capacity() > gating)
+        {
+          if(!wait)
+          {
+            return -1;
+          }
+          _wait.idle(attempt++);
+          continue;
+        }
+      }
+      if(!_multiProducer)
+      {
+        _claimed.lazySet(next);
+        return next;
+      }
+      if(_claimed.compareAndSet(current, next))
+      {
+        return next;
+      }
+    }
+  }
+
+  // Returns the last sequence up to 'limit' that the consumer may read.
+  private long available(long first, long limit)
+  {
+    if(!_multiProducer)
+    {
+      return Math.min(_cursor.get(), limit);
+    }
+    long sequence = first;
+    while(sequence <= limit &&
+          _published.get((int)sequence & _mask) == sequence)
+    {
+      ++sequence;
+    }
+    return sequence - 1;
+  }
+
+  static final int SpinAttempts  = 100;
+  static final int YieldAttempts = 100;
+
+  final byte[][]        _slots;
+  final int[]           _lengths;
+  final int             _mask;
+  final boolean         _multiProducer;
+  final WaitStrategy    _wait;
+  final AtomicLong      _claimed  = new AtomicLong(-1);
+  final AtomicLong      _consumed = new AtomicLong(-1);
+  final AtomicLong      _cursor   = new AtomicLong(-1); // single producer
+  final AtomicLongArray _published;                     // multi-producer
+
+  // single producer only; a stale value only causes an extra read of
+  // _consumed
+  long _gatingCache = -1;
+
+  // consumer thread only
+  long _consumerNext;
+}
@@ -0,0 +1,320 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * BFlatServer accepts TCP connections that each carry a stream of
+ * length-prefixed BFlat frames, such as those written by a
+ * {@link BFlatStreamBuilder} using {@link BFlatBuilder#beginFrame}, and
+ * delivers every message to a handler created for that connection.
+ * <p>
+ * Each connection is served by its own thread running a plain blocking
+ * read loop, which keeps handlers simple: they see one connection's
+ * messages in order, on one thread, and may block. By default the threads
+ * are virtual threads when the Java runtime provides them (Java 21 and
+ * later), so thousands of mostly idle connections cost little more than
+ * their buffers; on older runtimes daemon platform threads are used.
+ * <p>
+ * Each connection reuses one read buffer, which grows to the largest frame
+ * received, and one handler, so steady traffic does not allocate. Message
+ * bytes passed to the handler are only valid during the call. If the
+ * handler implements <tt>Closeable</tt> it is closed when its connection
+ * ends. A malformed frame or an exception from the handler closes the
+ * connection and is passed to the thread's uncaught exception handler.
+ * Failures to accept a connection are retried, waiting up to a second
+ * between attempts while they persist; accepting stops once the server
+ * socket is closed.
+ * <p>
+ * Example:
+ * <pre>
+ * BFlatServer server = new BFlatServer(new ServerSocket(9000),
+ *                                      () -&gt; new OrderHandler());
+ * server.start();
+ * </pre>
+ */
+public class BFlatServer implements Closeable
+{
+  /**
+   * Construct a BFlatServer using {@link #defaultThreadFactory}.
+   *
+   * @param socket   The bound socket to accept connections on.
+   * @param handlers Creates the handler for each new connection.
+   */
+  public BFlatServer(ServerSocket socket,
+                     Supplier<? extends BFlatHandler> handlers)
+  {
+    this(socket, handlers, defaultThreadFactory(), DefaultBufferSize);
+  }
+
+  /**
+   * Construct a BFlatServer.
+   *
+   * @param socket     The bound socket to accept connections on.
+   * @param handlers   Creates the handler for each new connection.
+   * @param threads    Creates the accepting thread and the thread for each
+   *                   connection.
+   * @param bufferSize The initial read buffer size of each connection.
+   */
+  public BFlatServer(ServerSocket socket,
+                     Supplier<? extends BFlatHandler> handlers,
+                     ThreadFactory threads, int bufferSize)
+  {
+    _socket = socket;
+    _handlers = handlers;
+    _threads = threads;
+    _bufferSize = bufferSize;
+  }
+
+  /**
+   * Start accepting connections on a new thread.
+   * @return This server.
+   */
+  public BFlatServer start()
+  {
+    Thread acceptor = _threads.newThread(new Runnable()
+    {
+      public void run()
+      {
+        accept();
+      }
+    });
+    if(acceptor == null)
+    {
+      throw new BFlatException("thread factory did not create a thread");
+    }
+    acceptor.start();
+    return this;
+  }
+
+  /**
+   * Returns the local port this server accepts connections on.
+   * @return the port.
+   */
+  public int getPort()
+  {
+    return _socket.getLocalPort();
+  }
+
+  /**
+   * Returns the number of currently open connections.
+   * @return the connection count.
+   */
+  public int getConnectionCount()
+  {
+    return _connections.size();
+  }
+
+  /**
+   * Returns the number of connections accepted since the server started.
+   * @return the accepted connection count.
+   */
+  public long getAcceptedCount()
+  {
+    return _accepted.get();
+  }
+
+  /**
+   * Stop accepting connections and close every open connection.
+   *
+   * @throws IOException The server socket could not be closed.
+   */
+  public void close() throws IOException
+  {
+    _closed = true;
+    try
+    {
+      _socket.close();
+    }
+    finally
+    {
+      for(Socket connection : _connections)
+      {
+        closeQuietly(connection);
+      }
+    }
+  }
+
+  /**
+   * Returns a thread factory creating virtual threads if the running Java
+   * version supports them, or daemon platform threads otherwise.
+   *
+   * @return a thread factory.
+   */
+  public static ThreadFactory defaultThreadFactory()
+  {
+    try
+    {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> type = Class.forName("java.lang.Thread$Builder");
+      builder = type.getMethod("name", String.class, long.class)
+        .invoke(builder, "bflat-", 0L);
+      return (ThreadFactory)type.getMethod("factory").invoke(builder);
+    }
+    catch(ReflectiveOperationException e)
+    {
+      // Java versions before 21 have no virtual threads
+    }
+    final AtomicLong count = new AtomicLong();
+    return new ThreadFactory()
+    {
+      public Thread newThread(Runnable task)
+      {
+        Thread thread = new Thread(task, "bflat-" + count.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  private void accept()
+  {
+    int failures = 0;
+    while(!_closed)
+    {
+      final Socket connection;
+      try
+      {
+        connection = _socket.accept();
+      }
+      catch(IOException e)
+      {
+        if(_closed || _socket.isClosed())
+        {
+          return;
+        }
+        // a client that reset before accept is retried at once; repeated
+        // failures, such as running out of file descriptors, back off so
+        // as not to spin until the condition clears
+        if(failures > 0 && !backOff(failures))
+        {
+          return;
+        }
+        ++failures;
+        continue;
+      }
+      failures = 0;
+      _accepted.incrementAndGet();
+      _connections.add(connection);
+      if(_closed)
+      {
+        drop(connection);
+        return;
+      }
+      Thread thread = _threads.newThread(new Runnable()
+      {
+        public void run()
+        {
+          serve(connection);
+        }
+      });
+      if(thread == null)
+      {
+        drop(connection);
+        continue;
+      }
+      thread.start();
+    }
+  }
+
+  // Sleep after the given number of consecutive accept failures, doubling
+  // up to MaxAcceptBackoffMillis. Returns false if interrupted.
+  private static boolean backOff(int failures)
+  {
+    long millis = Math.min(1L << Math.min(failures - 1, 30),
+                           MaxAcceptBackoffMillis);
+    try
+    {
+      Thread.sleep(millis);
+      return true;
+    }
+    catch(InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void serve(Socket connection)
+  {
+    BFlatHandler handler = null;
+    try
+    {
+      handler = _handlers.get();
+      new FrameReader(connection.getInputStream(), _bufferSize)
+        .readAll(handler);
+    }
+    catch(IOException e)
+    {
+      // the connection was reset or the server closed it
+    }
+    finally
+    {
+      drop(connection);
+      if(handler instanceof Closeable)
+      {
+        closeQuietly((Closeable)handler);
+      }
+    }
+  }
+
+  private void drop(Socket connection)
+  {
+    _connections.remove(connection);
+    closeQuietly(connection);
+  }
+
+  private static void closeQuietly(Closeable closeable)
+  {
+    try
+    {
+      closeable.close();
+    }
+    catch(IOException e)
+    {
+      // nothing useful can be done
+    }
+  }
+
+  static final int  DefaultBufferSize      = 8192;
+  static final long MaxAcceptBackoffMillis = 1000;
+
+  final ServerSocket                     _socket;
+  final Supplier<? extends BFlatHandler> _handlers;
+  final ThreadFactory                    _threads;
+  final int                              _bufferSize;
+  final Set<Socket>                      _connections =
+    ConcurrentHashMap.newKeySet();
+  final AtomicLong                       _accepted = new AtomicLong();
+  volatile boolean                       _closed;
+}
@@ -0,0 +1,267 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * BFlatSizer calculates the exact number of bytes a message will take
+ * without encoding it. It has the same <tt>encodeTag</tt>/<tt>encode</tt>
+ * methods as {@link BFlatBuilder}; instead of writing bytes they add the
+ * encoded size of each tag and value to a running total. String lengths
+ * are computed in UTF-8 without transcoding, and LEB128 lengths and the
+ * inline short-tag encoding are taken into account, so the total is exact
+ * rather than an upper bound.
+ * <p>
+ * Example of allocating a buffer of exactly the right size:
+ * <pre>
+ * BFlatSizer sizer = new BFlatSizer();
+ * sizer.encode("symbol", symbol).encode("price", price);
+ * BFlatBuilder builder = new BFlatBuilder(new byte[sizer.getSize()], 0);
+ * builder.encode("symbol", symbol).encode("price", price);
+ * </pre>
+ * A BFlatSizer may be reused for another message after calling
+ * {@link #rewind}.
+ */
+public class BFlatSizer extends BFlatBuilder
+{
+  /**
+   * Construct a BFlatSizer with a size of zero.
+   */
+  public BFlatSizer()
+  {
+    super(null, 0);
+  }
+
+  /**
+   * Returns the number of bytes encoded so far.
+   * @return the exact encoded size.
+   */
+  public int getSize()
+  {
+    return position - start;
+  }
+
+  /**
+   * Returns the number of bytes {@link BFlatBuilder#encodeTag} writes for a
+   * tag, not including any array count.
+   * @param tagName The tag name.
+   * @return the encoded size of the tag.
+   */
+  public static int sizeOfTag(CharSequence tagName)
+  {
+    return sizeOfTagBytes(Utils.utf8Length(tagName));
+  }
+
+  /**
+   * Returns the number of bytes {@link BFlatBuilder#encode(String)} writes
+   * for a string value, including its length.
+   * @param value The string value.
+   * @return the encoded size of the value.
+   */
+  public static int sizeOfString(CharSequence value)
+  {
+    int length = Utils.utf8Length(value);
+    return Leb128.unsignedLength(length) + length;
+  }
+
+  static int sizeOfTagBytes(int tagLength)
+  {
+    if(tagLength == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    return tagLength <= BFlatEncoding.LengthMask
+      ? 1 + tagLength
+      : 1 + Leb128.unsignedLength(tagLength) + tagLength;
+  }
+
+  @Override
+  public BFlatBuilder encodeTag(byte type, String tagName)
+  {
+    position += sizeOfTag(tagName);
+    return this;
+  }
+
+  @Override
+  BFlatBuilder encodeTag(byte type, byte[] tagName, int offset, int tagLen)
+  {
+    position += sizeOfTagBytes(tagLen);
+    return this;
+  }
+
+  @Override
+  BFlatBuilder
+  encodeTagArray(byte type, byte[] tagName, int offset, int tagLen, int count)
+  {
+    position += sizeOfTagBytes(tagLen) + Leb128.unsignedLength(count);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encodeTagArray(byte type, String tagName, int count)
+  {
+    position += sizeOfTag(tagName) + Leb128.unsignedLength(count);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(byte[] value, int offset, int length)
+  {
+    position += Leb128.unsignedLength(length) + length;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(CharSequence value)
+  {
+    position += sizeOfString(value);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(char[] value, int offset, int length)
+  {
+    position += sizeOfString(CharBuffer.wrap(value, offset, length));
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(byte value)
+  {
+    position += 1;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(short value)
+  {
+    position += 2;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(int value)
+  {
+    position += 4;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(long value)
+  {
+    position += 8;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(double value)
+  {
+    position += 8;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encodeLeb128(long value)
+  {
+    position += Leb128.signedLength(value);
+    return this;
+  }
+
+  /**
+   * Add the size of a <tt>Binary</tt> value of the given length. The stream
+   * is not read.
+   *
+   * @param tagName The tag name.
+   * @param in      Ignored.
+   * @param length  The length of the value.
+   * @return This sizer.
+   */
+  @Override
+  public BFlatBuilder encodeBinary(String tagName, InputStream in,
+                                   long length)
+  {
+    encodeTag(BFlatEncoding.Binary, tagName);
+    position += Leb128.unsignedLength(length) + length;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder beginNested(String tagName)
+  {
+    encodeTag(BFlatEncoding.Binary, tagName);
+    return pushNested();
+  }
+
+  @Override
+  BFlatBuilder beginNested(byte[] tagName, int offset, int tagLen)
+  {
+    encodeTag(BFlatEncoding.Binary, tagName, offset, tagLen);
+    return pushNested();
+  }
+
+  private BFlatBuilder pushNested()
+  {
+    if(_nestedDepth == _nested.length)
+    {
+      _nested = Arrays.copyOf(_nested, _nestedDepth * 2);
+    }
+    _nested[_nestedDepth++] = position;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder endNested()
+  {
+    if(_nestedDepth == 0)
+    {
+      throw new BFlatException("endNested without beginNested");
+    }
+    int body = _nested[--_nestedDepth];
+    position += Leb128.unsignedLength(position - body);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder beginFrame()
+  {
+    position += FrameHeaderLength;
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder endFrame()
+  {
+    return this;
+  }
+
+  @Override
+  BFlatBuilder copy(byte[] source, int offset, int length)
+  {
+    position += length;
+    return this;
+  }
+}
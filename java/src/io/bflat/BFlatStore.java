@@ -0,0 +1,540 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * BFlatStore keeps the most recent BFlat message for each distinct value
+ * of a key field, such as the latest state of every order keyed by
+ * <tt>orderId</tt>. It is intended as a state-of-the-world cache for
+ * consumers that join late.
+ * <p>
+ * Messages are copied into large slab arrays rather than into a
+ * <tt>byte[]</tt> per key, and are located through an open-addressed index
+ * made of primitive arrays, so the per-entry overhead is a few dozen bytes
+ * and storing a message creates no garbage once the slabs have been
+ * allocated. When a new message for an existing key fits in the space of
+ * the previous one it is written in place; otherwise it moves to new space
+ * and the old space is reclaimed by {@link #compact}, which also runs
+ * automatically once more than half of the slab space is unused.
+ * <p>
+ * Keys are compared by value: String and Binary keys by their raw bytes,
+ * and integer keys by their value regardless of the width they were
+ * encoded with.
+ * <p>
+ * Example of storing and reading back the latest message per order:
+ * <pre>
+ * BFlatStore store = new BFlatStore("orderId");
+ * store.put(data, 0, length);
+ * ...
+ * BFlatParser parser = new BFlatParser();
+ * if(store.get("order-17", parser) != null)
+ * {
+ *   for(BFlatValue value : parser) { ... }
+ * }
+ * // iterate over every stored message
+ * for(BFlatParser message : store)
+ * {
+ *   for(BFlatValue value : message) { ... }
+ * }
+ * </pre>
+ * Parsers returned by this class view the store's slabs directly and are
+ * only valid until the store is next modified. BFlatStore is not
+ * thread-safe.
+ */
+public class BFlatStore implements Iterable<BFlatParser>
+{
+  /**
+   * Construct a BFlatStore keyed by <tt>keyTag</tt> with 1MB slabs.
+   *
+   * @param keyTag The tag name of the key field of each message.
+   */
+  public BFlatStore(String keyTag)
+  {
+    this(keyTag, 1 << 20);
+  }
+
+  /**
+   * Construct a BFlatStore keyed by <tt>keyTag</tt>.
+   *
+   * @param keyTag   The tag name of the key field of each message.
+   * @param slabSize The size, in bytes, of each slab. Messages larger than
+   *                 this are given a slab of their own.
+   */
+  public BFlatStore(String keyTag, int slabSize)
+  {
+    if(slabSize <= 0)
+    {
+      throw new BFlatException("Slab size must be positive.");
+    }
+    _key = new MessageKey(keyTag);
+    _lookup = new MessageKey(keyTag);
+    _slabSize = slabSize;
+  }
+
+  /**
+   * Store a message, replacing any message previously stored with the same
+   * key.
+   *
+   * @param data     The byte array containing a BFlat-encoded message.
+   * @param position The position in <tt>data</tt> where the message begins.
+   * @param length   The length of the message in bytes.
+   * @return true if the key was not previously present, false if an
+   *         existing message was replaced.
+   * @throws BFlatException The message has no key field or could not be
+   *                        parsed.
+   */
+  public boolean put(byte[] data, int position, int length)
+  {
+    if(!_key.extract(data, position, length))
+    {
+      throw new BFlatException("message does not contain the key field");
+    }
+    int entry = find(_key);
+    boolean added = entry < 0;
+    if(added)
+    {
+      entry = newEntry();
+      insertSlot(_key._hash, entry);
+    }
+    else if(length > _capacity[entry])
+    {
+      _garbage += _capacity[entry];
+      _live -= _length[entry];
+      _capacity[entry] = 0;
+      _length[entry] = 0;
+    }
+    if(_capacity[entry] == 0)
+    {
+      int capacity = (length + 15) & ~15;
+      _location[entry] = allocate(capacity);
+      _capacity[entry] = capacity;
+    }
+    long location = _location[entry];
+    System.arraycopy(data, position, _slabs[(int)(location >>> 32)],
+                     (int)location, length);
+    _live += length - _length[entry];
+    _length[entry] = length;
+    _hash[entry] = _key._hash;
+    _keyKind[entry] = _key._kind;
+    _keyBits[entry] = _key._bits;
+    _keyOffset[entry] = _key._offset - position;
+    _keyLength[entry] = _key._length;
+    return added;
+  }
+
+  /**
+   * Look up the message stored for a String or Binary key.
+   *
+   * @param key    The key value.
+   * @param parser The parser to position over the stored message.
+   * @return <tt>parser</tt>, ready to iterate over the stored message, or
+   *         null if no message is stored for <tt>key</tt>.
+   */
+  public BFlatParser get(String key, BFlatParser parser)
+  {
+    byte[] bytes = key.getBytes(UTF_8);
+    return get(bytes, 0, bytes.length, parser);
+  }
+
+  /**
+   * Look up the message stored for a String or Binary key given as raw
+   * bytes.
+   *
+   * @param key    The array containing the key value.
+   * @param offset The offset of the key value in <tt>key</tt>.
+   * @param length The length of the key value in bytes.
+   * @param parser The parser to position over the stored message.
+   * @return <tt>parser</tt>, ready to iterate over the stored message, or
+   *         null if no message is stored for the key.
+   */
+  public BFlatParser get(byte[] key, int offset, int length,
+                         BFlatParser parser)
+  {
+    _lookup.set(key, offset, length);
+    return get(_lookup, parser);
+  }
+
+  /**
+   * Look up the message stored for an integer key.
+   *
+   * @param key    The key value.
+   * @param parser The parser to position over the stored message.
+   * @return <tt>parser</tt>, ready to iterate over the stored message, or
+   *         null if no message is stored for <tt>key</tt>.
+   */
+  public BFlatParser get(long key, BFlatParser parser)
+  {
+    _lookup.set(MessageKey.KindLong, key);
+    return get(_lookup, parser);
+  }
+
+  /**
+   * Remove the message stored for a String or Binary key.
+   *
+   * @param key The key value.
+   * @return true if a message was removed.
+   */
+  public boolean remove(String key)
+  {
+    byte[] bytes = key.getBytes(UTF_8);
+    return remove(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Remove the message stored for a String or Binary key given as raw
+   * bytes.
+   *
+   * @param key    The array containing the key value.
+   * @param offset The offset of the key value in <tt>key</tt>.
+   * @param length The length of the key value in bytes.
+   * @return true if a message was removed.
+   */
+  public boolean remove(byte[] key, int offset, int length)
+  {
+    _lookup.set(key, offset, length);
+    return remove(_lookup);
+  }
+
+  /**
+   * Remove the message stored for an integer key.
+   *
+   * @param key The key value.
+   * @return true if a message was removed.
+   */
+  public boolean remove(long key)
+  {
+    _lookup.set(MessageKey.KindLong, key);
+    return remove(_lookup);
+  }
+
+  /**
+   * Returns the number of keys in this store.
+   * @return the number of stored messages.
+   */
+  public int size()
+  {
+    return _size;
+  }
+
+  /**
+   * Remove every message from this store and release its slabs.
+   */
+  public void clear()
+  {
+    Arrays.fill(_slots, 0);
+    _slabs = new byte[4][];
+    _slabCount = 0;
+    _current = -1;
+    _used = 0;
+    _entryLimit = 0;
+    _freeCount = 0;
+    _size = 0;
+    _live = 0;
+    _garbage = 0;
+    ++_modCount;
+  }
+
+  /**
+   * Copy every stored message into fresh slabs, releasing the space left
+   * behind by messages that were removed or outgrew their original space.
+   */
+  public void compact()
+  {
+    byte[][] slabs = _slabs;
+    int slabCount = _slabCount;
+    _slabs = new byte[4][];
+    _slabCount = 0;
+    _current = -1;
+    _used = 0;
+    _compacting = true;
+    for(int entry = 0; entry < _entryLimit; ++entry)
+    {
+      if(_length[entry] < 0) continue;
+      long location = _location[entry];
+      int capacity = (_length[entry] + 15) & ~15;
+      long moved = capacity == 0 ? 0 : allocate(capacity);
+      if(capacity != 0)
+      {
+        System.arraycopy(slabs[(int)(location >>> 32)], (int)location,
+                         _slabs[(int)(moved >>> 32)], (int)moved,
+                         _length[entry]);
+      }
+      _location[entry] = moved;
+      _capacity[entry] = capacity;
+    }
+    _compacting = false;
+    _garbage = 0;
+    ++_modCount;
+  }
+
+  /**
+   * Returns an iterator over the messages in this store. The iterator
+   * returns the same {@link BFlatParser} object for each message,
+   * repositioned over that message's bytes. Modifying the store while
+   * iterating, other than by replacing the message of an existing key
+   * with one that fits in place, causes the iterator to throw
+   * {@link ConcurrentModificationException}.
+   *
+   * @return an iterator of parsers, one per stored message.
+   */
+  public Iterator<BFlatParser> iterator()
+  {
+    return new Iterator<BFlatParser>()
+    {
+      public boolean hasNext()
+      {
+        checkModified();
+        while(_entry < _entryLimit && _length[_entry] < 0)
+        {
+          ++_entry;
+        }
+        return _entry < _entryLimit;
+      }
+
+      public BFlatParser next()
+      {
+        if(!hasNext())
+        {
+          throw new NoSuchElementException();
+        }
+        int entry = _entry++;
+        long location = _location[entry];
+        return _parser.parse(_slabs[(int)(location >>> 32)], (int)location,
+                             _length[entry]);
+      }
+
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+
+      private void checkModified()
+      {
+        if(_expected != _modCount)
+        {
+          throw new ConcurrentModificationException();
+        }
+      }
+
+      final BFlatParser _parser = new BFlatParser();
+      final int         _expected = _modCount;
+      int               _entry;
+    };
+  }
+
+  private BFlatParser get(MessageKey key, BFlatParser parser)
+  {
+    int entry = find(key);
+    if(entry < 0)
+    {
+      return null;
+    }
+    long location = _location[entry];
+    return parser.parse(_slabs[(int)(location >>> 32)], (int)location,
+                        _length[entry]);
+  }
+
+  private boolean remove(MessageKey key)
+  {
+    int entry = find(key);
+    if(entry < 0)
+    {
+      return false;
+    }
+    removeSlot(entry);
+    _garbage += _capacity[entry];
+    _live -= _length[entry];
+    _length[entry] = -1;
+    _capacity[entry] = 0;
+    _freeEntries[_freeCount++] = entry;
+    --_size;
+    ++_modCount;
+    return true;
+  }
+
+  private int find(MessageKey key)
+  {
+    int mask = _slots.length - 1;
+    for(int slot = key._hash & mask; ; slot = (slot + 1) & mask)
+    {
+      int entry = _slots[slot] - 1;
+      if(entry < 0) return -1;
+      if(_hash[entry] != key._hash) continue;
+      long location = _location[entry];
+      if(key.equals(_keyKind[entry], _keyBits[entry],
+                    _slabs[(int)(location >>> 32)],
+                    (int)location + _keyOffset[entry], _keyLength[entry]))
+      {
+        return entry;
+      }
+    }
+  }
+
+  private int newEntry()
+  {
+    int entry;
+    if(_freeCount > 0)
+    {
+      entry = _freeEntries[--_freeCount];
+    }
+    else
+    {
+      entry = _entryLimit++;
+      if(entry == _length.length)
+      {
+        int capacity = entry * 2;
+        _location    = Arrays.copyOf(_location, capacity);
+        _length      = Arrays.copyOf(_length, capacity);
+        _capacity    = Arrays.copyOf(_capacity, capacity);
+        _hash        = Arrays.copyOf(_hash, capacity);
+        _keyKind     = Arrays.copyOf(_keyKind, capacity);
+        _keyBits     = Arrays.copyOf(_keyBits, capacity);
+        _keyOffset   = Arrays.copyOf(_keyOffset, capacity);
+        _keyLength   = Arrays.copyOf(_keyLength, capacity);
+        _freeEntries = Arrays.copyOf(_freeEntries, capacity);
+      }
+    }
+    _length[entry] = 0;
+    _capacity[entry] = 0;
+    ++_size;
+    ++_modCount;
+    return entry;
+  }
+
+  private void insertSlot(int hash, int entry)
+  {
+    if((_size + 1) * 2 > _slots.length)
+    {
+      _slots = new int[_slots.length * 2];
+      for(int i = 0; i < _entryLimit; ++i)
+      {
+        if(i != entry && _length[i] >= 0) insert(_hash[i], i);
+      }
+    }
+    insert(hash, entry);
+  }
+
+  private void insert(int hash, int entry)
+  {
+    int mask = _slots.length - 1;
+    int slot = hash & mask;
+    while(_slots[slot] != 0)
+    {
+      slot = (slot + 1) & mask;
+    }
+    _slots[slot] = entry + 1;
+  }
+
+  // backward-shift deletion keeps probe sequences intact without leaving
+  // tombstones behind.
+  private void removeSlot(int entry)
+  {
+    int mask = _slots.length - 1;
+    int slot = _hash[entry] & mask;
+    while(_slots[slot] - 1 != entry)
+    {
+      slot = (slot + 1) & mask;
+    }
+    int next = slot;
+    while(true)
+    {
+      next = (next + 1) & mask;
+      int other = _slots[next] - 1;
+      if(other < 0) break;
+      int home = _hash[other] & mask;
+      boolean inRange = slot <= next ? (slot < home && home <= next)
+                                     : (slot < home || home <= next);
+      if(!inRange)
+      {
+        _slots[slot] = _slots[next];
+        slot = next;
+      }
+    }
+    _slots[slot] = 0;
+  }
+
+  // Returns the slab index in the high 32 bits and the offset within the
+  // slab in the low 32 bits.
+  private long allocate(int capacity)
+  {
+    if(!_compacting && _garbage > _slabSize && _garbage > _live)
+    {
+      compact();
+    }
+    if(capacity > _slabSize)
+    {
+      return ((long)addSlab(capacity)) << 32;
+    }
+    if(_current < 0 || _used + capacity > _slabSize)
+    {
+      _current = addSlab(_slabSize);
+      _used = 0;
+    }
+    long location = (((long)_current) << 32) | _used;
+    _used += capacity;
+    return location;
+  }
+
+  private int addSlab(int size)
+  {
+    if(_slabCount == _slabs.length)
+    {
+      _slabs = Arrays.copyOf(_slabs, _slabCount * 2);
+    }
+    _slabs[_slabCount] = new byte[size];
+    return _slabCount++;
+  }
+
+  static Charset UTF_8 = Charset.forName("UTF-8");
+
+  final MessageKey _key;
+  final MessageKey _lookup;
+  final int        _slabSize;
+
+  byte[][] _slabs       = new byte[4][];
+  int      _slabCount;
+  int      _current     = -1;
+  int      _used;
+  long     _live;
+  long     _garbage;
+  boolean  _compacting;
+
+  int[]    _slots       = new int[16];
+  long[]   _location    = new long[8];
+  int[]    _length      = new int[8];
+  int[]    _capacity    = new int[8];
+  int[]    _hash        = new int[8];
+  byte[]   _keyKind     = new byte[8];
+  long[]   _keyBits     = new long[8];
+  int[]    _keyOffset   = new int[8];
+  int[]    _keyLength   = new int[8];
+  int[]    _freeEntries = new int[8];
+  int      _freeCount;
+  int      _entryLimit;
+  int      _size;
+  int      _modCount;
+}
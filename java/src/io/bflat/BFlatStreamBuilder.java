@@ -0,0 +1,425 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * BFlatStreamBuilder encodes BFlat data to an {@link OutputStream} or a
+ * {@link WritableByteChannel} through a fixed-size staging buffer, so the
+ * memory used stays constant however much data is written. It has the same
+ * <tt>encodeTag</tt>/<tt>encode</tt> methods as {@link BFlatBuilder}.
+ * <p>
+ * Before each tag or value is written, the staging buffer is flushed to the
+ * destination if the value might not fit in the space that remains, so
+ * values never straddle a flush. <tt>Binary</tt> and string values larger
+ * than the staging buffer are written directly from their own array
+ * instead.
+ * <p>
+ * Nested messages begun with {@link #beginNested} and frames begun with
+ * {@link #beginFrame} must be back-patched, so they are held in the
+ * staging buffer until they end; one larger than the staging buffer causes
+ * a {@link BufferTooSmallException}.
+ * <p>
+ * Errors writing to the destination are thrown as
+ * {@link UncheckedIOException} from the encode methods. Call {@link #flush}
+ * or {@link #close} when finished to write out the staging buffer.
+ * <p>
+ * Example of exporting a large number of records:
+ * <pre>
+ * try(BFlatStreamBuilder out =
+ *       new BFlatStreamBuilder(new FileOutputStream(file), 65536))
+ * {
+ *   for(Record r : records)
+ *   {
+ *     out.encode("id", r.id).encode("name", r.name);
+ *   }
+ * }
+ * </pre>
+ */
+public class BFlatStreamBuilder extends BFlatBuilder
+  implements Closeable, Flushable
+{
+  /**
+   * Construct a BFlatStreamBuilder that writes to an OutputStream.
+   *
+   * @param out        The destination for the encoded data.
+   * @param bufferSize The size of the staging buffer in bytes.
+   */
+  public BFlatStreamBuilder(OutputStream out, int bufferSize)
+  {
+    super(new byte[checkSize(bufferSize)], 0);
+    _stream = out;
+    _channel = null;
+  }
+
+  /**
+   * Construct a BFlatStreamBuilder that writes to a channel.
+   *
+   * @param out        The destination for the encoded data.
+   * @param bufferSize The size of the staging buffer in bytes.
+   */
+  public BFlatStreamBuilder(WritableByteChannel out, int bufferSize)
+  {
+    super(new byte[checkSize(bufferSize)], 0);
+    _stream = null;
+    _channel = out;
+  }
+
+  /**
+   * Returns the total number of bytes encoded so far, including those still
+   * in the staging buffer.
+   * @return the number of bytes encoded.
+   */
+  public long getBytesWritten()
+  {
+    return _flushed + position - start;
+  }
+
+  /**
+   * Write the contents of the staging buffer to the destination and flush
+   * it. Data belonging to an unfinished nested message or frame stays in
+   * the staging buffer.
+   *
+   * @throws IOException The destination could not be written.
+   */
+  public void flush() throws IOException
+  {
+    drain();
+    if(_stream != null)
+    {
+      _stream.flush();
+    }
+  }
+
+  /**
+   * Flush this builder and close the destination. The destination is
+   * closed even if flushing fails or a nested message or frame was not
+   * ended.
+   *
+   * @throws IOException    The destination could not be written or closed.
+   * @throws BFlatException A nested message or frame was not ended, so its
+   *                        data was not written; the destination has still
+   *                        been closed.
+   */
+  public void close() throws IOException
+  {
+    try(Closeable destination = _stream != null ? _stream : _channel)
+    {
+      flush();
+    }
+    if(getNestedDepth() != 0)
+    {
+      throw new BFlatException("close with an unfinished nested message");
+    }
+    if(_frameStart >= 0)
+    {
+      throw new BFlatException("close with an unfinished frame");
+    }
+  }
+
+  @Override
+  public BFlatBuilder encodeTag(byte type, String tagName)
+  {
+    ensure(MaxTagHeader + 3 * tagName.length());
+    return super.encodeTag(type, tagName);
+  }
+
+  @Override
+  BFlatBuilder encodeTag(byte type, byte[] tagName, int offset, int tagLen)
+  {
+    ensure(MaxTagHeader + tagLen);
+    return super.encodeTag(type, tagName, offset, tagLen);
+  }
+
+  @Override
+  BFlatBuilder
+  encodeTagArray(byte type, byte[] tagName, int offset, int tagLen, int count)
+  {
+    encodeTag((byte)(type | BFlatEncoding.ArrayMask), tagName, offset,
+              tagLen);
+    ensure(MaxLength);
+    Leb128.encodeUnsigned(this, count);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encodeTagArray(byte type, String tagName, int count)
+  {
+    encodeTag((byte)(type | BFlatEncoding.ArrayMask), tagName);
+    ensure(MaxLength);
+    Leb128.encodeUnsigned(this, count);
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder encode(byte[] value, int offset, int length)
+  {
+    ensure(MaxLength);
+    Leb128.encodeUnsigned(this, length);
+    return copy(value, offset, length);
+  }
+
+  @Override
+  public BFlatBuilder encode(CharSequence value)
+  {
+    int worstCase = MaxLength + 3 * value.length();
+    if(worstCase <= data.length)
+    {
+      ensure(worstCase);
+      return super.encode(value);
+    }
+    byte[] bytes = value.toString().getBytes(BFlatValue.UTF_8);
+    return encode(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public BFlatBuilder encode(char[] value, int offset, int length)
+  {
+    int worstCase = MaxLength + 3 * length;
+    if(worstCase <= data.length)
+    {
+      ensure(worstCase);
+      return super.encode(value, offset, length);
+    }
+    byte[] bytes =
+      new String(value, offset, length).getBytes(BFlatValue.UTF_8);
+    return encode(bytes, 0, bytes.length);
+  }
+
+  @Override
+  public BFlatBuilder encode(byte value)
+  {
+    ensure(1);
+    return super.encode(value);
+  }
+
+  @Override
+  public BFlatBuilder encode(short value)
+  {
+    ensure(2);
+    return super.encode(value);
+  }
+
+  @Override
+  public BFlatBuilder encode(int value)
+  {
+    ensure(4);
+    return super.encode(value);
+  }
+
+  @Override
+  public BFlatBuilder encode(long value)
+  {
+    ensure(8);
+    return super.encode(value);
+  }
+
+  @Override
+  public BFlatBuilder encode(double value)
+  {
+    ensure(8);
+    return super.encode(value);
+  }
+
+  @Override
+  public BFlatBuilder encodeLeb128(long value)
+  {
+    ensure(10);
+    return super.encodeLeb128(value);
+  }
+
+  @Override
+  public BFlatBuilder beginNested(String tagName)
+  {
+    ensure(MaxTagHeader + 3 * tagName.length() + NestedLengthReserve);
+    return super.beginNested(tagName);
+  }
+
+  @Override
+  BFlatBuilder beginNested(byte[] tagName, int offset, int tagLen)
+  {
+    ensure(MaxTagHeader + tagLen + NestedLengthReserve);
+    return super.beginNested(tagName, offset, tagLen);
+  }
+
+  /**
+   * Encode a <tt>Binary</tt> value read from a stream. The value is copied
+   * through the staging buffer a chunk at a time, so it may be any size
+   * unless it is part of a nested message.
+   *
+   * @param tagName The tag name.
+   * @param in      The stream to read the value from.
+   * @param length  The number of bytes to read from <tt>in</tt>.
+   *
+   * @throws BufferTooSmallException The value is part of a nested message
+   *                                 and does not fit in the staging buffer.
+   * @throws EOFException            <tt>in</tt> ended before <tt>length</tt>
+   *                                 bytes were read.
+   * @throws IOException             <tt>in</tt> could not be read, or the
+   *                                 destination could not be written.
+   * @return This encoder.
+   */
+  @Override
+  public BFlatBuilder encodeBinary(String tagName, InputStream in,
+                                   long length)
+    throws IOException
+  {
+    encodeTag(BFlatEncoding.Binary, tagName);
+    ensure(MaxLength);
+    Leb128.encodeUnsigned(this, length);
+    while(length > 0)
+    {
+      if(position == data.length)
+      {
+        ensure(1);
+      }
+      int chunk = (int)Math.min(length, data.length - position);
+      readFully(in, chunk);
+      length -= chunk;
+    }
+    return this;
+  }
+
+  @Override
+  public BFlatBuilder beginFrame()
+  {
+    ensure(FrameHeaderLength);
+    return super.beginFrame();
+  }
+
+  @Override
+  BFlatBuilder copy(byte[] source, int offset, int length)
+  {
+    if(length <= data.length - position)
+    {
+      return super.copy(source, offset, length);
+    }
+    drain();
+    if(length <= data.length - position)
+    {
+      return super.copy(source, offset, length);
+    }
+    if(getNestedDepth() != 0 || _frameStart >= 0)
+    {
+      throw new BufferTooSmallException(
+        "frame or nested message is larger than the staging buffer");
+    }
+    try
+    {
+      write(source, offset, length);
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    _flushed += length;
+    return this;
+  }
+
+  // Make room for 'length' more bytes in the staging buffer.
+  private void ensure(int length)
+  {
+    if(length <= data.length - position)
+    {
+      return;
+    }
+    drain();
+    if(length > data.length - position)
+    {
+      throw new BufferTooSmallException(
+        getNestedDepth() != 0 || _frameStart >= 0
+        ? "frame or nested message is larger than the staging buffer"
+        : "value is larger than the staging buffer");
+    }
+  }
+
+  // Write out everything before the unfinished frame or outermost nested
+  // message and move the rest to the start of the staging buffer.
+  private void drain()
+  {
+    int limit = _frameStart >= 0 ? _frameStart
+      : getNestedDepth() != 0 ? _nested[0] : position;
+    int length = limit - start;
+    if(length == 0)
+    {
+      return;
+    }
+    try
+    {
+      write(data, start, length);
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+    _flushed += length;
+    System.arraycopy(data, limit, data, start, position - limit);
+    position -= length;
+    for(int i = 0; i < getNestedDepth(); ++i)
+    {
+      _nested[i] -= length;
+    }
+    if(_frameStart >= 0)
+    {
+      _frameStart -= length;
+    }
+  }
+
+  private void write(byte[] source, int offset, int length)
+    throws IOException
+  {
+    if(_stream != null)
+    {
+      _stream.write(source, offset, length);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(source, offset, length);
+    while(buffer.hasRemaining())
+    {
+      _channel.write(buffer);
+    }
+  }
+
+  private static int checkSize(int bufferSize)
+  {
+    if(bufferSize < MinBufferSize)
+    {
+      throw new BFlatException("bufferSize must be at least " +
+                               MinBufferSize);
+    }
+    return bufferSize;
+  }
+
+  // type byte plus the longest LEB128 length of a tag
+  static final int MaxTagHeader  = 6;
+  static final int MaxLength     = 5;
+  static final int MinBufferSize = 64;
+
+  final OutputStream        _stream;
+  final WritableByteChannel _channel;
+  long                      _flushed;
+}
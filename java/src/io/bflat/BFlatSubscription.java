@@ -0,0 +1,213 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * BFlatSubscription is a conjunction of predicates over the fields of a
+ * BFlat message. A message satisfies the subscription when every predicate
+ * is satisfied by at least one field (or array element) of the message.
+ * Subscriptions are registered with a {@link BFlatMatcher}.
+ * <p>
+ * Example of a subscription for MSFT trades priced between 10 and 20:
+ * <pre>
+ * BFlatSubscription sub = new BFlatSubscription()
+ *   .equal("symbol", "MSFT")
+ *   .between("price", 10.0, 20.0);
+ * int id = matcher.subscribe(sub);
+ * </pre>
+ */
+public final class BFlatSubscription
+{
+  static final byte EqualBytes  = 0;
+  static final byte EqualLong   = 1;
+  static final byte EqualDouble = 2;
+  static final byte Range       = 3;
+
+  /**
+   * Construct an empty subscription. At least one predicate must be added
+   * before the subscription is registered with a {@link BFlatMatcher}.
+   */
+  public BFlatSubscription()
+  {
+  }
+
+  /**
+   * Require a {@link BFlatEncoding#String} or {@link BFlatEncoding#Binary}
+   * field whose value equals <tt>value</tt>.
+   *
+   * @param tagName The tag name.
+   * @param value   The expected value.
+   * @return This subscription.
+   */
+  public BFlatSubscription equal(String tagName, String value)
+  {
+    return equal(tagName, value.getBytes(UTF_8));
+  }
+
+  /**
+   * Require a {@link BFlatEncoding#String} or {@link BFlatEncoding#Binary}
+   * field whose raw bytes equal <tt>value</tt>.
+   *
+   * @param tagName The tag name.
+   * @param value   The expected raw value.
+   * @return This subscription.
+   */
+  public BFlatSubscription equal(String tagName, byte[] value)
+  {
+    return add(tagName, EqualBytes, 0, 0, value.clone());
+  }
+
+  /**
+   * Require an integer field whose value equals <tt>value</tt>. Fields of
+   * any integer type ({@link BFlatEncoding#Int8} through
+   * {@link BFlatEncoding#Int64}, {@link BFlatEncoding#Leb128} and
+   * {@link BFlatEncoding#Datetime}) are compared by value, regardless of
+   * their encoded width.
+   *
+   * @param tagName The tag name.
+   * @param value   The expected value.
+   * @return This subscription.
+   */
+  public BFlatSubscription equal(String tagName, long value)
+  {
+    return add(tagName, EqualLong, value, 0, null);
+  }
+
+  /**
+   * Require a {@link BFlatEncoding#Double} field whose value equals
+   * <tt>value</tt>.
+   *
+   * @param tagName The tag name.
+   * @param value   The expected value.
+   * @return This subscription.
+   * @throws BFlatException <tt>value</tt> is NaN.
+   */
+  public BFlatSubscription equal(String tagName, double value)
+  {
+    if(value != value)
+    {
+      throw new BFlatException("NaN is not a valid equality operand.");
+    }
+    return add(tagName, EqualDouble, doubleKey(value), 0, null);
+  }
+
+  /**
+   * Require a numeric field whose value lies in the closed interval
+   * [<tt>low</tt>, <tt>high</tt>]. Integer fields are compared after
+   * conversion to <tt>double</tt>.
+   *
+   * @param tagName The tag name.
+   * @param low     The inclusive lower bound.
+   * @param high    The inclusive upper bound.
+   * @return This subscription.
+   * @throws BFlatException <tt>low</tt> is greater than <tt>high</tt>, or
+   *                        either bound is NaN.
+   */
+  public BFlatSubscription between(String tagName, double low, double high)
+  {
+    if(!(low <= high))
+    {
+      throw new BFlatException("Invalid range bounds.");
+    }
+    return add(tagName, Range, doubleKey(low), doubleKey(high), null);
+  }
+
+  /**
+   * Require a numeric field whose value is greater than or equal to
+   * <tt>low</tt>.
+   *
+   * @param tagName The tag name.
+   * @param low     The inclusive lower bound.
+   * @return This subscription.
+   */
+  public BFlatSubscription atLeast(String tagName, double low)
+  {
+    return between(tagName, low, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Require a numeric field whose value is less than or equal to
+   * <tt>high</tt>.
+   *
+   * @param tagName The tag name.
+   * @param high    The inclusive upper bound.
+   * @return This subscription.
+   */
+  public BFlatSubscription atMost(String tagName, double high)
+  {
+    return between(tagName, Double.NEGATIVE_INFINITY, high);
+  }
+
+  /**
+   * Returns the number of predicates in this subscription.
+   * @return the number of predicates added so far.
+   */
+  public int size()
+  {
+    return _count;
+  }
+
+  private BFlatSubscription add(String tagName, byte kind, long bits,
+                                long bits2, byte[] bytes)
+  {
+    if(tagName.length() == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    if(_count == _kinds.length)
+    {
+      int capacity = _count * 2;
+      _tags  = Arrays.copyOf(_tags, capacity);
+      _kinds = Arrays.copyOf(_kinds, capacity);
+      _bits  = Arrays.copyOf(_bits, capacity);
+      _bits2 = Arrays.copyOf(_bits2, capacity);
+      _bytes = Arrays.copyOf(_bytes, capacity);
+    }
+    _tags[_count]  = tagName.getBytes(UTF_8);
+    _kinds[_count] = kind;
+    _bits[_count]  = bits;
+    _bits2[_count] = bits2;
+    _bytes[_count] = bytes;
+    ++_count;
+    return this;
+  }
+
+  // -0.0 and 0.0 compare equal, so they must share a key.
+  static long doubleKey(double value)
+  {
+    return Double.doubleToLongBits(value + 0.0);
+  }
+
+  private static Charset UTF_8 = Charset.forName("UTF-8");
+
+  byte[][] _tags  = new byte[4][];
+  byte[]   _kinds = new byte[4];
+  long[]   _bits  = new long[4];
+  long[]   _bits2 = new long[4];
+  byte[][] _bytes = new byte[4][];
+  int      _count;
+}
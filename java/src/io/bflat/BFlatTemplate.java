@@ -0,0 +1,458 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+
+/**
+ * BFlatTemplate describes a message with a fixed set of tags and types and
+ * encodes all of its tag headers once, into a prototype. Each new message
+ * is a copy of the prototype with typed slots at known offsets: setting a
+ * fixed-width value writes it straight to its offset, with no tag encoding
+ * and no branching on type, and the length of the fixed part never
+ * changes.
+ * <p>
+ * <tt>String</tt> and <tt>Binary</tt> fields are placed after all the
+ * fixed-width fields, in the order they were declared, and start out
+ * empty. Setting one moves only the variable-length fields declared after
+ * it, so setting them in declaration order moves just their few header
+ * bytes.
+ * <p>
+ * Example of a template for a trade message:
+ * <pre>
+ * BFlatTemplate trade = new BFlatTemplate()
+ *   .field(BFlatEncoding.Int64, "seq")
+ *   .field(BFlatEncoding.String, "symbol")
+ *   .field(BFlatEncoding.Double, "price");
+ * int seq = trade.slot("seq");
+ * int symbol = trade.slot("symbol");
+ * int price = trade.slot("price");
+ *
+ * BFlatTemplate.Instance message = trade.newInstance(buffer, 0);
+ * message.setLong(seq, 42).setDouble(price, 101.25).setString(symbol, "IBM");
+ * send(buffer, 0, message.getLength());
+ * </pre>
+ * <p>
+ * A template must not be changed once instances have been created from
+ * it. Instances may be created from it and used on different threads, but
+ * each instance is not thread-safe.
+ */
+public class BFlatTemplate
+{
+  /**
+   * Construct an empty BFlatTemplate.
+   */
+  public BFlatTemplate()
+  {
+  }
+
+  /**
+   * Add a field to this template. The slot number of the field is the
+   * number of fields added before it.
+   *
+   * @param type One of <tt>Null</tt>, <tt>Int8</tt>, <tt>Int16</tt>,
+   *             <tt>Int32</tt>, <tt>Int64</tt>, <tt>Double</tt>,
+   *             <tt>Datetime</tt>, <tt>String</tt> or <tt>Binary</tt> from
+   *             {@link BFlatEncoding}.
+   * @param tag  The tag name of the field.
+   * @return This template.
+   * @throws BFlatException The type is not supported, or the tag is empty.
+   */
+  public BFlatTemplate field(byte type, String tag)
+  {
+    if(type != BFlatEncoding.Null && width(type) == 0)
+    {
+      throw new BFlatException("unsupported template field type");
+    }
+    if(tag.length() == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    if(_count == _tags.length)
+    {
+      _tags  = Arrays.copyOf(_tags, _count * 2);
+      _types = Arrays.copyOf(_types, _count * 2);
+    }
+    _tags[_count]  = tag;
+    _types[_count] = type;
+    ++_count;
+    _prototype = null;
+    return this;
+  }
+
+  /**
+   * Returns the slot number of the first field with the given tag.
+   *
+   * @param tag The tag name to look for.
+   * @return The slot number, or -1 if this template has no such field.
+   */
+  public int slot(String tag)
+  {
+    for(int slot = 0; slot < _count; ++slot)
+    {
+      if(_tags[slot].equals(tag))
+      {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of fields in this template.
+   * @return the number of fields.
+   */
+  public int size()
+  {
+    return _count;
+  }
+
+  /**
+   * Returns the length of a message created from this template before any
+   * variable-length value is set. This is the exact length of every message
+   * when the template has no <tt>String</tt> or <tt>Binary</tt> fields.
+   * @return the length of the prototype message in bytes.
+   */
+  public int getPrototypeLength()
+  {
+    compile();
+    return _prototype.length;
+  }
+
+  /**
+   * Create a message from this template by copying the prototype into
+   * <tt>buffer</tt>. Fixed-width values start out as zero and
+   * variable-length values as empty.
+   *
+   * @param buffer   The array to write the message into.
+   * @param position The position in <tt>buffer</tt> to write it at.
+   * @return A new instance over <tt>buffer</tt>.
+   * @throws BufferTooSmallException The prototype does not fit.
+   */
+  public Instance newInstance(byte[] buffer, int position)
+  {
+    compile();
+    return new Instance(this).wrap(buffer, position);
+  }
+
+  /**
+   * One message created from a {@link BFlatTemplate}. An instance may be
+   * moved to a new buffer with {@link #wrap}, which avoids allocating an
+   * instance per message.
+   * <p>
+   * The setters do not check that the slot has the matching type, in the
+   * same way the getters of {@link BFlatValue} do not; assertions check it
+   * when they are enabled.
+   */
+  public static final class Instance
+  {
+    Instance(BFlatTemplate template)
+    {
+      _template = template;
+      _varOffset = new int[template._varCount];
+    }
+
+    /**
+     * Start a new message from the template's prototype.
+     *
+     * @param buffer   The array to write the message into.
+     * @param position The position in <tt>buffer</tt> to write it at.
+     * @return This instance.
+     * @throws BufferTooSmallException The prototype does not fit.
+     */
+    public Instance wrap(byte[] buffer, int position)
+    {
+      byte[] prototype = _template._prototype;
+      if(prototype.length > buffer.length - position)
+      {
+        throw new BufferTooSmallException("while copying the prototype");
+      }
+      System.arraycopy(prototype, 0, buffer, position, prototype.length);
+      data = buffer;
+      start = position;
+      _end = position + prototype.length;
+      System.arraycopy(_template._varOffset, 0, _varOffset, 0,
+                       _varOffset.length);
+      return this;
+    }
+
+    /**
+     * Returns the current length of this message in bytes.
+     * @return the length of the message.
+     */
+    public int getLength()
+    {
+      return _end - start;
+    }
+
+    /**
+     * Set an <tt>Int8</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     */
+    public Instance setByte(int slot, byte value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.Int8);
+      data[start + _template._offset[slot]] = value;
+      return this;
+    }
+
+    /**
+     * Set an <tt>Int16</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     */
+    public Instance setShort(int slot, short value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.Int16);
+      Fixed.encodeInt16(value, data, start + _template._offset[slot]);
+      return this;
+    }
+
+    /**
+     * Set an <tt>Int32</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     */
+    public Instance setInt(int slot, int value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.Int32);
+      Fixed.encodeInt32(value, data, start + _template._offset[slot]);
+      return this;
+    }
+
+    /**
+     * Set an <tt>Int64</tt> or <tt>Datetime</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     */
+    public Instance setLong(int slot, long value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.Int64 ||
+             _template._types[slot] == BFlatEncoding.Datetime);
+      Fixed.encodeInt64(value, data, start + _template._offset[slot]);
+      return this;
+    }
+
+    /**
+     * Set a <tt>Double</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     */
+    public Instance setDouble(int slot, double value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.Double);
+      Fixed.encodeDouble(value, data, start + _template._offset[slot]);
+      return this;
+    }
+
+    /**
+     * Set a <tt>String</tt> slot.
+     * @param slot  The slot number.
+     * @param value The value.
+     * @return This instance.
+     * @throws BufferTooSmallException The message no longer fits.
+     */
+    public Instance setString(int slot, String value)
+    {
+      assert(_template._types[slot] == BFlatEncoding.String);
+      int var = _template._offset[slot];
+      int length = Utils.utf8Length(value);
+      resize(var, Leb128.unsignedLength(length) + length);
+      _writer.data = data;
+      _writer.position = start + _varOffset[var];
+      _writer.encode(value);
+      return this;
+    }
+
+    /**
+     * Set a <tt>Binary</tt> or <tt>String</tt> slot to a copy of the given
+     * bytes. For a String slot the bytes must be valid UTF-8; no checking
+     * is performed.
+     * @param slot   The slot number.
+     * @param value  The array containing the value.
+     * @param offset The position in <tt>value</tt> where it begins.
+     * @param length The length of the value in bytes.
+     * @return This instance.
+     * @throws BufferTooSmallException The message no longer fits.
+     */
+    public Instance setBytes(int slot, byte[] value, int offset, int length)
+    {
+      assert(_template._width[slot] < 0);
+      int var = _template._offset[slot];
+      resize(var, Leb128.unsignedLength(length) + length);
+      _writer.data = data;
+      _writer.position = start + _varOffset[var];
+      _writer.encode(value, offset, length);
+      return this;
+    }
+
+    // Change the encoded length of variable slot 'var', moving the
+    // variable slots after it.
+    private void resize(int var, int dataLength)
+    {
+      int begin = start + _varOffset[var];
+      int end = var + 1 < _varOffset.length
+        ? start + _varOffset[var + 1] - _template._varHeader[var + 1]
+        : _end;
+      int shift = begin + dataLength - end;
+      if(shift == 0)
+      {
+        return;
+      }
+      if(_end + shift > data.length)
+      {
+        throw new BufferTooSmallException("while setting a variable slot");
+      }
+      System.arraycopy(data, end, data, end + shift, _end - end);
+      _end += shift;
+      for(int later = var + 1; later < _varOffset.length; ++later)
+      {
+        _varOffset[later] += shift;
+      }
+    }
+
+    /**
+     * The array this message is written into.
+     */
+    public byte[] data;
+    /**
+     * The position in <tt>data</tt> where this message begins.
+     */
+    public int start;
+
+    final BFlatTemplate _template;
+    final int[]         _varOffset;
+    final BFlatBuilder  _writer = new BFlatBuilder(null, 0);
+    int                 _end;
+  }
+
+  // Lay out and encode the prototype: fixed-width fields first, then the
+  // variable-length fields with empty values. Threads creating the first
+  // instances may race here; the layout is built under the lock and
+  // published by the volatile write of _prototype, which comes last.
+  private void compile()
+  {
+    if(_prototype == null)
+    {
+      synchronized(this)
+      {
+        if(_prototype == null)
+        {
+          layout();
+        }
+      }
+    }
+  }
+
+  private void layout()
+  {
+    _offset = new int[_count];
+    _width = new int[_count];
+    int varCount = 0;
+    for(int slot = 0; slot < _count; ++slot)
+    {
+      _width[slot] = width(_types[slot]);
+      if(_width[slot] < 0)
+      {
+        ++varCount;
+      }
+    }
+    _varCount = varCount;
+    _varOffset = new int[varCount];
+    _varHeader = new int[varCount];
+
+    int size = 0;
+    for(int slot = 0; slot < _count; ++slot)
+    {
+      size += BFlatSizer.sizeOfTag(_tags[slot]) + Math.max(_width[slot], 1);
+    }
+    BFlatBuilder builder = new BFlatBuilder(new byte[size], 0);
+    for(int pass = 0; pass < 2; ++pass)
+    {
+      int var = 0;
+      for(int slot = 0; slot < _count; ++slot)
+      {
+        boolean variable = _width[slot] < 0;
+        if(variable != (pass == 1))
+        {
+          continue;
+        }
+        int header = builder.position;
+        builder.encodeTag(_types[slot], _tags[slot]);
+        if(variable)
+        {
+          _offset[slot] = var;
+          _varOffset[var] = builder.position;
+          _varHeader[var] = builder.position - header;
+          builder.encode(EMPTY, 0, 0);
+          ++var;
+        }
+        else
+        {
+          _offset[slot] = builder.position;
+          builder.copy(ZEROS, 0, _width[slot]);
+        }
+      }
+    }
+    _prototype = Arrays.copyOf(builder.data, builder.position);
+  }
+
+  private static int width(byte type)
+  {
+    switch(type)
+    {
+      case BFlatEncoding.Int8:     return 1;
+      case BFlatEncoding.Int16:    return 2;
+      case BFlatEncoding.Int32:    return 4;
+      case BFlatEncoding.Int64:
+      case BFlatEncoding.Double:
+      case BFlatEncoding.Datetime: return 8;
+      case BFlatEncoding.String:
+      case BFlatEncoding.Binary:   return -1;
+      default:                     return 0;
+    }
+  }
+
+  private static final byte[] EMPTY = new byte[0];
+  private static final byte[] ZEROS = new byte[8];
+
+  String[] _tags  = new String[8];
+  byte[]   _types = new byte[8];
+  int      _count;
+
+  // compiled layout; for a variable slot _offset holds its index among the
+  // variable slots, whose data offsets are in _varOffset.
+  volatile byte[] _prototype;
+  int[]           _offset;
+  int[]           _width;
+  int             _varCount;
+  int[]           _varOffset;
+  int[]           _varHeader;
+}
@@ -23,6 +23,10 @@
 //
 ////////////////////////////////////////////////////////////////////////////
 package io.bflat;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 
 /**
@@ -150,6 +154,29 @@ public final class BFlatValue
   {
     return _tagLength;
   }
+  /**
+   * Returns the index in the underlying buffer where this value's encoded
+   * field begins, starting with the type byte of its header. Use this method
+   * along with {@link #getRawFieldLength} to copy the whole field into
+   * another message without decoding it; see
+   * {@link BFlatBuilder#copyField}.
+   * @return The index into this value's underlying buffer where the field
+   *         begins.
+   */
+  public int getRawFieldOffset()
+  {
+    return _fieldOffset;
+  }
+  /**
+   * Returns the length, in bytes, of this value's encoded field, from the
+   * first byte of its header through the last byte of its data. Use this
+   * method along with {@link #getRawFieldOffset}.
+   * @return The length of this field in the underlying buffer.
+   */
+  public int getRawFieldLength()
+  {
+    return _fieldLength;
+  }
   /**
    * Returns this value's tag.
    * @return This value's tag name.
@@ -408,6 +435,78 @@ public final class BFlatValue
     return new String(_data, (int)(v>>32), (int)(v&0xFFFFFFFF), UTF_8);
   }
 
+  /**
+   * Returns a stream over this value's string or binary data. The stream
+   * reads the underlying buffer directly; nothing is copied.
+   * The result of this method is only defined if {@link #getType} is
+   * {@link BFlatEncoding#String} or {@link BFlatEncoding#Binary}.
+   * @return a stream of the raw value bytes
+   */
+  public InputStream openStream()
+  {
+    return new ByteArrayInputStream(_data,getRawValueOffset(),
+                                    getRawValueLength());
+  }
+
+  /**
+   * Writes this value's string or binary data to a channel, directly from
+   * the underlying buffer.
+   * The result of this method is only defined if {@link #getType} is
+   * {@link BFlatEncoding#String} or {@link BFlatEncoding#Binary}.
+   * @param target The channel to write to.
+   * @return the number of bytes written
+   * @throws IOException <tt>target</tt> could not be written.
+   */
+  public long transferTo(WritableByteChannel target) throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(_data,getRawValueOffset(),
+                                        getRawValueLength());
+    while(buffer.hasRemaining())
+    {
+      target.write(buffer);
+    }
+    return getRawValueLength();
+  }
+
+  /**
+   * Writes this value's string or binary data to a channel from the file
+   * the message is stored in, using {@link FileChannel#transferTo} so that
+   * the operating system can move the bytes without copying them through
+   * the Java heap.
+   * <p>
+   * This allows a large value to be passed on after reading only the start
+   * of its message: read the beginning of the message from the file into
+   * an array, and parse it with the length of the whole message. Values up
+   * to and including the large one can then be read from the array, and
+   * this method sends the large value from the file.
+   * The result of this method is only defined if {@link #getType} is
+   * {@link BFlatEncoding#String} or {@link BFlatEncoding#Binary}.
+   * @param source         The file containing the message.
+   * @param bufferPosition The position in <tt>source</tt> of the first
+   *                       byte of this value's underlying buffer.
+   * @param target         The channel to write to.
+   * @return the number of bytes written
+   * @throws IOException <tt>source</tt> could not be read or
+   *                     <tt>target</tt> could not be written.
+   */
+  public long transferTo(FileChannel source, long bufferPosition,
+                         WritableByteChannel target) throws IOException
+  {
+    long position = bufferPosition + getRawValueOffset();
+    long remaining = getRawValueLength();
+    while(remaining > 0)
+    {
+      long written = source.transferTo(position,remaining,target);
+      if(written <= 0 && position >= source.size())
+      {
+        throw new EOFException("file ended before the value");
+      }
+      position += written;
+      remaining -= written;
+    }
+    return getRawValueLength();
+  }
+
   /**
    * Returns the signed integer value of self.
    * The result of this method is only defined if {@link #getType} is
@@ -524,6 +623,12 @@ public final class BFlatValue
     _tagLength = len;
   }
 
+  void setField(int offset, int length)
+  {
+    _fieldOffset = offset;
+    _fieldLength = length;
+  }
+
   void setData(int position, byte type, int count)
   {
     _dataOffset = position;
@@ -565,6 +670,8 @@ public final class BFlatValue
   int     _tagOffset;
   int     _tagLength;
   int     _dataOffset;
+  int     _fieldOffset;
+  int     _fieldLength;
   int     _count;
   byte    _type;
   boolean _isReuse;
@@ -38,6 +38,7 @@ public class BufferTooSmallException extends BFlatException
   public BufferTooSmallException(String info)
   {
     super(info);
+    if(BFlatMetrics.Enabled) BFlatMetrics.bufferTooSmall();
   }
 }
 
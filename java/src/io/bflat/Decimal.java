@@ -0,0 +1,385 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.math.BigInteger;
+
+//
+// Formats integers and doubles as ASCII decimal bytes without going
+// through String, and converts parsed decimal digits to a double.
+//
+// Integers are written two digits at a time from a table of digit pairs.
+// A double is written as the shortest decimal that reads back as the same
+// double, found with Giulietti's Schubfach algorithm ("The Schubfach way to
+// render doubles", 2020). It is written in the plain notation of
+// JavaScript when its decimal point falls within 21 digits of the first,
+// and with an 'E' exponent otherwise; an integral value keeps a ".0" so
+// that it still reads as a double.
+//
+final class Decimal
+{
+  // The most bytes format writes for a long and for a double, as in
+  // "-9223372036854775808" and "-1.2345678901234567E-308".
+  static final int MaxLongLength   = 20;
+  static final int MaxDoubleLength = 25;
+
+  static int format(long value, byte[] out, int position)
+  {
+    if(value < 0)
+    {
+      out[position++] = '-';
+      if(value == Long.MIN_VALUE)
+      {
+        System.arraycopy(MinLong, 0, out, position, MinLong.length);
+        return position + MinLong.length;
+      }
+      value = -value;
+    }
+    return write(value, length(value), out, position);
+  }
+
+  // The number of decimal digits in a non-negative value.
+  static int length(long value)
+  {
+    // floor(log10(2) * bit length) is the digit count or one less
+    int bits = 64 - Long.numberOfLeadingZeros(value | 1);
+    int length = bits * 1233 >>> 12;
+    return value >= PowersOf10[length] ? length + 1 : Math.max(length, 1);
+  }
+
+  // Writes the 'length' digits of a non-negative value.
+  static int write(long value, int length, byte[] out, int position)
+  {
+    int end = position + length;
+    int at = end;
+    while(value >= 100)
+    {
+      int pair = (int)(value % 100) << 1;
+      value /= 100;
+      out[--at] = DigitPairs[pair + 1];
+      out[--at] = DigitPairs[pair];
+    }
+    if(value >= 10)
+    {
+      int pair = (int)value << 1;
+      out[--at] = DigitPairs[pair + 1];
+      out[--at] = DigitPairs[pair];
+    }
+    else
+    {
+      out[--at] = (byte)('0' + value);
+    }
+    return end;
+  }
+
+  // The value must be finite.
+  static int format(double value, byte[] out, int position)
+  {
+    long bits = Double.doubleToRawLongBits(value);
+    if(bits < 0)
+    {
+      out[position++] = '-';
+    }
+    long t = bits & FractionMask;
+    int bq = (int)(bits >>> (Precision - 1)) & 0x7ff;
+    if(bq != 0)
+    {
+      int mq = -MinExponent + 1 - bq;
+      long c = MinSignificand | t;
+      // integers below 2^53 need no search for a shorter decimal
+      if(0 < mq && mq < Precision)
+      {
+        long f = c >> mq;
+        if(f << mq == c)
+        {
+          return digits(f, 0, out, position);
+        }
+      }
+      return decimal(-mq, c, 0, out, position);
+    }
+    if(t != 0)
+    {
+      return t < Tiny ? decimal(MinExponent, 10 * t, -1, out, position)
+                      : decimal(MinExponent, t, 0, out, position);
+    }
+    return digits(0, 0, out, position);
+  }
+
+  // The shortest decimal in the rounding interval of c * 2^q.
+  private static int decimal(int q, long c, int dk, byte[] out, int position)
+  {
+    int odd = (int)c & 0x1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if(c != MinSignificand | q == MinExponent)
+    {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    }
+    else
+    {
+      // the interval below a power of two is half as wide
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    long g1 = G[2 * (k - MinK)];
+    long g0 = G[2 * (k - MinK) + 1];
+    long vb = roundOdd(g1, g0, cb << h);
+    long vbl = roundOdd(g1, g0, cbl << h);
+    long vbr = roundOdd(g1, g0, cbr << h);
+    long s = vb >> 2;
+    if(s >= 100)
+    {
+      // a multiple of ten in the interval has one digit fewer
+      long sp10 = 10 * Math.multiplyHigh(s, 115292150460684698L << 4);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + odd <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + odd <= vbr;
+      if(upin != wpin)
+      {
+        return digits(upin ? sp10 : tp10, k, out, position);
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + odd <= s << 2;
+    boolean win = (t << 2) + odd <= vbr;
+    if(uin != win)
+    {
+      return digits(uin ? s : t, k + dk, out, position);
+    }
+    // both s and t are in the interval; take the closer, or the even one
+    long cmp = vb - (s + t << 1);
+    return digits(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk,
+                  out, position);
+  }
+
+  // Rounds g * cp / 2^127 to odd, where g = g1 * 2^63 + g0.
+  private static long roundOdd(long g1, long g0, long cp)
+  {
+    long x1 = Math.multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = Math.multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (z & Mask63) + Mask63 >>> 63;
+  }
+
+  // Writes f * 10^e.
+  private static int digits(long f, int e, byte[] out, int position)
+  {
+    if(f == 0)
+    {
+      out[position] = '0';
+      out[position + 1] = '.';
+      out[position + 2] = '0';
+      return position + 3;
+    }
+    while(f % 10 == 0)
+    {
+      f /= 10;
+      ++e;
+    }
+    int length = length(f);
+    // the number of digits before the decimal point
+    int point = length + e;
+    if(0 < point && point <= 21)
+    {
+      if(e >= 0)
+      {
+        position = write(f, length, out, position);
+        for(int zero = 0; zero < e; ++zero)
+        {
+          out[position++] = '0';
+        }
+        out[position++] = '.';
+        out[position++] = '0';
+        return position;
+      }
+      // digits with the point inside them: write them one place to the
+      // right, then move those before the point back over it
+      write(f, length, out, position + 1);
+      System.arraycopy(out, position + 1, out, position, point);
+      out[position + point] = '.';
+      return position + length + 1;
+    }
+    if(-6 < point && point <= 0)
+    {
+      out[position++] = '0';
+      out[position++] = '.';
+      for(int zero = point; zero < 0; ++zero)
+      {
+        out[position++] = '0';
+      }
+      return write(f, length, out, position);
+    }
+    // d.dddE+x
+    write(f, length, out, position + 1);
+    out[position] = out[position + 1];
+    out[position + 1] = '.';
+    if(length == 1)
+    {
+      out[position + 2] = '0';
+      position += 3;
+    }
+    else
+    {
+      position += length + 1;
+    }
+    out[position++] = 'E';
+    int exponent = point - 1;
+    if(exponent < 0)
+    {
+      out[position++] = '-';
+      exponent = -exponent;
+    }
+    return write(exponent, length(exponent), out,
+                            position);
+  }
+
+  // m * 10^e when both m and the power of ten are exact doubles, so the
+  // one rounding of the multiply or divide gives the correctly rounded
+  // result (Clinger, "How to read floating point numbers accurately",
+  // 1990); otherwise NaN. A positive e beyond 22 is tried by moving the
+  // excess into m while it stays below 2^53.
+  static double exactDouble(long m, int e)
+  {
+    if(m < 0 || m > MaxExactMantissa)
+    {
+      return Double.NaN;
+    }
+    if(e < 0)
+    {
+      return e >= -22 ? m / ExactPowers[-e] : Double.NaN;
+    }
+    if(e > 22)
+    {
+      if(e > 22 + 15 || m > MaxExactMantissa / PowersOf10[e - 22])
+      {
+        return Double.NaN;
+      }
+      m *= PowersOf10[e - 22];
+      e = 22;
+    }
+    return m * ExactPowers[e];
+  }
+
+  // floor(q * log10(2)), floor(q * log10(3/4 * 2)) and
+  // floor(e * log2(10)), exact over the exponents used here
+  static int flog10pow2(int q)
+  {
+    return (int)(q * 661971961083L >> 41);
+  }
+
+  static int flog10threeQuartersPow2(int q)
+  {
+    return (int)(q * 661971961083L - 274743187321L >> 41);
+  }
+
+  static int flog2pow10(int e)
+  {
+    return (int)(e * 913124641741L >> 38);
+  }
+
+  // g = floor(10^-k * 2^(125 - flog2pow10(-k))) + 1 for each k, split into
+  // its high and low 63 bits.
+  private static long[] table()
+  {
+    long[] g = new long[2 * (MaxK - MinK + 1)];
+    BigInteger mask63 = BigInteger.valueOf(Mask63);
+    for(int k = MinK; k <= MaxK; ++k)
+    {
+      int shift = 125 - flog2pow10(-k);
+      BigInteger value;
+      if(k <= 0)
+      {
+        value = BigInteger.TEN.pow(-k);
+        value = shift >= 0 ? value.shiftLeft(shift) : value.shiftRight(-shift);
+      }
+      else
+      {
+        value = BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+      }
+      value = value.add(BigInteger.ONE);
+      g[2 * (k - MinK)] = value.shiftRight(63).longValue();
+      g[2 * (k - MinK) + 1] = value.and(mask63).longValue();
+    }
+    return g;
+  }
+
+  static long[] powersOf10()
+  {
+    long[] powers = new long[19];
+    powers[0] = 1;
+    for(int i = 1; i < powers.length; ++i)
+    {
+      powers[i] = powers[i - 1] * 10;
+    }
+    return powers;
+  }
+
+  static byte[] digitPairs()
+  {
+    byte[] pairs = new byte[200];
+    for(int i = 0; i < 100; ++i)
+    {
+      pairs[2 * i] = (byte)('0' + i / 10);
+      pairs[2 * i + 1] = (byte)('0' + i % 10);
+    }
+    return pairs;
+  }
+
+  static double[] exactPowers()
+  {
+    double[] powers = new double[23];
+    powers[0] = 1;
+    for(int i = 1; i < powers.length; ++i)
+    {
+      powers[i] = powers[i - 1] * 10;
+    }
+    return powers;
+  }
+
+  static final long[]   PowersOf10       = powersOf10();
+  static final double[] ExactPowers      = exactPowers();
+  static final long     MaxExactMantissa = 1L << 53;
+  static final byte[]   DigitPairs       = digitPairs();
+  static final byte[]   MinLong = "9223372036854775808".getBytes();
+
+  static final int  Precision      = 53;
+  static final int  MinExponent    = -1074;
+  static final long MinSignificand = 1L << (Precision - 1);
+  static final long FractionMask   = MinSignificand - 1;
+  static final long Mask63         = (1L << 63) - 1;
+  static final int  Tiny           = 3;
+  static final int  MinK           = -324;
+  static final int  MaxK           = 292;
+  static final long[] G            = table();
+
+  private Decimal()
+  {
+  }
+}
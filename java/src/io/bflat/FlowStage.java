@@ -0,0 +1,290 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The publishing half shared by {@link BFlatPublisher} and
+ * {@link BFlatProcessor}: a single subscriber, demand accounting, and a
+ * recycled buffer of message views, all driven by {@link #drain} running
+ * serially on an executor.
+ * <p>
+ * Views handed to the subscriber stay valid until it next calls
+ * {@link #request}; the views delivered before that call, and their space
+ * in the buffer, are then reused. Views delivered after the call, such as
+ * those a subscriber that requests ahead has not yet seen, are kept. With
+ * unbounded demand the subscriber never signals, so each view is only
+ * valid until <tt>onNext</tt> returns.
+ */
+abstract class FlowStage implements Flow.Publisher<BFlatParser>,
+                                    Flow.Subscription, Runnable
+{
+  FlowStage(Executor executor)
+  {
+    _executor = executor;
+  }
+
+  public void subscribe(Flow.Subscriber<? super BFlatParser> subscriber)
+  {
+    if(!_subscriber.compareAndSet(null, subscriber))
+    {
+      subscriber.onSubscribe(new Flow.Subscription()
+      {
+        public void request(long n)
+        {
+        }
+
+        public void cancel()
+        {
+        }
+      });
+      subscriber.onError(new IllegalStateException(
+        "only one subscriber is supported"));
+      return;
+    }
+    subscriber.onSubscribe(this);
+    schedule();
+  }
+
+  public void request(long n)
+  {
+    if(n <= 0)
+    {
+      _invalidRequest = true;
+    }
+    else
+    {
+      _requested.accumulateAndGet(n, FlowStage::addCapped);
+      _released = _emitted;
+    }
+    schedule();
+  }
+
+  public void cancel()
+  {
+    _cancelled = true;
+    schedule();
+  }
+
+  public final void run()
+  {
+    int missed = 1;
+    do
+    {
+      if(!_done)
+      {
+        try
+        {
+          drain();
+        }
+        catch(Throwable t)
+        {
+          fail(t);
+        }
+      }
+      missed = _wip.addAndGet(-missed);
+    }
+    while(missed != 0);
+  }
+
+  // Deliver whatever current demand and input allow. Called serially.
+  abstract void drain() throws Exception;
+
+  // Release the stage's input after completion, failure or cancellation.
+  abstract void release();
+
+  final void schedule()
+  {
+    if(_wip.getAndIncrement() == 0)
+    {
+      _executor.execute(this);
+    }
+  }
+
+  // Take new demand and reuse the buffer if the subscriber has signalled.
+  // Returns false once the stage has stopped.
+  final boolean begin()
+  {
+    if(_cancelled)
+    {
+      stop();
+      return false;
+    }
+    if(_invalidRequest)
+    {
+      fail(new IllegalArgumentException("request must be positive"));
+      return false;
+    }
+    _demand = addCapped(_demand, _requested.getAndSet(0));
+    long released = _released;
+    if(released > _recycled)
+    {
+      recycle(released);
+    }
+    return _subscriber.get() != null;
+  }
+
+  // Hand a view to the subscriber and count it against demand.
+  final void emit(BFlatParser view)
+  {
+    if(_demand != Long.MAX_VALUE)
+    {
+      --_demand;
+    }
+    _emitted = _emitted + 1; // before onNext, which may call request
+    _subscriber.get().onNext(view);
+    if(_demand == Long.MAX_VALUE)
+    {
+      recycle(_emitted);
+    }
+  }
+
+  final void complete()
+  {
+    stop();
+    _subscriber.get().onComplete();
+  }
+
+  final void fail(Throwable t)
+  {
+    if(_done)
+    {
+      return;
+    }
+    stop();
+    Flow.Subscriber<? super BFlatParser> subscriber = _subscriber.get();
+    if(subscriber != null)
+    {
+      subscriber.onError(t);
+    }
+  }
+
+  // Returns the position in _buffer of 'length' free bytes. A new array is
+  // allocated when the current one is full, so views into it stay valid.
+  final int reserve(int length)
+  {
+    if(length > _buffer.length - _used)
+    {
+      _buffer = new byte[Math.max(length, _buffer.length * 2)];
+      _used = 0;
+    }
+    int position = _used;
+    _used += length;
+    return position;
+  }
+
+  // Replace a full buffer with a larger one; views into it stay valid.
+  final void grow()
+  {
+    _buffer = new byte[_buffer.length * 2];
+    _used = 0;
+  }
+
+  // Returns a reusable view of a message.
+  final BFlatParser view(byte[] data, int offset, int length)
+  {
+    if(_viewCount == _views.length)
+    {
+      _views = Arrays.copyOf(_views, _viewCount * 2);
+    }
+    BFlatParser view = _views[_viewCount];
+    if(view == null)
+    {
+      view = _views[_viewCount] = new BFlatParser();
+    }
+    ++_viewCount;
+    return view.parse(data, offset, length);
+  }
+
+  // Reuse the views emitted before the count 'released'. Every view in
+  // _views has been emitted, in order, the first being number _recycled.
+  private void recycle(long released)
+  {
+    int count = (int)Math.min(released - _recycled, _viewCount);
+    _recycled += count;
+    if(count == _viewCount)
+    {
+      _used = 0;
+      _viewCount = 0;
+      return;
+    }
+    // move the views still in use to the front; their data stays where it
+    // is, so the buffer is only reused once they are released too
+    reverse(0, count);
+    reverse(count, _viewCount);
+    reverse(0, _viewCount);
+    _viewCount -= count;
+  }
+
+  private void reverse(int from, int to)
+  {
+    for(--to; from < to; ++from, --to)
+    {
+      BFlatParser view = _views[from];
+      _views[from] = _views[to];
+      _views[to] = view;
+    }
+  }
+
+  private void stop()
+  {
+    _done = true;
+    _buffer = Empty;
+    _views = new BFlatParser[1];
+    release();
+  }
+
+  static long addCapped(long a, long b)
+  {
+    long sum = a + b;
+    return sum < 0 ? Long.MAX_VALUE : sum;
+  }
+
+  static final byte[] Empty = new byte[0];
+
+  final Executor      _executor;
+  final AtomicInteger _wip       = new AtomicInteger();
+  final AtomicLong    _requested = new AtomicLong();
+  final AtomicReference<Flow.Subscriber<? super BFlatParser>> _subscriber =
+    new AtomicReference<Flow.Subscriber<? super BFlatParser>>();
+  volatile boolean    _cancelled;
+  volatile boolean    _invalidRequest;
+  volatile long       _emitted;  // written by drain only
+  volatile long       _released; // _emitted at the last request
+
+  // drain only
+  long          _demand;
+  boolean       _done;
+  byte[]        _buffer = new byte[1024];
+  int           _used;
+  BFlatParser[] _views  = new BFlatParser[16];
+  int           _viewCount;
+  long          _recycled; // views emitted before _views[0]
+}
@@ -0,0 +1,122 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads length-prefixed frames from a blocking stream into a reused
+ * buffer, reading ahead as far as the buffer allows so that small frames
+ * cost one read between them rather than two each.
+ */
+final class FrameReader
+{
+  FrameReader(InputStream in, int bufferSize)
+  {
+    _in = in;
+    _buffer = new byte[Math.max(bufferSize, MinBuffer)];
+  }
+
+  // Deliver each frame to 'handler' in place until the end of the stream.
+  void readAll(BFlatHandler handler) throws IOException
+  {
+    int start = 0;
+    int end = 0;
+    while(true)
+    {
+      start = deliver(_buffer, start, end, handler);
+      int needed = needed(_buffer, start, end);
+      if(needed > _buffer.length - start)
+      {
+        if(needed > _buffer.length)
+        {
+          _buffer = Arrays.copyOf(_buffer,
+                                  Math.max(needed, _buffer.length * 2));
+        }
+        System.arraycopy(_buffer, start, _buffer, 0, end - start);
+        end -= start;
+        start = 0;
+      }
+      else if(start == end)
+      {
+        start = end = 0;
+      }
+      int count = _in.read(_buffer, end, _buffer.length - end);
+      if(count < 0)
+      {
+        if(end > start)
+        {
+          throw new BFlatException("truncated frame");
+        }
+        return;
+      }
+      end += count;
+    }
+  }
+
+  // Deliver the complete frames between 'start' and 'end' in place and
+  // return the position of the first incomplete one.
+  static int deliver(byte[] data, int start, int end, BFlatHandler handler)
+  {
+    while(end - start >= BFlatBuilder.FrameHeaderLength)
+    {
+      int length = Fixed.decodeInt32(data, start);
+      if(length < 0)
+      {
+        throw new BFlatException("invalid frame length");
+      }
+      if(end - start - BFlatBuilder.FrameHeaderLength < length)
+      {
+        break;
+      }
+      handler.onMessage(data, start + BFlatBuilder.FrameHeaderLength,
+                        length);
+      start += BFlatBuilder.FrameHeaderLength + length;
+    }
+    return start;
+  }
+
+  // Returns the size of the frame that begins at 'start', or of its header
+  // if that has not been read yet.
+  static int needed(byte[] data, int start, int end)
+  {
+    if(end - start < BFlatBuilder.FrameHeaderLength)
+    {
+      return BFlatBuilder.FrameHeaderLength;
+    }
+    int length = Fixed.decodeInt32(data, start);
+    if(length > Integer.MAX_VALUE - 16)
+    {
+      throw new BFlatException("invalid frame length");
+    }
+    return BFlatBuilder.FrameHeaderLength + length;
+  }
+
+  static final int MinBuffer = 64;
+
+  final InputStream _in;
+  byte[]            _buffer;
+}
@@ -47,13 +47,15 @@ public class Leb128
       int shift = 0;
       while((source.data[source.position] & 0x80) != 0)
       {
-        long data = (source.data[source.position++] & 0x7f) << shift;
+        long data = (long)(source.data[source.position++] & 0x7f) << shift;
         shift += bits_per_digit;
         result |= data;
       }
-      result |= source.data[source.position] << shift;
-      if((source.data[source.position++] & 0x40) != 0)
-        result -= (1<<(shift+bits_per_digit));
+      byte last = source.data[source.position++];
+      result |= (long)(last & 0x7f) << shift;
+      shift += bits_per_digit;
+      if((last & 0x40) != 0 && shift < 64)
+        result |= -1L << shift;
 
       return result;
     }
@@ -110,11 +112,11 @@ public class Leb128
       int shift = 0;
       while((source.data[source.position] & 0x80) != 0)
       {
-        long data = (source.data[source.position++]&0x7f) << shift;
+        long data = (long)(source.data[source.position++]&0x7f) << shift;
         shift += bits_per_digit;
         result |= data;
       }
-      result |= source.data[source.position++]<<shift;
+      result |= (long)(source.data[source.position++]&0x7f) << shift;
       return result;
     }
     catch(IndexOutOfBoundsException aex)
@@ -141,7 +143,7 @@ public class Leb128
       while(isMore)
       {
         byte thisByte = (byte)(value&0x7f);
-        value>>=7;
+        value>>>=7;
         isMore = value!=0;
         if(isMore) thisByte |= 0x80;
         output.data[output.position++] = thisByte;
@@ -154,6 +156,29 @@ public class Leb128
     }
   }
 
+  /**
+   * Returns the number of bytes {@link #encodeSigned} writes for a value.
+   * @param value The signed value.
+   * @return The encoded length of <tt>value</tt>, from 1 to 10 bytes.
+   */
+  public static int signedLength(long value)
+  {
+    // bits needed including the sign bit, seven per byte
+    int bits = 65 - Long.numberOfLeadingZeros(value ^ (value >> 63));
+    return (bits + 6) / 7;
+  }
+
+  /**
+   * Returns the number of bytes {@link #encodeUnsigned} writes for a value.
+   * @param value The unsigned value.
+   * @return The encoded length of <tt>value</tt>, from 1 to 10 bytes.
+   */
+  public static int unsignedLength(long value)
+  {
+    int bits = 64 - Long.numberOfLeadingZeros(value | 1);
+    return (bits + 6) / 7;
+  }
+
   private Leb128()
   {
   }
@@ -0,0 +1,54 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import jdk.jfr.*;
+
+/**
+ * Flight Recorder event for a message that {@link BFlatMetrics} found slow
+ * or large.
+ */
+@Name("io.bflat.Message")
+@Label("BFlat Message")
+@Category("BFlat")
+@Description("A BFlat message that was slow to parse or encode, or large")
+final class MessageEvent extends Event
+{
+  @Label("Operation")
+  @Description("parse or encode")
+  String operation;
+
+  @Label("Size")
+  @DataAmount
+  int size;
+
+  @Label("Fields")
+  int fields;
+
+  @Label("Time")
+  @Timespan
+  long time;
+
+  static final EventType Type = EventType.getEventType(MessageEvent.class);
+}
@@ -0,0 +1,124 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat;
+import java.nio.charset.Charset;
+
+//
+// Locates the key field of a BFlat message and holds its value without
+// materializing a String. String and Binary keys refer to their raw bytes
+// in the message; integer keys of any width are normalized to a long so
+// that the same value matches regardless of how it was encoded.
+//
+final class MessageKey
+{
+  static final byte KindBytes  = 1;
+  static final byte KindLong   = 2;
+  static final byte KindDouble = 3;
+
+  MessageKey(String tagName)
+  {
+    if(tagName.length() == 0)
+    {
+      throw new BFlatException("Zero length tags are not allowed.");
+    }
+    _tag = tagName.getBytes(UTF_8);
+  }
+
+  // Find the key field in a message. Returns false if the message does not
+  // contain the key tag or the key value is null.
+  boolean extract(byte[] data, int position, int length)
+  {
+    for(BFlatValue value : _parser.parse(data, position, length))
+    {
+      value.reuse();
+      if(value._tagLength != _tag.length ||
+         !Utils.regionEquals(_tag, 0, data, value._tagOffset, _tag.length))
+      {
+        continue;
+      }
+      if(value.isArray())
+      {
+        throw new BFlatException("key field must not be an array",
+                                 value._tagOffset);
+      }
+      switch(value.getType())
+      {
+        case BFlatEncoding.String:
+        case BFlatEncoding.Binary:
+          set(data, value.getRawValueOffset(), value.getRawValueLength());
+          return true;
+        case BFlatEncoding.Double:
+          set(KindDouble, BFlatSubscription.doubleKey(value.getDouble()));
+          return true;
+        case BFlatEncoding.Null:
+          return false;
+        default:
+          set(KindLong, value.getLong());
+          return true;
+      }
+    }
+    return false;
+  }
+
+  void set(byte[] data, int offset, int length)
+  {
+    _kind = KindBytes;
+    _data = data;
+    _offset = offset;
+    _length = length;
+    _bits = 0;
+    _hash = Utils.hash(KindBytes, data, offset, length);
+  }
+
+  void set(byte kind, long bits)
+  {
+    _kind = kind;
+    _data = null;
+    _offset = 0;
+    _length = 0;
+    _bits = bits;
+    _hash = Utils.hash(kind, bits, 0);
+  }
+
+  // Compare with a key previously captured from a message stored in 'data'.
+  boolean equals(byte kind, long bits, byte[] data, int offset, int length)
+  {
+    if(kind != _kind) return false;
+    if(kind != KindBytes) return bits == _bits;
+    return length == _length &&
+      Utils.regionEquals(_data, _offset, data, offset, length);
+  }
+
+  static Charset UTF_8 = Charset.forName("UTF-8");
+
+  final byte[]      _tag;
+  final BFlatParser _parser = new BFlatParser();
+  byte              _kind;
+  byte[]            _data;
+  int               _offset;
+  int               _length;
+  long              _bits;
+  int               _hash;
+}
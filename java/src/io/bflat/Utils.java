@@ -44,6 +44,77 @@ public class Utils
     System.out.println("");
   }
 
+  //
+  // Hashing and comparison of raw byte ranges, shared by the classes that
+  // index messages by tag or key bytes without materializing Strings.
+  //
+  static int hash(int seed, byte[] data, int offset, int length)
+  {
+    int h = seed ^ 0x811C9DC5;
+    for(int i = offset, end = offset + length; i < end; ++i)
+    {
+      h = (h ^ data[i]) * 0x01000193;
+    }
+    return mix(h);
+  }
+
+  static int hash(int seed, long bits, long bits2)
+  {
+    long h = (bits * 0x9E3779B97F4A7C15L) ^ (bits2 * 0xC2B2AE3D27D4EB4FL);
+    return mix(seed ^ (int)h ^ (int)(h >>> 32));
+  }
+
+  static int mix(int h)
+  {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  static boolean regionEquals(byte[] a, int aOffset, byte[] b, int bOffset,
+                              int length)
+  {
+    for(int i = 0; i < length; ++i)
+    {
+      if(a[aOffset + i] != b[bOffset + i]) return false;
+    }
+    return true;
+  }
+
+  //
+  // The number of bytes BFlatBuilder writes for a string in UTF-8. A valid
+  // surrogate pair takes four bytes; an unpaired surrogate is written as '?'.
+  //
+  static int utf8Length(CharSequence value)
+  {
+    int length = value.length();
+    int bytes = length;
+    for(int i = 0; i < length; ++i)
+    {
+      char c = value.charAt(i);
+      if(c < 0x80)
+      {
+        continue;
+      }
+      if(c < 0x800)
+      {
+        bytes += 1;
+      }
+      else if(Character.isHighSurrogate(c) && i + 1 < length &&
+              Character.isLowSurrogate(value.charAt(i + 1)))
+      {
+        bytes += 2; // four bytes for two chars
+        ++i;
+      }
+      else if(!Character.isSurrogate(c))
+      {
+        bytes += 2;
+      }
+    }
+    return bytes;
+  }
+
   private Utils()
   {
   }
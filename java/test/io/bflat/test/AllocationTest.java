@@ -0,0 +1,350 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import org.junit.AfterClass;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.*;
+
+// Asserts how many bytes the hot paths allocate per operation, measured
+// with the JVM's per-thread allocation counter over the benchmark corpora,
+// and prints a table of the results.
+public class AllocationTest
+{
+  // One round of an operation; returns the number of units it performed.
+  interface Operation
+  {
+    long run();
+  }
+
+  static final com.sun.management.ThreadMXBean THREADS =
+    ManagementFactory.getThreadMXBean() instanceof
+      com.sun.management.ThreadMXBean
+    ? (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()
+    : null;
+  static final int  WARMUP = 5;
+  static final int  ROUNDS = 20;
+  static final int  TRIALS = 3;
+  static final long SLACK  = 1024; // counter granularity, not per unit
+  static final List<String> TABLE = new ArrayList<String>();
+
+  static long allocated()
+  {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  // Runs 'operation' and returns the bytes it allocated per unit, failing
+  // if that exceeds 'budget'.
+  static double measure(String api, String unit, double budget,
+                        Operation operation)
+  {
+    assumeTrue(THREADS != null && THREADS.isThreadAllocatedMemorySupported());
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+    for(int round = 0; round < WARMUP; ++round) operation.run();
+    // the best of a few trials, so that a deoptimization rematerializing
+    // a scalar-replaced object mid-trial is not counted as a regression
+    long units = 0;
+    long bytes = Long.MAX_VALUE;
+    for(int trial = 0; trial < TRIALS; ++trial)
+    {
+      units = 0;
+      long empty = allocated();
+      long before = allocated();
+      long overhead = before - empty;
+      for(int round = 0; round < ROUNDS; ++round) units += operation.run();
+      bytes = Math.min(bytes,Math.max(0,allocated() - before - overhead));
+    }
+    double perUnit = (double)bytes / units;
+    TABLE.add(String.format("%-36s %10d %-8s %10.1f %8s",api,units,unit,
+      perUnit,budget == Double.MAX_VALUE ? "-"
+                                         : String.format("%.1f",budget)));
+    assertTrue(api + " allocated " + perUnit + " bytes per " + unit,
+               budget == Double.MAX_VALUE || bytes <= budget*units + SLACK);
+    return perUnit;
+  }
+
+  static byte[] corpus(String name) throws Exception
+  {
+    File file = new File(System.getProperty("bflat.corpus","bench/corpus"),
+                         name + ".bflat");
+    return Files.readAllBytes(file.toPath());
+  }
+
+  // Iterates every field of every message in a corpus.
+  static long parse(BFlatParser parser, byte[] data, BFlatBatch batch,
+                    boolean reuse)
+  {
+    long fields = 0;
+    for(int index = 0; index < batch.size(); ++index)
+    {
+      parser.parse(data,batch.getOffset(index),batch.getLength(index));
+      for(BFlatValue value : parser)
+      {
+        if(reuse) value.reuse();
+        ++fields;
+      }
+    }
+    return fields;
+  }
+
+  @AfterClass
+  public static void printTable()
+  {
+    if(TABLE.isEmpty()) return;
+    System.out.println(String.format("%-36s %10s %-8s %10s %8s",
+      "API","units","unit","bytes/unit","budget"));
+    for(String row : TABLE) System.out.println(row);
+  }
+
+  @Test
+  public void parseWithReuse() throws Exception
+  {
+    for(String name : new String[] {"orders","ticks","documents"})
+    {
+      final byte[] data = corpus(name);
+      final BFlatBatch batch = new BFlatBatch(data,0,data.length);
+      final BFlatParser parser = new BFlatParser();
+      measure("BFlatParser reuse() " + name,"field",0,new Operation()
+      {
+        public long run() { return parse(parser,data,batch,true); }
+      });
+      measure("BFlatParser " + name,"field",Double.MAX_VALUE,new Operation()
+      {
+        public long run() { return parse(parser,data,batch,false); }
+      });
+    }
+  }
+
+  static final byte[] ID     = "id".getBytes();
+  static final byte[] SYMBOL = "symbol".getBytes();
+  static final byte[] PRICE  = "price".getBytes();
+  static final byte[] BIDS   = "bids".getBytes();
+  static final byte[] NOTE   = "a_longer_tag_name".getBytes();
+
+  static void encodeOrder(BFlatBuilder builder, int id, String symbol,
+                          String note)
+  {
+    builder.encodeTag(BFlatEncoding.Int64,ID).encode((long)id);
+    builder.encodeTag(BFlatEncoding.String,SYMBOL).encode(symbol);
+    builder.encodeTag(BFlatEncoding.Double,PRICE).encode(57.25 + id);
+    builder.encodeTagArray(BFlatEncoding.Double,BIDS,4);
+    builder.encode(1.5).encode(1.25).encode(1.0).encode(0.75);
+    builder.encodeTag(BFlatEncoding.String,NOTE).encode(note);
+  }
+
+  @Test
+  public void encodeWithPreEncodedTags() throws Exception
+  {
+    final BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+    final BFlatSizer sizer = new BFlatSizer();
+    final String note = "café 東京 " + new String(new char[300]);
+    measure("BFlatBuilder byte[] tags","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int id = 0; id < 1000; ++id)
+        {
+          builder.rewind();
+          encodeOrder(builder,id,"MSFT",note);
+        }
+        return 1000;
+      }
+    });
+    measure("BFlatBuilder String tags","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int id = 0; id < 1000; ++id)
+        {
+          builder.rewind();
+          builder.encode("id",(long)id).encode("symbol","MSFT")
+                 .encode("price",57.25 + id).encode("a_longer_tag_name",note);
+          builder.encodeCompact("qty",100L * id);
+        }
+        return 1000;
+      }
+    });
+    measure("BFlatSizer","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int id = 0; id < 1000; ++id)
+        {
+          sizer.rewind();
+          encodeOrder(sizer,id,"MSFT",note);
+        }
+        return 1000;
+      }
+    });
+  }
+
+  @Test
+  public void stringExtraction() throws Exception
+  {
+    final byte[] data = corpus("documents");
+    final BFlatBatch batch = new BFlatBatch(data,0,data.length);
+    final BFlatParser parser = new BFlatParser();
+    long strings = 0, utf8 = 0;
+    for(int index = 0; index < batch.size(); ++index)
+    {
+      parser.parse(data,batch.getOffset(index),batch.getLength(index));
+      for(BFlatValue value : parser)
+      {
+        if(value.getType() == BFlatEncoding.String && !value.isArray())
+        {
+          ++strings;
+          utf8 += value.getRawValueLength();
+        }
+      }
+    }
+    // a String is its header plus the decoded value; non-Latin-1 text is
+    // decoded into a scratch array of twice the UTF-8 length and then
+    // trimmed, so allow up to six bytes per UTF-8 byte
+    measure("BFlatValue.getString","string",64 + 6.0 * utf8 / strings,
+      new Operation()
+      {
+        public long run()
+        {
+          long count = 0;
+          for(int index = 0; index < batch.size(); ++index)
+          {
+            parser.parse(data,batch.getOffset(index),batch.getLength(index));
+            for(BFlatValue value : parser)
+            {
+              value.reuse();
+              if(value.getType() == BFlatEncoding.String && !value.isArray()
+                 && value.getString() != null)
+              {
+                ++count;
+              }
+            }
+          }
+          return count;
+        }
+      });
+
+    measure("BFlatValue.getTag","tag",64 + 2 * 8,new Operation()
+    {
+      public long run()
+      {
+        long count = 0;
+        for(int index = 0; index < batch.size(); ++index)
+        {
+          parser.parse(data,batch.getOffset(index),batch.getLength(index));
+          for(BFlatValue value : parser)
+          {
+            value.reuse();
+            if(value.getTag() != null) ++count;
+          }
+        }
+        return count;
+      }
+    });
+  }
+
+  @Test
+  public void zeroAllocationComponents() throws Exception
+  {
+    final byte[] data = corpus("orders");
+    final BFlatBatch batch = new BFlatBatch(data,0,data.length);
+
+    final BFlatMatcher matcher = new BFlatMatcher();
+    for(String symbol : new String[] {"MSFT","IBM","AAPL","GE"})
+    {
+      matcher.subscribe(new BFlatSubscription().equal("symbol",symbol)
+                          .between("price",100.0,300.0));
+    }
+    measure("BFlatMatcher.match","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int index = 0; index < batch.size(); ++index)
+        {
+          matcher.match(data,batch.getOffset(index),batch.getLength(index));
+        }
+        return batch.size();
+      }
+    });
+
+    final BFlatProjector projector =
+      new BFlatProjector().include("price").include("symbol","sym");
+    final BFlatBuilder out = new BFlatBuilder(new byte[4096],0);
+    measure("BFlatProjector.project","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int index = 0; index < batch.size(); ++index)
+        {
+          out.rewind();
+          projector.project(data,batch.getOffset(index),
+                            batch.getLength(index),out);
+        }
+        return batch.size();
+      }
+    });
+
+    final BFlatStore store = new BFlatStore("symbol");
+    measure("BFlatStore.put","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int index = 0; index < batch.size(); ++index)
+        {
+          store.put(data,batch.getOffset(index),batch.getLength(index));
+        }
+        return batch.size();
+      }
+    });
+
+    final BFlatRingBuffer ring =
+      new BFlatRingBuffer(64,256,false,BFlatRingBuffer.BusySpin);
+    final BFlatBuilder producer = new BFlatBuilder(null,0);
+    final BFlatHandler consumer = new BFlatHandler()
+    {
+      public void onMessage(byte[] message, int offset, int length)
+      {
+      }
+    };
+    measure("BFlatRingBuffer publish/poll","message",0,new Operation()
+    {
+      public long run()
+      {
+        for(int id = 0; id < 1000; ++id)
+        {
+          long sequence = ring.next();
+          encodeOrder(ring.wrap(sequence,producer),id,"IBM","n");
+          ring.publish(sequence,producer);
+          ring.poll(consumer,16);
+        }
+        return 1000;
+      }
+    });
+  }
+}
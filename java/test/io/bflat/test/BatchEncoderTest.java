@@ -0,0 +1,152 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+public class BatchEncoderTest
+{
+  static final BFlatRecordEncoder<Integer> ENCODER =
+    new BFlatRecordEncoder<Integer>()
+  {
+    public void encode(Integer id, BFlatBuilder builder)
+    {
+      builder.encode("id",id.intValue());
+      if(id % 3 == 0) builder.encode("name","message é " + id);
+      if(id % 7 == 0) builder.encodeCompact("big",(long)id << 20);
+    }
+  };
+
+  static List<Integer> records(int count)
+  {
+    List<Integer> records = new ArrayList<Integer>();
+    for(int id = 0; id < count; ++id) records.add(id);
+    return records;
+  }
+
+  static byte[] sequential(List<Integer> records, boolean framed)
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 21],0);
+    for(Integer id : records)
+    {
+      if(framed) builder.beginFrame();
+      ENCODER.encode(id,builder);
+      if(framed) builder.endFrame();
+    }
+    return Arrays.copyOf(builder.data,builder.position);
+  }
+
+  @Test
+  public void matchesSequential() throws Exception
+  {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for(int count : new int[] {0, 1, 17, 50000})
+    {
+      List<Integer> records = records(count);
+      for(boolean framed : new boolean[] {false, true})
+      {
+        BFlatBatchEncoder<Integer> encoder =
+          new BFlatBatchEncoder<Integer>(ENCODER,framed);
+        byte[] expected = sequential(records,framed);
+        assertArrayEquals(expected,encoder.encode(records,pool));
+        assertEquals(expected.length,encoder.size(records,pool));
+
+        byte[] data = new byte[expected.length + 10];
+        assertEquals(expected.length + 3,
+                     encoder.encode(records,pool,data,3));
+        assertArrayEquals(expected,
+          Arrays.copyOfRange(data,3,3 + expected.length));
+      }
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void framedBatchSplitsAgain() throws Exception
+  {
+    byte[] data = new BFlatBatchEncoder<Integer>(ENCODER,true)
+      .encode(records(1000),ForkJoinPool.commonPool());
+    BFlatBatch batch = new BFlatBatch(data,0,data.length);
+    assertEquals(1000,batch.size());
+    BFlatParser parser = new BFlatParser();
+    parser.parse(data,batch.getOffset(999),batch.getLength(999));
+    assertEquals(999,parser.iterator().next().getLong());
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void bufferTooSmall() throws Exception
+  {
+    new BFlatBatchEncoder<Integer>(ENCODER,false)
+      .encode(records(100),ForkJoinPool.commonPool(),new byte[100],0);
+  }
+
+  @Test(expected=BFlatException.class)
+  public void nondeterministicEncoder() throws Exception
+  {
+    BFlatRecordEncoder<Integer> changing = new BFlatRecordEncoder<Integer>()
+    {
+      public void encode(Integer id, BFlatBuilder builder)
+      {
+        builder.encode("t","x" + (calls++)); // grows from 2 to 3 digits
+      }
+      volatile int calls = 95;
+    };
+    new BFlatBatchEncoder<Integer>(changing,false)
+      .encode(records(10),ForkJoinPool.commonPool());
+  }
+
+  // A record that encodes larger than it measured is never copied into
+  // place, so nothing lands past its range in the caller's bytes.
+  @Test
+  public void overrunLeavesCallerBytes() throws Exception
+  {
+    BFlatRecordEncoder<Integer> growing = new BFlatRecordEncoder<Integer>()
+    {
+      public void encode(Integer id, BFlatBuilder builder)
+      {
+        builder.encode("t","x" + (calls++)); // measures x99, writes x100
+      }
+      volatile int calls = 99;
+    };
+    byte[] data = new byte[64];
+    Arrays.fill(data,(byte)0x55);
+    try
+    {
+      new BFlatBatchEncoder<Integer>(growing,false)
+        .encode(records(1),ForkJoinPool.commonPool(),data,0);
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    for(byte b : data)
+    {
+      assertEquals(0x55,b);
+    }
+  }
+}
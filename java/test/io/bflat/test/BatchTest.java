@@ -0,0 +1,136 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BatchTest
+{
+  static final int MESSAGES = 20000;
+
+  static void encodeMessage(BFlatBuilder builder, int id)
+  {
+    builder.beginFrame().encode("id",id);
+    if(id % 3 == 0) builder.encode("name","message " + id);
+    builder.endFrame();
+  }
+
+  static BFlatBuilder frames()
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 20],0);
+    for(int id = 0; id < MESSAGES; ++id)
+    {
+      encodeMessage(builder,id);
+    }
+    return builder;
+  }
+
+  static long idOf(BFlatParser parser)
+  {
+    long id = -1;
+    for(BFlatValue value : parser)
+    {
+      if(value.getTag().equals("id")) id = value.getLong();
+    }
+    return id;
+  }
+
+  @Test
+  public void sequentialAndParallel() throws Exception
+  {
+    BFlatBuilder builder = frames();
+    final BFlatBatch batch = new BFlatBatch(builder.data,0,builder.position);
+    assertEquals(MESSAGES,batch.size());
+
+    final List<Long> ids = new ArrayList<Long>();
+    batch.forEach(new BFlatHandler()
+    {
+      BFlatParser parser = new BFlatParser();
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        ids.add(idOf(parser.parse(data,offset,length)));
+      }
+    });
+    for(int id = 0; id < MESSAGES; ++id)
+    {
+      assertEquals(id,(long)ids.get(id));
+    }
+
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong count = new AtomicLong();
+    batch.parallelForEach(new ForkJoinPool(4),() -> new BFlatHandler()
+    {
+      BFlatParser parser = new BFlatParser();
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        sum.addAndGet(idOf(parser.parse(data,offset,length)));
+        count.incrementAndGet();
+      }
+    });
+    long expected = (long)MESSAGES * (MESSAGES - 1) / 2;
+    assertEquals(MESSAGES,count.get());
+    assertEquals(expected,sum.get());
+
+    assertEquals(expected,
+                 batch.stream(true).mapToLong(BatchTest::idOf).sum());
+    assertEquals(MESSAGES,batch.stream(false).count());
+  }
+
+  @Test
+  public void streamAndSizerFrames() throws Exception
+  {
+    BFlatBuilder builder = frames();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BFlatStreamBuilder stream = new BFlatStreamBuilder(bytes,256);
+    BFlatSizer sizer = new BFlatSizer();
+    for(int id = 0; id < MESSAGES; ++id)
+    {
+      encodeMessage(stream,id);
+      encodeMessage(sizer,id);
+    }
+    stream.close();
+    assertEquals(builder.position,sizer.getSize());
+    assertArrayEquals(Arrays.copyOf(builder.data,builder.position),
+                      bytes.toByteArray());
+  }
+
+  @Test(expected=BFlatException.class)
+  public void truncatedFrame() throws Exception
+  {
+    BFlatBuilder builder = frames();
+    new BFlatBatch(builder.data,0,builder.position - 1);
+  }
+
+  @Test(expected=BFlatException.class)
+  public void nestedFrames() throws Exception
+  {
+    new BFlatBuilder(new byte[64],0).beginFrame().beginFrame();
+  }
+}
@@ -269,4 +269,74 @@ public class BuilderTest
       ++index;
     }
   }
+
+  // Random strings mixing ASCII runs, two and three byte chars, surrogate
+  // pairs and unpaired surrogates must encode exactly as String.getBytes
+  // does, from a String, a StringBuilder and a char array.
+  @Test
+  public void encodeMixedStrings() throws Exception
+  {
+    Random random = new Random(17);
+    BFlatBuilder encoder = new BFlatBuilder(new byte[1 << 16],0);
+    BFlatParser parser = new BFlatParser();
+    for(int i = 0; i < 3000; ++i)
+    {
+      StringBuilder sb = new StringBuilder();
+      int length = random.nextInt(random.nextInt(10) == 0 ? 5000 : 40);
+      while(sb.length() < length)
+      {
+        switch(random.nextInt(8))
+        {
+          case 0: sb.append('\u00e9'); break;
+          case 1: sb.append('\u65e5'); break;
+          case 2: sb.appendCodePoint(0x1F600 + random.nextInt(50)); break;
+          case 3: sb.append(random.nextBoolean() ? '\ud83d' : '\ude00');
+                  break;
+          default:
+            for(int n = random.nextInt(300); n > 0; --n)
+            {
+              sb.append((char)(' ' + random.nextInt(95)));
+            }
+        }
+      }
+      String value = sb.toString();
+      byte[] expected = value.getBytes("UTF-8");
+      char[] chars = ("xx" + value).toCharArray();
+      for(int form = 0; form < 3; ++form)
+      {
+        encoder.rewind();
+        encoder.encodeTag(BFlatEncoding.String,"s");
+        if(form == 0) encoder.encode(value);
+        else if(form == 1) encoder.encode(sb);
+        else encoder.encode(chars,2,value.length());
+        BFlatValue parsed = parser.parse(encoder.data,0,encoder.position)
+                                  .next();
+        assertFalse(parser.hasNext());
+        assertEquals(expected.length,parsed.getRawValueLength());
+        assertArrayEquals(expected,
+          Arrays.copyOfRange(encoder.data,parsed.getRawValueOffset(),
+            parsed.getRawValueOffset()+parsed.getRawValueLength()));
+      }
+    }
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void encodeStringTooLarge() throws Exception
+  {
+    new BFlatBuilder(new byte[32],0)
+      .encode("s","\u00e9\u00e9\u00e9 then a string long enough to overflow");
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void encodeTagTooLarge() throws Exception
+  {
+    new BFlatBuilder(new byte[16],10).encode("a tag longer than six",1);
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void encodeBytesTooLarge() throws Exception
+  {
+    new BFlatBuilder(new byte[16],0).encodeTag(BFlatEncoding.String,"s")
+      .encode(new byte[20],0,20);
+  }
 }
@@ -0,0 +1,205 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+
+public class ChannelCodecTest
+{
+  static final BFlatRecordEncoder<Integer> ENCODER =
+    new BFlatRecordEncoder<Integer>()
+  {
+    public void encode(Integer n, BFlatBuilder builder)
+    {
+      builder.encode("n",n.intValue());
+      if(n % 100 == 0) builder.encode("pad",new String(new char[n * 10]));
+    }
+  };
+
+  // Runs a single-threaded selector loop that echoes every message back
+  // to the connection it arrived on.
+  static class EchoServer extends Thread
+  {
+    EchoServer() throws IOException
+    {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),0));
+      server.configureBlocking(false);
+      server.register(selector,SelectionKey.OP_ACCEPT);
+      setDaemon(true);
+    }
+    public void run()
+    {
+      try
+      {
+        while(selector.isOpen())
+        {
+          selector.select();
+          for(SelectionKey key : selector.selectedKeys())
+          {
+            if(key.isAcceptable())
+            {
+              SocketChannel channel = server.accept();
+              channel.configureBlocking(false);
+              channel.register(selector,SelectionKey.OP_READ,
+                               new BFlatChannelCodec(channel,256));
+              continue;
+            }
+            final BFlatChannelCodec codec =
+              (BFlatChannelCodec)key.attachment();
+            if(key.isReadable() && codec.read(new BFlatHandler()
+              {
+                public void onMessage(byte[] data, int offset, int length)
+                {
+                  codec.send(data,offset,length);
+                }
+              }) < 0)
+            {
+              key.channel().close();
+              continue;
+            }
+            key.interestOps(codec.flush() ? SelectionKey.OP_READ
+                            : SelectionKey.OP_READ|SelectionKey.OP_WRITE);
+          }
+          selector.selectedKeys().clear();
+        }
+      }
+      catch(IOException|ClosedSelectorException e)
+      {
+      }
+    }
+    int port() throws IOException
+    {
+      return ((InetSocketAddress)server.getLocalAddress()).getPort();
+    }
+    final ServerSocketChannel server   = ServerSocketChannel.open();
+    final Selector            selector = Selector.open();
+  }
+
+  // A blocking socket channel that counts write calls.
+  static class Counting
+    implements ReadableByteChannel, GatheringByteChannel
+  {
+    Counting(SocketChannel channel) { this.channel = channel; }
+    public int read(ByteBuffer dst) throws IOException
+    {
+      return channel.read(dst);
+    }
+    public int write(ByteBuffer src) throws IOException
+    {
+      ++writes;
+      return channel.write(src);
+    }
+    public long write(ByteBuffer[] srcs, int offset, int length)
+      throws IOException
+    {
+      ++writes;
+      return channel.write(srcs,offset,length);
+    }
+    public long write(ByteBuffer[] srcs) throws IOException
+    {
+      return write(srcs,0,srcs.length);
+    }
+    public boolean isOpen() { return channel.isOpen(); }
+    public void close() throws IOException { channel.close(); }
+    final SocketChannel channel;
+    int writes;
+  }
+
+  @Test
+  public void echoOverLoopback() throws Exception
+  {
+    EchoServer server = new EchoServer();
+    server.start();
+    final int count = 20000;
+    Counting channel = new Counting(SocketChannel.open(new InetSocketAddress(
+      InetAddress.getLoopbackAddress(),server.port())));
+    BFlatChannelCodec codec = new BFlatChannelCodec(channel,4096);
+    for(int n = 0; n < count; ++n)
+    {
+      codec.send(ENCODER,n);
+    }
+    assertTrue(codec.getPendingBytes() > 0);
+    final List<Long> received = new ArrayList<Long>();
+    BFlatHandler collector = new BFlatHandler()
+    {
+      BFlatParser parser = new BFlatParser();
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        for(BFlatValue value : parser.parse(data,offset,length))
+        {
+          if(value.getTag().equals("n")) received.add(value.getLong());
+        }
+      }
+    };
+    // blocking, so each flush writes everything; read echoes as we go
+    assertTrue(codec.flush());
+    assertEquals(0,codec.getPendingBytes());
+    assertEquals(1,channel.writes);
+    while(received.size() < count)
+    {
+      assertTrue(codec.read(collector) > 0);
+    }
+    for(int n = 0; n < count; ++n)
+    {
+      assertEquals(n,(long)received.get(n));
+    }
+    channel.close();
+    server.selector.close();
+    server.server.close();
+  }
+
+  @Test(expected=BFlatException.class)
+  public void truncatedFrame() throws Exception
+  {
+    Pipe pipe = Pipe.open();
+    pipe.sink().write(ByteBuffer.wrap(new byte[] {10,0,0,0,1,2}));
+    pipe.sink().close();
+    final Pipe.SourceChannel source = pipe.source();
+    Counting channel = new Counting(null)
+    {
+      public int read(ByteBuffer dst) throws IOException
+      {
+        return source.read(dst);
+      }
+    };
+    BFlatChannelCodec codec = new BFlatChannelCodec(channel,64);
+    BFlatHandler ignore = new BFlatHandler()
+    {
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        fail();
+      }
+    };
+    while(codec.read(ignore) >= 0)
+    {
+    }
+  }
+}
@@ -0,0 +1,107 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class CompactTest
+{
+  static BFlatValue only(BFlatBuilder builder)
+  {
+    BFlatParser parser = new BFlatParser().parse(builder.data,0,
+                                                 builder.position);
+    BFlatValue value = parser.next();
+    assertFalse(parser.hasNext());
+    return value;
+  }
+
+  static byte typeOf(long value)
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[64],0);
+    builder.encodeCompact("v",value);
+    BFlatValue parsed = only(builder);
+    assertEquals(value,parsed.getLong());
+    return parsed.getType();
+  }
+
+  @Test
+  public void scalarWidths() throws Exception
+  {
+    assertEquals(BFlatEncoding.Int8,typeOf(0));
+    assertEquals(BFlatEncoding.Int8,typeOf(-128));
+    assertEquals(BFlatEncoding.Int8,typeOf(127));
+    assertEquals(BFlatEncoding.Int16,typeOf(128));
+    assertEquals(BFlatEncoding.Int16,typeOf(-32768));
+    // three LEB128 bytes beat four for Int32
+    assertEquals(BFlatEncoding.Leb128,typeOf(32768));
+    assertEquals(BFlatEncoding.Int32,typeOf(1 << 21));
+    assertEquals(BFlatEncoding.Int32,typeOf(Integer.MIN_VALUE));
+    assertEquals(BFlatEncoding.Leb128,typeOf(1L << 31));
+    assertEquals(BFlatEncoding.Leb128,typeOf(-(1L << 40)));
+    assertEquals(BFlatEncoding.Leb128,typeOf((1L << 48) - 1));
+    // eight LEB128 bytes ties with Int64, which wins
+    assertEquals(BFlatEncoding.Int64,typeOf(1L << 54));
+    assertEquals(BFlatEncoding.Int64,typeOf(Long.MAX_VALUE));
+    assertEquals(BFlatEncoding.Int64,typeOf(Long.MIN_VALUE));
+  }
+
+  @Test
+  public void randomScalarsRoundTrip() throws Exception
+  {
+    Random random = new Random(9);
+    for(int i = 0; i < 10000; ++i)
+    {
+      typeOf(random.nextLong() >> random.nextInt(64));
+    }
+  }
+
+  static BFlatValue array(long... values)
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+    builder.encodeCompact("v",values);
+    BFlatValue parsed = only(builder);
+    assertEquals(values.length,parsed.getArrayLength());
+    for(int i = 0; i < values.length; ++i)
+    {
+      assertEquals(values[i],parsed.getLong(i));
+    }
+    return parsed;
+  }
+
+  @Test
+  public void arrayWidths() throws Exception
+  {
+    assertEquals(BFlatEncoding.Int8,array().getType());
+    assertEquals(BFlatEncoding.Int8,array(1,-2,3).getType());
+    assertEquals(BFlatEncoding.Int16,array(1000,-2000).getType());
+    assertEquals(BFlatEncoding.Int32,array(1 << 25,-(1 << 26)).getType());
+    // one wide value among small ones: Leb128 is smaller in total
+    assertEquals(BFlatEncoding.Leb128,array(1,2,3,1L << 40).getType());
+    assertEquals(BFlatEncoding.Int64,
+                 array(Long.MAX_VALUE,Long.MIN_VALUE).getType());
+  }
+}
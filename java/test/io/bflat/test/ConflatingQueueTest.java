@@ -0,0 +1,215 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class ConflatingQueueTest
+{
+  // Records the key and sequence number of each delivered message.
+  static class Recorder implements BFlatHandler
+  {
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      String key = null;
+      long seq = 0;
+      for(BFlatValue value : parser.parse(data,offset,length))
+      {
+        if(value.getTag().equals("key")) key = value.getString();
+        else seq = value.getLong();
+      }
+      keys.add(key);
+      seqs.add(seq);
+    }
+    BFlatParser  parser = new BFlatParser();
+    List<String> keys   = new ArrayList<String>();
+    List<Long>   seqs   = new ArrayList<Long>();
+  }
+
+  static void offer(BFlatConflatingQueue queue, BFlatBuilder builder,
+                    String key, long seq)
+  {
+    builder.rewind();
+    builder.encode("key",key).encode("seq",seq);
+    queue.offer(builder.data,0,builder.position);
+  }
+
+  @Test
+  public void conflatesInKeyOrder() throws Exception
+  {
+    BFlatConflatingQueue queue = new BFlatConflatingQueue("key",16);
+    BFlatBuilder builder = new BFlatBuilder(new byte[256],0);
+    offer(queue,builder,"A",1);
+    offer(queue,builder,"B",2);
+    offer(queue,builder,"A",3);
+    offer(queue,builder,"C",4);
+    offer(queue,builder,"B",5);
+    assertEquals(3,queue.size());
+
+    Recorder recorder = new Recorder();
+    assertEquals(2,queue.drain(recorder,2));
+    assertEquals(Arrays.asList("A","B"),recorder.keys);
+    assertEquals(Arrays.asList(3L,5L),recorder.seqs);
+
+    offer(queue,builder,"A",6);
+    assertEquals(2,queue.drain(recorder,100));
+    assertEquals(Arrays.asList("A","B","C","A"),recorder.keys);
+    assertEquals(Arrays.asList(3L,5L,4L,6L),recorder.seqs);
+    assertEquals(0,queue.drain(recorder,100));
+    assertEquals(3,queue.keyCount());
+  }
+
+  @Test(expected=BFlatException.class)
+  public void tooManyKeys() throws Exception
+  {
+    BFlatConflatingQueue queue = new BFlatConflatingQueue("key",2);
+    BFlatBuilder builder = new BFlatBuilder(new byte[256],0);
+    offer(queue,builder,"A",1);
+    offer(queue,builder,"B",1);
+    offer(queue,builder,"C",1);
+  }
+
+  // Several producers publish increasing sequence numbers per key while the
+  // consumer drains; each key must be seen in increasing order and end with
+  // its final value.
+  @Test
+  public void concurrentProducers() throws Exception
+  {
+    final int producers = 4;
+    final int keysPerProducer = 50;
+    final int updates = 20000;
+    final BFlatConflatingQueue queue =
+      new BFlatConflatingQueue("key",producers*keysPerProducer);
+    Thread[] threads = new Thread[producers];
+    for(int p = 0; p < producers; ++p)
+    {
+      final int id = p;
+      threads[p] = new Thread()
+      {
+        public void run()
+        {
+          BFlatBuilder builder = new BFlatBuilder(new byte[256],0);
+          for(int seq = 1; seq <= updates; ++seq)
+          {
+            offer(queue,builder,"p"+id+"k"+(seq%keysPerProducer),seq);
+          }
+        }
+      };
+      threads[p].start();
+    }
+    Recorder recorder = new Recorder();
+    boolean running = true;
+    while(running)
+    {
+      running = false;
+      for(Thread t : threads) running |= t.isAlive();
+      queue.drain(recorder,64);
+    }
+    queue.drain(recorder,Integer.MAX_VALUE);
+
+    Map<String,Long> last = new HashMap<String,Long>();
+    for(int i = 0; i < recorder.keys.size(); ++i)
+    {
+      Long previous = last.put(recorder.keys.get(i),recorder.seqs.get(i));
+      if(previous != null)
+      {
+        assertTrue(previous < recorder.seqs.get(i));
+      }
+    }
+    assertEquals(producers*keysPerProducer,last.size());
+    for(Map.Entry<String,Long> e : last.entrySet())
+    {
+      long k = Long.parseLong(e.getKey().substring(e.getKey().indexOf('k')+1));
+      long expected = updates - ((updates - k) % keysPerProducer);
+      assertEquals(expected,(long)e.getValue());
+    }
+  }
+
+  // Producers overwrite the same two keys with messages of varying length
+  // whose padding is derived from the sequence number; the consumer must
+  // never see a message torn between two writes.
+  @Test
+  public void sameKeyProducers() throws Exception
+  {
+    final int producers = 3;
+    final int updates = 20000;
+    final BFlatConflatingQueue queue = new BFlatConflatingQueue("key",2);
+    Thread[] threads = new Thread[producers];
+    for(int p = 0; p < producers; ++p)
+    {
+      final int id = p;
+      threads[p] = new Thread()
+      {
+        public void run()
+        {
+          BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+          for(int seq = 1; seq <= updates; ++seq)
+          {
+            builder.rewind();
+            builder.encode("key",seq % 2 == 0 ? "even" : "odd")
+                   .encode("pad",padding(seq*producers+id))
+                   .encode("seq",seq*producers+id);
+            queue.offer(builder.data,0,builder.position);
+          }
+        }
+      };
+      threads[p].start();
+    }
+    BFlatHandler checker = new BFlatHandler()
+    {
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        List<BFlatValue> values = new ArrayList<BFlatValue>();
+        for(BFlatValue value : parser.parse(data,offset,length))
+        {
+          values.add(value);
+        }
+        assertEquals(3,values.size());
+        assertEquals(padding(values.get(2).getLong()),
+                     values.get(1).getString());
+      }
+      BFlatParser parser = new BFlatParser();
+    };
+    boolean running = true;
+    int delivered = 0;
+    while(running)
+    {
+      running = false;
+      for(Thread t : threads) running |= t.isAlive();
+      delivered += queue.drain(checker,64);
+    }
+    delivered += queue.drain(checker,Integer.MAX_VALUE);
+    assertTrue(delivered >= 2);
+  }
+
+  static String padding(long seq)
+  {
+    char[] pad = new char[(int)(seq % 1000)];
+    Arrays.fill(pad,(char)('a' + seq % 26));
+    return new String(pad);
+  }
+}
@@ -0,0 +1,205 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class DeltaTest
+{
+  static Map<String,String> fields(byte[] data, int length)
+  {
+    Map<String,String> result = new LinkedHashMap<String,String>();
+    for(BFlatValue value : new BFlatParser().parse(data,0,length))
+    {
+      result.put(value.getTag(),
+                 value.isNull() ? null : value.toString());
+    }
+    return result;
+  }
+
+  @Test
+  public void changedAddedAndRemoved() throws Exception
+  {
+    BFlatBuilder prev = new BFlatBuilder(new byte[1024],0);
+    prev.encode("symbol","IBM").encode("bid",100.5).encode("ask",101.0)
+        .encode("venue","X");
+    BFlatBuilder next = new BFlatBuilder(new byte[1024],0);
+    next.encode("symbol","IBM").encode("bid",100.75).encode("ask",101.0)
+        .encode("size",200);
+
+    BFlatDelta delta = new BFlatDelta();
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    assertEquals(3,delta.diff(prev.data,0,prev.position,
+                              next.data,0,next.position,out));
+    Map<String,String> changes = fields(out.data,out.position);
+    assertEquals(new HashSet<String>(Arrays.asList("bid","size","venue")),
+                 changes.keySet());
+    assertNull(changes.get("venue"));
+
+    BFlatBuilder full = new BFlatBuilder(new byte[1024],0);
+    assertEquals(4,delta.apply(prev.data,0,prev.position,
+                               out.data,0,out.position,full));
+    assertEquals(fields(next.data,next.position),
+                 fields(full.data,full.position));
+  }
+
+  // Returns the values of the given tag, in order, from the message that
+  // diff and apply rebuild from prev and next.
+  static List<Long> rebuilt(BFlatBuilder prev, BFlatBuilder next, String tag)
+    throws Exception
+  {
+    BFlatDelta delta = new BFlatDelta();
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    delta.diff(prev.data,0,prev.position,next.data,0,next.position,out);
+    BFlatBuilder full = new BFlatBuilder(new byte[1024],0);
+    delta.apply(prev.data,0,prev.position,out.data,0,out.position,full);
+    List<Long> values = new ArrayList<Long>();
+    for(BFlatValue value : new BFlatParser().parse(full.data,0,full.position))
+    {
+      if(value.getTag().equals(tag)) values.add(value.getLong());
+    }
+    return values;
+  }
+
+  // The occurrences of a repeated tag are replaced as a group, so they come
+  // back in order when some are unchanged, moved or removed.
+  @Test
+  public void duplicateTags() throws Exception
+  {
+    BFlatBuilder prev = new BFlatBuilder(new byte[1024],0);
+    prev.encode("a",1).encode("a",2);
+    BFlatBuilder next = new BFlatBuilder(new byte[1024],0);
+    next.encode("z",0).encode("a",2).encode("a",3);
+    assertEquals(Arrays.asList(2L,3L),rebuilt(prev,next,"a"));
+
+    prev.rewind();
+    prev.encode("x",1).encode("x",2);
+    next.rewind();
+    next.encode("x",1).encode("x",3);
+    assertEquals(Arrays.asList(1L,3L),rebuilt(prev,next,"x"));
+
+    next.rewind();
+    next.encode("x",1);
+    assertEquals(Arrays.asList(1L),rebuilt(prev,next,"x"));
+
+    next.rewind();
+    next.encode("y",1);
+    assertEquals(Arrays.asList(),rebuilt(prev,next,"x"));
+
+    next.rewind();
+    next.encode("x",1).encode("x",2).encode("x",2);
+    assertEquals(Arrays.asList(1L,2L,2L),rebuilt(prev,next,"x"));
+
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    assertEquals(0,new BFlatDelta().diff(prev.data,0,prev.position,
+                                         prev.data,0,prev.position,out));
+  }
+
+  // Random messages repeating a few tags; each tag's values must come back
+  // in the newer message's order.
+  @Test
+  public void randomDuplicateTags() throws Exception
+  {
+    Random random = new Random(5);
+    BFlatBuilder prev = new BFlatBuilder(new byte[1024],0);
+    BFlatBuilder next = new BFlatBuilder(new byte[1024],0);
+    for(int i = 0; i < 2000; ++i)
+    {
+      for(BFlatBuilder builder : new BFlatBuilder[] {prev,next})
+      {
+        builder.rewind();
+        for(int n = random.nextInt(8); n > 0; --n)
+        {
+          builder.encode("t" + random.nextInt(3),(long)random.nextInt(3));
+        }
+      }
+      for(int tag = 0; tag < 3; ++tag)
+      {
+        List<Long> expected = new ArrayList<Long>();
+        for(BFlatValue value : new BFlatParser().parse(next.data,0,
+                                                       next.position))
+        {
+          if(value.getTag().equals("t" + tag)) expected.add(value.getLong());
+        }
+        assertEquals(expected,rebuilt(prev,next,"t" + tag));
+      }
+    }
+  }
+
+  @Test
+  public void identicalMessages() throws Exception
+  {
+    BFlatBuilder prev = new BFlatBuilder(new byte[1024],0);
+    prev.encode("a",1).encode("b","two")
+        .encodeTagArray(BFlatEncoding.Int32,"c",3)
+        .encode(1).encode(2).encode(3);
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    assertEquals(0,new BFlatDelta().diff(prev.data,0,prev.position,
+                                         prev.data,0,prev.position,out));
+    assertEquals(0,out.position);
+  }
+
+  // Random messages over a small tag set; applying the diff must rebuild
+  // the newer message's fields.
+  @Test
+  public void randomRoundTrip() throws Exception
+  {
+    Random random = new Random(11);
+    BFlatDelta delta = new BFlatDelta();
+    BFlatBuilder prev = new BFlatBuilder(new byte[4096],0);
+    BFlatBuilder next = new BFlatBuilder(new byte[4096],0);
+    BFlatBuilder out = new BFlatBuilder(new byte[4096],0);
+    BFlatBuilder full = new BFlatBuilder(new byte[4096],0);
+    for(int i = 0; i < 2000; ++i)
+    {
+      randomMessage(random,prev);
+      randomMessage(random,next);
+      out.rewind();
+      full.rewind();
+      delta.diff(prev.data,0,prev.position,next.data,0,next.position,out);
+      delta.apply(prev.data,0,prev.position,out.data,0,out.position,full);
+      assertEquals(fields(next.data,next.position),
+                   fields(full.data,full.position));
+    }
+  }
+
+  static void randomMessage(Random random, BFlatBuilder builder)
+  {
+    builder.rewind();
+    for(int tag = 0; tag < 40; ++tag)
+    {
+      if(random.nextInt(3) == 0) continue;
+      String name = "field" + tag;
+      switch(random.nextInt(3))
+      {
+        case 0: builder.encode(name,(long)random.nextInt(4)); break;
+        case 1: builder.encode(name,"v" + random.nextInt(4)); break;
+        default: builder.encode(name,random.nextInt(4) * 0.5); break;
+      }
+    }
+  }
+}
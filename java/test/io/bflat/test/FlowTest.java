@@ -0,0 +1,279 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class FlowTest
+{
+  static final Executor SAME_THREAD = new Executor()
+  {
+    public void execute(Runnable task)
+    {
+      task.run();
+    }
+  };
+
+  static byte[] frames(int count)
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 20],0);
+    for(int id = 0; id < count; ++id)
+    {
+      builder.beginFrame().encode("id",id);
+      if(id % 2 == 0) builder.encode("name","message " + id);
+      builder.endFrame();
+    }
+    return Arrays.copyOf(builder.data,builder.position);
+  }
+
+  static long idOf(BFlatParser parser)
+  {
+    for(BFlatValue value : parser)
+    {
+      if(value.getTag().equals("id")) return value.getLong();
+    }
+    return -1;
+  }
+
+  // Requests 'batch' messages at a time and checks that every view of a
+  // batch is still intact when the last one arrives.
+  static class Collector implements Flow.Subscriber<BFlatParser>
+  {
+    Collector(int batch)
+    {
+      this.batch = batch;
+    }
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+      this.subscription = subscription;
+      subscription.request(batch);
+    }
+    public void onNext(BFlatParser item)
+    {
+      views.add(item);
+      if(views.size() < batch) return;
+      for(BFlatParser view : views)
+      {
+        view.parse(view.data,view.start,view.remaining());
+        ids.add(idOf(view));
+      }
+      views.clear();
+      subscription.request(batch);
+    }
+    public void onError(Throwable throwable)
+    {
+      error = throwable;
+      done.countDown();
+    }
+    public void onComplete()
+    {
+      for(BFlatParser view : views) ids.add(idOf(view));
+      done.countDown();
+    }
+    final int           batch;
+    Flow.Subscription   subscription;
+    List<BFlatParser>   views = new ArrayList<BFlatParser>();
+    List<Long>          ids   = new ArrayList<Long>();
+    Throwable           error;
+    CountDownLatch      done  = new CountDownLatch(1);
+  }
+
+  static List<Long> range(int from, int to, int step)
+  {
+    List<Long> ids = new ArrayList<Long>();
+    for(long id = from; id < to; id += step) ids.add(id);
+    return ids;
+  }
+
+  @Test
+  public void batchSource() throws Exception
+  {
+    byte[] data = frames(1000);
+    Collector collector = new Collector(7);
+    new BFlatPublisher(new BFlatBatch(data,0,data.length),
+                       ForkJoinPool.commonPool()).subscribe(collector);
+    assertTrue(collector.done.await(10,TimeUnit.SECONDS));
+    assertNull(collector.error);
+    assertEquals(range(0,1000,1),collector.ids);
+  }
+
+  @Test
+  public void streamReadsOnlyWhatIsRequested() throws Exception
+  {
+    byte[] data = frames(10);
+    final int[] consumed = new int[1];
+    InputStream in = new ByteArrayInputStream(data)
+    {
+      public int read(byte[] b, int off, int len)
+      {
+        int count = super.read(b,off,len);
+        if(count > 0) consumed[0] += count;
+        return count;
+      }
+    };
+    BFlatPublisher publisher = new BFlatPublisher(in,SAME_THREAD);
+    final List<BFlatParser> views = new ArrayList<BFlatParser>();
+    final Flow.Subscription[] subscription = new Flow.Subscription[1];
+    publisher.subscribe(new Flow.Subscriber<BFlatParser>()
+    {
+      public void onSubscribe(Flow.Subscription s) { subscription[0] = s; }
+      public void onNext(BFlatParser item) { views.add(item); }
+      public void onError(Throwable throwable) { fail(); }
+      public void onComplete() { }
+    });
+    assertEquals(0,consumed[0]);
+    subscription[0].request(2);
+    assertEquals(2,views.size());
+    BFlatBatch batch = new BFlatBatch(data,0,data.length);
+    assertEquals(batch.getOffset(1) + batch.getLength(1),consumed[0]);
+
+    // the next request recycles the views of the previous batch
+    subscription[0].request(1);
+    assertEquals(3,views.size());
+    assertSame(views.get(0),views.get(2));
+    assertEquals(2,idOf(views.get(2)));
+  }
+
+  // A subscriber that requests ahead from inside onNext releases only the
+  // views it has received; those delivered after the request stay intact.
+  @Test
+  public void requestAheadKeepsLaterViews() throws Exception
+  {
+    // message 4 is long enough to overwrite 1 if it reused the buffer
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    for(int id = 0; id < 5; ++id)
+    {
+      builder.beginFrame().encode("id",id);
+      if(id == 4) builder.encode("name","a name longer than one message");
+      builder.endFrame();
+    }
+    BFlatPublisher publisher = new BFlatPublisher(
+      new ByteArrayInputStream(builder.data,0,builder.position),SAME_THREAD);
+    final List<BFlatParser> views = new ArrayList<BFlatParser>();
+    final Flow.Subscription[] subscription = new Flow.Subscription[1];
+    publisher.subscribe(new Flow.Subscriber<BFlatParser>()
+    {
+      public void onSubscribe(Flow.Subscription s) { subscription[0] = s; }
+      public void onNext(BFlatParser item)
+      {
+        views.add(item);
+        if(views.size() == 1) subscription[0].request(1);
+      }
+      public void onError(Throwable throwable) { fail(); }
+      public void onComplete() { }
+    });
+    subscription[0].request(4);
+    assertEquals(5,views.size());
+    for(int index = 1; index < 5; ++index)
+    {
+      BFlatParser view = views.get(index);
+      view.parse(view.data,view.start,view.remaining());
+      assertEquals(index,idOf(view));
+    }
+    // the view of message 0 is the one reused for message 4
+    assertSame(views.get(0),views.get(4));
+  }
+
+  @Test
+  public void channelSource() throws Exception
+  {
+    byte[] data = frames(500);
+    Collector collector = new Collector(64);
+    new BFlatPublisher(Channels.newChannel(new ByteArrayInputStream(data)),
+                       ForkJoinPool.commonPool()).subscribe(collector);
+    assertTrue(collector.done.await(10,TimeUnit.SECONDS));
+    assertNull(collector.error);
+    assertEquals(range(0,500,1),collector.ids);
+  }
+
+  @Test
+  public void truncatedStream() throws Exception
+  {
+    byte[] data = frames(3);
+    Collector collector = new Collector(10);
+    new BFlatPublisher(new ByteArrayInputStream(data,0,data.length - 1),
+                       SAME_THREAD).subscribe(collector);
+    assertTrue(collector.error instanceof BFlatException);
+  }
+
+  @Test
+  public void secondSubscriberRejected() throws Exception
+  {
+    byte[] data = frames(3);
+    BFlatPublisher publisher =
+      new BFlatPublisher(new BFlatBatch(data,0,data.length),SAME_THREAD);
+    publisher.subscribe(new Collector(1));
+    Collector second = new Collector(1);
+    publisher.subscribe(second);
+    assertTrue(second.error instanceof IllegalStateException);
+  }
+
+  @Test
+  public void processorPipeline() throws Exception
+  {
+    byte[] data = frames(5000);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    BFlatPublisher publisher =
+      new BFlatPublisher(new ByteArrayInputStream(data),executor);
+    BFlatProcessor filter = BFlatProcessor.filter(
+      new java.util.function.Predicate<BFlatParser>()
+      {
+        public boolean test(BFlatParser message)
+        {
+          return idOf(message) % 3 == 0;
+        }
+      },executor);
+    BFlatProcessor project = BFlatProcessor.project(
+      new BFlatProjector().include("id","key"),executor);
+    BFlatProcessor transcode = BFlatProcessor.transcode(
+      new BFlatRecordEncoder<BFlatParser>()
+      {
+        public void encode(BFlatParser message, BFlatBuilder builder)
+        {
+          for(BFlatValue value : message)
+          {
+            builder.encode("id",value.getLong() * 10)
+                   .encode("pad",new String(new char[3000]));
+          }
+        }
+      },executor);
+    publisher.subscribe(filter);
+    filter.subscribe(project);
+    project.subscribe(transcode);
+    Collector collector = new Collector(5);
+    transcode.subscribe(collector);
+    assertTrue(collector.done.await(30,TimeUnit.SECONDS));
+    executor.shutdown();
+    assertNull(collector.error);
+    List<Long> expected = new ArrayList<Long>();
+    for(long id : range(0,5000,3)) expected.add(id * 10);
+    assertEquals(expected,collector.ids);
+  }
+}
@@ -0,0 +1,198 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class HistogramTest
+{
+  @Test
+  public void exactBelowPrecision() throws Exception
+  {
+    BFlatHistogram histogram = new BFlatHistogram(1000,7);
+    for(int value = 0; value < 128; ++value) histogram.record(value);
+    assertEquals(128,histogram.getCount());
+    assertEquals(0,histogram.getMin());
+    assertEquals(127,histogram.getMax());
+    assertEquals(63,histogram.getValueAtPercentile(50));
+    assertEquals(127,histogram.getValueAtPercentile(100));
+    assertEquals(63.5,histogram.getMean(),1e-9);
+  }
+
+  @Test
+  public void relativeError() throws Exception
+  {
+    Random random = new Random(3);
+    for(int bits = 1; bits <= 12; ++bits)
+    {
+      BFlatHistogram histogram = new BFlatHistogram(Long.MAX_VALUE,bits);
+      for(int i = 0; i < 20000; ++i)
+      {
+        long value = random.nextLong() >>> (1 + random.nextInt(63));
+        histogram.reset();
+        histogram.record(value);
+        long min = histogram.getMin(), max = histogram.getMax();
+        assertTrue(min <= value && value <= max);
+        // the bucket is no wider than 2^(1-bits) of its values
+        assertTrue(bits + ": " + value,
+                   (double)(max - min) <= Math.scalb((double)min,1 - bits));
+      }
+    }
+  }
+
+  @Test
+  public void percentiles() throws Exception
+  {
+    BFlatHistogram histogram = new BFlatHistogram(1L << 40,10);
+    for(long value = 1; value <= 1000000; ++value) histogram.record(value);
+    for(double percentile : new double[] {1,25,50,90,99,99.9,100})
+    {
+      double expected = percentile * 10000;
+      assertEquals(expected,histogram.getValueAtPercentile(percentile),
+                   expected / 512);
+    }
+    assertEquals(500000,histogram.getMean(),500000 / 512);
+    assertEquals(0,new BFlatHistogram(10,3).getValueAtPercentile(50));
+  }
+
+  @Test
+  public void clamps() throws Exception
+  {
+    BFlatHistogram histogram = new BFlatHistogram(5000,4);
+    histogram.record(-20);
+    histogram.record(1L << 50,3);
+    assertEquals(4,histogram.getCount());
+    assertEquals(0,histogram.getMin());
+    assertEquals(5000,histogram.getMax());
+    assertEquals(5000,histogram.getValueAtPercentile(50));
+  }
+
+  @Test
+  public void concurrentRecordAndMerge() throws Exception
+  {
+    final BFlatHistogram shared = new BFlatHistogram(1L << 30,8);
+    final BFlatHistogram[] own = new BFlatHistogram[4];
+    Thread[] threads = new Thread[own.length];
+    for(int t = 0; t < threads.length; ++t)
+    {
+      final BFlatHistogram mine = own[t] = new BFlatHistogram(1L << 30,8);
+      final long seed = t;
+      threads[t] = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          Random random = new Random(seed);
+          for(int i = 0; i < 100000; ++i)
+          {
+            long value = random.nextInt(1 << 20);
+            shared.record(value);
+            mine.record(value);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    BFlatHistogram total = new BFlatHistogram(1L << 30,8);
+    for(int t = 0; t < threads.length; ++t)
+    {
+      threads[t].join();
+      total.merge(own[t]);
+    }
+    assertEquals(400000,shared.getCount());
+    assertEquals(400000,total.getCount());
+    for(double percentile : new double[] {0,10,50,99,100})
+    {
+      assertEquals(shared.getValueAtPercentile(percentile),
+                   total.getValueAtPercentile(percentile));
+    }
+  }
+
+  @Test(expected=BFlatException.class)
+  public void mergeRequiresSameConfiguration() throws Exception
+  {
+    new BFlatHistogram(1000,7).merge(new BFlatHistogram(1000,8));
+  }
+
+  @Test
+  public void encodeDecode() throws Exception
+  {
+    BFlatHistogram histogram = new BFlatHistogram(1L << 36,7);
+    Random random = new Random(9);
+    for(int i = 0; i < 50000; ++i)
+    {
+      histogram.record((long)Math.exp(random.nextGaussian() * 3 + 10));
+    }
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 16],0);
+    builder.encode("stage","parse");
+    histogram.encode(builder);
+    BFlatHistogram decoded =
+      BFlatHistogram.decode(builder.data,0,builder.position);
+    assertEquals(histogram.getMaxValue(),decoded.getMaxValue());
+    assertEquals(histogram.getPrecisionBits(),decoded.getPrecisionBits());
+    assertEquals(histogram.getCount(),decoded.getCount());
+    assertEquals(histogram.getMin(),decoded.getMin());
+    assertEquals(histogram.getMax(),decoded.getMax());
+    for(double percentile = 0; percentile <= 100; percentile += 0.5)
+    {
+      assertEquals(histogram.getValueAtPercentile(percentile),
+                   decoded.getValueAtPercentile(percentile));
+    }
+
+    builder.rewind();
+    new BFlatHistogram(100,2).encode(builder);
+    BFlatHistogram empty =
+      BFlatHistogram.decode(builder.data,0,builder.position);
+    assertEquals(0,empty.getCount());
+    assertEquals(100,empty.getMaxValue());
+  }
+
+  @Test
+  public void latencyFromDatetime() throws Exception
+  {
+    final long[] now = {1000000};
+    BFlatHistogram histogram = new BFlatHistogram(1L << 20,7);
+    BFlatHistogram.Latency latency = new BFlatHistogram.Latency(histogram,
+      "sent",() -> now[0]);
+    BFlatBuilder builder = new BFlatBuilder(new byte[256],0);
+    for(int age = 0; age < 100; ++age)
+    {
+      builder.rewind();
+      builder.encode("id",age).encode("sent",now[0] - age);
+      builder.encodeTag(BFlatEncoding.Datetime,"sent");
+      builder.encode(now[0] - age);
+      latency.onMessage(builder.data,0,builder.position);
+    }
+    builder.rewind();
+    builder.encode("id",1);
+    latency.onMessage(builder.data,0,builder.position);
+    assertEquals(100,histogram.getCount());
+    assertEquals(1,latency.getMissing());
+    assertEquals(0,histogram.getMin());
+    assertEquals(99,histogram.getMax());
+    assertEquals(49,histogram.getValueAtPercentile(50));
+  }
+}
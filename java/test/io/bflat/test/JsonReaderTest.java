@@ -0,0 +1,300 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.util.*;
+
+public class JsonReaderTest
+{
+  static BFlatBuilder read(String json) throws Exception
+  {
+    return read(new BFlatJsonReader(),json);
+  }
+
+  static BFlatBuilder read(BFlatJsonReader reader, String json)
+    throws Exception
+  {
+    byte[] bytes = json.getBytes("UTF-8");
+    BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+    assertEquals(bytes.length,reader.read(bytes,0,bytes.length,builder));
+    return builder;
+  }
+
+  static List<BFlatValue> values(BFlatBuilder builder) throws Exception
+  {
+    List<BFlatValue> values = new ArrayList<BFlatValue>();
+    BFlatParser parser = new BFlatParser();
+    for(BFlatValue value : parser.parse(builder.data,0,builder.position))
+    {
+      values.add(value);
+    }
+    return values;
+  }
+
+  static List<BFlatValue> nested(BFlatValue value) throws Exception
+  {
+    assertEquals(BFlatEncoding.Binary,value.getType());
+    List<BFlatValue> values = new ArrayList<BFlatValue>();
+    BFlatParser parser = new BFlatParser();
+    for(BFlatValue field : parser.parse(value.getBuffer(),
+          value.getRawValueOffset(),value.getRawValueLength()))
+    {
+      values.add(field);
+    }
+    return values;
+  }
+
+  static String json(BFlatBuilder builder) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BFlatJsonWriter writer = new BFlatJsonWriter(out,1024);
+    writer.write(builder.data,0,builder.position);
+    writer.flush();
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void scalarTypes() throws Exception
+  {
+    List<BFlatValue> values = values(read(
+      "{\"s\":\"MSFT\",\"i8\":-7,\"i16\":-20000,\"i32\":-2000000000,"
+      + "\"i64\":-9223372036854775808,\"leb\":1099511627776,"
+      + "\"d\":57.25,\"e\":1e3,\"t\":true,\"f\":false,\"n\":null}"));
+    byte[] types = {BFlatEncoding.String, BFlatEncoding.Int8,
+                    BFlatEncoding.Int16, BFlatEncoding.Int32,
+                    BFlatEncoding.Int64, BFlatEncoding.Leb128,
+                    BFlatEncoding.Double, BFlatEncoding.Double,
+                    BFlatEncoding.Int8, BFlatEncoding.Int8,
+                    BFlatEncoding.Null};
+    assertEquals(types.length,values.size());
+    for(int i = 0; i < types.length; ++i)
+    {
+      assertEquals(values.get(i).getTag(),types[i],values.get(i).getType());
+    }
+    assertEquals("MSFT",values.get(0).getString());
+    assertEquals(-7,values.get(1).getInt8());
+    assertEquals(-20000,values.get(2).getInt16());
+    assertEquals(-2000000000,values.get(3).getInt32());
+    assertEquals(Long.MIN_VALUE,values.get(4).getInt64());
+    assertEquals(1L << 40,values.get(5).getLeb128());
+    assertEquals(57.25,values.get(6).getDouble(),0);
+    assertEquals(1000.0,values.get(7).getDouble(),0);
+    assertEquals(1,values.get(8).getInt8());
+    assertEquals(0,values.get(9).getInt8());
+  }
+
+  // Numbers must read as exactly the double Double.parseDouble gives,
+  // whether by the fast path or not, and integers past a long as doubles.
+  @Test
+  public void numberPrecision() throws Exception
+  {
+    String[] numbers = {"0.1", "-0.0", "3.141592653589793", "1e22", "1e23",
+      "9007199254740993.0", "123456789012345678901234567890",
+      "1.7976931348623157e308", "4.9e-324", "2.2250738585072014E-308",
+      "1e-400", "0.30000000000000004",
+      "9223372036854775808", "-9223372036854775809", "1.00000000000000000001",
+      "12345.678e-2"};
+    for(String number : numbers)
+    {
+      BFlatValue value = values(read("{\"x\":" + number + "}")).get(0);
+      assertEquals(number,BFlatEncoding.Double,value.getType());
+      assertEquals(number,Double.doubleToLongBits(Double.parseDouble(number)),
+                   Double.doubleToLongBits(value.getDouble()));
+    }
+    Random random = new Random(23);
+    for(int i = 0; i < 20000; ++i)
+    {
+      double expected = Double.longBitsToDouble(random.nextLong());
+      if(Double.isNaN(expected) || Double.isInfinite(expected))
+      {
+        continue;
+      }
+      String number = i % 2 == 0 ? Double.toString(expected)
+                                 : String.format("%.6e",expected);
+      BFlatValue value = values(read("{\"x\":" + number + "}")).get(0);
+      assertEquals(number,Double.doubleToLongBits(Double.parseDouble(number)),
+                   Double.doubleToLongBits(value.getDouble()));
+    }
+    assertEquals(Long.MAX_VALUE,
+      values(read("{\"x\":9223372036854775807}")).get(0).getInt64());
+  }
+
+  @Test
+  public void arrays() throws Exception
+  {
+    List<BFlatValue> values = values(read(
+      "{\"q\":[1,-2,300000],\"b\":[1,2,3],\"px\":[1.5,2,-1e-9],"
+      + "\"tags\":[\"a\",\"\",\"c\\\"d\"],\"on\":[true,false],"
+      + "\"nn\":[null,null],\"none\":[ ],\"big\":[1,1099511627776]}"));
+    assertEquals(8,values.size());
+    assertEquals(BFlatEncoding.Leb128,values.get(0).getType());
+    assertEquals(3,values.get(0).getArrayLength());
+    assertEquals(300000,values.get(0).getLeb128(2));
+    assertEquals(BFlatEncoding.Int8,values.get(1).getType());
+    assertEquals(BFlatEncoding.Double,values.get(2).getType());
+    assertEquals(2.0,values.get(2).getDouble(1),0);
+    assertEquals(-1e-9,values.get(2).getDouble(2),0);
+    assertEquals(BFlatEncoding.String,values.get(3).getType());
+    assertEquals("c\"d",values.get(3).getString(2));
+    assertEquals(BFlatEncoding.Int8,values.get(4).getType());
+    assertEquals(0,values.get(4).getInt8(1));
+    assertEquals(BFlatEncoding.Null,values.get(5).getType());
+    assertEquals(2,values.get(5).getArrayLength());
+    assertEquals(0,values.get(6).getArrayLength());
+    assertEquals(BFlatEncoding.Leb128,values.get(7).getType());
+    assertEquals(1L << 40,values.get(7).getLeb128(1));
+  }
+
+  // Objects are nested messages, and arrays of objects or mixed values
+  // nested messages tagged by index.
+  @Test
+  public void nestedAndMixed() throws Exception
+  {
+    List<BFlatValue> values = values(read(
+      "{\"order\":{\"id\":7,\"legs\":[{\"px\":1.5},{}]},"
+      + "\"mixed\":[1,\"two\",[3,4],null],\"after\":\"x\"}"));
+    assertEquals(3,values.size());
+    List<BFlatValue> order = nested(values.get(0));
+    assertEquals("id",order.get(0).getTag());
+    assertEquals(7,order.get(0).getInt8());
+    List<BFlatValue> legs = nested(order.get(1));
+    assertEquals(2,legs.size());
+    assertEquals("0",legs.get(0).getTag());
+    assertEquals(1.5,nested(legs.get(0)).get(0).getDouble(),0);
+    assertEquals("1",legs.get(1).getTag());
+    assertEquals(0,nested(legs.get(1)).size());
+    List<BFlatValue> mixed = nested(values.get(1));
+    assertEquals(4,mixed.size());
+    assertEquals(1,mixed.get(0).getInt8());
+    assertEquals("two",mixed.get(1).getString());
+    assertEquals("2",mixed.get(2).getTag());
+    assertEquals(4,mixed.get(2).getInt8(1));
+    assertEquals(BFlatEncoding.Null,mixed.get(3).getType());
+    assertEquals("x",values.get(2).getString());
+  }
+
+  // Escapes are decoded by default and copied as they are otherwise.
+  @Test
+  public void escapes() throws Exception
+  {
+    String json = "{\"a\\tb\":\"x\\n\\u00e9\\ud83d\\ude00\\/\",\"c\":\"é\"}";
+    List<BFlatValue> decoded = values(read(json));
+    assertEquals("a\tb",decoded.get(0).getTag());
+    assertEquals("x\n\u00e9\ud83d\ude00/",decoded.get(0).getString());
+    assertEquals("é",decoded.get(1).getString());
+
+    List<BFlatValue> raw = values(read(new BFlatJsonReader(false),json));
+    assertEquals("a\\tb",raw.get(0).getTag());
+    assertEquals("x\\n\\u00e9\\ud83d\\ude00\\/",raw.get(0).getString());
+    assertEquals("é",raw.get(1).getString());
+  }
+
+  // Reads JSON lines into frames, and back out with BFlatJsonWriter.
+  @Test
+  public void jsonLines() throws Exception
+  {
+    String lines = "{\"a\":1}\n  {\"b\":[1.25]}\r\n{}\n";
+    byte[] json = lines.getBytes("UTF-8");
+    BFlatJsonReader reader = new BFlatJsonReader();
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    int position = 0;
+    int frames = 0;
+    while(position < json.length)
+    {
+      builder.beginFrame();
+      position = reader.read(json,position,json.length - position,builder);
+      builder.endFrame();
+      ++frames;
+    }
+    assertEquals(3,frames);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BFlatJsonWriter writer = new BFlatJsonWriter(out,64);
+    int at = 0;
+    while(at < builder.position)
+    {
+      int length = (builder.data[at] & 0xff)
+        | (builder.data[at + 1] & 0xff) << 8
+        | (builder.data[at + 2] & 0xff) << 16
+        | (builder.data[at + 3] & 0xff) << 24;
+      writer.onMessage(builder.data,at + 4,length);
+      at += 4 + length;
+    }
+    writer.flush();
+    assertEquals("{\"a\":1}\n{\"b\":[1.25]}\n{}\n",out.toString("UTF-8"));
+  }
+
+  // The reader encodes the same bytes through a sizer or a stream builder
+  // whose buffer is smaller than the message.
+  @Test
+  public void sizerAndStream() throws Exception
+  {
+    String json = "{\"symbol\":\"MSFT\",\"px\":[57.25,57.5],\"qty\":[100,200],"
+      + "\"a\\\"b\":{\"n\":null,\"mixed\":[true,\"x\\u00e9\"]},"
+      + "\"note\":\"a string that is longer than the sixty four bytes"
+      + " of the stream builder's buffer\"}";
+    BFlatBuilder builder = read(json);
+    BFlatSizer sizer = new BFlatSizer();
+    byte[] bytes = json.getBytes("UTF-8");
+    new BFlatJsonReader().read(bytes,0,bytes.length,sizer);
+    assertEquals(builder.position,sizer.getSize());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BFlatStreamBuilder stream = new BFlatStreamBuilder(out,64);
+    new BFlatJsonReader().read(bytes,0,bytes.length,stream);
+    stream.flush();
+    assertArrayEquals(Arrays.copyOf(builder.data,builder.position),
+                      out.toByteArray());
+  }
+
+  @Test
+  public void errors() throws Exception
+  {
+    String[] invalid = {"", "[1]", "{", "{\"a\"}", "{\"a\":}", "{\"a\":1,}",
+      "{\"a\":01}", "{\"a\":1.}", "{\"a\":-}", "{\"a\":1e}", "{\"a\":tru}",
+      "{\"a\":\"x}", "{\"a\":\"\\q\"}", "{\"a\":\"\\u12\"}", "{\"\":1}",
+      "{\"a\":[1 2]}", "{\"a\":[1,{]}", "{\"a\":\"\t\"}", "{\"a\":1 \"b\":2}"};
+    for(String json : invalid)
+    {
+      try
+      {
+        read(json);
+        fail(json);
+      }
+      catch(BFlatException e)
+      {
+      }
+    }
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void bufferTooSmall() throws Exception
+  {
+    byte[] json = "{\"a\":\"a string longer than the buffer\"}".getBytes();
+    new BFlatJsonReader().read(json,0,json.length,
+                               new BFlatBuilder(new byte[16],0));
+  }
+}
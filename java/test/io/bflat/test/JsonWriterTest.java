@@ -0,0 +1,164 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.util.*;
+
+public class JsonWriterTest
+{
+  static String json(BFlatBuilder builder, int bufferSize) throws Exception
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BFlatJsonWriter writer = new BFlatJsonWriter(out,bufferSize);
+    writer.write(builder.data,0,builder.position);
+    writer.flush();
+    assertEquals(out.size(),writer.getBytesWritten());
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void valuesAndArrays() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("s","MSFT").encode("i8",(byte)-7).encode("i16",(short)300)
+           .encode("i32",-70000).encode("i64",Long.MIN_VALUE)
+           .encode("d",57.25).encodeCompact("leb",1L << 40);
+    builder.encodeTag(BFlatEncoding.Datetime,"ts").encode(1475280000123L);
+    builder.encodeTag(BFlatEncoding.Null,"n");
+    builder.encodeTag(BFlatEncoding.Double,"whole").encode(3.0);
+    builder.encodeTagArray(BFlatEncoding.Double,"px",3);
+    builder.encode(1.5).encode(Double.NaN).encode(1e-9);
+    builder.encodeTagArray(BFlatEncoding.String,"tags",2);
+    builder.encode("a").encode("");
+    builder.encodeCompact("q",new long[] {1,-2,300000});
+    builder.encodeTagArray(BFlatEncoding.Int32,"none",0);
+    assertEquals("{\"s\":\"MSFT\",\"i8\":-7,\"i16\":300,\"i32\":-70000,"
+      + "\"i64\":-9223372036854775808,\"d\":57.25,\"leb\":1099511627776,"
+      + "\"ts\":1475280000123,\"n\":null,\"whole\":3.0,"
+      + "\"px\":[1.5,null,1.0E-9],\"tags\":[\"a\",\"\"],"
+      + "\"q\":[1,-2,300000],\"none\":[]}",json(builder,1024));
+
+    builder.rewind();
+    assertEquals("{}",json(builder,64));
+  }
+
+  @Test
+  public void escapes() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("say \"hi\"","back\\slash\ttab\nline\u0001\u001f café "
+                   + "😀 </script>");
+    assertEquals("{\"say \\\"hi\\\"\":\"back\\\\slash\\ttab\\nline\\u0001"
+                 + "\\u001f café 😀 </script>\"}",
+                 json(builder,1024));
+  }
+
+  @Test
+  public void binaryAsBase64() throws Exception
+  {
+    Random random = new Random(4);
+    for(int length = 0; length < 40; ++length)
+    {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+      builder.encodeTag(BFlatEncoding.Binary,"b").encode(bytes,0,length);
+      assertEquals("{\"b\":\"" + Base64.getEncoder().encodeToString(bytes)
+                   + "\"}",json(builder,64));
+    }
+  }
+
+  @Test
+  public void shortestDoubles() throws Exception
+  {
+    Random random = new Random(5);
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 16],0);
+    double[] values = new double[2000];
+    for(int i = 0; i < values.length; ++i)
+    {
+      do
+      {
+        values[i] = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong())
+          : Math.round(random.nextDouble() * 1e6) / 100.0;
+      }
+      while(Double.isNaN(values[i]) || Double.isInfinite(values[i]));
+    }
+    values[0] = Double.MIN_VALUE;
+    values[1] = -Double.MAX_VALUE;
+    values[2] = 0.1;
+    values[3] = -0.0;
+    builder.encodeTagArray(BFlatEncoding.Double,"v",values.length);
+    for(double value : values) builder.encode(value);
+    String json = json(builder,256);
+    String[] numbers = json.substring(6,json.length() - 2).split(",");
+    assertEquals(values.length,numbers.length);
+    for(int i = 0; i < values.length; ++i)
+    {
+      double parsed = Double.parseDouble(numbers[i]);
+      assertEquals(Double.doubleToLongBits(values[i]),
+                   Double.doubleToLongBits(parsed));
+      assertTrue(numbers[i],numbers[i].matches("-?\\d+(\\.\\d+)?(E-?\\d+)?")
+                            && numbers[i].matches(".*[.E].*"));
+      // no longer than the digits Double.toString needs
+      assertTrue(numbers[i] + " " + values[i],
+        digits(numbers[i]) <= digits(Double.toString(values[i])));
+    }
+    assertEquals("0.1",numbers[2]);
+    assertEquals("-0.0",numbers[3]);
+  }
+
+  static int digits(String number)
+  {
+    String mantissa = number.replaceFirst("E.*","").replaceAll("[-.]","")
+                            .replaceFirst("^0+","").replaceFirst("0+$","");
+    return Math.max(1,mantissa.length());
+  }
+
+  @Test
+  public void smallBufferAndLines() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 16],0);
+    char[] body = new char[3000];
+    Arrays.fill(body,'"');
+    builder.encode("aVeryLongTagNameThatIsLongerThanTheStagingBuffer"
+                   + "OfSixtyFourBytes",new String(body,0,1000));
+    for(int i = 0; i < 50; ++i) builder.encode("n" + i,i * 1.25);
+    Arrays.fill(body,'x');
+    builder.encode("x",new String(body));
+    String expected = json(builder,1 << 16);
+    assertEquals(expected,json(builder,64));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try(BFlatJsonWriter writer = new BFlatJsonWriter(out,64))
+    {
+      writer.onMessage(builder.data,0,builder.position);
+      writer.onMessage(builder.data,0,builder.position);
+    }
+    assertEquals(expected + "\n" + expected + "\n",out.toString("UTF-8"));
+  }
+}
@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class LargeValueTest
+{
+  @Test
+  public void encodeBinaryFromStream() throws Exception
+  {
+    byte[] blob = new byte[5000];
+    new Random(1).nextBytes(blob);
+    BFlatBuilder builder = new BFlatBuilder(new byte[8192],0);
+    builder.encode("a",1)
+           .encodeBinary("blob",new ByteArrayInputStream(blob),blob.length);
+    BFlatParser parser = new BFlatParser().parse(builder.data,0,
+                                                 builder.position);
+    parser.next();
+    BFlatValue value = parser.next();
+    assertEquals(blob.length,value.getRawValueLength());
+
+    ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    InputStream in = value.openStream();
+    for(int b = in.read(); b >= 0; b = in.read()) copy.write(b);
+    assertArrayEquals(blob,copy.toByteArray());
+
+    ByteArrayOutputStream channel = new ByteArrayOutputStream();
+    assertEquals(blob.length,
+                 value.transferTo(Channels.newChannel(channel)));
+    assertArrayEquals(blob,channel.toByteArray());
+  }
+
+  @Test(expected=EOFException.class)
+  public void shortStream() throws Exception
+  {
+    new BFlatBuilder(new byte[64],0)
+      .encodeBinary("b",new ByteArrayInputStream(new byte[3]),10);
+  }
+
+  // Streams a value larger than the staging buffer into a file, then sends
+  // it on from the file after reading only the message header.
+  @Test
+  public void throughFile() throws Exception
+  {
+    final int size = 3 << 20;
+    InputStream source = new InputStream()
+    {
+      public int read()
+      {
+        return (_next++ * 31) & 0xff;
+      }
+      int _next;
+    };
+    Path file = Files.createTempFile("bflat",".bin");
+    try
+    {
+      try(BFlatStreamBuilder out = new BFlatStreamBuilder(
+            Files.newOutputStream(file),4096))
+      {
+        out.encode("name","attachment").encodeBinary("data",source,size);
+      }
+      try(FileChannel channel = FileChannel.open(file))
+      {
+        byte[] header = new byte[64];
+        try(InputStream in = Files.newInputStream(file))
+        {
+          new DataInputStream(in).readFully(header);
+        }
+        BFlatParser parser = new BFlatParser()
+          .parse(header,0,(int)channel.size());
+        assertEquals("attachment",parser.next().getString());
+        BFlatValue data = parser.next();
+        assertEquals(size,data.getRawValueLength());
+
+        Path copy = Files.createTempFile("bflat",".copy");
+        try
+        {
+          try(FileChannel target = FileChannel.open(copy,
+                StandardOpenOption.WRITE))
+          {
+            assertEquals(size,data.transferTo(channel,0,target));
+          }
+          byte[] bytes = Files.readAllBytes(copy);
+          assertEquals(size,bytes.length);
+          for(int i = 0; i < size; ++i)
+          {
+            if(bytes[i] != (byte)(i * 31)) fail("mismatch at " + i);
+          }
+        }
+        finally
+        {
+          Files.delete(copy);
+        }
+      }
+    }
+    finally
+    {
+      Files.delete(file);
+    }
+  }
+}
@@ -122,6 +122,63 @@ public class Leb128Test
 
   }
 
+  @Test
+  public void encodedLengthTest() throws Exception
+  {
+    Buffer buf = new Buffer(new byte[10],0);
+    long[] values = {0,1,-1,63,64,-64,-65,127,128,-32768,1L<<40,-(1L<<40),
+                     Long.MAX_VALUE,Long.MIN_VALUE};
+    for(long value : values)
+    {
+      assertEquals(Leb128.encodeSigned(buf.rewind(),value),
+                   Leb128.signedLength(value));
+      if(value >= 0)
+      {
+        assertEquals(Leb128.encodeUnsigned(buf.rewind(),value),
+                     Leb128.unsignedLength(value));
+      }
+    }
+    assertEquals(10,Leb128.unsignedLength(-1L));
+  }
+
+  @Test
+  public void wideRoundTripTest() throws Exception
+  {
+    Buffer buf = new Buffer(new byte[10],0);
+    long[] values = {1L<<28,(1L<<31)+5,-(1L<<35),1L<<40,-(1L<<40)-3,
+                     1L<<62,Long.MAX_VALUE,Long.MIN_VALUE};
+    for(long value : values)
+    {
+      Leb128.encodeSigned(buf.rewind(),value);
+      assertEquals(value,Leb128.decodeSigned(buf.rewind()));
+      // negative values are the top half of the unsigned range
+      assertEquals(Leb128.unsignedLength(value),
+                   Leb128.encodeUnsigned(buf.rewind(),value));
+      assertEquals(value,Leb128.decodeUnsigned(buf.rewind()));
+    }
+  }
+
+  @Test
+  public void encodeUnsignedTopBitTest() throws Exception
+  {
+    // an arithmetic shift never reaches zero once the top bit is set
+    byte[] buf = new byte[10];
+    Buffer output = new Buffer(buf,0);
+
+    assertEquals(10,Leb128.encodeUnsigned(output,-1L));
+    for(int i = 0; i < 9; ++i)
+    {
+      assertEquals((byte)0xff,buf[i]);
+    }
+    assertEquals(0x01,buf[9]);
+    assertEquals(10,Leb128.encodeUnsigned(output.rewind(),Long.MIN_VALUE));
+    for(int i = 0; i < 9; ++i)
+    {
+      assertEquals((byte)0x80,buf[i]);
+    }
+    assertEquals(0x01,buf[9]);
+  }
+
 
 }
 
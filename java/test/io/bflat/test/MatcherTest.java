@@ -0,0 +1,150 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class MatcherTest
+{
+  static int[] sorted(BFlatMatcher matcher, int count)
+  {
+    int[] result = Arrays.copyOf(matcher.getMatches(), count);
+    Arrays.sort(result);
+    return result;
+  }
+
+  @Test
+  public void equalityAndRange() throws Exception
+  {
+    BFlatMatcher matcher = new BFlatMatcher();
+    int msft = matcher.subscribe(new BFlatSubscription()
+                                 .equal("symbol","MSFT"));
+    int cheap = matcher.subscribe(new BFlatSubscription()
+                                  .equal("symbol","MSFT")
+                                  .between("price",10.0,20.0));
+    int qty = matcher.subscribe(new BFlatSubscription()
+                                .equal("qty",100L));
+    int ibm = matcher.subscribe(new BFlatSubscription()
+                                .equal("symbol","IBM")
+                                .atLeast("price",0));
+
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("symbol","MSFT").encode("price",15.5)
+           .encode("qty",(short)100);
+    int count = matcher.match(builder.data,0,builder.position);
+    assertArrayEquals(new int[]{msft,cheap,qty}, sorted(matcher,count));
+
+    builder.rewind();
+    builder.encode("symbol","MSFT").encode("price",25)
+           .encode("qty",(long)99);
+    count = matcher.match(builder.data,0,builder.position);
+    assertArrayEquals(new int[]{msft}, sorted(matcher,count));
+
+    matcher.unsubscribe(msft);
+    count = matcher.match(builder.data,0,builder.position);
+    assertEquals(0,count);
+    assertEquals(3,matcher.size());
+  }
+
+  @Test
+  public void arrayElements() throws Exception
+  {
+    BFlatMatcher matcher = new BFlatMatcher();
+    int id = matcher.subscribe(new BFlatSubscription()
+                               .equal("ids",7L).equal("ids",9L));
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encodeTagArray(BFlatEncoding.Int32,"ids",4);
+    builder.encode(1).encode(9).encode(7).encode(9);
+    assertEquals(1,matcher.match(builder.data,0,builder.position));
+    assertEquals(id,matcher.getMatches()[0]);
+  }
+
+  @Test(expected=BFlatException.class)
+  public void emptySubscription() throws Exception
+  {
+    new BFlatMatcher().subscribe(new BFlatSubscription());
+  }
+
+  // Compare the indexed matcher with a brute-force evaluation over
+  // randomly generated subscriptions and messages.
+  @Test
+  public void randomAgainstBruteForce() throws Exception
+  {
+    Random random = new Random(42);
+    String[] symbols = {"MSFT","IBM","AAPL","GOOG","ORCL"};
+    BFlatMatcher matcher = new BFlatMatcher();
+    Map<Integer,Object[]> expected = new HashMap<Integer,Object[]>();
+    List<Integer> ids = new ArrayList<Integer>();
+    for(int i = 0; i < 2000; ++i)
+    {
+      String symbol = random.nextBoolean() ?
+        symbols[random.nextInt(symbols.length)] : null;
+      double low = random.nextInt(100);
+      double high = low + random.nextInt(20);
+      boolean range = symbol == null || random.nextBoolean();
+      BFlatSubscription sub = new BFlatSubscription();
+      if(symbol != null) sub.equal("symbol",symbol);
+      if(range) sub.between("price",low,high);
+      int id = matcher.subscribe(sub);
+      expected.put(id, new Object[]{symbol,range,low,high});
+      ids.add(id);
+    }
+    // remove a few to exercise deletion
+    for(int i = 0; i < 500; ++i)
+    {
+      int id = ids.remove(random.nextInt(ids.size()));
+      matcher.unsubscribe(id);
+      expected.remove(id);
+    }
+
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    for(int m = 0; m < 500; ++m)
+    {
+      String symbol = symbols[random.nextInt(symbols.length)];
+      int price = random.nextInt(130);
+      builder.rewind();
+      builder.encode("symbol",symbol).encode("price",price);
+      int count = matcher.match(builder.data,0,builder.position);
+
+      List<Integer> brute = new ArrayList<Integer>();
+      for(Map.Entry<Integer,Object[]> e : expected.entrySet())
+      {
+        Object[] s = e.getValue();
+        boolean ok = s[0] == null || s[0].equals(symbol);
+        if((Boolean)s[1])
+        {
+          ok &= price >= (Double)s[2] && price <= (Double)s[3];
+        }
+        if(ok) brute.add(e.getKey());
+      }
+      Collections.sort(brute);
+      int[] bruteArray = new int[brute.size()];
+      for(int i = 0; i < bruteArray.length; ++i) bruteArray[i] = brute.get(i);
+      assertArrayEquals(bruteArray, sorted(matcher,count));
+    }
+  }
+}
@@ -0,0 +1,201 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+import org.junit.Before;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.File;
+import java.util.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+// Metrics are fixed when BFlatMetrics is loaded, so these tests only run
+// when this class is the first to load it, as in a JVM forked per test.
+public class MetricsTest
+{
+  static
+  {
+    System.setProperty("io.bflat.metrics","true");
+    System.setProperty("io.bflat.metrics.largeBytes","4096");
+  }
+
+  @Before
+  public void reset()
+  {
+    assumeTrue(BFlatMetrics.Enabled);
+    BFlatMetrics.reset();
+  }
+
+  static BFlatBuilder frames(int count, int noteLength)
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 16],0);
+    char[] note = new char[noteLength];
+    Arrays.fill(note,'n');
+    for(int id = 0; id < count; ++id)
+    {
+      builder.beginFrame();
+      builder.encode("id",(long)id).encode("sym","IBM")
+             .encode("note",new String(note));
+      builder.encodeTagArray(BFlatEncoding.Double,"px",2);
+      builder.encode(1.5).encode(2.5);
+      builder.endFrame();
+    }
+    return builder;
+  }
+
+  @Test
+  public void countsMessagesFieldsAndBytes() throws Exception
+  {
+    BFlatBuilder builder = frames(3,10);
+    assertEquals(3,BFlatMetrics.getMessagesEncoded());
+    assertEquals(builder.position - 3*4,BFlatMetrics.getBytesEncoded());
+    assertEquals(3,BFlatMetrics.getFieldsEncoded(BFlatEncoding.Int64));
+    assertEquals(6,BFlatMetrics.getFieldsEncoded(BFlatEncoding.String));
+    assertEquals(3,BFlatMetrics.getFieldsEncoded(BFlatEncoding.Double));
+    assertEquals(0,BFlatMetrics.getFieldsEncoded(BFlatEncoding.Int32));
+
+    BFlatBatch batch = new BFlatBatch(builder.data,0,builder.position);
+    BFlatParser parser = new BFlatParser();
+    for(int index = 0; index < batch.size(); ++index)
+    {
+      for(BFlatValue value : parser.parse(builder.data,batch.getOffset(index),
+                                          batch.getLength(index)))
+      {
+        value.reuse();
+      }
+    }
+    assertEquals(3,BFlatMetrics.getMessagesParsed());
+    assertEquals(BFlatMetrics.getBytesEncoded(),
+                 BFlatMetrics.getBytesParsed());
+    assertEquals(3,BFlatMetrics.getFieldsParsed(BFlatEncoding.Int64));
+    assertEquals(6,BFlatMetrics.getFieldsParsed(BFlatEncoding.String));
+    assertEquals(3,BFlatMetrics.getFieldsParsed(BFlatEncoding.Double));
+    assertEquals(0,BFlatMetrics.getParseErrors());
+    assertEquals(0,BFlatMetrics.getBufferTooSmall());
+
+    BFlatMetrics.reset();
+    assertEquals(0,BFlatMetrics.getMessagesParsed());
+    assertEquals(0,BFlatMetrics.getFieldsEncoded(BFlatEncoding.String));
+  }
+
+  @Test
+  public void countsErrors() throws Exception
+  {
+    try
+    {
+      new BFlatBuilder(new byte[8],0).encode("symbol","IBM");
+      fail();
+    }
+    catch(BufferTooSmallException e)
+    {
+    }
+    try
+    {
+      // a tag length of zero
+      for(BFlatValue value : new BFlatParser().parse(new byte[] {8, 0}))
+      {
+      }
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    assertEquals(1,BFlatMetrics.getBufferTooSmall());
+    assertEquals(1,BFlatMetrics.getParseErrors());
+  }
+
+  @Test
+  public void countsOnlyParserErrors() throws Exception
+  {
+    new BFlatException("not thrown",3);
+    try
+    {
+      byte[] json = "{\"a\":}".getBytes("UTF-8");
+      new BFlatJsonReader().read(json,0,json.length,
+                                 new BFlatBuilder(new byte[64],0));
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    try
+    {
+      new BFlatBatch(new byte[] {0, 0, 0, 9, 1},0,5);
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    assertEquals(0,BFlatMetrics.getParseErrors());
+  }
+
+  @Test
+  public void recordsLargeMessages() throws Exception
+  {
+    File file = File.createTempFile("bflat",".jfr");
+    try
+    {
+      Recording recording = new Recording();
+      recording.enable("io.bflat.Message");
+      recording.start();
+      BFlatBuilder builder = frames(2,5000);
+      frames(10,10);
+      BFlatBatch batch = new BFlatBatch(builder.data,0,builder.position);
+      for(BFlatValue value : new BFlatParser().parse(builder.data,
+        batch.getOffset(1),batch.getLength(1)))
+      {
+      }
+      recording.stop();
+      recording.dump(file.toPath());
+      recording.close();
+
+      int encoded = 0, parsed = 0;
+      for(RecordedEvent event : RecordingFile.readAllEvents(file.toPath()))
+      {
+        if(!event.getEventType().getName().equals("io.bflat.Message"))
+        {
+          continue;
+        }
+        if(event.getInt("size") < 4096)
+        {
+          continue; // slow rather than large
+        }
+        assertEquals(batch.getLength(1),event.getInt("size"));
+        assertEquals(4,event.getInt("fields"));
+        if(event.getString("operation").equals("encode")) ++encoded;
+        else ++parsed;
+      }
+      assertEquals(2,encoded);
+      assertEquals(1,parsed);
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+}
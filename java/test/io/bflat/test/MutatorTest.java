@@ -0,0 +1,111 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class MutatorTest
+{
+  static List<String> fields(byte[] data, int length)
+  {
+    List<String> result = new ArrayList<String>();
+    for(BFlatValue value : new BFlatParser().parse(data,0,length))
+    {
+      result.add(value.toString());
+    }
+    return result;
+  }
+
+  @Test
+  public void fixedWidthInPlace() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("seq",7L).encode("px",1.5).encode("qty",(short)3)
+           .encode("sym","IBM");
+    int length = builder.position;
+    BFlatMutator mutator = new BFlatMutator().wrap(builder.data,0,length);
+    assertEquals(4,mutator.size());
+    mutator.setLong(mutator.indexOf("seq"),123456789012L)
+           .setDouble(mutator.indexOf("px"),-2.25)
+           .setLong(mutator.indexOf("qty"),-300);
+    assertEquals(length,mutator.getLength());
+
+    BFlatBuilder expected = new BFlatBuilder(new byte[1024],0);
+    expected.encode("seq",123456789012L).encode("px",-2.25)
+            .encode("qty",(short)-300).encode("sym","IBM");
+    assertEquals(fields(expected.data,expected.position),
+                 fields(builder.data,length));
+    assertEquals(-1,mutator.indexOf("missing"));
+  }
+
+  @Test
+  public void resizeVariableLength() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("a","short").encode("b",1L).encode("c","tail")
+           .encodeTag(BFlatEncoding.Leb128,"d");
+    Leb128.encodeSigned(builder,5L);
+    BFlatMutator mutator = new BFlatMutator().wrap(builder.data,0,
+                                                   builder.position);
+    char[] longer = new char[200];
+    Arrays.fill(longer,'é');
+    mutator.setString(0,new String(longer));
+    mutator.setLong(1,99L);
+    mutator.setString(2,"t");
+    mutator.setLong(3,-1L << 40);
+
+    BFlatBuilder expected = new BFlatBuilder(new byte[1024],0);
+    expected.encode("a",new String(longer)).encode("b",99L).encode("c","t")
+            .encodeTag(BFlatEncoding.Leb128,"d");
+    Leb128.encodeSigned(expected,-1L << 40);
+    assertEquals(expected.position,mutator.getLength());
+    assertEquals(fields(expected.data,expected.position),
+                 fields(builder.data,mutator.getLength()));
+
+    mutator.setString(0,"x");
+    mutator.setBytes(2,"back".getBytes("UTF-8"),0,4);
+    assertEquals("a=\"x\"",fields(builder.data,mutator.getLength()).get(0));
+    assertEquals("c=\"back\"",fields(builder.data,mutator.getLength()).get(2));
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void growthBeyondArray() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[32],0);
+    builder.encode("a","b");
+    new BFlatMutator().wrap(builder.data,0,builder.position)
+      .setString(0,"this string is too long for the array");
+  }
+
+  @Test(expected=BFlatException.class)
+  public void valueTooWide() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[32],0);
+    builder.encode("a",(byte)1);
+    new BFlatMutator().wrap(builder.data,0,builder.position).setLong(0,200);
+  }
+}
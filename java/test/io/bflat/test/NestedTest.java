@@ -0,0 +1,109 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class NestedTest
+{
+  @Test
+  public void nestedMessages() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+    char[] big = new char[300];
+    Arrays.fill(big,'x');
+    builder.encode("id",1)
+      .beginNested("order")
+        .encode("symbol","IBM")
+        .beginNested("fill")
+          .encode("qty",100)
+        .endNested()
+        .encode("note",new String(big))
+      .endNested()
+      .beginNested("empty").endNested()
+      .encode("after","done");
+    assertEquals(0,builder.getNestedDepth());
+
+    BFlatParser outer = new BFlatParser();
+    BFlatParser inner = new BFlatParser();
+    BFlatParser innermost = new BFlatParser();
+    List<String> seen = new ArrayList<String>();
+    for(BFlatValue value : outer.parse(builder.data,0,builder.position))
+    {
+      if(value.getType() != BFlatEncoding.Binary)
+      {
+        seen.add(value.toString());
+        continue;
+      }
+      seen.add(value.getTag() + "{");
+      for(BFlatValue child : inner.parse(value))
+      {
+        if(child.getType() == BFlatEncoding.Binary)
+        {
+          for(BFlatValue grandchild : innermost.parse(child))
+          {
+            seen.add(grandchild.toString());
+          }
+        }
+        else
+        {
+          seen.add(child.getTag());
+        }
+      }
+      seen.add("}");
+    }
+    assertEquals(Arrays.asList("id=1","order{","symbol","qty=100","note","}",
+                               "empty{","}","after=\"done\""),seen);
+  }
+
+  @Test
+  public void matchesScratchEncoding() throws Exception
+  {
+    BFlatBuilder child = new BFlatBuilder(new byte[256],0);
+    child.encode("a",1).encode("b","two");
+    BFlatBuilder copied = new BFlatBuilder(new byte[256],0);
+    copied.encodeTag(BFlatEncoding.Binary,"c")
+          .encode(child.data,0,child.position);
+
+    BFlatBuilder nested = new BFlatBuilder(new byte[256],0);
+    nested.beginNested("c").encode("a",1).encode("b","two").endNested();
+    assertArrayEquals(Arrays.copyOf(copied.data,copied.position),
+                      Arrays.copyOf(nested.data,nested.position));
+  }
+
+  @Test(expected=BFlatException.class)
+  public void unbalancedEnd() throws Exception
+  {
+    new BFlatBuilder(new byte[16],0).endNested();
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void noRoomForLength() throws Exception
+  {
+    new BFlatBuilder(new byte[4],0).beginNested("a");
+  }
+}
@@ -0,0 +1,100 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class ProjectorTest
+{
+  static List<String> fields(byte[] data, int length)
+  {
+    List<String> result = new ArrayList<String>();
+    for(BFlatValue value : new BFlatParser().parse(data,0,length))
+    {
+      result.add(value.toString());
+    }
+    return result;
+  }
+
+  @Test
+  public void copyField() throws Exception
+  {
+    BFlatBuilder source = new BFlatBuilder(new byte[1024],0);
+    source.encode("a","hello").encode("b",42)
+          .encodeTagArray(BFlatEncoding.String,"c",2).encode("x").encode("y");
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    for(BFlatValue value : new BFlatParser().parse(source.data,0,
+                                                   source.position))
+    {
+      out.copyField(value);
+    }
+    assertEquals(source.position,out.position);
+    assertArrayEquals(Arrays.copyOf(source.data,source.position),
+                      Arrays.copyOf(out.data,out.position));
+  }
+
+  @Test
+  public void subsetReorderAndRename() throws Exception
+  {
+    BFlatBuilder source = new BFlatBuilder(new byte[1024],0);
+    source.encode("symbol","IBM").encode("bid",100.5).encode("ask",101.0)
+          .encode("venue","X").encode("note","a long tag follows")
+          .encodeTagArray(BFlatEncoding.Int32,"sizes",2).encode(1).encode(2);
+    BFlatProjector projector = new BFlatProjector()
+      .include("ask")
+      .include("symbol","sym")
+      .include("sizes","quantitiesForEachLevel")
+      .include("missing");
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    assertEquals(3,projector.project(source.data,0,source.position,out));
+
+    BFlatBuilder expected = new BFlatBuilder(new byte[1024],0);
+    expected.encode("ask",101.0).encode("sym","IBM")
+      .encodeTagArray(BFlatEncoding.Int32,"quantitiesForEachLevel",2)
+      .encode(1).encode(2);
+    assertEquals(fields(expected.data,expected.position),
+                 fields(out.data,out.position));
+  }
+
+  @Test
+  public void repeatedTagsKeepSourceOrder() throws Exception
+  {
+    BFlatBuilder source = new BFlatBuilder(new byte[1024],0);
+    source.encode("x",1).encode("y",2).encode("x",3);
+    BFlatBuilder out = new BFlatBuilder(new byte[1024],0);
+    assertEquals(3,new BFlatProjector().include("y").include("x","z")
+                 .project(source.data,0,source.position,out));
+    assertEquals(Arrays.asList("y=2","z=1","z=3"),
+                 fields(out.data,out.position));
+  }
+
+  @Test(expected=BFlatException.class)
+  public void duplicateInclude() throws Exception
+  {
+    new BFlatProjector().include("a").include("a","b");
+  }
+}
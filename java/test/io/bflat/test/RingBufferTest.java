@@ -0,0 +1,153 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class RingBufferTest
+{
+  // Checks that each producer's sequence numbers arrive in order.
+  static class Checker implements BFlatHandler
+  {
+    Checker(int producers)
+    {
+      last = new long[producers];
+      Arrays.fill(last,-1);
+    }
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      int producer = -1;
+      long seq = -1;
+      for(BFlatValue value : parser.parse(data,offset,length))
+      {
+        if(value.getTag().equals("p")) producer = (int)value.getLong();
+        else seq = value.getLong();
+      }
+      assertEquals(last[producer] + 1,seq);
+      last[producer] = seq;
+      ++count;
+    }
+    BFlatParser parser = new BFlatParser();
+    long[]      last;
+    long        count;
+  }
+
+  static void run(final BFlatRingBuffer ring, final int producers,
+                  final int messages, final int batch) throws Exception
+  {
+    Thread[] threads = new Thread[producers];
+    for(int p = 0; p < producers; ++p)
+    {
+      final int id = p;
+      threads[p] = new Thread()
+      {
+        public void run()
+        {
+          BFlatBuilder builder = new BFlatBuilder(null,0);
+          for(int seq = 0; seq < messages; seq += batch)
+          {
+            long last = ring.next(batch);
+            for(long s = last - batch + 1; s <= last; ++s)
+            {
+              ring.wrap(s,builder).encode("p",id)
+                .encode("seq",seq + (int)(s - last + batch - 1));
+              ring.commit(s,builder);
+            }
+            ring.publish(last - batch + 1,last);
+          }
+        }
+      };
+      threads[p].start();
+    }
+    Checker checker = new Checker(producers);
+    while(checker.count < (long)producers * messages)
+    {
+      ring.take(checker,32);
+    }
+    for(Thread t : threads) t.join();
+    for(long last : checker.last) assertEquals(messages - 1,last);
+    assertEquals(0,ring.poll(checker,32));
+    assertEquals(0,ring.size());
+  }
+
+  @Test
+  public void singleProducer() throws Exception
+  {
+    run(new BFlatRingBuffer(64,64,false,BFlatRingBuffer.Yield),
+        1,200000,1);
+  }
+
+  @Test
+  public void singleProducerBatched() throws Exception
+  {
+    run(new BFlatRingBuffer(60,64,false,BFlatRingBuffer.Park),1,200000,8);
+  }
+
+  @Test
+  public void multiProducer() throws Exception
+  {
+    run(new BFlatRingBuffer(64,64,true,BFlatRingBuffer.Yield),4,50000,1);
+    run(new BFlatRingBuffer(64,64,true,BFlatRingBuffer.Yield),4,50000,4);
+  }
+
+  @Test
+  public void tryNextWhenFull() throws Exception
+  {
+    BFlatRingBuffer ring = new BFlatRingBuffer(4,16,false,
+                                               BFlatRingBuffer.BusySpin);
+    assertEquals(4,ring.capacity());
+    BFlatBuilder builder = new BFlatBuilder(null,0);
+    long last = ring.tryNext(4);
+    assertEquals(3,last);
+    for(long s = 0; s <= last; ++s)
+    {
+      ring.wrap(s,builder).encode("a",(int)s);
+      ring.commit(s,builder);
+    }
+    ring.publish(0,last);
+    assertEquals(-1,ring.tryNext(1));
+    Checker ignore = new Checker(1)
+    {
+      public void onMessage(byte[] data, int offset, int length)
+      {
+        ++count;
+      }
+    };
+    assertEquals(2,ring.poll(ignore,2));
+    assertEquals(5,ring.tryNext(2));
+    assertEquals(-1,ring.tryNext(1));
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void slotOverflow() throws Exception
+  {
+    BFlatRingBuffer ring = new BFlatRingBuffer(4,16,true,
+                                               BFlatRingBuffer.BusySpin);
+    BFlatBuilder builder = new BFlatBuilder(null,0);
+    ring.wrap(ring.next(),builder).encode("name","longer than sixteen bytes");
+  }
+}
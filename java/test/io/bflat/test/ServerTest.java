@@ -0,0 +1,216 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+
+public class ServerTest
+{
+  static final ThreadFactory QUIET = new ThreadFactory()
+  {
+    public Thread newThread(Runnable task)
+    {
+      Thread thread = BFlatServer.defaultThreadFactory().newThread(task);
+      thread.setUncaughtExceptionHandler(
+        new Thread.UncaughtExceptionHandler()
+        {
+          public void uncaughtException(Thread t, Throwable e)
+          {
+            // malformedFrameClosesConnection expects one
+          }
+        });
+      return thread;
+    }
+  };
+
+  // Sums the "n" field of each message and checks that a connection's
+  // messages arrive in order.
+  static class Summer implements BFlatHandler, Closeable
+  {
+    public void onMessage(byte[] data, int offset, int length)
+    {
+      for(BFlatValue value : parser.parse(data,offset,length))
+      {
+        if(value.getTag().equals("n"))
+        {
+          assertEquals(next++,value.getLong());
+          total.addAndGet(value.getLong());
+        }
+      }
+      messages.incrementAndGet();
+    }
+    public void close()
+    {
+      closed.countDown();
+    }
+    BFlatParser parser = new BFlatParser();
+    long        next;
+  }
+  static final AtomicLong    total    = new AtomicLong();
+  static final AtomicLong    messages = new AtomicLong();
+  static CountDownLatch      closed;
+
+  static void send(int port, int count, String pad) throws IOException
+  {
+    try(Socket socket = new Socket(InetAddress.getLoopbackAddress(),port);
+        BFlatStreamBuilder out =
+          new BFlatStreamBuilder(socket.getOutputStream(),4096))
+    {
+      for(int n = 0; n < count; ++n)
+      {
+        out.beginFrame().encode("n",n).encode("pad",pad).endFrame();
+      }
+    }
+  }
+
+  @Test
+  public void manyConnections() throws Exception
+  {
+    final int clients = 100;
+    final int count = 500;
+    total.set(0);
+    messages.set(0);
+    closed = new CountDownLatch(clients);
+    BFlatServer server = new BFlatServer(
+      new ServerSocket(0,clients,InetAddress.getLoopbackAddress()),
+      new Supplier<BFlatHandler>()
+      {
+        public BFlatHandler get()
+        {
+          return new Summer();
+        }
+      },QUIET,64).start();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    for(int c = 0; c < clients; ++c)
+    {
+      final String pad = new String(new char[c * 10]);
+      pool.submit(new Callable<Void>()
+      {
+        public Void call() throws IOException
+        {
+          send(server.getPort(),count,pad);
+          return null;
+        }
+      });
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(30,TimeUnit.SECONDS));
+    assertTrue(closed.await(30,TimeUnit.SECONDS));
+    assertEquals(clients,server.getAcceptedCount());
+    assertEquals((long)clients*count,messages.get());
+    assertEquals((long)clients*count*(count - 1)/2,total.get());
+    server.close();
+  }
+
+  @Test
+  public void malformedFrameClosesConnection() throws Exception
+  {
+    closed = new CountDownLatch(1);
+    BFlatServer server = new BFlatServer(
+      new ServerSocket(0,10,InetAddress.getLoopbackAddress()),
+      new Supplier<BFlatHandler>()
+      {
+        public BFlatHandler get()
+        {
+          return new Summer();
+        }
+      },QUIET,64).start();
+    try(Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                   server.getPort()))
+    {
+      socket.getOutputStream().write(new byte[] {-1,-1,-1,-1});
+      assertTrue(closed.await(10,TimeUnit.SECONDS));
+      assertEquals(-1,socket.getInputStream().read());
+    }
+    server.close();
+    assertEquals(0,server.getConnectionCount());
+  }
+
+  // Records the threads it creates, so a test can wait for the acceptor.
+  static class Recording implements ThreadFactory
+  {
+    public Thread newThread(Runnable task)
+    {
+      Thread thread = QUIET.newThread(task);
+      threads.add(thread);
+      return thread;
+    }
+    final BlockingQueue<Thread> threads = new LinkedBlockingQueue<Thread>();
+  }
+
+  static final Supplier<BFlatHandler> SUMMERS = new Supplier<BFlatHandler>()
+  {
+    public BFlatHandler get()
+    {
+      return new Summer();
+    }
+  };
+
+  // Persistent accept failures, such as running out of file descriptors,
+  // must back off rather than spin.
+  @Test
+  public void acceptFailuresBackOff() throws Exception
+  {
+    final AtomicInteger attempts = new AtomicInteger();
+    ServerSocket failing = new ServerSocket()
+    {
+      public Socket accept() throws IOException
+      {
+        attempts.incrementAndGet();
+        throw new IOException("Too many open files");
+      }
+    };
+    Recording threads = new Recording();
+    BFlatServer server =
+      new BFlatServer(failing,SUMMERS,threads,64).start();
+    Thread.sleep(500);
+    assertTrue(attempts.get() > 1);
+    assertTrue(attempts.get() < 20);
+    server.close();
+    Thread acceptor = threads.threads.take();
+    acceptor.join(5000);
+    assertFalse(acceptor.isAlive());
+  }
+
+  // Closing the socket without closing the server stops accepting.
+  @Test
+  public void socketClosedStopsAccepting() throws Exception
+  {
+    ServerSocket socket =
+      new ServerSocket(0,10,InetAddress.getLoopbackAddress());
+    Recording threads = new Recording();
+    new BFlatServer(socket,SUMMERS,threads,64).start();
+    Thread acceptor = threads.threads.take();
+    socket.close();
+    acceptor.join(5000);
+    assertFalse(acceptor.isAlive());
+  }
+}
@@ -0,0 +1,146 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+public class SizerTest
+{
+  static final String[] STRINGS = {
+    "", "a", "seven77", "eight888", "ünïcödé", "日本語のテキスト",
+    "emoji 😀 pair", "a tag name that is quite a lot longer"
+  };
+
+  static String randomString(Random random)
+  {
+    StringBuilder sb = new StringBuilder();
+    int parts = random.nextInt(random.nextInt(20) == 0 ? 60 : 3);
+    for(int i = 0; i < parts; ++i)
+    {
+      sb.append(STRINGS[random.nextInt(STRINGS.length)]);
+    }
+    return sb.toString();
+  }
+
+  static String randomTag(Random random)
+  {
+    String tag = randomString(random);
+    return tag.isEmpty() ? "t" : tag;
+  }
+
+  // Writes the same random message to any BFlatBuilder.
+  static void randomMessage(long seed, BFlatBuilder builder) throws Exception
+  {
+    Random random = new Random(seed);
+    int depth = 0;
+    for(int field = random.nextInt(30); field > 0; --field)
+    {
+      String tag = randomTag(random);
+      switch(random.nextInt(10))
+      {
+        case 0: builder.encode(tag,randomString(random)); break;
+        case 1: builder.encode(tag,random.nextInt()); break;
+        case 2: builder.encode(tag,random.nextDouble()); break;
+        case 3:
+          builder.encodeCompact(tag,random.nextLong() >> random.nextInt(64));
+          break;
+        case 4:
+        {
+          long[] values = new long[random.nextInt(200)];
+          for(int i = 0; i < values.length; ++i)
+          {
+            values[i] = random.nextLong() >> random.nextInt(64);
+          }
+          builder.encodeCompact(tag,values);
+          break;
+        }
+        case 5:
+        {
+          byte[] bytes = new byte[random.nextInt(300)];
+          builder.encodeBinary(tag,new ByteArrayInputStream(bytes),
+                               bytes.length);
+          break;
+        }
+        case 6:
+        {
+          int count = random.nextInt(5);
+          builder.encodeTagArray(BFlatEncoding.String,tag,count);
+          for(int i = 0; i < count; ++i) builder.encode(randomString(random));
+          break;
+        }
+        case 7:
+          builder.beginNested(tag);
+          ++depth;
+          break;
+        case 8:
+          if(depth > 0)
+          {
+            builder.endNested();
+            --depth;
+          }
+          break;
+        default:
+          builder.encodeTag(BFlatEncoding.Null,tag);
+          break;
+      }
+    }
+    while(depth-- > 0) builder.endNested();
+  }
+
+  @Test
+  public void matchesBuilder() throws Exception
+  {
+    BFlatSizer sizer = new BFlatSizer();
+    BFlatBuilder builder = new BFlatBuilder(new byte[1 << 20],0);
+    for(long seed = 0; seed < 2000; ++seed)
+    {
+      sizer.rewind();
+      builder.rewind();
+      randomMessage(seed,sizer);
+      randomMessage(seed,builder);
+      assertEquals("seed " + seed,builder.position,sizer.getSize());
+    }
+  }
+
+  @Test
+  public void staticSizes() throws Exception
+  {
+    for(String s : STRINGS)
+    {
+      BFlatBuilder builder = new BFlatBuilder(new byte[256],0);
+      builder.encode(s);
+      assertEquals(builder.position,BFlatSizer.sizeOfString(s));
+      if(!s.isEmpty())
+      {
+        builder.rewind();
+        builder.encodeTag(BFlatEncoding.Null,s);
+        assertEquals(builder.position,BFlatSizer.sizeOfTag(s));
+      }
+    }
+  }
+}
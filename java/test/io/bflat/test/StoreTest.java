@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class StoreTest
+{
+  static String firstString(BFlatParser parser, String tag)
+  {
+    for(BFlatValue value : parser)
+    {
+      if(value.getTag().equals(tag)) return value.getString();
+    }
+    return null;
+  }
+
+  @Test
+  public void stringKeys() throws Exception
+  {
+    BFlatStore store = new BFlatStore("orderId");
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("orderId","A").encode("status","new");
+    assertTrue(store.put(builder.data,0,builder.position));
+    builder.rewind();
+    builder.encode("status","filled").encode("orderId","A");
+    assertFalse(store.put(builder.data,0,builder.position));
+    builder.rewind();
+    builder.encode("orderId","B").encode("status","new");
+    assertTrue(store.put(builder.data,0,builder.position));
+
+    assertEquals(2,store.size());
+    BFlatParser parser = new BFlatParser();
+    assertNotNull(store.get("A",parser));
+    assertEquals("filled",firstString(parser,"status"));
+    assertNull(store.get("C",parser));
+
+    assertTrue(store.remove("A"));
+    assertFalse(store.remove("A"));
+    assertNull(store.get("A",parser));
+    assertEquals(1,store.size());
+  }
+
+  @Test
+  public void integerKeysMatchAcrossWidths() throws Exception
+  {
+    BFlatStore store = new BFlatStore("id");
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("id",(byte)5).encode("v","first");
+    store.put(builder.data,0,builder.position);
+    builder.rewind();
+    builder.encode("id",(long)5).encode("v","second");
+    assertFalse(store.put(builder.data,0,builder.position));
+    BFlatParser parser = new BFlatParser();
+    assertNotNull(store.get(5,parser));
+    assertEquals("second",firstString(parser,"v"));
+  }
+
+  @Test(expected=BFlatException.class)
+  public void missingKey() throws Exception
+  {
+    BFlatBuilder builder = new BFlatBuilder(new byte[1024],0);
+    builder.encode("other",1);
+    new BFlatStore("id").put(builder.data,0,builder.position);
+  }
+
+  // Random puts and removes with growing values, checked against a HashMap,
+  // with slabs small enough to force new slabs and compaction.
+  @Test
+  public void randomAgainstHashMap() throws Exception
+  {
+    Random random = new Random(7);
+    BFlatStore store = new BFlatStore("key",256);
+    Map<String,String> expected = new HashMap<String,String>();
+    BFlatBuilder builder = new BFlatBuilder(new byte[4096],0);
+    for(int i = 0; i < 20000; ++i)
+    {
+      String key = "k" + random.nextInt(300);
+      if(random.nextInt(10) == 0)
+      {
+        assertEquals(expected.remove(key) != null, store.remove(key));
+        continue;
+      }
+      char[] chars = new char[random.nextInt(random.nextInt(10)==0?600:40)];
+      Arrays.fill(chars,(char)('a' + random.nextInt(26)));
+      String value = new String(chars);
+      builder.rewind();
+      builder.encode("value",value).encode("key",key);
+      assertEquals(!expected.containsKey(key),
+                   store.put(builder.data,0,builder.position));
+      expected.put(key,value);
+    }
+    assertEquals(expected.size(),store.size());
+    BFlatParser parser = new BFlatParser();
+    for(Map.Entry<String,String> e : expected.entrySet())
+    {
+      assertNotNull(store.get(e.getKey(),parser));
+      assertEquals(e.getValue(),firstString(parser,"value"));
+    }
+    store.compact();
+    Map<String,String> seen = new HashMap<String,String>();
+    for(BFlatParser message : store)
+    {
+      String key = null, value = null;
+      for(BFlatValue v : message)
+      {
+        if(v.getTag().equals("key")) key = v.getString();
+        else value = v.getString();
+      }
+      seen.put(key,value);
+    }
+    assertEquals(expected,seen);
+  }
+}
@@ -0,0 +1,171 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.*;
+
+public class StreamBuilderTest
+{
+  // Encodes the same fields to a BFlatBuilder and to a stream builder.
+  static void encodeAll(BFlatBuilder builder, Random random, byte[] blob)
+  {
+    for(int i = 0; i < 500; ++i)
+    {
+      builder.encode("id",i).encode("price",random.nextDouble())
+             .encode("name","name" + random.nextInt())
+             .encode("l",random.nextLong())
+             .encode("s",(short)i).encode("b",(byte)i);
+      builder.encodeTagArray(BFlatEncoding.Int32,"arr",3)
+             .encode(1).encode(2).encode(3);
+      if(i % 50 == 0)
+      {
+        builder.encodeTag(BFlatEncoding.Binary,"blob")
+               .encode(blob,0,blob.length);
+        char[] chars = new char[300];
+        Arrays.fill(chars,'é');
+        builder.encode("big",new String(chars));
+      }
+      if(i % 7 == 0)
+      {
+        builder.beginNested("child").encode("x",i)
+               .beginNested("grandchild").encode("y","z").endNested()
+               .endNested();
+      }
+    }
+  }
+
+  @Test
+  public void matchesBuilderOutput() throws Exception
+  {
+    byte[] blob = new byte[1000];
+    new Random(3).nextBytes(blob);
+    BFlatBuilder expected = new BFlatBuilder(new byte[1 << 20],0);
+    encodeAll(expected,new Random(5),blob);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BFlatStreamBuilder stream = new BFlatStreamBuilder(bytes,128);
+    encodeAll(stream,new Random(5),blob);
+    assertEquals(expected.position,stream.getBytesWritten());
+    stream.close();
+    assertArrayEquals(Arrays.copyOf(expected.data,expected.position),
+                      bytes.toByteArray());
+
+    ByteArrayOutputStream channelBytes = new ByteArrayOutputStream();
+    BFlatStreamBuilder channel =
+      new BFlatStreamBuilder(Channels.newChannel(channelBytes),64);
+    encodeAll(channel,new Random(5),blob);
+    channel.flush();
+    assertArrayEquals(bytes.toByteArray(),channelBytes.toByteArray());
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void nestedLargerThanBuffer() throws Exception
+  {
+    BFlatStreamBuilder stream =
+      new BFlatStreamBuilder(new ByteArrayOutputStream(),64);
+    stream.beginNested("n").encodeTag(BFlatEncoding.Binary,"b")
+          .encode(new byte[100],0,100);
+  }
+
+  // Closing with a nested message open closes the channel, and its
+  // stream, before reporting it.
+  @Test
+  public void closeInNested() throws Exception
+  {
+    final boolean[] closed = new boolean[1];
+    ByteArrayOutputStream out = new ByteArrayOutputStream()
+    {
+      public void close()
+      {
+        closed[0] = true;
+      }
+    };
+    BFlatStreamBuilder stream =
+      new BFlatStreamBuilder(Channels.newChannel(out),64);
+    stream.encode("a",1).beginNested("n").encode("b",2);
+    try
+    {
+      stream.close();
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    assertTrue(closed[0]);
+  }
+
+  // Closing mid-frame writes the frames before it, closes the stream and
+  // then reports the unfinished frame.
+  @Test
+  public void closeInFrame() throws Exception
+  {
+    final boolean[] closed = new boolean[1];
+    ByteArrayOutputStream out = new ByteArrayOutputStream()
+    {
+      public void close()
+      {
+        closed[0] = true;
+      }
+    };
+    BFlatStreamBuilder stream = new BFlatStreamBuilder(out,64);
+    stream.beginFrame();
+    stream.encode("i",1);
+    stream.endFrame();
+    int complete = (int)stream.getBytesWritten();
+    stream.beginFrame();
+    stream.encode("i",2);
+    try
+    {
+      stream.close();
+      fail();
+    }
+    catch(BFlatException e)
+    {
+    }
+    assertTrue(closed[0]);
+    assertEquals(complete,out.size());
+  }
+
+  @Test(expected=UncheckedIOException.class)
+  public void writeErrors() throws Exception
+  {
+    OutputStream failing = new OutputStream()
+    {
+      public void write(int b) throws IOException
+      {
+        throw new IOException("disk full");
+      }
+    };
+    BFlatStreamBuilder stream = new BFlatStreamBuilder(failing,64);
+    for(int i = 0; i < 100; ++i)
+    {
+      stream.encode("i",i);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+////////////////////////////////////////////////////////////////////////////
+//
+// Copyright (c) 2016 60East Technologies Inc., All Rights Reserved.
+//
+// Permission is hereby granted, free of charge, to any person obtaining
+// a copy of this software and associated documentation files (the
+// "Software"), to deal in the Software without restriction, including
+// without limitation the rights to use, copy, modify, merge, publish,
+// distribute, sublicense, and/or sell copies of the Software, and to
+// permit persons to whom the Software is furnished to do so, subject to
+// the following conditions:
+//
+// The above copyright notice and this permission notice shall be
+// included in all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+// EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+// MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+// NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+// LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+// OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+// WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+//
+////////////////////////////////////////////////////////////////////////////
+package io.bflat.test;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import io.bflat.*;
+import java.util.*;
+
+public class TemplateTest
+{
+  static Set<String> fields(byte[] data, int offset, int length)
+  {
+    Set<String> result = new HashSet<String>();
+    for(BFlatValue value : new BFlatParser().parse(data,offset,length))
+    {
+      result.add(value.toString());
+    }
+    return result;
+  }
+
+  @Test
+  public void fixedAndVariableSlots() throws Exception
+  {
+    BFlatTemplate template = new BFlatTemplate()
+      .field(BFlatEncoding.Int64,"seq")
+      .field(BFlatEncoding.String,"symbol")
+      .field(BFlatEncoding.Double,"price")
+      .field(BFlatEncoding.Int8,"side")
+      .field(BFlatEncoding.Int16,"venue")
+      .field(BFlatEncoding.Int32,"size")
+      .field(BFlatEncoding.String,"aVeryLongTagNameForTheNote")
+      .field(BFlatEncoding.Binary,"raw")
+      .field(BFlatEncoding.Null,"nothing");
+    assertEquals(9,template.size());
+    int seq = template.slot("seq");
+    int symbol = template.slot("symbol");
+    int price = template.slot("price");
+    int note = template.slot("aVeryLongTagNameForTheNote");
+    int raw = template.slot("raw");
+    assertEquals(-1,template.slot("missing"));
+
+    byte[] buffer = new byte[1024];
+    BFlatTemplate.Instance message = template.newInstance(buffer,10);
+    assertEquals(template.getPrototypeLength(),message.getLength());
+    message.setLong(seq,42).setDouble(price,101.25)
+           .setByte(template.slot("side"),(byte)1)
+           .setShort(template.slot("venue"),(short)7)
+           .setInt(template.slot("size"),100000);
+    // out of declaration order, and replacing a longer value
+    message.setString(note,"ünïcödé note");
+    message.setString(symbol,"SOMETHING LONG");
+    message.setBytes(raw,new byte[] {1,2,3},0,3);
+    message.setString(symbol,"IBM");
+
+    BFlatBuilder expected = new BFlatBuilder(new byte[1024],0);
+    expected.encode("seq",42L).encode("symbol","IBM")
+      .encode("price",101.25).encode("side",(byte)1)
+      .encode("venue",(short)7).encode("size",100000)
+      .encode("aVeryLongTagNameForTheNote","ünïcödé note")
+      .encodeTag(BFlatEncoding.Binary,"raw").encode(new byte[] {1,2,3},0,3)
+      .encodeTag(BFlatEncoding.Null,"nothing");
+    assertEquals(expected.position,message.getLength());
+    assertEquals(fields(expected.data,0,expected.position),
+                 fields(buffer,10,message.getLength()));
+
+    // reusing the instance starts again from the prototype
+    message.wrap(buffer,0);
+    assertEquals(template.getPrototypeLength(),message.getLength());
+    assertTrue(fields(buffer,0,message.getLength()).contains("seq=0"));
+  }
+
+  @Test(expected=BufferTooSmallException.class)
+  public void prototypeTooLarge() throws Exception
+  {
+    new BFlatTemplate().field(BFlatEncoding.Int64,"seq")
+      .newInstance(new byte[4],0);
+  }
+
+  @Test(expected=BFlatException.class)
+  public void unsupportedType() throws Exception
+  {
+    new BFlatTemplate().field(BFlatEncoding.Leb128,"n");
+  }
+}